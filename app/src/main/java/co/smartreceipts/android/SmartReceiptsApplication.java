@@ -98,6 +98,13 @@ public class SmartReceiptsApplication extends Application implements VersionUpgr
         init();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        Logger.debug(this, "onTrimMemory: {}", level);
+        persistenceManager.getDatabase().onTrimMemory(level);
+    }
+
     public AppComponent getAppComponent() {
         return appComponent;
     }
@@ -310,7 +310,12 @@ public class ReceiptImageFragment extends WBFragment {
                 String filename = mImg.getName();
                 Bitmap bitmap = storage.getBitmap(root, filename);
                 bitmap = ImageUtils.rotateBitmap(bitmap, mOrientation);
-                storage.writeBitmap(root, bitmap, filename, CompressFormat.JPEG, 85);
+                // Write a new file and rename it over the old one, since this file may be linked to another receipt's
+                final String rotatedFilename = "." + filename + ".rotated";
+                if (!storage.writeBitmap(root, bitmap, rotatedFilename, CompressFormat.JPEG, 85) || !new File(root, rotatedFilename).renameTo(mImg)) {
+                    storage.delete(root, rotatedFilename);
+                    return null;
+                }
                 return bitmap;
             } catch (Exception e) {
                 Logger.error(this, e);
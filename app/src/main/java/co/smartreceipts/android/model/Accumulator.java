@@ -0,0 +1,38 @@
+package co.smartreceipts.android.model;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Incrementally reduces a series of values of type {@link T} into a single result of type {@link R}. This allows us
+ * to compute a result (eg the footer of a report column) in the same pass that processes each value, without needing
+ * to retain the values themselves.
+ * <p>
+ * Partial results for separate chunks of values (eg chunks that were processed in parallel) can be combined via
+ * {@link #merge(Accumulator)}. Please note that accumulators are not thread safe, so each chunk should use its own
+ * instance.
+ * </p>
+ */
+public interface Accumulator<T, R> {
+
+    /**
+     * Adds a single value to this accumulator
+     *
+     * @param value the value to add
+     */
+    void accept(@NonNull T value);
+
+    /**
+     * Merges the partial result of another accumulator into this one. The values that were accepted by the other
+     * accumulator are treated as if they followed the values of this one
+     *
+     * @param other another accumulator of the same type (ie that was begun from the same source)
+     * @throws IllegalArgumentException if the other accumulator is not compatible with this one
+     */
+    void merge(@NonNull Accumulator<T, R> other);
+
+    /**
+     * @return the result for all of the values that have been accepted or merged into this accumulator
+     */
+    @NonNull
+    R finish();
+}
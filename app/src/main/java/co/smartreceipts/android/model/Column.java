@@ -56,4 +56,14 @@ public interface Column<T> extends Syncable {
      */
     @NonNull
     String getFooter(@NonNull List<T> rows);
+
+    /**
+     * Begins accumulating the footer value for this particular column, which allows report generators to compute
+     * the footer in the same pass that processes each row (instead of retaining all rows for {@link #getFooter(List)}).
+     * Finishing this accumulator for a series of rows must produce the same value as {@link #getFooter(List)}
+     *
+     * @return a new {@link Accumulator}, which will generate the footer for all accepted rows
+     */
+    @NonNull
+    Accumulator<T, String> beginFooter();
 }
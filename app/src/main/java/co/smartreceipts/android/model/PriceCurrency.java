@@ -86,7 +86,10 @@ public final class PriceCurrency {
                     numberFormat.setGroupingUsed(false);
                     numberFormatCache.put(decimalPrecision, numberFormat);
                 }
-                return numberFormat.format(price.doubleValue());
+                // NumberFormat is not thread safe, so we cannot share this instance across concurrent callers
+                synchronized (numberFormat) {
+                    return numberFormat.format(price.doubleValue());
+                }
             } else {
                 return mCurrencyCode + ModelUtils.getDecimalFormattedValue(price);
             }
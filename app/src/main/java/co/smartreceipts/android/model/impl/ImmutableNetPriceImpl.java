@@ -37,34 +37,26 @@ public final class ImmutableNetPriceImpl extends AbstractPriceImpl {
     private final boolean mAreAllExchangeRatesValid;
 
     public ImmutableNetPriceImpl(@NonNull PriceCurrency baseCurrency, @NonNull List<Price> prices) {
-        mCurrency = baseCurrency;
+        this(accumulate(baseCurrency, prices), prices);
+    }
+
+    ImmutableNetPriceImpl(@NonNull NetPriceAccumulator accumulator, @NonNull List<Price> prices) {
+        mCurrency = accumulator.getBaseCurrency();
         mPrices = Collections.unmodifiableList(prices);
-        mCurrencyToPriceMap = new HashMap<>();
-        BigDecimal possiblyIncorrectTotalPrice = new BigDecimal(0);
-        BigDecimal totalPrice = new BigDecimal(0);
-        boolean areAllExchangeRatesValid = true;
+        mCurrencyToPriceMap = new HashMap<>(accumulator.getCurrencyToPriceMap());
+        mTotalPrice = accumulator.getTotalPrice().setScale(ROUNDING_PRECISION, RoundingMode.HALF_UP);
+        mPossiblyIncorrectTotalPrice = accumulator.getPossiblyIncorrectTotalPrice().setScale(ROUNDING_PRECISION, RoundingMode.HALF_UP);
+        mAreAllExchangeRatesValid = accumulator.areAllExchangeRatesValid();
+        mExchangeRate = new ExchangeRateBuilderFactory().setBaseCurrency(mCurrency).build();
+    }
+
+    @NonNull
+    private static NetPriceAccumulator accumulate(@NonNull PriceCurrency baseCurrency, @NonNull List<Price> prices) {
+        final NetPriceAccumulator accumulator = new NetPriceAccumulator(baseCurrency);
         for (final Price price : prices) {
-            final BigDecimal priceToAdd;
-            final PriceCurrency currencyForPriceToAdd;
-            if (price.getExchangeRate().supportsExchangeRateFor(baseCurrency)) {
-                priceToAdd = price.getPrice().multiply(price.getExchangeRate().getExchangeRate(baseCurrency));
-                totalPrice = totalPrice.add(priceToAdd);
-                currencyForPriceToAdd = baseCurrency;
-
-            } else {
-                // If not, let's just hope for the best with whatever we have to add
-                priceToAdd = price.getPrice();
-                currencyForPriceToAdd = price.getCurrency();
-                areAllExchangeRatesValid = false;
-            }
-            possiblyIncorrectTotalPrice = possiblyIncorrectTotalPrice.add(priceToAdd);
-            final BigDecimal priceForCurrency = mCurrencyToPriceMap.containsKey(currencyForPriceToAdd) ? mCurrencyToPriceMap.get(currencyForPriceToAdd).add(priceToAdd) : priceToAdd;
-            mCurrencyToPriceMap.put(currencyForPriceToAdd, priceForCurrency);
+            accumulator.accept(price);
         }
-        mTotalPrice = totalPrice.setScale(ROUNDING_PRECISION, RoundingMode.HALF_UP);
-        mPossiblyIncorrectTotalPrice = possiblyIncorrectTotalPrice.setScale(ROUNDING_PRECISION, RoundingMode.HALF_UP);
-        mAreAllExchangeRatesValid = areAllExchangeRatesValid;
-        mExchangeRate = new ExchangeRateBuilderFactory().setBaseCurrency(baseCurrency).build();
+        return accumulator;
     }
 
     private ImmutableNetPriceImpl(@NonNull Parcel in) {
@@ -156,6 +148,15 @@ public final class ImmutableNetPriceImpl extends AbstractPriceImpl {
         return mExchangeRate;
     }
 
+    /**
+     * @return an unmodifiable {@link Map} of each {@link PriceCurrency} to the total in that currency. Any prices
+     * that could be exchanged are included in the total for the base currency
+     */
+    @NonNull
+    public Map<PriceCurrency, BigDecimal> getCurrencyToPriceMap() {
+        return Collections.unmodifiableMap(mCurrencyToPriceMap);
+    }
+
     public boolean areAllExchangeRatesValid() {
         // TODO: Figure out how to expose this better
         return mAreAllExchangeRatesValid;
@@ -0,0 +1,115 @@
+package co.smartreceipts.android.model.impl;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.smartreceipts.android.model.Accumulator;
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.factory.ExchangeRateBuilderFactory;
+
+/**
+ * Incrementally computes the per-currency totals of a series of {@link Price} objects. Prices that can be exchanged
+ * into the base currency are totalled together, while all others are totalled in their own currency. This allows us
+ * to build an {@link ImmutableNetPriceImpl} without retaining each individual price.
+ */
+public final class NetPriceAccumulator implements Accumulator<Price, Price> {
+
+    private final PriceCurrency mBaseCurrency;
+    private final Map<PriceCurrency, BigDecimal> mCurrencyToPriceMap = new HashMap<>();
+    private BigDecimal mTotalPrice = new BigDecimal(0);
+    private BigDecimal mPossiblyIncorrectTotalPrice = new BigDecimal(0);
+    private boolean mAreAllExchangeRatesValid = true;
+
+    public NetPriceAccumulator(@NonNull PriceCurrency baseCurrency) {
+        mBaseCurrency = Preconditions.checkNotNull(baseCurrency);
+    }
+
+    @Override
+    public void accept(@NonNull Price price) {
+        final BigDecimal priceToAdd;
+        final PriceCurrency currencyForPriceToAdd;
+        if (price.getExchangeRate().supportsExchangeRateFor(mBaseCurrency)) {
+            priceToAdd = price.getPrice().multiply(price.getExchangeRate().getExchangeRate(mBaseCurrency));
+            mTotalPrice = mTotalPrice.add(priceToAdd);
+            currencyForPriceToAdd = mBaseCurrency;
+        } else {
+            // If not, let's just hope for the best with whatever we have to add
+            priceToAdd = price.getPrice();
+            currencyForPriceToAdd = price.getCurrency();
+            mAreAllExchangeRatesValid = false;
+        }
+        mPossiblyIncorrectTotalPrice = mPossiblyIncorrectTotalPrice.add(priceToAdd);
+        addToCurrency(currencyForPriceToAdd, priceToAdd);
+    }
+
+    @Override
+    public void merge(@NonNull Accumulator<Price, Price> other) {
+        if (!(other instanceof NetPriceAccumulator)) {
+            throw new IllegalArgumentException("Cannot merge " + other + " into a net price");
+        }
+        final NetPriceAccumulator otherNetPrice = (NetPriceAccumulator) other;
+        if (!mBaseCurrency.equals(otherNetPrice.mBaseCurrency)) {
+            throw new IllegalArgumentException("Cannot merge net prices with different base currencies: " + mBaseCurrency + ", " + otherNetPrice.mBaseCurrency);
+        }
+        mTotalPrice = mTotalPrice.add(otherNetPrice.mTotalPrice);
+        mPossiblyIncorrectTotalPrice = mPossiblyIncorrectTotalPrice.add(otherNetPrice.mPossiblyIncorrectTotalPrice);
+        mAreAllExchangeRatesValid &= otherNetPrice.mAreAllExchangeRatesValid;
+        for (final Map.Entry<PriceCurrency, BigDecimal> entry : otherNetPrice.mCurrencyToPriceMap.entrySet()) {
+            addToCurrency(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The resulting price retains a single price per currency (instead of every accepted price), which is sufficient
+     * to re-create these totals when it is parcelled
+     * </p>
+     */
+    @NonNull
+    @Override
+    public ImmutableNetPriceImpl finish() {
+        final List<Price> currencyPrices = new ArrayList<>(mCurrencyToPriceMap.size());
+        for (final Map.Entry<PriceCurrency, BigDecimal> entry : mCurrencyToPriceMap.entrySet()) {
+            currencyPrices.add(new ImmutablePriceImpl(entry.getValue(), entry.getKey(), new ExchangeRateBuilderFactory().setBaseCurrency(entry.getKey()).build()));
+        }
+        return new ImmutableNetPriceImpl(this, currencyPrices);
+    }
+
+    @NonNull
+    public PriceCurrency getBaseCurrency() {
+        return mBaseCurrency;
+    }
+
+    @NonNull
+    BigDecimal getTotalPrice() {
+        return mTotalPrice;
+    }
+
+    @NonNull
+    BigDecimal getPossiblyIncorrectTotalPrice() {
+        return mPossiblyIncorrectTotalPrice;
+    }
+
+    @NonNull
+    Map<PriceCurrency, BigDecimal> getCurrencyToPriceMap() {
+        return mCurrencyToPriceMap;
+    }
+
+    boolean areAllExchangeRatesValid() {
+        return mAreAllExchangeRatesValid;
+    }
+
+    private void addToCurrency(@NonNull PriceCurrency currency, @NonNull BigDecimal price) {
+        final BigDecimal currentPrice = mCurrencyToPriceMap.get(currency);
+        mCurrencyToPriceMap.put(currency, currentPrice != null ? currentPrice.add(price) : price);
+    }
+}
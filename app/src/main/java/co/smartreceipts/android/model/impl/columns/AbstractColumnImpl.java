@@ -4,6 +4,7 @@ import android.support.annotation.NonNull;
 
 import java.util.List;
 
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Column;
 import co.smartreceipts.android.sync.model.SyncState;
 
@@ -39,10 +40,26 @@ public abstract class AbstractColumnImpl<T> implements Column<T>, Comparable<Abs
         return getName();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sub-classes should override {@link #beginFooter()} instead, since this is computed from it
+     * </p>
+     */
     @Override
     @NonNull
-    public String getFooter(@NonNull List<T> rows) {
-        return "";
+    public final String getFooter(@NonNull List<T> rows) {
+        final Accumulator<T, String> accumulator = beginFooter();
+        for (final T row : rows) {
+            accumulator.accept(row);
+        }
+        return accumulator.finish();
+    }
+
+    @Override
+    @NonNull
+    public Accumulator<T, String> beginFooter() {
+        return new ConstantFooterAccumulator<>("");
     }
 
     @Override
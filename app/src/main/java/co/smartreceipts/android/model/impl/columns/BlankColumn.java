@@ -2,8 +2,7 @@ package co.smartreceipts.android.model.impl.columns;
 
 import android.support.annotation.NonNull;
 
-import java.util.List;
-
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.sync.model.SyncState;
 
 /**
@@ -22,7 +21,7 @@ public final class BlankColumn<T> extends AbstractColumnImpl<T> {
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<T> rows) {
-        return "";
+    public Accumulator<T, String> beginFooter() {
+        return new ConstantFooterAccumulator<>("");
     }
 }
@@ -2,8 +2,7 @@ package co.smartreceipts.android.model.impl.columns;
 
 import android.support.annotation.NonNull;
 
-import java.util.List;
-
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.sync.model.SyncState;
 
 /**
@@ -22,8 +21,8 @@ public final class ConstantColumn<T> extends AbstractColumnImpl<T> {
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<T> rows) {
-        return getName();
+    public Accumulator<T, String> beginFooter() {
+        return new ConstantFooterAccumulator<>(getName());
     }
 }
 
@@ -0,0 +1,37 @@
+package co.smartreceipts.android.model.impl.columns;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import co.smartreceipts.android.model.Accumulator;
+
+/**
+ * An {@link Accumulator} for column footers that are independent of the rows in the report (eg a "Total" label)
+ */
+public final class ConstantFooterAccumulator<T> implements Accumulator<T, String> {
+
+    private final String footer;
+
+    public ConstantFooterAccumulator(@NonNull String footer) {
+        this.footer = Preconditions.checkNotNull(footer);
+    }
+
+    @Override
+    public void accept(@NonNull T value) {
+        // Intentional no-op
+    }
+
+    @Override
+    public void merge(@NonNull Accumulator<T, String> other) {
+        if (!(other instanceof ConstantFooterAccumulator)) {
+            throw new IllegalArgumentException("Cannot merge " + other + " into a constant footer");
+        }
+    }
+
+    @NonNull
+    @Override
+    public String finish() {
+        return footer;
+    }
+}
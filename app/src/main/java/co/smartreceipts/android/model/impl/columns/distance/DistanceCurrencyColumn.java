@@ -2,9 +2,11 @@ package co.smartreceipts.android.model.impl.columns.distance;
 
 import android.support.annotation.NonNull;
 
-import java.util.List;
+import java.util.Collections;
 
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.PriceCurrency;
 import co.smartreceipts.android.model.factory.PriceBuilderFactory;
 import co.smartreceipts.android.model.impl.columns.AbstractColumnImpl;
 import co.smartreceipts.android.sync.model.SyncState;
@@ -22,7 +24,49 @@ public final class DistanceCurrencyColumn extends AbstractColumnImpl<Distance> {
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<Distance> distances) {
-        return new PriceBuilderFactory().setPriceables(distances, null).build().getCurrencyCode();
+    public Accumulator<Distance, String> beginFooter() {
+        return new CurrencyFooterAccumulator();
+    }
+
+    /**
+     * Mirrors the currency logic of the legacy net price (ie we show a single currency or mixed if there are many)
+     */
+    private static final class CurrencyFooterAccumulator implements Accumulator<Distance, String> {
+
+        private PriceCurrency currency;
+
+        @Override
+        public void accept(@NonNull Distance value) {
+            add(value.getPrice().getCurrency());
+        }
+
+        @Override
+        public void merge(@NonNull Accumulator<Distance, String> other) {
+            if (!(other instanceof CurrencyFooterAccumulator)) {
+                throw new IllegalArgumentException("Cannot merge " + other + " into a currency footer");
+            }
+            final PriceCurrency otherCurrency = ((CurrencyFooterAccumulator) other).currency;
+            if (otherCurrency != null) {
+                add(otherCurrency);
+            }
+        }
+
+        @NonNull
+        @Override
+        public String finish() {
+            if (currency != null) {
+                return currency.getCurrencyCode();
+            } else {
+                return new PriceBuilderFactory().setPriceables(Collections.<Distance>emptyList(), null).build().getCurrencyCode();
+            }
+        }
+
+        private void add(@NonNull PriceCurrency priceCurrency) {
+            if (currency == null) {
+                currency = priceCurrency;
+            } else if (!currency.equals(priceCurrency)) {
+                currency = PriceCurrency.MIXED_CURRENCY;
+            }
+        }
     }
 }
@@ -3,8 +3,8 @@ package co.smartreceipts.android.model.impl.columns.distance;
 import android.support.annotation.NonNull;
 
 import java.math.BigDecimal;
-import java.util.List;
 
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Distance;
 import co.smartreceipts.android.model.impl.columns.AbstractColumnImpl;
 import co.smartreceipts.android.model.utils.ModelUtils;
@@ -23,11 +23,31 @@ public final class DistanceDistanceColumn extends AbstractColumnImpl<Distance> {
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<Distance> distances) {
-        BigDecimal distance = new BigDecimal(0);
-        for (int i = 0; i < distances.size(); i++) {
-            distance = distance.add(distances.get(i).getDistance());
+    public Accumulator<Distance, String> beginFooter() {
+        return new DistanceFooterAccumulator();
+    }
+
+    private static final class DistanceFooterAccumulator implements Accumulator<Distance, String> {
+
+        private BigDecimal distance = new BigDecimal(0);
+
+        @Override
+        public void accept(@NonNull Distance value) {
+            distance = distance.add(value.getDistance());
+        }
+
+        @Override
+        public void merge(@NonNull Accumulator<Distance, String> other) {
+            if (!(other instanceof DistanceFooterAccumulator)) {
+                throw new IllegalArgumentException("Cannot merge " + other + " into a distance footer");
+            }
+            distance = distance.add(((DistanceFooterAccumulator) other).distance);
+        }
+
+        @NonNull
+        @Override
+        public String finish() {
+            return ModelUtils.getDecimalFormattedValue(distance);
         }
-        return ModelUtils.getDecimalFormattedValue(distance);
     }
 }
@@ -3,11 +3,11 @@ package co.smartreceipts.android.model.impl.columns.distance;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import java.util.List;
-
 import co.smartreceipts.android.R;
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Distance;
 import co.smartreceipts.android.model.impl.columns.AbstractColumnImpl;
+import co.smartreceipts.android.model.impl.columns.ConstantFooterAccumulator;
 import co.smartreceipts.android.sync.model.SyncState;
 
 public final class DistanceLocationColumn extends AbstractColumnImpl<Distance> {
@@ -26,7 +26,7 @@ public final class DistanceLocationColumn extends AbstractColumnImpl<Distance> {
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<Distance> distances) {
-        return mContext.getString(R.string.total);
+    public Accumulator<Distance, String> beginFooter() {
+        return new ConstantFooterAccumulator<>(mContext.getString(R.string.total));
     }
 }
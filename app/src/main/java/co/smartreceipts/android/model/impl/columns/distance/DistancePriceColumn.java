@@ -2,11 +2,13 @@ package co.smartreceipts.android.model.impl.columns.distance;
 
 import android.support.annotation.NonNull;
 
-import java.util.List;
+import java.util.Collections;
 
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Distance;
-import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.Price;
 import co.smartreceipts.android.model.factory.PriceBuilderFactory;
+import co.smartreceipts.android.model.impl.NetPriceAccumulator;
 import co.smartreceipts.android.model.impl.columns.AbstractColumnImpl;
 import co.smartreceipts.android.sync.model.SyncState;
 
@@ -30,12 +32,50 @@ public final class DistancePriceColumn extends AbstractColumnImpl<Distance> {
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<Distance> distances) {
-        final PriceCurrency tripCurrency = !distances.isEmpty() ? distances.get(0).getTrip().getTripCurrency() : null;
-        if (mAllowSpecialCharacters) {
-            return new PriceBuilderFactory().setPriceables(distances, tripCurrency).build().getCurrencyFormattedPrice();
-        } else {
-            return new PriceBuilderFactory().setPriceables(distances, tripCurrency).build().getCurrencyCodeFormattedPrice();
+    public Accumulator<Distance, String> beginFooter() {
+        return new PriceFooterAccumulator();
+    }
+
+    private final class PriceFooterAccumulator implements Accumulator<Distance, String> {
+
+        private NetPriceAccumulator netPriceAccumulator;
+
+        @Override
+        public void accept(@NonNull Distance value) {
+            if (netPriceAccumulator == null) {
+                netPriceAccumulator = new NetPriceAccumulator(value.getTrip().getTripCurrency());
+            }
+            netPriceAccumulator.accept(value.getPrice());
+        }
+
+        @Override
+        public void merge(@NonNull Accumulator<Distance, String> other) {
+            if (!(other instanceof PriceFooterAccumulator)) {
+                throw new IllegalArgumentException("Cannot merge " + other + " into a price footer");
+            }
+            final NetPriceAccumulator otherNetPriceAccumulator = ((PriceFooterAccumulator) other).netPriceAccumulator;
+            if (otherNetPriceAccumulator != null) {
+                if (netPriceAccumulator == null) {
+                    netPriceAccumulator = new NetPriceAccumulator(otherNetPriceAccumulator.getBaseCurrency());
+                }
+                netPriceAccumulator.merge(otherNetPriceAccumulator);
+            }
+        }
+
+        @NonNull
+        @Override
+        public String finish() {
+            final Price netPrice;
+            if (netPriceAccumulator != null) {
+                netPrice = netPriceAccumulator.finish();
+            } else {
+                netPrice = new PriceBuilderFactory().setPriceables(Collections.<Distance>emptyList(), null).build();
+            }
+            if (mAllowSpecialCharacters) {
+                return netPrice.getCurrencyFormattedPrice();
+            } else {
+                return netPrice.getCurrencyCodeFormattedPrice();
+            }
         }
     }
 }
@@ -3,16 +3,14 @@ package co.smartreceipts.android.model.impl.columns.receipts;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import co.smartreceipts.android.R;
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Price;
 import co.smartreceipts.android.model.PriceCurrency;
 import co.smartreceipts.android.model.Receipt;
-import co.smartreceipts.android.model.factory.PriceBuilderFactory;
 import co.smartreceipts.android.model.gson.ExchangeRate;
 import co.smartreceipts.android.model.impl.ImmutableNetPriceImpl;
+import co.smartreceipts.android.model.impl.NetPriceAccumulator;
 import co.smartreceipts.android.model.impl.columns.AbstractColumnImpl;
 import co.smartreceipts.android.model.utils.ModelUtils;
 import co.smartreceipts.android.sync.model.SyncState;
@@ -43,31 +41,54 @@ public abstract class AbstractExchangedPriceColumn extends AbstractColumnImpl<Re
 
     @Override
     @NonNull
-    public String getFooter(@NonNull List<Receipt> rows) {
-        if (!rows.isEmpty()) {
-            final PriceBuilderFactory factory = new PriceBuilderFactory();
-            final List<Price> prices = new ArrayList<>(rows.size());
-            for (final Receipt receipt : rows) {
-                factory.setCurrency(receipt.getTrip().getTripCurrency());
-                prices.add(getPrice(receipt));
+    public Accumulator<Receipt, String> beginFooter() {
+        return new ExchangedPriceFooterAccumulator();
+    }
+
+    @NonNull
+    protected abstract Price getPrice(@NonNull Receipt receipt);
+
+    /**
+     * Totals the exchanged price of each receipt in the currency of the first receipt's trip
+     */
+    private final class ExchangedPriceFooterAccumulator implements Accumulator<Receipt, String> {
+
+        private NetPriceAccumulator netPriceAccumulator;
+
+        @Override
+        public void accept(@NonNull Receipt receipt) {
+            if (netPriceAccumulator == null) {
+                netPriceAccumulator = new NetPriceAccumulator(receipt.getTrip().getTripCurrency());
+            }
+            netPriceAccumulator.accept(getPrice(receipt));
+        }
+
+        @Override
+        public void merge(@NonNull Accumulator<Receipt, String> other) {
+            if (!(other instanceof ExchangedPriceFooterAccumulator)) {
+                throw new IllegalArgumentException("Cannot merge " + other + " into an exchanged price footer");
             }
-            factory.setPrices(prices, rows.get(0).getTrip().getTripCurrency());
-            final Price netPrice = factory.build();
-            if (netPrice instanceof ImmutableNetPriceImpl) {
-                // TODO: This should be slightly less hacky
-                if (((ImmutableNetPriceImpl) netPrice).areAllExchangeRatesValid()) {
-                    return netPrice.getDecimalFormattedPrice();
-                } else {
-                    return netPrice.getCurrencyCodeFormattedPrice();
+            final NetPriceAccumulator otherNetPriceAccumulator = ((ExchangedPriceFooterAccumulator) other).netPriceAccumulator;
+            if (otherNetPriceAccumulator != null) {
+                if (netPriceAccumulator == null) {
+                    netPriceAccumulator = new NetPriceAccumulator(otherNetPriceAccumulator.getBaseCurrency());
                 }
-            } else {
+                netPriceAccumulator.merge(otherNetPriceAccumulator);
+            }
+        }
+
+        @NonNull
+        @Override
+        public String finish() {
+            if (netPriceAccumulator == null) {
+                return "";
+            }
+            final ImmutableNetPriceImpl netPrice = netPriceAccumulator.finish();
+            if (netPrice.areAllExchangeRatesValid()) {
                 return netPrice.getDecimalFormattedPrice();
+            } else {
+                return netPrice.getCurrencyCodeFormattedPrice();
             }
-        } else {
-            return "";
         }
     }
-
-    @NonNull
-    protected abstract Price getPrice(@NonNull Receipt receipt);
 }
@@ -8,10 +8,7 @@ import android.text.TextUtils;
 
 import java.math.BigDecimal;
 import java.sql.Date;
-import java.text.DecimalFormat;
-import java.util.Map;
 import java.util.TimeZone;
-import java.util.concurrent.ConcurrentHashMap;
 
 import co.smartreceipts.android.date.DateUtils;
 import co.smartreceipts.android.model.Price;
@@ -23,8 +20,6 @@ import co.smartreceipts.android.model.PriceCurrency;
  */
 public class ModelUtils {
 
-    private static final Map<Integer, DecimalFormat> sDecimalFormatCache = new ConcurrentHashMap<>();
-
     private ModelUtils() {
         throw new RuntimeException("This class uses static calls only. It cannot be instantiated");
     }
@@ -83,16 +78,7 @@ public class ModelUtils {
      */
     @NonNull
     public static String getDecimalFormattedValue(@NonNull BigDecimal decimal, int precision) {
-        // Note: I'm not concerned if we have a few duplicate entries (ie this isn't fully thread safe) as the objects are all equal
-        DecimalFormat decimalFormat = sDecimalFormatCache.get(precision);
-        if (decimalFormat == null) {
-            decimalFormat = new DecimalFormat();
-            decimalFormat.setMaximumFractionDigits(precision);
-            decimalFormat.setMinimumFractionDigits(precision);
-            decimalFormat.setGroupingUsed(false);
-            sDecimalFormatCache.put(precision, decimalFormat);
-        }
-        return decimalFormat.format(decimal);
+        return PriceFormatter.format(decimal, precision);
     }
 
     /**
@@ -150,7 +136,7 @@ public class ModelUtils {
         if (currency != null) {
             stringBuilder.append(currency.getCurrencyCode());
         }
-        stringBuilder.append(getDecimalFormattedValue(decimal, decimalPrecision));
+        PriceFormatter.append(stringBuilder, decimal, decimalPrecision);
         return stringBuilder.toString();
     }
 
@@ -184,6 +170,6 @@ public class ModelUtils {
 
     @VisibleForTesting
     public static void clearStaticCachesForTesting() {
-        sDecimalFormatCache.clear();
+        PriceFormatter.clearStaticCachesForTesting();
     }
 }
@@ -0,0 +1,185 @@
+package co.smartreceipts.android.model.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.Locale;
+
+/**
+ * Formats prices in the "decimal-formatted" style (eg "25.20" or "25,20") of the current default {@link Locale}.
+ * <p>
+ * Since {@link DecimalFormat} is not thread safe, each thread maintains its own set of formatters. For the common case
+ * (ie a price that fits in a {@code long} once scaled and a locale that uses ASCII digits), we bypass the
+ * {@link DecimalFormat} entirely and write the digits straight into a {@link StringBuilder}. This produces identical
+ * results to {@link DecimalFormat#format(Object)} with {@link RoundingMode#HALF_EVEN} rounding, but avoids the
+ * intermediate objects that it allocates on every call.
+ * </p>
+ */
+public final class PriceFormatter {
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private static final ThreadLocal<PriceFormatter> sThreadLocalFormatter = new ThreadLocal<PriceFormatter>() {
+        @Override
+        protected PriceFormatter initialValue() {
+            return new PriceFormatter();
+        }
+    };
+
+    private static volatile int sGeneration = 0;
+
+    private final StringBuilder mStringBuilder = new StringBuilder(32);
+    private final char[] mDigitBuffer = new char[20];
+    private DecimalFormat[] mDecimalFormats = new DecimalFormat[0];
+    private Locale mLocale;
+    private int mGeneration = -1;
+    private boolean mIsFastPathSupported;
+    private char mDecimalSeparator;
+    private String mNegativePrefix;
+    private String mNegativeSuffix;
+
+    private PriceFormatter() {
+    }
+
+    /**
+     * Generates "decimal-formatted" value, which would appear to the end user as "25.20" or "25,20" instead of
+     * showing naively as "25.2" or "25.2001910". The number of decimal digits is based on the set precision
+     *
+     * @param decimal   - the {@link BigDecimal} to format
+     * @param precision - the number of digits precision to use
+     * @return the decimal formatted price {@link String}
+     */
+    @NonNull
+    public static String format(@NonNull BigDecimal decimal, int precision) {
+        final PriceFormatter formatter = sThreadLocalFormatter.get();
+        final StringBuilder stringBuilder = formatter.mStringBuilder;
+        stringBuilder.setLength(0);
+        formatter.appendTo(stringBuilder, decimal, precision);
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Appends the "decimal-formatted" value of a price to an existing {@link StringBuilder}, which allows callers that
+     * are building a larger string (eg a CSV row) to skip the intermediate {@link String} entirely
+     *
+     * @param stringBuilder - the {@link StringBuilder} to append to
+     * @param decimal       - the {@link BigDecimal} to format
+     * @param precision     - the number of digits precision to use
+     * @return the same {@link StringBuilder} instance for chaining
+     */
+    @NonNull
+    public static StringBuilder append(@NonNull StringBuilder stringBuilder, @NonNull BigDecimal decimal, int precision) {
+        sThreadLocalFormatter.get().appendTo(stringBuilder, decimal, precision);
+        return stringBuilder;
+    }
+
+    /**
+     * Forces each thread to re-create its formatters on next use (eg after the default {@link Locale} was changed)
+     */
+    @VisibleForTesting
+    public static void clearStaticCachesForTesting() {
+        sGeneration++;
+    }
+
+    private void appendTo(@NonNull StringBuilder stringBuilder, @NonNull BigDecimal decimal, int precision) {
+        refreshIfNeeded();
+        if (!mIsFastPathSupported || precision < 0 || precision >= POWERS_OF_TEN.length || !appendFast(stringBuilder, decimal, precision)) {
+            stringBuilder.append(getDecimalFormat(precision).format(decimal));
+        }
+    }
+
+    private boolean appendFast(@NonNull StringBuilder stringBuilder, @NonNull BigDecimal decimal, int precision) {
+        final BigDecimal scaledDecimal = decimal.scale() == precision ? decimal : decimal.setScale(precision, RoundingMode.HALF_EVEN);
+        final BigInteger unscaledValue = scaledDecimal.unscaledValue();
+        if (unscaledValue.bitLength() >= 63) {
+            return false;
+        }
+        final long value = unscaledValue.longValue();
+        if (value == 0 && decimal.signum() < 0) {
+            // DecimalFormat keeps the sign of negative values that round to zero (ie "-0.00"), so let it handle these
+            return false;
+        }
+
+        final long absoluteValue = Math.abs(value);
+        if (value < 0) {
+            stringBuilder.append(mNegativePrefix);
+        }
+        appendDigits(stringBuilder, absoluteValue / POWERS_OF_TEN[precision], 1);
+        if (precision > 0) {
+            stringBuilder.append(mDecimalSeparator);
+            appendDigits(stringBuilder, absoluteValue % POWERS_OF_TEN[precision], precision);
+        }
+        if (value < 0) {
+            stringBuilder.append(mNegativeSuffix);
+        }
+        return true;
+    }
+
+    private void appendDigits(@NonNull StringBuilder stringBuilder, long value, int minimumDigits) {
+        int index = mDigitBuffer.length;
+        do {
+            mDigitBuffer[--index] = (char) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        while (mDigitBuffer.length - index < minimumDigits) {
+            mDigitBuffer[--index] = '0';
+        }
+        stringBuilder.append(mDigitBuffer, index, mDigitBuffer.length - index);
+    }
+
+    @NonNull
+    private DecimalFormat getDecimalFormat(int precision) {
+        if (precision < 0) {
+            return newDecimalFormat(precision);
+        }
+        if (precision >= mDecimalFormats.length) {
+            final DecimalFormat[] decimalFormats = new DecimalFormat[precision + 1];
+            System.arraycopy(mDecimalFormats, 0, decimalFormats, 0, mDecimalFormats.length);
+            mDecimalFormats = decimalFormats;
+        }
+        DecimalFormat decimalFormat = mDecimalFormats[precision];
+        if (decimalFormat == null) {
+            decimalFormat = newDecimalFormat(precision);
+            mDecimalFormats[precision] = decimalFormat;
+        }
+        return decimalFormat;
+    }
+
+    private void refreshIfNeeded() {
+        final Locale locale = Locale.getDefault();
+        final int generation = sGeneration;
+        if (generation == mGeneration && locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mGeneration = generation;
+        mDecimalFormats = new DecimalFormat[0];
+
+        final DecimalFormat decimalFormat = newDecimalFormat(0);
+        mDecimalSeparator = decimalFormat.getDecimalFormatSymbols().getDecimalSeparator();
+        mNegativePrefix = decimalFormat.getNegativePrefix();
+        mNegativeSuffix = decimalFormat.getNegativeSuffix();
+        mIsFastPathSupported = decimalFormat.getDecimalFormatSymbols().getZeroDigit() == '0'
+                && decimalFormat.getPositivePrefix().isEmpty()
+                && decimalFormat.getPositiveSuffix().isEmpty();
+    }
+
+    @NonNull
+    private static DecimalFormat newDecimalFormat(int precision) {
+        final DecimalFormat decimalFormat = new DecimalFormat();
+        decimalFormat.setMaximumFractionDigits(precision);
+        decimalFormat.setMinimumFractionDigits(precision);
+        decimalFormat.setGroupingUsed(false);
+        return decimalFormat;
+    }
+}
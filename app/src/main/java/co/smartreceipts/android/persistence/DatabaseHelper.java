@@ -3,31 +3,38 @@ package co.smartreceipts.android.persistence;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 import co.smartreceipts.android.BuildConfig;
-import co.smartreceipts.android.date.DateUtils;
-import co.smartreceipts.android.model.Distance;
-import co.smartreceipts.android.model.Priceable;
-import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Category;
 import co.smartreceipts.android.model.Trip;
-import co.smartreceipts.android.model.factory.PriceBuilderFactory;
+import co.smartreceipts.android.model.factory.CategoryBuilderFactory;
 import co.smartreceipts.android.model.impl.columns.receipts.ReceiptColumnDefinitions;
 import co.smartreceipts.android.model.utils.CurrencyUtils;
+import co.smartreceipts.android.persistence.database.aggregation.TripPriceAggregator;
 import co.smartreceipts.android.persistence.database.defaults.TableDefaultsCustomizer;
 import co.smartreceipts.android.persistence.database.defaults.WhiteLabelFriendlyTableDefaultsCustomizer;
+import co.smartreceipts.android.persistence.database.files.ReceiptFileIndex;
+import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
+import co.smartreceipts.android.persistence.database.search.SearchIndex;
+import co.smartreceipts.android.persistence.database.search.SearchResults;
 import co.smartreceipts.android.persistence.database.tables.AbstractSqlTable;
 import co.smartreceipts.android.persistence.database.tables.CSVTable;
 import co.smartreceipts.android.persistence.database.tables.CategoriesTable;
@@ -41,7 +48,12 @@ import co.smartreceipts.android.settings.UserPreferenceManager;
 import co.smartreceipts.android.settings.catalog.UserPreference;
 import co.smartreceipts.android.utils.log.Logger;
 import co.smartreceipts.android.utils.sorting.AlphabeticalCaseInsensitiveCharSequenceComparator;
+import io.reactivex.Observable;
 import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 import wb.android.autocomplete.AutoCompleteAdapter;
 import wb.android.storage.StorageManager;
 
@@ -49,7 +61,11 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
 
     // Database Info
     public static final String DATABASE_NAME = "receipts.db";
-    public static final int DATABASE_VERSION = 15;
+    public static final int DATABASE_VERSION = 17;
+
+    // The maximum number of rows that we'll write in a single transaction during a merge
+    @VisibleForTesting
+    static final int MERGE_BATCH_SIZE = 500;
 
     @Deprecated
     public static final String NO_DATA = "null"; // TODO: Just set to null
@@ -80,6 +96,7 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
 
     // Locks
     private final Object mDatabaseLock = new Object();
+    private final Object mMergeLock = new Object();
 
     // Tables
     private final List<Table> mTables;
@@ -91,8 +108,16 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
     private final PDFTable mPDFTable;
     private final PaymentMethodsTable mPaymentMethodsTable;
 
+    // Aggregations
+    private final TripPriceAggregator mTripPriceAggregator;
+
+    // Search
+    private final SearchIndex mSearchIndex;
+    private final ReceiptFileIndex mReceiptFileIndex;
+
     // Misc Vars
     private boolean mIsDBOpen = false;
+    private final Subject<MergeProgress> mMergeProgressSubject = PublishSubject.<MergeProgress>create().toSerialized();
 
     public interface ReceiptAutoCompleteListener {
 
@@ -126,6 +151,9 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         mTables.add(mPDFTable);
         mTables.add(mPaymentMethodsTable);
         mTables.add(mReceiptsTable);
+        mTripPriceAggregator = new TripPriceAggregator(this, preferences);
+        mSearchIndex = new SearchIndex();
+        mReceiptFileIndex = new ReceiptFileIndex(this);
 
         this.getReadableDatabase(); // Called here, so onCreate gets called on the UI thread
     }
@@ -162,6 +190,8 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         for (final Table table : mTables) {
             table.onCreate(db, mCustomizations);
         }
+        mSearchIndex.onCreate(db);
+        mReceiptFileIndex.onCreate(db);
 
         for (final Table table : mTables) {
             table.onPostCreateUpgrade();
@@ -176,6 +206,8 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         for (final Table table : mTables) {
             table.onUpgrade(db, oldVersion, newVersion, mCustomizations);
         }
+        mSearchIndex.onUpgrade(db, oldVersion, newVersion);
+        mReceiptFileIndex.onUpgrade(db, oldVersion, newVersion);
 
         for (final Table table : mTables) {
             table.onPostCreateUpgrade();
@@ -218,68 +250,22 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
     // //////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * This class is not synchronized! Sync outside of it
-     *
-     * @param trip
-     * @return
-     */
-    public void getTripPriceAndDailyPrice(final Trip trip) {
-        queryTripPrice(trip);
-        queryTripDailyPrice(trip);
-    }
-
-    /**
-     * Queries the trips price and updates this object. This class is not synchronized! Sync outside of it
+     * Queries the trip's price and daily sub-total and updates this object. This class is not synchronized! Sync outside of it
      *
      * @param trip the trip, which will be updated
      */
-    private void queryTripPrice(final Trip trip) {
-        final boolean onlyUseReimbursable = mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
-        final List<Receipt> receipts = mReceiptsTable.getBlocking(trip, true);
-        final List<Priceable> prices = new ArrayList<>(receipts.size());
-        for (final Receipt receipt : receipts) {
-            if (!onlyUseReimbursable || receipt.isReimbursable()) {
-                prices.add(receipt);
-            }
-        }
-
-        if (mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
-            final List<Distance> distances = mDistanceTable.getBlocking(trip, true);
-            for (final Distance distance : distances) {
-                prices.add(distance);
-            }
-        }
-
-        trip.setPrice(new PriceBuilderFactory().setPriceables(prices, trip.getTripCurrency()).build());
+    public void getTripPriceAndDailyPrice(final Trip trip) {
+        mTripPriceAggregator.aggregateBlocking(trip);
     }
 
     /**
-     * Queries the trips daily total price and updates this object. This class is not synchronized! Sync outside of it
+     * Queries the price and daily sub-total of each of these trips via a single aggregation query and updates these
+     * objects. This class is not synchronized! Sync outside of it
      *
-     * @param trip the trip, which will be updated
+     * @param trips the trips, which will be updated
      */
-    private void queryTripDailyPrice(final Trip trip) {
-        final boolean onlyUseReimbursable = mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
-        final List<Receipt> receipts = mReceiptsTable.getBlocking(trip, true);
-        final List<Priceable> prices = new ArrayList<>(receipts.size());
-        for (final Receipt receipt : receipts) {
-            if (!onlyUseReimbursable || receipt.isReimbursable()) {
-                if (DateUtils.isToday(receipt.getDate())) {
-                    prices.add(receipt);
-                }
-            }
-        }
-
-        if (mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
-            final List<Distance> distances = mDistanceTable.getBlocking(trip, true);
-            for (final Distance distance : distances) {
-                if (DateUtils.isToday(distance.getDate())) {
-                    prices.add(distance);
-                }
-            }
-        }
-
-        trip.setDailySubTotal(new PriceBuilderFactory().setPriceables(prices, trip.getTripCurrency()).build());
+    public void getTripPricesAndDailyPrices(@NonNull List<Trip> trips) {
+        mTripPriceAggregator.aggregateBlocking(trips);
     }
 
     public Single<Integer> getNextReceiptAutoIncremenetIdHelper() {
@@ -341,6 +327,16 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         return mMostRecentlyUsedCurrencyList;
     }
 
+    /**
+     * Shrinks our in-memory table caches in response to a memory pressure callback from the system
+     *
+     * @param level the trim level, as defined by {@link android.content.ComponentCallbacks2}
+     */
+    public void onTrimMemory(int level) {
+        mReceiptsTable.onTrimMemory(level);
+        mDistanceTable.onTrimMemory(level);
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////////////////////
     // Tables Methods
     // //////////////////////////////////////////////////////////////////////////////////////////////////
@@ -379,6 +375,11 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         return mPaymentMethodsTable;
     }
 
+    @NonNull
+    public final ReceiptFileIndex getReceiptFileIndex() {
+        return mReceiptFileIndex;
+    }
+
     @NonNull
     public final List<Table> getTables() {
         return mTables;
@@ -387,10 +388,33 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
     // //////////////////////////////////////////////////////////////////////////////////////////////////
     // Merge
     // //////////////////////////////////////////////////////////////////////////////////////////////////
-    public final synchronized boolean merge(String dbPath, String packageName, boolean overwrite) {
-        synchronized (mDatabaseLock) {
+    /**
+     * @return an {@link Observable} that emits the progress of any ongoing {@link #merge(String, String, boolean)} after
+     * each batch of rows has been committed. Please note that this is emitted on the merging thread
+     */
+    @NonNull
+    public Observable<MergeProgress> getMergeProgress() {
+        return mMergeProgressSubject;
+    }
+
+    /**
+     * Merges the contents of another database into this one. Rather than holding our database lock for the entire
+     * import, each table is streamed from the import database and written in transactions of {@link #MERGE_BATCH_SIZE}
+     * rows, so other readers and writers can interleave with a long-running merge. Existing receipts and distances are
+     * de-duplicated against an in-memory index of their natural keys, which is built once up front.
+     * <p>
+     * This performs blocking I/O and should be called from a worker thread
+     * </p>
+     *
+     * @param dbPath the path of the database to import
+     * @param packageName the package name of this app (for backwards compatibility with older file paths)
+     * @param overwrite {@code true} if we should overwrite existing items or {@code false} to ignore them
+     * @return {@code true} if the merge succeeded. {@code false} otherwise
+     */
+    public final boolean merge(String dbPath, String packageName, boolean overwrite) {
+        synchronized (mMergeLock) {
             SQLiteDatabase importDB = null, currDB = null;
-            Cursor c = null, countCursor = null;
+            Cursor c = null;
             try {
                 if (dbPath == null) {
                     Logger.debug(this, "Null database file");
@@ -398,12 +422,13 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                 }
                 currDB = this.getWritableDatabase();
                 importDB = SQLiteDatabase.openDatabase(dbPath, null, SQLiteDatabase.OPEN_READWRITE);
+                final MergeProgressTracker mergeProgress = new MergeProgressTracker(importDB, mMergeProgressSubject);
+
                 // Merge Trips
                 try {
-                    Logger.debug(this, "Merging Trips");
                     Logger.debug(this, "Merging Trips");
                     c = importDB.query(TripsTable.TABLE_NAME, null, null, null, null, null, TripsTable.COLUMN_TO + " DESC");
-                    if (c != null && c.moveToFirst()) {
+                    if (c != null) {
                         final int nameIndex = c.getColumnIndex(TripsTable.COLUMN_NAME);
                         final int fromIndex = c.getColumnIndex(TripsTable.COLUMN_FROM);
                         final int fromTimeZoneIndex = c.getColumnIndex(TripsTable.COLUMN_FROM_TIMEZONE);
@@ -414,8 +439,9 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                         final int costCenterIndex = c.getColumnIndex(TripsTable.COLUMN_COST_CENTER);
                         final int processingStatusIndex = c.getColumnIndex(TripsTable.COLUMN_PROCESSING_STATUS);
                         final int defaultCurrencyIndex = c.getColumnIndex(TripsTable.COLUMN_DEFAULT_CURRENCY);
-                        do {
-                            String name = getString(c, nameIndex, "");
+                        final SQLiteDatabase db = currDB;
+                        mergeInBatches(db, c, null, mergeProgress, cursor -> {
+                            String name = getString(cursor, nameIndex, "");
                             if (name.contains("wb.receipts")) { // Backwards compatibility stuff
                                 if (packageName.equalsIgnoreCase("wb.receipts")) {
                                     name = name.replace("wb.receiptspro/", "wb.receipts/");
@@ -425,13 +451,13 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                                 File f = new File(name);
                                 name = f.getName();
                             }
-                            final long from = getLong(c, fromIndex, 0L);
-                            final long to = getLong(c, toIndex, 0L);
-                            final String comment = getString(c, commentIndex, "");
-                            final String filters = getString(c, filtersIndex, "");
-                            final String costCenter = getString(c, costCenterIndex, "");
-                            final String processingStatus = getString(c, processingStatusIndex, "");
-                            final String defaultCurrency = getString(c, defaultCurrencyIndex, mPreferences.get(UserPreference.General.DefaultCurrency));
+                            final long from = getLong(cursor, fromIndex, 0L);
+                            final long to = getLong(cursor, toIndex, 0L);
+                            final String comment = getString(cursor, commentIndex, "");
+                            final String filters = getString(cursor, filtersIndex, "");
+                            final String costCenter = getString(cursor, costCenterIndex, "");
+                            final String processingStatus = getString(cursor, processingStatusIndex, "");
+                            final String defaultCurrency = getString(cursor, defaultCurrencyIndex, mPreferences.get(UserPreference.General.DefaultCurrency));
                             ContentValues values = new ContentValues(10);
                             values.put(TripsTable.COLUMN_NAME, name);
                             values.put(TripsTable.COLUMN_FROM, from);
@@ -443,20 +469,19 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                             values.put(TripsTable.COLUMN_DEFAULT_CURRENCY, defaultCurrency);
                             values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
                             if (fromTimeZoneIndex > 0) {
-                                final String fromTimeZome = c.getString(fromTimeZoneIndex);
+                                final String fromTimeZome = cursor.getString(fromTimeZoneIndex);
                                 values.put(TripsTable.COLUMN_FROM_TIMEZONE, fromTimeZome);
                             }
                             if (toTimeZoneIndex > 0) {
-                                final String toTimeZome = c.getString(toTimeZoneIndex);
+                                final String toTimeZome = cursor.getString(toTimeZoneIndex);
                                 values.put(TripsTable.COLUMN_TO_TIMEZONE, toTimeZome);
                             }
                             if (overwrite) {
-                                currDB.insertWithOnConflict(TripsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                                db.insertWithOnConflict(TripsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
                             } else {
-                                currDB.insertWithOnConflict(TripsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                                db.insertWithOnConflict(TripsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
                             }
-                        }
-                        while (c.moveToNext());
+                        });
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a1]", e); // Occurs if Table does not exist
@@ -469,11 +494,11 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
 
                 // Merge Receipts
                 Logger.debug(this, "Merging Receipts");
-                Logger.debug(this, "Merging Receipts");
                 try {
-                    final String queryCount = "SELECT COUNT(*), " + ReceiptsTable.COLUMN_ID + " FROM " + ReceiptsTable.TABLE_NAME + " WHERE " + ReceiptsTable.COLUMN_PATH + "=? AND " + ReceiptsTable.COLUMN_NAME + "=? AND " + ReceiptsTable.COLUMN_DATE + "=?";
+                    final Map<List<String>, Integer> existingReceiptIds = getMergeKeyIndex(currDB, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID,
+                            ReceiptsTable.COLUMN_PATH, ReceiptsTable.COLUMN_NAME, ReceiptsTable.COLUMN_DATE);
                     c = importDB.query(ReceiptsTable.TABLE_NAME, null, null, null, null, null, null);
-                    if (c != null && c.moveToFirst()) {
+                    if (c != null) {
                         final int pathIndex = c.getColumnIndex(ReceiptsTable.COLUMN_PATH);
                         final int nameIndex = c.getColumnIndex(ReceiptsTable.COLUMN_NAME);
                         final int parentIndex = c.getColumnIndex(ReceiptsTable.COLUMN_PARENT);
@@ -492,8 +517,9 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                         final int paymentMethodIndex = c.getColumnIndex(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID);
                         final int processingStatusIndex = c.getColumnIndex(ReceiptsTable.COLUMN_PROCESSING_STATUS);
                         final int exchangeRateIndex = c.getColumnIndex(ReceiptsTable.COLUMN_EXCHANGE_RATE);
-                        do {
-                            final String oldPath = getString(c, pathIndex, "");
+                        final SQLiteDatabase db = currDB;
+                        mergeInBatches(db, c, null, mergeProgress, cursor -> {
+                            final String oldPath = getString(cursor, pathIndex, "");
                             String newPath = oldPath != null ? oldPath : "";
                             if (newPath.contains("wb.receipts")) { // Backwards compatibility stuff
                                 if (packageName.equalsIgnoreCase("wb.receipts")) {
@@ -504,8 +530,8 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                                 File f = new File(newPath);
                                 newPath = f.getName();
                             }
-                            final String name = getString(c, nameIndex, "");
-                            final String oldParent = getString(c, parentIndex, "");
+                            final String name = getString(cursor, nameIndex, "");
+                            final String oldParent = getString(cursor, parentIndex, "");
                             String newParent = oldParent != null ? oldParent : "";
                             if (newParent.contains("wb.receipts")) { // Backwards compatibility stuff
                                 if (packageName.equalsIgnoreCase("wb.receipts")) {
@@ -516,67 +542,45 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                                 File f = new File(newParent);
                                 newParent = f.getName();
                             }
-                            final String category = getString(c, categoryIndex, "");
-                            final BigDecimal price = getDecimal(c, priceIndex);
-                            final long date = getLong(c, dateIndex, 0L);
-                            final String comment = getString(c, commentIndex, "");
-                            final boolean reimbursable = getBoolean(c, reimbursableIndex, true);
-                            final String currency = getString(c, currencyIndex, mPreferences.get(UserPreference.General.DefaultCurrency));
-                            final boolean fullpage = getBoolean(c, fullpageIndex, false);
-                            final String extra_edittext_1 = getString(c, extra_edittext_1_Index, null);
-                            final String extra_edittext_2 = getString(c, extra_edittext_2_Index, null);
-                            final String extra_edittext_3 = getString(c, extra_edittext_3_Index, null);
-                            final BigDecimal tax = getDecimal(c, taxIndex);
-                            final int paymentMethod = getInt(c, paymentMethodIndex, 0);
-                            final String processingStatus = getString(c, processingStatusIndex, "");
-                            final BigDecimal exchangeRate = getDecimal(c, exchangeRateIndex);
-                            try {
-                                countCursor = currDB.rawQuery(queryCount, new String[]{newPath, name, Long.toString(date)});
-                                if (countCursor != null && countCursor.moveToFirst()) {
-                                    int count = countCursor.getInt(0);
-                                    int updateID = countCursor.getInt(1);
-                                    final ContentValues values = new ContentValues(14);
-                                    values.put(ReceiptsTable.COLUMN_PATH, newPath);
-                                    values.put(ReceiptsTable.COLUMN_NAME, name);
-                                    values.put(ReceiptsTable.COLUMN_PARENT, newParent);
-                                    values.put(ReceiptsTable.COLUMN_CATEGORY, category);
-                                    values.put(ReceiptsTable.COLUMN_PRICE, price.doubleValue());
-                                    values.put(ReceiptsTable.COLUMN_DATE, date);
-                                    values.put(ReceiptsTable.COLUMN_COMMENT, comment);
-                                    values.put(ReceiptsTable.COLUMN_REIMBURSABLE, reimbursable);
-                                    values.put(ReceiptsTable.COLUMN_ISO4217, currency);
-                                    values.put(ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE, fullpage);
-                                    values.put(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1, extra_edittext_1);
-                                    values.put(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2, extra_edittext_2);
-                                    values.put(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3, extra_edittext_3);
-                                    values.put(ReceiptsTable.COLUMN_TAX, tax.doubleValue());
-                                    values.put(ReceiptsTable.COLUMN_PROCESSING_STATUS, processingStatus);
-                                    values.put(ReceiptsTable.COLUMN_EXCHANGE_RATE, exchangeRate.doubleValue());
-                                    values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
-                                    if (timeZoneIndex > 0) {
-                                        final String timeZone = c.getString(timeZoneIndex);
-                                        values.put(ReceiptsTable.COLUMN_TIMEZONE, timeZone);
-                                    }
-                                    values.put(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID, paymentMethod);
-                                    if (count > 0 && overwrite) { // Update
-                                        currDB.update(ReceiptsTable.TABLE_NAME, values, ReceiptsTable.COLUMN_ID + " = ?", new String[]{Integer.toString(updateID)});
-                                    } else { // insert
-                                        if (overwrite) {
-                                            currDB.insertWithOnConflict(ReceiptsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-                                        } else if (count == 0) {
-                                            // If we're not overwriting anything, let's check that there are no entries here
-                                            currDB.insertWithOnConflict(ReceiptsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
-                                        }
-                                    }
-                                }
-                            } finally {
-                                if (countCursor != null && !countCursor.isClosed()) {
-                                    countCursor.close();
-                                    countCursor = null;
-                                }
+                            final String category = getString(cursor, categoryIndex, "");
+                            final BigDecimal price = getDecimal(cursor, priceIndex);
+                            final long date = getLong(cursor, dateIndex, 0L);
+                            final String comment = getString(cursor, commentIndex, "");
+                            final boolean reimbursable = getBoolean(cursor, reimbursableIndex, true);
+                            final String currency = getString(cursor, currencyIndex, mPreferences.get(UserPreference.General.DefaultCurrency));
+                            final boolean fullpage = getBoolean(cursor, fullpageIndex, false);
+                            final String extra_edittext_1 = getString(cursor, extra_edittext_1_Index, null);
+                            final String extra_edittext_2 = getString(cursor, extra_edittext_2_Index, null);
+                            final String extra_edittext_3 = getString(cursor, extra_edittext_3_Index, null);
+                            final BigDecimal tax = getDecimal(cursor, taxIndex);
+                            final int paymentMethod = getInt(cursor, paymentMethodIndex, 0);
+                            final String processingStatus = getString(cursor, processingStatusIndex, "");
+                            final BigDecimal exchangeRate = getDecimal(cursor, exchangeRateIndex);
+                            final ContentValues values = new ContentValues(14);
+                            values.put(ReceiptsTable.COLUMN_PATH, newPath);
+                            values.put(ReceiptsTable.COLUMN_NAME, name);
+                            values.put(ReceiptsTable.COLUMN_PARENT, newParent);
+                            values.put(ReceiptsTable.COLUMN_CATEGORY, category);
+                            values.put(ReceiptsTable.COLUMN_PRICE, price.doubleValue());
+                            values.put(ReceiptsTable.COLUMN_DATE, date);
+                            values.put(ReceiptsTable.COLUMN_COMMENT, comment);
+                            values.put(ReceiptsTable.COLUMN_REIMBURSABLE, reimbursable);
+                            values.put(ReceiptsTable.COLUMN_ISO4217, currency);
+                            values.put(ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE, fullpage);
+                            values.put(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1, extra_edittext_1);
+                            values.put(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2, extra_edittext_2);
+                            values.put(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3, extra_edittext_3);
+                            values.put(ReceiptsTable.COLUMN_TAX, tax.doubleValue());
+                            values.put(ReceiptsTable.COLUMN_PROCESSING_STATUS, processingStatus);
+                            values.put(ReceiptsTable.COLUMN_EXCHANGE_RATE, exchangeRate.doubleValue());
+                            values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
+                            if (timeZoneIndex > 0) {
+                                final String timeZone = cursor.getString(timeZoneIndex);
+                                values.put(ReceiptsTable.COLUMN_TIMEZONE, timeZone);
                             }
-                        }
-                        while (c.moveToNext());
+                            values.put(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID, paymentMethod);
+                            mergeRow(db, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID, values, existingReceiptIds, getMergeKey(newPath, name, date), overwrite);
+                        });
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a2]", e); // Occurs if Table does not exist
@@ -593,23 +597,22 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                 Logger.debug(this, "Merging Categories");
                 try {
                     c = importDB.query(CategoriesTable.TABLE_NAME, null, null, null, null, null, null);
-                    if (c != null && c.moveToFirst()) {
-                        currDB.delete(CategoriesTable.TABLE_NAME, null, null); // DELETE FROM Categories
+                    if (c != null && c.getCount() > 0) {
                         final int nameIndex = c.getColumnIndex(CategoriesTable.COLUMN_NAME);
                         final int codeIndex = c.getColumnIndex(CategoriesTable.COLUMN_CODE);
-                        final int breakdownIndex = c.getColumnIndex(CategoriesTable.COLUMN_BREAKDOWN);
-                        do {
-                            final String name = getString(c, nameIndex, "");
-                            final String code = getString(c, codeIndex, "");
-                            final boolean breakdown = getBoolean(c, breakdownIndex, true);
-                            ContentValues values = new ContentValues(3);
-                            values.put(CategoriesTable.COLUMN_NAME, name);
-                            values.put(CategoriesTable.COLUMN_CODE, code);
-                            values.put(CategoriesTable.COLUMN_BREAKDOWN, breakdown);
-                            values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
-                            currDB.insert(CategoriesTable.TABLE_NAME, null, values);
+                        final List<Category> importedCategories = new ArrayList<>(c.getCount());
+                        while (c.moveToNext()) {
+                            importedCategories.add(new CategoryBuilderFactory().setName(getString(c, nameIndex, "")).setCode(getString(c, codeIndex, "")).build());
                         }
-                        while (c.moveToNext());
+
+                        // Categories are never marked for deletion, so we can replace all of them via our table (and its cache)
+                        final CategoriesTable categoriesTable = getCategoriesTable();
+                        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+                        categoriesTable.runInTransactionBlocking(() -> {
+                            categoriesTable.deleteAllBlocking(new ArrayList<>(categoriesTable.getBlocking()), databaseOperationMetadata);
+                            return categoriesTable.insertAllBlocking(importedCategories, databaseOperationMetadata);
+                        });
+                        mergeProgress.onRowsMerged(importedCategories.size());
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a3]", e); // Occurs if Table does not exist
@@ -626,20 +629,19 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                 Logger.debug(this, "Merging CSV");
                 try {
                     c = importDB.query(CSVTable.TABLE_NAME, null, null, null, null, null, null);
-                    if (c != null && c.moveToFirst()) {
-                        currDB.delete(CSVTable.TABLE_NAME, null, null); // DELETE * FROM CSVTable
+                    if (c != null) {
                         final int idxIndex = c.getColumnIndex(CSVTable.COLUMN_ID);
                         final int typeIndex = c.getColumnIndex(CSVTable.COLUMN_TYPE);
-                        do {
-                            final int index = getInt(c, idxIndex, 0);
-                            final String type = getString(c, typeIndex, "");
+                        final SQLiteDatabase db = currDB;
+                        mergeInBatches(db, c, CSVTable.TABLE_NAME, mergeProgress, cursor -> {
+                            final int index = getInt(cursor, idxIndex, 0);
+                            final String type = getString(cursor, typeIndex, "");
                             ContentValues values = new ContentValues(2);
                             values.put(CSVTable.COLUMN_ID, index);
                             values.put(CSVTable.COLUMN_TYPE, type);
                             values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
-                            currDB.insert(CSVTable.TABLE_NAME, null, values);
-                        }
-                        while (c.moveToNext());
+                            db.insert(CSVTable.TABLE_NAME, null, values);
+                        });
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a4]", e); // Occurs if Table does not exist
@@ -656,20 +658,19 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                 Logger.debug(this, "Merging PDF");
                 try {
                     c = importDB.query(PDFTable.TABLE_NAME, null, null, null, null, null, null);
-                    if (c != null && c.moveToFirst()) {
-                        currDB.delete(PDFTable.TABLE_NAME, null, null); // DELETE * FROM PDFTable
+                    if (c != null) {
                         final int idxIndex = c.getColumnIndex(PDFTable.COLUMN_ID);
                         final int typeIndex = c.getColumnIndex(PDFTable.COLUMN_TYPE);
-                        do {
-                            final int index = getInt(c, idxIndex, 0);
-                            final String type = getString(c, typeIndex, "");
+                        final SQLiteDatabase db = currDB;
+                        mergeInBatches(db, c, PDFTable.TABLE_NAME, mergeProgress, cursor -> {
+                            final int index = getInt(cursor, idxIndex, 0);
+                            final String type = getString(cursor, typeIndex, "");
                             ContentValues values = new ContentValues(2);
                             values.put(PDFTable.COLUMN_ID, index);
                             values.put(PDFTable.COLUMN_TYPE, type);
                             values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
-                            currDB.insert(PDFTable.TABLE_NAME, null, values);
-                        }
-                        while (c.moveToNext());
+                            db.insert(PDFTable.TABLE_NAME, null, values);
+                        });
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a5]", e); // Occurs if Table does not exist
@@ -686,20 +687,19 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                 Logger.debug(this, "Merging Payment Methods");
                 try {
                     c = importDB.query(PaymentMethodsTable.TABLE_NAME, null, null, null, null, null, null);
-                    if (c != null && c.moveToFirst()) {
-                        currDB.delete(PaymentMethodsTable.TABLE_NAME, null, null); // DELETE * FROM PaymentMethodsTable
+                    if (c != null) {
                         final int idxIndex = c.getColumnIndex(PaymentMethodsTable.COLUMN_ID);
                         final int typeIndex = c.getColumnIndex(PaymentMethodsTable.COLUMN_METHOD);
-                        do {
-                            final int index = getInt(c, idxIndex, 0);
-                            final String type = getString(c, typeIndex, "");
+                        final SQLiteDatabase db = currDB;
+                        mergeInBatches(db, c, PaymentMethodsTable.TABLE_NAME, mergeProgress, cursor -> {
+                            final int index = getInt(cursor, idxIndex, 0);
+                            final String type = getString(cursor, typeIndex, "");
                             ContentValues values = new ContentValues(2);
                             values.put(PaymentMethodsTable.COLUMN_ID, index);
                             values.put(PaymentMethodsTable.COLUMN_METHOD, type);
                             values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
-                            currDB.insert(PaymentMethodsTable.TABLE_NAME, null, values);
-                        }
-                        while (c.moveToNext());
+                            db.insert(PaymentMethodsTable.TABLE_NAME, null, values);
+                        });
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a6]", e); // Occurs if Table does not exist
@@ -712,9 +712,10 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
 
                 Logger.debug(this, "Merging Distance");
                 try {
+                    final Map<List<String>, Integer> existingDistanceIds = getMergeKeyIndex(currDB, DistanceTable.TABLE_NAME, DistanceTable.COLUMN_ID,
+                            DistanceTable.COLUMN_PARENT, DistanceTable.COLUMN_LOCATION, DistanceTable.COLUMN_DATE);
                     c = importDB.query(DistanceTable.TABLE_NAME, null, null, null, null, null, null);
-                    if (c != null && c.moveToFirst()) {
-                        final String distanceCountQuery = "SELECT COUNT(*), " + DistanceTable.COLUMN_ID + " FROM " + DistanceTable.TABLE_NAME + " WHERE " + DistanceTable.COLUMN_PARENT + "=? AND " + DistanceTable.COLUMN_LOCATION + "=? AND " + DistanceTable.COLUMN_DATE + "=?";
+                    if (c != null) {
                         final int parentTripIndex = c.getColumnIndex(DistanceTable.COLUMN_PARENT);
                         final int locationIndex = c.getColumnIndex(DistanceTable.COLUMN_LOCATION);
                         final int distanceIndex = c.getColumnIndex(DistanceTable.COLUMN_DISTANCE);
@@ -723,16 +724,17 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                         final int dateIndex = c.getColumnIndex(DistanceTable.COLUMN_DATE);
                         final int timezoneIndex = c.getColumnIndex(DistanceTable.COLUMN_TIMEZONE);
                         final int commentIndex = c.getColumnIndex(DistanceTable.COLUMN_COMMENT);
-                        do {
+                        final SQLiteDatabase db = currDB;
+                        mergeInBatches(db, c, null, mergeProgress, cursor -> {
                             final ContentValues values = new ContentValues(8);
-                            final String parentTripPath = getString(c, parentTripIndex, "");
-                            final String location = getString(c, locationIndex, "");
-                            final BigDecimal distance = getDecimal(c, distanceIndex);
-                            final BigDecimal rate = getDecimal(c, rateIndex);
-                            final String currency = getString(c, currencyIndex, mPreferences.get(UserPreference.General.DefaultCurrency));
-                            final long date = getLong(c, dateIndex, 0L);
-                            final String timezone = getString(c, timezoneIndex, TimeZone.getDefault().getID());
-                            final String comment = getString(c, commentIndex, "");
+                            final String parentTripPath = getString(cursor, parentTripIndex, "");
+                            final String location = getString(cursor, locationIndex, "");
+                            final BigDecimal distance = getDecimal(cursor, distanceIndex);
+                            final BigDecimal rate = getDecimal(cursor, rateIndex);
+                            final String currency = getString(cursor, currencyIndex, mPreferences.get(UserPreference.General.DefaultCurrency));
+                            final long date = getLong(cursor, dateIndex, 0L);
+                            final String timezone = getString(cursor, timezoneIndex, TimeZone.getDefault().getID());
+                            final String comment = getString(cursor, commentIndex, "");
                             values.put(DistanceTable.COLUMN_PARENT, parentTripPath);
                             values.put(DistanceTable.COLUMN_LOCATION, location);
                             values.put(DistanceTable.COLUMN_DISTANCE, distance.doubleValue());
@@ -742,30 +744,8 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                             values.put(DistanceTable.COLUMN_TIMEZONE, timezone);
                             values.put(DistanceTable.COLUMN_COMMENT, comment);
                             values.put(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME, System.currentTimeMillis());
-                            try {
-                                countCursor = currDB.rawQuery(distanceCountQuery, new String[]{parentTripPath, location, Long.toString(date)});
-                                if (countCursor != null && countCursor.moveToFirst()) {
-                                    int count = countCursor.getInt(0);
-                                    int updateID = countCursor.getInt(1);
-                                    if (count > 0 && overwrite) { // Update
-                                        currDB.update(DistanceTable.TABLE_NAME, values, DistanceTable.COLUMN_ID + " = ?", new String[]{Integer.toString(updateID)});
-                                    } else { // insert
-                                        if (overwrite) {
-                                            currDB.insertWithOnConflict(DistanceTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-                                        } else if (count == 0) {
-                                            // If we're not overwriting anything, let's check that there are no entries here
-                                            currDB.insertWithOnConflict(DistanceTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_IGNORE);
-                                        }
-                                    }
-                                }
-                            } finally {
-                                if (countCursor != null && !countCursor.isClosed()) {
-                                    countCursor.close();
-                                    countCursor = null;
-                                }
-                            }
-                        }
-                        while (c.moveToNext());
+                            mergeRow(db, DistanceTable.TABLE_NAME, DistanceTable.COLUMN_ID, values, existingDistanceIds, getMergeKey(parentTripPath, location, date), overwrite);
+                        });
                     }
                 } catch (SQLiteException e) {
                     Logger.error(this, "Caught sql exception during import at [a6]", e); // Occurs if Table does not exist
@@ -785,9 +765,6 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
                 if (c != null && !c.isClosed()) {
                     c.close();
                 }
-                if (countCursor != null && !countCursor.isClosed()) {
-                    countCursor.close();
-                }
                 if (importDB != null) {
                     importDB.close();
                 }
@@ -795,6 +772,185 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         }
     }
 
+    /**
+     * Streams the rows of an import cursor into our database. Rows are written in transactions of up to
+     * {@link #MERGE_BATCH_SIZE}, and we only hold our database lock for the duration of a single batch
+     *
+     * @param db the {@link SQLiteDatabase} to write to
+     * @param cursor the import {@link Cursor}, which should be positioned before the first row
+     * @param replaceAllInTable if non-null, all existing rows in this table will be removed within the first batch
+     * @param mergeProgress the {@link MergeProgressTracker} to update after each batch
+     * @param rowMerger writes the row at the current cursor position
+     */
+    private void mergeInBatches(@NonNull SQLiteDatabase db, @NonNull Cursor cursor, @Nullable String replaceAllInTable,
+                                @NonNull MergeProgressTracker mergeProgress, @NonNull RowMerger rowMerger) {
+        if (!cursor.moveToFirst()) {
+            return;
+        }
+        boolean isFirstBatch = true;
+        while (!cursor.isAfterLast()) {
+            int rowsInBatch = 0;
+            synchronized (mDatabaseLock) {
+                db.beginTransaction();
+                try {
+                    if (isFirstBatch && replaceAllInTable != null) {
+                        db.delete(replaceAllInTable, null, null);
+                    }
+                    do {
+                        rowMerger.merge(cursor);
+                        rowsInBatch++;
+                    }
+                    while (cursor.moveToNext() && rowsInBatch < MERGE_BATCH_SIZE);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            isFirstBatch = false;
+            mergeProgress.onRowsMerged(rowsInBatch);
+        }
+    }
+
+    /**
+     * Inserts a row that may duplicate an existing one (as defined by its merge key). If it does, the existing row
+     * will be updated if we're overwriting or ignored otherwise
+     */
+    private void mergeRow(@NonNull SQLiteDatabase db, @NonNull String tableName, @NonNull String idColumn, @NonNull ContentValues values,
+                          @NonNull Map<List<String>, Integer> existingIds, @NonNull List<String> mergeKey, boolean overwrite) {
+        final Integer existingId = existingIds.get(mergeKey);
+        if (existingId != null) {
+            if (overwrite) {
+                db.update(tableName, values, idColumn + " = ?", new String[]{Integer.toString(existingId)});
+            }
+        } else {
+            final long rowId = db.insertWithOnConflict(tableName, null, values, overwrite ? SQLiteDatabase.CONFLICT_REPLACE : SQLiteDatabase.CONFLICT_IGNORE);
+            if (rowId != -1) {
+                // Track this, so we de-duplicate any later rows in the import that share this key
+                existingIds.put(mergeKey, (int) rowId);
+            }
+        }
+    }
+
+    /**
+     * Builds an index of the ids of all existing rows in a table, keyed on the natural key columns that we use to
+     * determine if an imported row is a duplicate. If multiple rows share a key, the first one is retained
+     */
+    @NonNull
+    private Map<List<String>, Integer> getMergeKeyIndex(@NonNull SQLiteDatabase db, @NonNull String tableName, @NonNull String idColumn,
+                                                        @NonNull String... keyColumns) {
+        final String[] projection = new String[keyColumns.length + 1];
+        projection[0] = idColumn;
+        System.arraycopy(keyColumns, 0, projection, 1, keyColumns.length);
+
+        final Map<List<String>, Integer> index = new HashMap<>();
+        synchronized (mDatabaseLock) {
+            Cursor cursor = null;
+            try {
+                cursor = db.query(tableName, projection, null, null, null, null, null);
+                if (cursor != null && cursor.moveToFirst()) {
+                    do {
+                        final String[] key = new String[keyColumns.length];
+                        for (int i = 0; i < keyColumns.length; i++) {
+                            key[i] = cursor.getString(i + 1);
+                        }
+                        final List<String> mergeKey = Arrays.asList(key);
+                        if (!index.containsKey(mergeKey)) {
+                            index.put(mergeKey, cursor.getInt(0));
+                        }
+                    }
+                    while (cursor.moveToNext());
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        Logger.debug(this, "Indexed {} existing rows in {} for merging", index.size(), tableName);
+        return index;
+    }
+
+    @NonNull
+    private static List<String> getMergeKey(@Nullable String first, @Nullable String second, long date) {
+        return Arrays.asList(first, second, Long.toString(date));
+    }
+
+    /**
+     * Writes the row at the current position of an import {@link Cursor}
+     */
+    private interface RowMerger {
+
+        void merge(@NonNull Cursor cursor);
+    }
+
+    /**
+     * The number of rows in an import database that we have merged so far
+     */
+    public static final class MergeProgress {
+
+        private final int mergedRows;
+        private final int totalRows;
+
+        public MergeProgress(int mergedRows, int totalRows) {
+            this.mergedRows = mergedRows;
+            this.totalRows = totalRows;
+        }
+
+        /**
+         * @return the number of rows that have been merged
+         */
+        public int getMergedRows() {
+            return mergedRows;
+        }
+
+        /**
+         * @return the total number of rows in the import database
+         */
+        public int getTotalRows() {
+            return totalRows;
+        }
+
+        @Override
+        public String toString() {
+            return "MergeProgress{" +
+                    "mergedRows=" + mergedRows +
+                    ", totalRows=" + totalRows +
+                    '}';
+        }
+    }
+
+    /**
+     * Tracks how many of the rows in an import database we have merged so far
+     */
+    private static final class MergeProgressTracker {
+
+        private static final String[] MERGED_TABLES = new String[]{TripsTable.TABLE_NAME, ReceiptsTable.TABLE_NAME, CategoriesTable.TABLE_NAME,
+                CSVTable.TABLE_NAME, PDFTable.TABLE_NAME, PaymentMethodsTable.TABLE_NAME, DistanceTable.TABLE_NAME};
+
+        private final Subject<MergeProgress> mergeProgressSubject;
+        private final int totalRows;
+        private int mergedRows = 0;
+
+        MergeProgressTracker(@NonNull SQLiteDatabase importDB, @NonNull Subject<MergeProgress> mergeProgressSubject) {
+            this.mergeProgressSubject = mergeProgressSubject;
+            int totalRows = 0;
+            for (final String table : MERGED_TABLES) {
+                try {
+                    totalRows += DatabaseUtils.queryNumEntries(importDB, table);
+                } catch (SQLiteException e) {
+                    // Occurs if Table does not exist
+                }
+            }
+            this.totalRows = totalRows;
+        }
+
+        void onRowsMerged(int rows) {
+            mergedRows += rows;
+            Logger.debug(this, "Merged {} of {} rows", mergedRows, totalRows);
+            mergeProgressSubject.onNext(new MergeProgress(mergedRows, totalRows));
+        }
+    }
+
     private boolean getBoolean(Cursor cursor, int index, boolean defaultValue) {
         if (index >= 0) {
             return (cursor.getInt(index) > 0);
@@ -872,6 +1028,42 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
         }
     }
 
+    // //////////////////////////////////////////////////////////////////////////////////////////////////
+    // Search Methods
+    // //////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Performs a full-text prefix search across our trips (name and cost center), receipts (name and comment), and
+     * distances (location). Each word in this text must match the start of a word in one of these fields
+     *
+     * @param text the search text
+     * @return a {@link Single} that will emit the {@link SearchResults}
+     */
+    @NonNull
+    public Single<SearchResults> search(@NonNull final CharSequence text) {
+        return Single.fromCallable(() -> {
+                    synchronized (mDatabaseLock) {
+                        final SQLiteDatabase db = getReadableDatabase();
+                        return new SearchKeys(mSearchIndex.searchTripNames(db, text), mSearchIndex.searchReceiptIds(db, text), mSearchIndex.searchDistanceIds(db, text));
+                    }
+                })
+                .flatMap(searchKeys -> Single.zip(mTripsTable.findByPrimaryKeys(searchKeys.tripNames), mReceiptsTable.findByPrimaryKeys(searchKeys.receiptIds),
+                        mDistanceTable.findByPrimaryKeys(searchKeys.distanceIds), SearchResults::new));
+    }
+
+    private static final class SearchKeys {
+
+        private final List<String> tripNames;
+        private final List<Integer> receiptIds;
+        private final List<Integer> distanceIds;
+
+        SearchKeys(@NonNull List<String> tripNames, @NonNull List<Integer> receiptIds, @NonNull List<Integer> distanceIds) {
+            this.tripNames = tripNames;
+            this.receiptIds = receiptIds;
+            this.distanceIds = distanceIds;
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////////////////////
     // AutoCompleteTextView Methods
     // //////////////////////////////////////////////////////////////////////////////////////////////////
@@ -886,69 +1078,103 @@ public class DatabaseHelper extends SQLiteOpenHelper implements AutoCompleteAdap
 
     @Override
     public Cursor getAutoCompleteCursor(CharSequence text, CharSequence tag) {
-        // TODO: Fix SQL vulnerabilities
         final SQLiteDatabase db = this.getReadableDatabase();
-        String sqlQuery = "";
+        final String table, column;
         if (tag == TAG_RECEIPTS_NAME) {
-            sqlQuery = " SELECT DISTINCT TRIM(" + ReceiptsTable.COLUMN_NAME + ") AS _id " + " FROM " + ReceiptsTable.TABLE_NAME + " WHERE " + ReceiptsTable.COLUMN_NAME + " LIKE '%" + text + "%' " + " ORDER BY " + ReceiptsTable.COLUMN_NAME;
+            table = ReceiptsTable.TABLE_NAME;
+            column = ReceiptsTable.COLUMN_NAME;
         } else if (tag == TAG_RECEIPTS_COMMENT) {
-            sqlQuery = " SELECT DISTINCT TRIM(" + ReceiptsTable.COLUMN_COMMENT + ") AS _id " + " FROM " + ReceiptsTable.TABLE_NAME + " WHERE " + ReceiptsTable.COLUMN_COMMENT + " LIKE '%" + text + "%' " + " ORDER BY " + ReceiptsTable.COLUMN_COMMENT;
+            table = ReceiptsTable.TABLE_NAME;
+            column = ReceiptsTable.COLUMN_COMMENT;
         } else if (tag == TAG_TRIPS_NAME) {
-            sqlQuery = " SELECT DISTINCT TRIM(" + TripsTable.COLUMN_NAME + ") AS _id " + " FROM " + TripsTable.TABLE_NAME + " WHERE " + TripsTable.COLUMN_NAME + " LIKE '%" + text + "%' " + " ORDER BY " + TripsTable.COLUMN_NAME;
+            table = TripsTable.TABLE_NAME;
+            column = TripsTable.COLUMN_NAME;
         } else if (tag == TAG_TRIPS_COST_CENTER) {
-            sqlQuery = " SELECT DISTINCT TRIM(" + TripsTable.COLUMN_COST_CENTER + ") AS _id " + " FROM " + TripsTable.TABLE_NAME + " WHERE " + TripsTable.COLUMN_COST_CENTER + " LIKE '%" + text + "%' " + " ORDER BY " + TripsTable.COLUMN_COST_CENTER;
+            table = TripsTable.TABLE_NAME;
+            column = TripsTable.COLUMN_COST_CENTER;
         } else if (tag == TAG_DISTANCE_LOCATION) {
-            sqlQuery = " SELECT DISTINCT TRIM(" + DistanceTable.COLUMN_LOCATION + ") AS _id " + " FROM " + DistanceTable.TABLE_NAME + " WHERE " + DistanceTable.COLUMN_LOCATION + " LIKE '%" + text + "%' " + " ORDER BY " + DistanceTable.COLUMN_LOCATION;
+            table = DistanceTable.TABLE_NAME;
+            column = DistanceTable.COLUMN_LOCATION;
+        } else {
+            return null;
         }
         synchronized (mDatabaseLock) {
-            return db.rawQuery(sqlQuery, null);
+            return mSearchIndex.getAutoCompleteCursor(db, table, column, text);
         }
     }
 
     @Override
     public void onItemSelected(CharSequence text, CharSequence tag) {
-        // TODO: Make Async
-
-        Cursor c = null;
-        SQLiteDatabase db = null;
         final String name = text.toString();
         if (tag == TAG_RECEIPTS_NAME) {
-            String category = null, price = null, tmp = null;
-            // If we're not predicting, return
             if (!mPreferences.get(UserPreference.Receipts.PredictCategories)) {
-                // price = null;
-                // category = null
+                // If we're not predicting, return immediately
+                if (mReceiptAutoCompleteListener != null) {
+                    mReceiptAutoCompleteListener.onReceiptRowAutoCompleteQueryResult(name, null, null);
+                }
             } else {
-                synchronized (mDatabaseLock) {
-                    try {
-                        db = this.getReadableDatabase();
-                        c = db.query(ReceiptsTable.TABLE_NAME, new String[]{ReceiptsTable.COLUMN_CATEGORY, ReceiptsTable.COLUMN_PRICE}, ReceiptsTable.COLUMN_NAME + "= ?", new String[]{name}, null, null, ReceiptsTable.COLUMN_DATE + " DESC", "2");
-                        if (c != null && c.getCount() == 2) {
-                            if (c.moveToFirst()) {
-                                category = c.getString(0);
-                                price = c.getString(1);
-                                if (c.moveToNext()) {
-                                    tmp = c.getString(0);
-                                    if (!category.equalsIgnoreCase(tmp)) {
-                                        category = null;
-                                    }
-                                    tmp = c.getString(1);
-                                    if (!price.equalsIgnoreCase(tmp)) {
-                                        price = null;
-                                    }
-                                }
+                // Note: This is a fire-and-forget query, since we always deliver to the currently registered listener
+                Single.fromCallable(() -> predictReceiptRow(name))
+                        .subscribeOn(Schedulers.io())
+                        .observeOn(AndroidSchedulers.mainThread())
+                        .subscribe(prediction -> {
+                            if (mReceiptAutoCompleteListener != null) {
+                                mReceiptAutoCompleteListener.onReceiptRowAutoCompleteQueryResult(name, prediction.price, prediction.category);
+                            }
+                        }, throwable -> Logger.error(DatabaseHelper.this, "Failed to predict the receipt row for " + name, throwable));
+            }
+        }
+    }
+
+    /**
+     * Predicts the price and category of a receipt, based on the two most recent receipts that share its name. A
+     * value is only predicted if both of these receipts agree on it. This performs a blocking database query, so it
+     * must not be called from the main thread
+     *
+     * @param name the name of the receipt
+     * @return the {@link ReceiptPrediction}, whose fields may be {@code null}
+     */
+    @NonNull
+    private ReceiptPrediction predictReceiptRow(@NonNull String name) {
+        String category = null, price = null, tmp;
+        Cursor c = null;
+        synchronized (mDatabaseLock) {
+            try {
+                final SQLiteDatabase db = this.getReadableDatabase();
+                c = db.query(ReceiptsTable.TABLE_NAME, new String[]{ReceiptsTable.COLUMN_CATEGORY, ReceiptsTable.COLUMN_PRICE}, ReceiptsTable.COLUMN_NAME + "= ?", new String[]{name}, null, null, ReceiptsTable.COLUMN_DATE + " DESC", "2");
+                if (c != null && c.getCount() == 2) {
+                    if (c.moveToFirst()) {
+                        category = c.getString(0);
+                        price = c.getString(1);
+                        if (c.moveToNext()) {
+                            tmp = c.getString(0);
+                            if (category != null && !category.equalsIgnoreCase(tmp)) {
+                                category = null;
+                            }
+                            tmp = c.getString(1);
+                            if (price != null && !price.equalsIgnoreCase(tmp)) {
+                                price = null;
                             }
-                        }
-                    } finally {
-                        if (c != null) {
-                            c.close();
                         }
                     }
                 }
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
             }
-            if (mReceiptAutoCompleteListener != null) {
-                mReceiptAutoCompleteListener.onReceiptRowAutoCompleteQueryResult(name, price, category);
-            }
+        }
+        return new ReceiptPrediction(price, category);
+    }
+
+    private static final class ReceiptPrediction {
+
+        private final String price;
+        private final String category;
+
+        ReceiptPrediction(@Nullable String price, @Nullable String category) {
+            this.price = price;
+            this.category = category;
         }
     }
 
@@ -0,0 +1,89 @@
+package co.smartreceipts.android.persistence.database.aggregation;
+
+import android.support.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.factory.PriceBuilderFactory;
+import co.smartreceipts.android.model.impl.ImmutableNetPriceImpl;
+
+/**
+ * Tracks the per-currency totals for a particular trip. Prices in the trip currency (or those that can be exchanged
+ * into it) are totalled together, while all others are totalled in their own currency. This mirrors the logic in
+ * {@link ImmutableNetPriceImpl}.
+ */
+final class CurrencyTotals {
+
+    private final PriceCurrency tripCurrency;
+    private final Map<String, BigDecimal> currencyToPriceMap = new LinkedHashMap<>();
+
+    CurrencyTotals(@NonNull PriceCurrency tripCurrency) {
+        this.tripCurrency = tripCurrency;
+    }
+
+    /**
+     * Seeds these totals with a previously computed trip {@link Price}, so that we can apply deltas to it
+     *
+     * @param tripCurrency the currency of the trip
+     * @param price the current {@link Price} of the trip
+     */
+    CurrencyTotals(@NonNull PriceCurrency tripCurrency, @NonNull Price price) {
+        this(tripCurrency);
+        if (price instanceof ImmutableNetPriceImpl) {
+            for (final Map.Entry<PriceCurrency, BigDecimal> entry : ((ImmutableNetPriceImpl) price).getCurrencyToPriceMap().entrySet()) {
+                add(entry.getKey().getCurrencyCode(), entry.getValue());
+            }
+        } else {
+            add(price.getCurrencyCode(), price.getPrice());
+        }
+    }
+
+    void add(@NonNull String currencyCode, boolean hasExchangeRate, @NonNull BigDecimal price, @NonNull BigDecimal exchangedPrice) {
+        if (currencyCode.equalsIgnoreCase(tripCurrency.getCurrencyCode())) {
+            add(tripCurrency.getCurrencyCode(), price);
+        } else if (hasExchangeRate) {
+            add(tripCurrency.getCurrencyCode(), exchangedPrice);
+        } else {
+            add(currencyCode, price);
+        }
+    }
+
+    /**
+     * Adds a single {@link Price} to these totals, exchanging it into the trip currency if possible
+     *
+     * @param price the {@link Price} to add
+     * @param isSubtraction {@code true} if we should subtract this price instead of adding it
+     */
+    void add(@NonNull Price price, boolean isSubtraction) {
+        final BigDecimal value = isSubtraction ? price.getPrice().negate() : price.getPrice();
+        if (price.getExchangeRate().supportsExchangeRateFor(tripCurrency)) {
+            add(price.getCurrencyCode(), true, value, value.multiply(price.getExchangeRate().getExchangeRate(tripCurrency)));
+        } else {
+            add(price.getCurrencyCode(), false, value, value);
+        }
+    }
+
+    private void add(@NonNull String currencyCode, @NonNull BigDecimal price) {
+        final BigDecimal currentPrice = currencyToPriceMap.get(currencyCode);
+        currencyToPriceMap.put(currencyCode, currentPrice != null ? currentPrice.add(price) : price);
+    }
+
+    @NonNull
+    Price build() {
+        final List<Price> prices = new ArrayList<>(currencyToPriceMap.size());
+        for (final Map.Entry<String, BigDecimal> entry : currencyToPriceMap.entrySet()) {
+            final boolean isTripCurrency = entry.getKey().equalsIgnoreCase(tripCurrency.getCurrencyCode());
+            if (isTripCurrency || entry.getValue().signum() != 0) {
+                // Note: We drop foreign currencies that were netted back down to zero, since these would otherwise mark our exchange rates as invalid
+                prices.add(new PriceBuilderFactory().setCurrency(entry.getKey()).setPrice(entry.getValue()).build());
+            }
+        }
+        return new PriceBuilderFactory().setPrices(prices, tripCurrency).build();
+    }
+}
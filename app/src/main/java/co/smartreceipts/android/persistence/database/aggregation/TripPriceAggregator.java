@@ -0,0 +1,215 @@
+package co.smartreceipts.android.persistence.database.aggregation;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.persistence.database.tables.AbstractSqlTable;
+import co.smartreceipts.android.persistence.database.tables.DistanceTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Computes the total and daily sub-total {@link Price} of our {@link Trip}s via a single SQL query, which allows us
+ * to avoid materialising every {@link co.smartreceipts.android.model.Receipt} and
+ * {@link co.smartreceipts.android.model.Distance} object in the database just to sum up their prices.
+ * <p>
+ * The query only selects the few columns that we need from each trip's receipts (and optionally distances). Each
+ * price is then summed as a {@link BigDecimal}, since SQLite would sum these as floating point values, and grouped
+ * by currency and by whether or not a valid exchange rate was defined. This mirrors the logic in
+ * {@link co.smartreceipts.android.model.impl.ImmutableNetPriceImpl}, in which exchangeable prices are converted to
+ * the trip currency and all others are totalled in their own currency.
+ * </p>
+ */
+public class TripPriceAggregator {
+
+    private static final String COLUMN_AGGREGATE_PARENT = "aggregate_parent";
+    private static final String COLUMN_AGGREGATE_CURRENCY = "aggregate_currency";
+    private static final String COLUMN_AGGREGATE_PRICE = "aggregate_price";
+    private static final String COLUMN_AGGREGATE_EXCHANGE_RATE = "aggregate_exchange_rate";
+    private static final String COLUMN_AGGREGATE_DISTANCE_RATE = "aggregate_distance_rate";
+    private static final String COLUMN_AGGREGATE_DATE = "aggregate_date";
+
+    private final SQLiteOpenHelper mSQLiteOpenHelper;
+    private final UserPreferenceManager mPreferences;
+
+    public TripPriceAggregator(@NonNull SQLiteOpenHelper sqLiteOpenHelper, @NonNull UserPreferenceManager preferences) {
+        mSQLiteOpenHelper = Preconditions.checkNotNull(sqLiteOpenHelper);
+        mPreferences = Preconditions.checkNotNull(preferences);
+    }
+
+    /**
+     * Updates the price and daily sub-total of a single trip. Please note that this is a blocking operation
+     *
+     * @param trip the {@link Trip} to update
+     */
+    public void aggregateBlocking(@NonNull Trip trip) {
+        aggregateBlocking(Collections.singletonList(trip), trip.getName());
+    }
+
+    /**
+     * Updates the price and daily sub-total of each of these trips, using a single query for all of them.
+     * Please note that this is a blocking operation
+     *
+     * @param trips the {@link List} of {@link Trip}s to update
+     */
+    public void aggregateBlocking(@NonNull List<Trip> trips) {
+        aggregateBlocking(trips, null);
+    }
+
+    private void aggregateBlocking(@NonNull List<Trip> trips, @Nullable String tripName) {
+        final Map<String, TripTotals> tripTotalsMap = new HashMap<>(trips.size());
+        for (final Trip trip : trips) {
+            tripTotalsMap.put(trip.getName(), new TripTotals(trip.getTripCurrency()));
+        }
+
+        final long todayStart = getTodayBoundary(true);
+        final long todayEnd = getTodayBoundary(false);
+
+        Cursor cursor = null;
+        try {
+            final String[] selectionArgs = getSelectionArgs(tripName);
+            cursor = mSQLiteOpenHelper.getReadableDatabase().rawQuery(getUnionQuery(tripName), selectionArgs);
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    final TripTotals tripTotals = tripTotalsMap.get(cursor.getString(0));
+                    if (tripTotals != null) {
+                        final String currencyCode = cursor.getString(1);
+                        final BigDecimal price;
+                        if (cursor.isNull(4)) {
+                            price = BigDecimal.valueOf(cursor.getDouble(2));
+                        } else {
+                            // Distances are priced as their distance multiplied by their rate
+                            price = BigDecimal.valueOf(cursor.getDouble(2)).multiply(BigDecimal.valueOf(cursor.getDouble(4)));
+                        }
+                        final BigDecimal exchangeRate = BigDecimal.valueOf(cursor.getDouble(3));
+                        final boolean hasExchangeRate = exchangeRate.signum() > 0;
+                        final BigDecimal exchangedPrice = hasExchangeRate ? price.multiply(exchangeRate) : price;
+                        tripTotals.total.add(currencyCode, hasExchangeRate, price, exchangedPrice);
+
+                        final long date = cursor.getLong(5);
+                        if (date >= todayStart && date <= todayEnd) {
+                            tripTotals.dailySubTotal.add(currencyCode, hasExchangeRate, price, exchangedPrice);
+                        }
+                    }
+                }
+                while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        for (final Trip trip : trips) {
+            final TripTotals tripTotals = tripTotalsMap.get(trip.getName());
+            trip.setPrice(tripTotals.total.build());
+            trip.setDailySubTotal(tripTotals.dailySubTotal.build());
+        }
+        Logger.debug(this, "Aggregated the prices of {} trips", trips.size());
+    }
+
+    @NonNull
+    private String getUnionQuery(@Nullable String tripName) {
+        final boolean onlyUseReimbursable = mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
+        final boolean includeDistances = mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports);
+
+        final String receiptPrice = getDecimalColumn(ReceiptsTable.COLUMN_PRICE);
+        final String receiptExchangeRate = getDecimalColumn(ReceiptsTable.COLUMN_EXCHANGE_RATE);
+        String receiptsWhere = AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION + " = 0";
+        if (onlyUseReimbursable) {
+            receiptsWhere += " AND " + ReceiptsTable.COLUMN_REIMBURSABLE + " > 0";
+        }
+        if (tripName != null) {
+            receiptsWhere += " AND " + ReceiptsTable.COLUMN_PARENT + " = ?";
+        }
+        final String receiptsQuery = "SELECT " + ReceiptsTable.COLUMN_PARENT + " AS " + COLUMN_AGGREGATE_PARENT + ", "
+                + ReceiptsTable.COLUMN_ISO4217 + " AS " + COLUMN_AGGREGATE_CURRENCY + ", "
+                + receiptPrice + " AS " + COLUMN_AGGREGATE_PRICE + ", "
+                + receiptExchangeRate + " AS " + COLUMN_AGGREGATE_EXCHANGE_RATE + ", "
+                + "NULL AS " + COLUMN_AGGREGATE_DISTANCE_RATE + ", "
+                + ReceiptsTable.COLUMN_DATE + " AS " + COLUMN_AGGREGATE_DATE
+                + " FROM " + ReceiptsTable.TABLE_NAME + " WHERE " + receiptsWhere;
+
+        if (!includeDistances) {
+            return receiptsQuery;
+        }
+
+        // Note: Distances do not track exchange rates, so these are only ever totalled in their own currency
+        String distancesWhere = AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION + " = 0";
+        if (tripName != null) {
+            distancesWhere += " AND " + DistanceTable.COLUMN_PARENT + " = ?";
+        }
+        final String distancesQuery = "SELECT " + DistanceTable.COLUMN_PARENT + ", "
+                + DistanceTable.COLUMN_RATE_CURRENCY + ", "
+                + DistanceTable.COLUMN_DISTANCE + ", "
+                + "0, "
+                + "IFNULL(" + DistanceTable.COLUMN_RATE + ", 0), "
+                + DistanceTable.COLUMN_DATE
+                + " FROM " + DistanceTable.TABLE_NAME + " WHERE " + distancesWhere;
+
+        return receiptsQuery + " UNION ALL " + distancesQuery;
+    }
+
+    @Nullable
+    private String[] getSelectionArgs(@Nullable String tripName) {
+        if (tripName == null) {
+            return null;
+        } else if (mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
+            return new String[]{ tripName, tripName };
+        } else {
+            return new String[]{ tripName };
+        }
+    }
+
+    /**
+     * Older versions of the app may have persisted decimal values as strings with a ',' separator (see the notes
+     * in {@link co.smartreceipts.android.persistence.database.tables.adapters.ReceiptDatabaseAdapter}), so we
+     * normalize these before reading them
+     */
+    @NonNull
+    private static String getDecimalColumn(@NonNull String column) {
+        return "(CASE WHEN typeof(" + column + ") = 'text' THEN CAST(REPLACE(" + column + ", ',', '.') AS REAL) ELSE " + column + " END)";
+    }
+
+    /**
+     * Matches the day boundaries that are used by {@link co.smartreceipts.android.date.DateUtils#isToday(java.sql.Date)}
+     *
+     * @param isStart {@code true} for the first millisecond of today, {@code false} for the last one
+     * @return the boundary time in milliseconds
+     */
+    private static long getTodayBoundary(boolean isStart) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, isStart ? 0 : 23);
+        calendar.set(Calendar.MINUTE, isStart ? 0 : 59);
+        calendar.set(Calendar.SECOND, isStart ? 0 : 59);
+        calendar.set(Calendar.MILLISECOND, isStart ? 0 : 999);
+        return calendar.getTimeInMillis();
+    }
+
+    private static final class TripTotals {
+
+        private final CurrencyTotals total;
+        private final CurrencyTotals dailySubTotal;
+
+        TripTotals(@NonNull PriceCurrency tripCurrency) {
+            total = new CurrencyTotals(tripCurrency);
+            dailySubTotal = new CurrencyTotals(tripCurrency);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package co.smartreceipts.android.persistence.database.aggregation;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import co.smartreceipts.android.date.DateUtils;
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+
+/**
+ * Incrementally maintains the total and daily sub-total {@link Price} of a {@link Trip}, by applying the contribution
+ * of a single changed {@link Receipt} or {@link Distance} (ie the old value is subtracted and the new one is added) to
+ * the trip's existing totals. This allows us to avoid re-aggregating every trip via the {@link TripPriceAggregator}
+ * whenever a single item changes.
+ */
+public class TripPriceMaintainer {
+
+    private final UserPreferenceManager mPreferences;
+
+    public TripPriceMaintainer(@NonNull UserPreferenceManager preferences) {
+        mPreferences = Preconditions.checkNotNull(preferences);
+    }
+
+    /**
+     * Applies the price delta between two versions of a receipt to a trip. Please note that both receipts are
+     * assumed to belong to this trip
+     *
+     * @param trip the {@link Trip} to update
+     * @param oldReceipt the previous version of the {@link Receipt} or {@code null} if it was inserted
+     * @param newReceipt the current version of the {@link Receipt} or {@code null} if it was deleted
+     */
+    public void applyReceiptDelta(@NonNull Trip trip, @Nullable Receipt oldReceipt, @Nullable Receipt newReceipt) {
+        final TripDelta tripDelta = new TripDelta(trip);
+        if (oldReceipt != null && isIncluded(oldReceipt)) {
+            tripDelta.apply(oldReceipt.getPrice(), DateUtils.isToday(oldReceipt.getDate()), true);
+        }
+        if (newReceipt != null && isIncluded(newReceipt)) {
+            tripDelta.apply(newReceipt.getPrice(), DateUtils.isToday(newReceipt.getDate()), false);
+        }
+        tripDelta.commit();
+    }
+
+    /**
+     * Applies the price delta between two versions of a distance to a trip. Please note that both distances are
+     * assumed to belong to this trip
+     *
+     * @param trip the {@link Trip} to update
+     * @param oldDistance the previous version of the {@link Distance} or {@code null} if it was inserted
+     * @param newDistance the current version of the {@link Distance} or {@code null} if it was deleted
+     */
+    public void applyDistanceDelta(@NonNull Trip trip, @Nullable Distance oldDistance, @Nullable Distance newDistance) {
+        if (!mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)) {
+            return;
+        }
+        final TripDelta tripDelta = new TripDelta(trip);
+        if (oldDistance != null) {
+            tripDelta.apply(oldDistance.getPrice(), DateUtils.isToday(oldDistance.getDate()), true);
+        }
+        if (newDistance != null) {
+            tripDelta.apply(newDistance.getPrice(), DateUtils.isToday(newDistance.getDate()), false);
+        }
+        tripDelta.commit();
+    }
+
+    private boolean isIncluded(@NonNull Receipt receipt) {
+        return receipt.isReimbursable() || !mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable);
+    }
+
+    private static final class TripDelta {
+
+        private final Trip trip;
+        private final CurrencyTotals total;
+        private final CurrencyTotals dailySubTotal;
+        private boolean isDailySubTotalChanged = false;
+
+        TripDelta(@NonNull Trip trip) {
+            this.trip = trip;
+            this.total = new CurrencyTotals(trip.getTripCurrency(), trip.getPrice());
+            this.dailySubTotal = new CurrencyTotals(trip.getTripCurrency(), trip.getDailySubTotal());
+        }
+
+        void apply(@NonNull Price price, boolean isToday, boolean isSubtraction) {
+            total.add(price, isSubtraction);
+            if (isToday) {
+                dailySubTotal.add(price, isSubtraction);
+                isDailySubTotalChanged = true;
+            }
+        }
+
+        void commit() {
+            trip.setPrice(total.build());
+            if (isDailySubTotalChanged) {
+                trip.setDailySubTotal(dailySubTotal.build());
+            }
+        }
+    }
+}
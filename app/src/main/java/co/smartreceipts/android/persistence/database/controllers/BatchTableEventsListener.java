@@ -0,0 +1,30 @@
+package co.smartreceipts.android.persistence.database.controllers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
+
+/**
+ * An extension of the {@link TableEventsListener} contract for listeners that wish to handle batch operations as a
+ * single event. Listeners that do not implement this interface will instead receive one callback per item in the batch.
+ *
+ * @param <T> the model object type
+ */
+public interface BatchTableEventsListener<T> extends TableEventsListener<T> {
+
+    void onInsertAllSuccess(@NonNull List<T> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    void onInsertAllFailure(@NonNull List<T> list, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    void onUpdateAllSuccess(@NonNull List<T> oldList, @NonNull List<T> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    void onUpdateAllFailure(@NonNull List<T> oldList, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    void onDeleteAllSuccess(@NonNull List<T> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    void onDeleteAllFailure(@NonNull List<T> list, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+}
@@ -6,9 +6,14 @@ import com.hadisatrio.optional.Optional;
 
 import org.reactivestreams.Subscriber;
 
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.controllers.results.DeleteAllResult;
 import co.smartreceipts.android.persistence.database.controllers.results.DeleteResult;
 import co.smartreceipts.android.persistence.database.controllers.results.GetResult;
+import co.smartreceipts.android.persistence.database.controllers.results.InsertAllResult;
 import co.smartreceipts.android.persistence.database.controllers.results.InsertResult;
+import co.smartreceipts.android.persistence.database.controllers.results.UpdateAllResult;
 import co.smartreceipts.android.persistence.database.controllers.results.UpdateResult;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import io.reactivex.Observable;
@@ -107,4 +112,62 @@ public interface TableController<ModelType> {
      */
     @NonNull
     Observable<DeleteResult<ModelType>> deleteStream();
+
+    /**
+     * Inserts a list of new objects of type {@link ModelType} into this table within a single transaction
+     *
+     * @param modelTypes the objects to insert
+     * @param databaseOperationMetadata metadata about this particular database operation
+     */
+    void insertAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Returns a stream of all batch insertions submitted to {@link #insertAll(List, DatabaseOperationMetadata)}
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()},
+     * since we want to ensure that this stream never ends in order to allow listeners to observe this for the app lifetime
+     * </p>
+     * @return an {@link Observable} that will emit one {@link InsertAllResult} per batch of this {@link ModelType}
+     */
+    @NonNull
+    Observable<InsertAllResult<ModelType>> insertAllStream();
+
+    /**
+     * Updates a list of existing objects of type {@link ModelType} in this table within a single transaction
+     *
+     * @param oldModelTypes the old objects that will be replaced
+     * @param newModelTypes the new objects that will take the place of the old ones (in the same order)
+     * @param databaseOperationMetadata metadata about this particular database operation
+     */
+    void updateAll(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Returns a stream of all batch updates submitted to {@link #updateAll(List, List, DatabaseOperationMetadata)}
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()},
+     * since we want to ensure that this stream never ends in order to allow listeners to observe this for the app lifetime
+     * </p>
+     * @return an {@link Observable} that will emit one {@link UpdateAllResult} per batch of this {@link ModelType}
+     */
+    @NonNull
+    Observable<UpdateAllResult<ModelType>> updateAllStream();
+
+    /**
+     * Removes a list of existing objects of type {@link ModelType} from this table within a single transaction
+     *
+     * @param modelTypes the objects to remove
+     * @param databaseOperationMetadata metadata about this particular database operation
+     */
+    void deleteAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Returns a stream of all batch deletions submitted to {@link #deleteAll(List, DatabaseOperationMetadata)}
+     * <p>
+     * Please note that this will never call {@link Subscriber#onError(Throwable)} or {@link Subscriber#onComplete()},
+     * since we want to ensure that this stream never ends in order to allow listeners to observe this for the app lifetime
+     * </p>
+     * @return an {@link Observable} that will emit one {@link DeleteAllResult} per batch of this {@link ModelType}
+     */
+    @NonNull
+    Observable<DeleteAllResult<ModelType>> deleteAllStream();
 }
@@ -19,6 +19,7 @@ import co.smartreceipts.android.model.Trip;
 import co.smartreceipts.android.model.factory.BuilderFactory1;
 import co.smartreceipts.android.model.factory.ReceiptBuilderFactory;
 import co.smartreceipts.android.model.factory.ReceiptBuilderFactoryFactory;
+import co.smartreceipts.android.persistence.database.files.FileLinker;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
 import co.smartreceipts.android.utils.FileUtils;
@@ -34,6 +35,7 @@ public class ReceiptTableActionAlterations extends StubTableActionAlterations<Re
     private final ReceiptsTable mReceiptsTable;
     private final StorageManager mStorageManager;
     private final BuilderFactory1<Receipt, ReceiptBuilderFactory> mReceiptBuilderFactoryFactory;
+    private final FileLinker mFileLinker;
 
     public ReceiptTableActionAlterations(@NonNull Context context, @NonNull ReceiptsTable receiptsTable,
                                          @NonNull StorageManager storageManager) {
@@ -41,6 +43,7 @@ public class ReceiptTableActionAlterations extends StubTableActionAlterations<Re
         mReceiptsTable = Preconditions.checkNotNull(receiptsTable);
         mStorageManager = Preconditions.checkNotNull(storageManager);
         mReceiptBuilderFactoryFactory = new ReceiptBuilderFactoryFactory();
+        mFileLinker = new FileLinker();
     }
 
     ReceiptTableActionAlterations(@NonNull Context context, @NonNull ReceiptsTable receiptsTable,
@@ -49,6 +52,7 @@ public class ReceiptTableActionAlterations extends StubTableActionAlterations<Re
         mReceiptsTable = Preconditions.checkNotNull(receiptsTable);
         mStorageManager = Preconditions.checkNotNull(storageManager);
         mReceiptBuilderFactoryFactory = Preconditions.checkNotNull(receiptBuilderFactoryFactory);
+        mFileLinker = new FileLinker();
     }
 
     @NonNull
@@ -207,7 +211,8 @@ public class ReceiptTableActionAlterations extends StubTableActionAlterations<Re
         builder.setTrip(toTrip);
         if (receipt.hasFile()) {
             final File destination = mStorageManager.getFile(toTrip.getDirectory(), System.currentTimeMillis() + receipt.getFileName());
-            if (mStorageManager.copy(receipt.getFile(), destination, true)) {
+            // Note: We prefer to share the identical file via a link, but we fall back to a copy if links aren't supported
+            if (mFileLinker.link(receipt.getFile(), destination) || mStorageManager.copy(receipt.getFile(), destination, true)) {
                 Logger.info(this, "Successfully copied the receipt file to the new trip: {}", toTrip.getName());
                 builder.setFile(destination);
             } else {
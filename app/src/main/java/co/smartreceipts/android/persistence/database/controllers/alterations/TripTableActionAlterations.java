@@ -20,7 +20,6 @@ import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
 import co.smartreceipts.android.persistence.database.tables.Table;
 import co.smartreceipts.android.utils.log.Logger;
 import io.reactivex.Completable;
-import io.reactivex.Observable;
 import io.reactivex.Single;
 import wb.android.storage.StorageManager;
 
@@ -52,10 +51,11 @@ public class TripTableActionAlterations extends StubTableActionAlterations<Trip>
     @NonNull
     @Override
     public Single<List<Trip>> postGet(@NonNull final List<Trip> trips) {
-        return Observable.just(trips)
-                .flatMapIterable(trips1 -> trips1)
-                .doOnNext(mDatabaseHelper::getTripPriceAndDailyPrice)
-                .toList();
+        return Single.fromCallable(() -> {
+            // Note: We aggregate all trip prices together to avoid running a separate query per trip
+            mDatabaseHelper.getTripPricesAndDailyPrices(trips);
+            return trips;
+        });
     }
 
     @NonNull
@@ -6,6 +6,7 @@ import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
@@ -17,9 +18,12 @@ import co.smartreceipts.android.persistence.database.controllers.TableController
 import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
 import co.smartreceipts.android.persistence.database.controllers.alterations.StubTableActionAlterations;
 import co.smartreceipts.android.persistence.database.controllers.alterations.TableActionAlterations;
+import co.smartreceipts.android.persistence.database.controllers.results.DeleteAllResult;
 import co.smartreceipts.android.persistence.database.controllers.results.DeleteResult;
 import co.smartreceipts.android.persistence.database.controllers.results.GetResult;
+import co.smartreceipts.android.persistence.database.controllers.results.InsertAllResult;
 import co.smartreceipts.android.persistence.database.controllers.results.InsertResult;
+import co.smartreceipts.android.persistence.database.controllers.results.UpdateAllResult;
 import co.smartreceipts.android.persistence.database.controllers.results.UpdateResult;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import co.smartreceipts.android.persistence.database.tables.Table;
@@ -52,10 +56,13 @@ abstract class AbstractTableController<ModelType> implements TableController<Mod
     protected final Scheduler mSubscribeOnScheduler;
     protected final Scheduler mObserveOnScheduler;
 
-    private final Subject<GetResult<ModelType>> getStreamSubject = PublishSubject.<GetResult<ModelType>>create().toSerialized();
+    protected final Subject<GetResult<ModelType>> getStreamSubject = PublishSubject.<GetResult<ModelType>>create().toSerialized();
     private final Subject<InsertResult<ModelType>> insertStreamSubject = PublishSubject.<InsertResult<ModelType>>create().toSerialized();
     private final Subject<UpdateResult<ModelType>> updateStreamSubject = PublishSubject.<UpdateResult<ModelType>>create().toSerialized();
     private final Subject<DeleteResult<ModelType>> deleteStreamSubject = PublishSubject.<DeleteResult<ModelType>>create().toSerialized();
+    private final Subject<InsertAllResult<ModelType>> insertAllStreamSubject = PublishSubject.<InsertAllResult<ModelType>>create().toSerialized();
+    private final Subject<UpdateAllResult<ModelType>> updateAllStreamSubject = PublishSubject.<UpdateAllResult<ModelType>>create().toSerialized();
+    private final Subject<DeleteAllResult<ModelType>> deleteAllStreamSubject = PublishSubject.<DeleteAllResult<ModelType>>create().toSerialized();
 
     protected CompositeDisposable compositeDisposable = new CompositeDisposable();
 
@@ -212,6 +219,103 @@ abstract class AbstractTableController<ModelType> implements TableController<Mod
         return deleteStreamSubject;
     }
 
+    @Override
+    public void insertAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        Logger.info(this, "#insertAll: {} items", modelTypes.size());
+
+        Observable.fromIterable(modelTypes)
+                .subscribeOn(mSubscribeOnScheduler)
+                .concatMap(modelType -> mTableActionAlterations.preInsert(modelType).toObservable())
+                .toList()
+                .flatMap(insertedItems -> mTable.insertAll(insertedItems, databaseOperationMetadata))
+                .flatMap(insertedItems -> Observable.fromIterable(insertedItems)
+                        .concatMap(insertedItem -> mTableActionAlterations.postInsert(insertedItem).toObservable())
+                        .toList())
+                .doOnSuccess(insertedItems -> {
+                    Logger.debug(AbstractTableController.this, "#onInsertAllSuccess - onNext");
+                    insertAllStreamSubject.onNext(new InsertAllResult<>(insertedItems, databaseOperationMetadata));
+                })
+                .doOnError(throwable -> {
+                    Logger.error(AbstractTableController.this, "#onInsertAllFailure - onError", throwable);
+                    mAnalytics.record(new ErrorEvent(AbstractTableController.this, throwable));
+                    insertAllStreamSubject.onNext(new InsertAllResult<>(modelTypes, throwable, databaseOperationMetadata));
+                })
+                .map(Optional::of)
+                .onErrorReturnItem(Optional.absent())
+                .subscribe();
+    }
+
+    @NonNull
+    @Override
+    public Observable<InsertAllResult<ModelType>> insertAllStream() {
+        return insertAllStreamSubject;
+    }
+
+    @Override
+    public void updateAll(@NonNull final List<ModelType> oldModelTypes, @NonNull final List<ModelType> newModelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        Preconditions.checkArgument(oldModelTypes.size() == newModelTypes.size(), "The old and new lists must be the same size");
+        Logger.info(this, "#updateAll: {} items", oldModelTypes.size());
+
+        Observable.range(0, oldModelTypes.size())
+                .subscribeOn(mSubscribeOnScheduler)
+                .concatMap(index -> mTableActionAlterations.preUpdate(oldModelTypes.get(index), newModelTypes.get(index)).toObservable())
+                .toList()
+                .flatMap(updatedItems -> mTable.updateAll(oldModelTypes, updatedItems, databaseOperationMetadata))
+                .flatMap(updatedItems -> Observable.range(0, updatedItems.size())
+                        .concatMap(index -> mTableActionAlterations.postUpdate(oldModelTypes.get(index), updatedItems.get(index)).toObservable())
+                        .toList())
+                .doOnSuccess(updatedItems -> {
+                    Logger.debug(AbstractTableController.this, "#onUpdateAllSuccess - onNext");
+                    updateAllStreamSubject.onNext(new UpdateAllResult<>(oldModelTypes, updatedItems, databaseOperationMetadata));
+                })
+                .doOnError(throwable -> {
+                    Logger.error(AbstractTableController.this, "#onUpdateAllFailure - onError", throwable);
+                    mAnalytics.record(new ErrorEvent(AbstractTableController.this, throwable));
+                    updateAllStreamSubject.onNext(new UpdateAllResult<>(oldModelTypes, throwable, databaseOperationMetadata));
+                })
+                .map(Optional::of)
+                .onErrorReturnItem(Optional.absent())
+                .subscribe();
+    }
+
+    @NonNull
+    @Override
+    public Observable<UpdateAllResult<ModelType>> updateAllStream() {
+        return updateAllStreamSubject;
+    }
+
+    @Override
+    public void deleteAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        Logger.info(this, "#deleteAll: {} items", modelTypes.size());
+
+        Observable.fromIterable(modelTypes)
+                .subscribeOn(mSubscribeOnScheduler)
+                .concatMap(modelType -> mTableActionAlterations.preDelete(modelType).toObservable())
+                .toList()
+                .flatMap(deletedItems -> mTable.deleteAll(deletedItems, databaseOperationMetadata))
+                .flatMap(deletedItems -> Observable.fromIterable(deletedItems)
+                        .concatMap(deletedItem -> mTableActionAlterations.postDelete(deletedItem).toObservable())
+                        .toList())
+                .doOnSuccess(deletedItems -> {
+                    Logger.debug(AbstractTableController.this, "#onDeleteAllSuccess - onNext");
+                    deleteAllStreamSubject.onNext(new DeleteAllResult<>(deletedItems, databaseOperationMetadata));
+                })
+                .doOnError(throwable -> {
+                    Logger.error(AbstractTableController.this, "#onDeleteAllFailure - onError", throwable);
+                    mAnalytics.record(new ErrorEvent(AbstractTableController.this, throwable));
+                    deleteAllStreamSubject.onNext(new DeleteAllResult<>(modelTypes, throwable, databaseOperationMetadata));
+                })
+                .map(Optional::of)
+                .onErrorReturnItem(Optional.absent())
+                .subscribe();
+    }
+
+    @NonNull
+    @Override
+    public Observable<DeleteAllResult<ModelType>> deleteAllStream() {
+        return deleteAllStreamSubject;
+    }
+
     protected void unsubscribeReference(@NonNull AtomicReference<Disposable> disposableReference) {
         final Disposable disposable = disposableReference.get();
         if (disposable != null && !disposable.isDisposed()) {
@@ -1,11 +1,16 @@
 package co.smartreceipts.android.persistence.database.controllers.impl;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.controllers.BatchTableEventsListener;
 import co.smartreceipts.android.persistence.database.controllers.TableController;
 import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
+import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import io.reactivex.Scheduler;
 import io.reactivex.disposables.CompositeDisposable;
 
@@ -69,6 +74,36 @@ public class BridgingTableEventsListener<ModelType> {
                         listener.onDeleteFailure(modelTypeDeleteResult.get(), modelTypeDeleteResult.getThrowable(), modelTypeDeleteResult.getDatabaseOperationMetadata());
                     }
                 }));
+
+        compositeDisposable.add(this.tableController.insertAllStream()
+                .observeOn(observeOnScheduler)
+                .subscribe(insertAllResult -> {
+                    if (insertAllResult.getThrowable() == null) {
+                        onInsertAllSuccess(insertAllResult.get(), insertAllResult.getDatabaseOperationMetadata());
+                    } else {
+                        onInsertAllFailure(insertAllResult.get(), insertAllResult.getThrowable(), insertAllResult.getDatabaseOperationMetadata());
+                    }
+                }));
+
+        compositeDisposable.add(this.tableController.updateAllStream()
+                .observeOn(observeOnScheduler)
+                .subscribe(updateAllResult -> {
+                    if (updateAllResult.getThrowable() == null && updateAllResult.getNew() != null) {
+                        onUpdateAllSuccess(updateAllResult.getOld(), updateAllResult.getNew(), updateAllResult.getDatabaseOperationMetadata());
+                    } else {
+                        onUpdateAllFailure(updateAllResult.getOld(), updateAllResult.getThrowable(), updateAllResult.getDatabaseOperationMetadata());
+                    }
+                }));
+
+        compositeDisposable.add(this.tableController.deleteAllStream()
+                .observeOn(observeOnScheduler)
+                .subscribe(deleteAllResult -> {
+                    if (deleteAllResult.getThrowable() == null) {
+                        onDeleteAllSuccess(deleteAllResult.get(), deleteAllResult.getDatabaseOperationMetadata());
+                    } else {
+                        onDeleteAllFailure(deleteAllResult.get(), deleteAllResult.getThrowable(), deleteAllResult.getDatabaseOperationMetadata());
+                    }
+                }));
     }
 
     public void unsubscribe() {
@@ -77,4 +112,74 @@ public class BridgingTableEventsListener<ModelType> {
         }
         compositeDisposable = null;
     }
+
+    /*
+     * Listeners that do not implement the batch contract receive one callback per item instead
+     */
+
+    @SuppressWarnings("unchecked")
+    private void onInsertAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (listener instanceof BatchTableEventsListener) {
+            ((BatchTableEventsListener<ModelType>) listener).onInsertAllSuccess(list, databaseOperationMetadata);
+        } else {
+            for (final ModelType modelType : list) {
+                listener.onInsertSuccess(modelType, databaseOperationMetadata);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onInsertAllFailure(@NonNull List<ModelType> list, @NonNull Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (listener instanceof BatchTableEventsListener) {
+            ((BatchTableEventsListener<ModelType>) listener).onInsertAllFailure(list, e, databaseOperationMetadata);
+        } else {
+            for (final ModelType modelType : list) {
+                listener.onInsertFailure(modelType, e, databaseOperationMetadata);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onUpdateAllSuccess(@NonNull List<ModelType> oldList, @NonNull List<ModelType> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (listener instanceof BatchTableEventsListener) {
+            ((BatchTableEventsListener<ModelType>) listener).onUpdateAllSuccess(oldList, newList, databaseOperationMetadata);
+        } else {
+            for (int i = 0; i < oldList.size(); i++) {
+                listener.onUpdateSuccess(oldList.get(i), newList.get(i), databaseOperationMetadata);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onUpdateAllFailure(@NonNull List<ModelType> oldList, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (listener instanceof BatchTableEventsListener) {
+            ((BatchTableEventsListener<ModelType>) listener).onUpdateAllFailure(oldList, e, databaseOperationMetadata);
+        } else {
+            for (final ModelType modelType : oldList) {
+                listener.onUpdateFailure(modelType, e, databaseOperationMetadata);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onDeleteAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (listener instanceof BatchTableEventsListener) {
+            ((BatchTableEventsListener<ModelType>) listener).onDeleteAllSuccess(list, databaseOperationMetadata);
+        } else {
+            for (final ModelType modelType : list) {
+                listener.onDeleteSuccess(modelType, databaseOperationMetadata);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onDeleteAllFailure(@NonNull List<ModelType> list, @NonNull Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (listener instanceof BatchTableEventsListener) {
+            ((BatchTableEventsListener<ModelType>) listener).onDeleteAllFailure(list, e, databaseOperationMetadata);
+        } else {
+            for (final ModelType modelType : list) {
+                listener.onDeleteFailure(modelType, e, databaseOperationMetadata);
+            }
+        }
+    }
 }
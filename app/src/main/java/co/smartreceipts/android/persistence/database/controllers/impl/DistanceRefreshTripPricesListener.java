@@ -0,0 +1,23 @@
+package co.smartreceipts.android.persistence.database.controllers.impl;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
+
+/**
+ * A simple implementation of the {@link TableEventsListener} contract that will call {@link TripTableController#refreshPrices(Distance, Distance)}
+ * whenever we alter one of the underlying components in order to refresh our price data.
+ */
+class DistanceRefreshTripPricesListener extends RefreshTripPricesListener<Distance> {
+
+    public DistanceRefreshTripPricesListener(@NonNull TripTableController tripTableController) {
+        super(tripTableController);
+    }
+
+    @Override
+    protected void refreshTripPrices(@Nullable Distance oldDistance, @Nullable Distance newDistance) {
+        mTripTableController.refreshPrices(oldDistance, newDistance);
+    }
+}
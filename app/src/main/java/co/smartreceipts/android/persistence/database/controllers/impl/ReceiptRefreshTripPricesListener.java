@@ -8,22 +8,26 @@ import java.util.List;
 import co.smartreceipts.android.model.Receipt;
 import co.smartreceipts.android.model.Trip;
 import co.smartreceipts.android.persistence.database.controllers.ReceiptTableEventsListener;
-import co.smartreceipts.android.persistence.database.controllers.TableController;
 import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
 
 /**
- * A simple implementation of the {@link TableEventsListener} contract that will call {@link TripTableController#get()}
- * whenever we alter on of the underlying components in order to refresh our price data.
+ * A simple implementation of the {@link TableEventsListener} contract that will call {@link TripTableController#refreshPrices(Receipt, Receipt)}
+ * whenever we alter one of the underlying components in order to refresh our price data.
  */
 class ReceiptRefreshTripPricesListener extends RefreshTripPricesListener<Receipt> implements ReceiptTableEventsListener {
 
-    public ReceiptRefreshTripPricesListener(@NonNull TableController<Trip> tripTableController) {
+    public ReceiptRefreshTripPricesListener(@NonNull TripTableController tripTableController) {
         super(tripTableController);
     }
 
+    @Override
+    protected void refreshTripPrices(@Nullable Receipt oldReceipt, @Nullable Receipt newReceipt) {
+        mTripTableController.refreshPrices(oldReceipt, newReceipt);
+    }
+
     @Override
     public void onMoveSuccess(@NonNull Receipt oldReceipt, @NonNull Receipt newReceipt) {
-        mTripTableController.get();
+        refreshTripPrices(oldReceipt, newReceipt);
     }
 
     @Override
@@ -33,7 +37,7 @@ class ReceiptRefreshTripPricesListener extends RefreshTripPricesListener<Receipt
 
     @Override
     public void onCopySuccess(@NonNull Receipt oldReceipt, @NonNull Receipt newReceipt) {
-        mTripTableController.get();
+        refreshTripPrices(null, newReceipt);
     }
 
     @Override
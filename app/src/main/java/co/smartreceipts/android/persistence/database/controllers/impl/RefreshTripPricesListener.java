@@ -7,26 +7,35 @@ import com.google.common.base.Preconditions;
 
 import java.util.List;
 
-import co.smartreceipts.android.model.Trip;
-import co.smartreceipts.android.persistence.database.controllers.TableController;
+import co.smartreceipts.android.persistence.database.controllers.BatchTableEventsListener;
 import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import co.smartreceipts.android.persistence.database.operations.OperationFamilyType;
 
 /**
- * A simple implementation of the {@link TableEventsListener} contract that will call {@link TripTableController#get()}
- * whenever we alter on of the underlying components in order to refresh our price data.
+ * A simple implementation of the {@link TableEventsListener} contract that will notify our {@link TripTableController}
+ * whenever we alter one of the underlying components in order to refresh our price data. Rather than recomputing the
+ * price of every trip, only the delta between the old and new versions of the changed item is applied. Batch
+ * operations instead trigger a single full refresh, since this is cheaper than applying each delta separately.
  *
  * @param <ModelType> the model object type that this will be used to create
  */
-class RefreshTripPricesListener<ModelType> implements TableEventsListener<ModelType> {
+abstract class RefreshTripPricesListener<ModelType> implements BatchTableEventsListener<ModelType> {
 
-    protected final TableController<Trip> mTripTableController;
+    protected final TripTableController mTripTableController;
 
-    public RefreshTripPricesListener(@NonNull TableController<Trip> tripTableController) {
+    public RefreshTripPricesListener(@NonNull TripTableController tripTableController) {
         mTripTableController = Preconditions.checkNotNull(tripTableController);
     }
 
+    /**
+     * Refreshes the price of the trip(s) that these items belong to
+     *
+     * @param oldModelType the previous version of the item or {@code null} if it was inserted
+     * @param newModelType the current version of the item or {@code null} if it was deleted
+     */
+    protected abstract void refreshTripPrices(@Nullable ModelType oldModelType, @Nullable ModelType newModelType);
+
     @Override
     public void onGetSuccess(@NonNull List<ModelType> list) {
 
@@ -40,7 +49,7 @@ class RefreshTripPricesListener<ModelType> implements TableEventsListener<ModelT
     @Override
     public void onInsertSuccess(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
-            mTripTableController.get();
+            refreshTripPrices(null, modelType);
         }
     }
 
@@ -52,7 +61,7 @@ class RefreshTripPricesListener<ModelType> implements TableEventsListener<ModelT
     @Override
     public void onUpdateSuccess(@NonNull ModelType oldT, @NonNull ModelType newT, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
-            mTripTableController.get();
+            refreshTripPrices(oldT, newT);
         }
     }
 
@@ -64,7 +73,7 @@ class RefreshTripPricesListener<ModelType> implements TableEventsListener<ModelT
     @Override
     public void onDeleteSuccess(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
-            mTripTableController.get();
+            refreshTripPrices(modelType, null);
         }
     }
 
@@ -72,4 +81,40 @@ class RefreshTripPricesListener<ModelType> implements TableEventsListener<ModelT
     public void onDeleteFailure(@NonNull ModelType modelType, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
 
     }
+
+    @Override
+    public void onInsertAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mTripTableController.get();
+        }
+    }
+
+    @Override
+    public void onInsertAllFailure(@NonNull List<ModelType> list, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+
+    }
+
+    @Override
+    public void onUpdateAllSuccess(@NonNull List<ModelType> oldList, @NonNull List<ModelType> newList, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mTripTableController.get();
+        }
+    }
+
+    @Override
+    public void onUpdateAllFailure(@NonNull List<ModelType> oldList, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+
+    }
+
+    @Override
+    public void onDeleteAllSuccess(@NonNull List<ModelType> list, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (databaseOperationMetadata.getOperationFamilyType() != OperationFamilyType.Sync) {
+            mTripTableController.get();
+        }
+    }
+
+    @Override
+    public void onDeleteAllFailure(@NonNull List<ModelType> list, @Nullable Throwable e, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+
+    }
 }
@@ -1,19 +1,156 @@
 package co.smartreceipts.android.persistence.database.controllers.impl;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.hadisatrio.optional.Optional;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import javax.inject.Inject;
 
 import co.smartreceipts.android.analytics.Analytics;
+import co.smartreceipts.android.analytics.events.ErrorEvent;
 import co.smartreceipts.android.di.scopes.ApplicationScope;
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.Receipt;
 import co.smartreceipts.android.model.Trip;
 import co.smartreceipts.android.persistence.PersistenceManager;
+import co.smartreceipts.android.persistence.database.aggregation.TripPriceMaintainer;
+import co.smartreceipts.android.persistence.database.controllers.alterations.TableActionAlterations;
 import co.smartreceipts.android.persistence.database.controllers.alterations.TripTableActionAlterations;
+import co.smartreceipts.android.persistence.database.controllers.results.GetResult;
+import co.smartreceipts.android.persistence.database.tables.Table;
+import co.smartreceipts.android.utils.log.Logger;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 
 @ApplicationScope
 public class TripTableController extends AbstractTableController<Trip> {
 
+    private final Table<Trip, String> mTripsTable;
+    private final TripPriceMaintainer mTripPriceMaintainer;
+
     @Inject
     public TripTableController(PersistenceManager persistenceManager, Analytics analytics) {
-        super(persistenceManager.getDatabase().getTripsTable(), new TripTableActionAlterations(persistenceManager), analytics);
+        this(persistenceManager.getDatabase().getTripsTable(), new TripTableActionAlterations(persistenceManager),
+                new TripPriceMaintainer(persistenceManager.getPreferenceManager()), analytics);
+    }
+
+    private TripTableController(@NonNull Table<Trip, String> tripsTable, @NonNull TableActionAlterations<Trip> tableActionAlterations,
+                                @NonNull TripPriceMaintainer tripPriceMaintainer, @NonNull Analytics analytics) {
+        super(tripsTable, tableActionAlterations, analytics);
+        mTripsTable = Preconditions.checkNotNull(tripsTable);
+        mTripPriceMaintainer = Preconditions.checkNotNull(tripPriceMaintainer);
+    }
+
+    TripTableController(@NonNull Table<Trip, String> tripsTable, @NonNull TableActionAlterations<Trip> tableActionAlterations,
+                        @NonNull TripPriceMaintainer tripPriceMaintainer, @NonNull Analytics analytics,
+                        @NonNull Scheduler subscribeOnScheduler, @NonNull Scheduler observeOnScheduler) {
+        super(tripsTable, tableActionAlterations, analytics, subscribeOnScheduler, observeOnScheduler);
+        mTripsTable = Preconditions.checkNotNull(tripsTable);
+        mTripPriceMaintainer = Preconditions.checkNotNull(tripPriceMaintainer);
+    }
+
+    /**
+     * Applies the price delta of a single receipt change to its parent trip(s) and notifies our listeners with the
+     * current set of trips, without recomputing the price of every other trip. If this fails for some reason, we
+     * fall back to a full {@link #get()}
+     *
+     * @param oldReceipt the previous version of the {@link Receipt} or {@code null} if it was inserted
+     * @param newReceipt the current version of the {@link Receipt} or {@code null} if it was deleted
+     */
+    public void refreshPrices(@Nullable Receipt oldReceipt, @Nullable Receipt newReceipt) {
+        Logger.info(this, "#refreshPrices: {}; {}", oldReceipt, newReceipt);
+        refreshPrices(() -> {
+            final Optional<Trip> oldTripOptional = oldReceipt != null ? findCachedTrip(oldReceipt.getTrip()) : Optional.<Trip>absent();
+            final Optional<Trip> newTripOptional = newReceipt != null ? findCachedTrip(newReceipt.getTrip()) : Optional.<Trip>absent();
+            if ((oldReceipt != null && !oldTripOptional.isPresent()) || (newReceipt != null && !newTripOptional.isPresent())) {
+                return false;
+            }
+            final Trip oldTrip = oldTripOptional.orNull();
+            final Trip newTrip = newTripOptional.orNull();
+            if (oldTrip != null && oldTrip == newTrip) {
+                mTripPriceMaintainer.applyReceiptDelta(oldTrip, oldReceipt, newReceipt);
+            } else {
+                if (oldTrip != null) {
+                    mTripPriceMaintainer.applyReceiptDelta(oldTrip, oldReceipt, null);
+                }
+                if (newTrip != null) {
+                    mTripPriceMaintainer.applyReceiptDelta(newTrip, null, newReceipt);
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Applies the price delta of a single distance change to its parent trip(s) and notifies our listeners with the
+     * current set of trips, without recomputing the price of every other trip. If this fails for some reason, we
+     * fall back to a full {@link #get()}
+     *
+     * @param oldDistance the previous version of the {@link Distance} or {@code null} if it was inserted
+     * @param newDistance the current version of the {@link Distance} or {@code null} if it was deleted
+     */
+    public void refreshPrices(@Nullable Distance oldDistance, @Nullable Distance newDistance) {
+        Logger.info(this, "#refreshPrices: {}; {}", oldDistance, newDistance);
+        refreshPrices(() -> {
+            final Optional<Trip> oldTripOptional = oldDistance != null ? findCachedTrip(oldDistance.getTrip()) : Optional.<Trip>absent();
+            final Optional<Trip> newTripOptional = newDistance != null ? findCachedTrip(newDistance.getTrip()) : Optional.<Trip>absent();
+            if ((oldDistance != null && !oldTripOptional.isPresent()) || (newDistance != null && !newTripOptional.isPresent())) {
+                return false;
+            }
+            final Trip oldTrip = oldTripOptional.orNull();
+            final Trip newTrip = newTripOptional.orNull();
+            if (oldTrip != null && oldTrip == newTrip) {
+                mTripPriceMaintainer.applyDistanceDelta(oldTrip, oldDistance, newDistance);
+            } else {
+                if (oldTrip != null) {
+                    mTripPriceMaintainer.applyDistanceDelta(oldTrip, oldDistance, null);
+                }
+                if (newTrip != null) {
+                    mTripPriceMaintainer.applyDistanceDelta(newTrip, null, newDistance);
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Applies a price delta and then publishes our cached trips to our listeners
+     *
+     * @param priceDeltaCallable returns {@code true} if the delta was applied or {@code false} if the affected trips
+     * are not cached, in which case we fall back to a full {@link #get()}
+     */
+    private void refreshPrices(@NonNull Callable<Boolean> priceDeltaCallable) {
+        Single.fromCallable(priceDeltaCallable)
+                .subscribeOn(mSubscribeOnScheduler)
+                .flatMap(isApplied -> isApplied ? mTripsTable.get().<Optional<List<Trip>>>map(Optional::of) : Single.just(Optional.<List<Trip>>absent()))
+                .subscribe(tripsOptional -> {
+                    if (tripsOptional.isPresent()) {
+                        Logger.debug(TripTableController.this, "#onGetSuccess - onNext");
+                        getStreamSubject.onNext(new GetResult<>(tripsOptional.get()));
+                    } else {
+                        Logger.info(TripTableController.this, "Our trips are not cached. Refreshing all trips instead");
+                        get();
+                    }
+                }, throwable -> {
+                    Logger.error(TripTableController.this, "Failed to apply the price delta. Refreshing all trips instead", throwable);
+                    mAnalytics.record(new ErrorEvent(TripTableController.this, throwable));
+                    get();
+                });
+    }
+
+    /**
+     * Since we mutate the price of our trips in place, we only use the instance that is held in our table's cache
+     * (ie the one that our listeners have) rather than the one attached to the child model object. If our trips are
+     * not cached, a lookup would instead load a fresh copy that none of our listeners hold, so we skip it
+     */
+    @NonNull
+    private Optional<Trip> findCachedTrip(@NonNull Trip trip) {
+        return mTripsTable.findCachedByPrimaryKey(trip.getName());
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,42 @@
+package co.smartreceipts.android.persistence.database.controllers.results;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
+
+public class InsertAllResult<ModelType> {
+
+    private final List<ModelType> models;
+    private final Throwable throwable;
+    private final DatabaseOperationMetadata databaseOperationMetadata;
+
+    public InsertAllResult(@NonNull List<ModelType> models, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        this(models, null, databaseOperationMetadata);
+    }
+
+    public InsertAllResult(@NonNull List<ModelType> models, @Nullable Throwable throwable, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        this.models = Preconditions.checkNotNull(models);
+        this.throwable = throwable;
+        this.databaseOperationMetadata = Preconditions.checkNotNull(databaseOperationMetadata);
+    }
+
+    @NonNull
+    public List<ModelType> get() {
+        return models;
+    }
+
+    @Nullable
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    @NonNull
+    public DatabaseOperationMetadata getDatabaseOperationMetadata() {
+        return databaseOperationMetadata;
+    }
+}
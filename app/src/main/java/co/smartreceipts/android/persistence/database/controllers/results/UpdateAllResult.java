@@ -0,0 +1,54 @@
+package co.smartreceipts.android.persistence.database.controllers.results;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
+
+public class UpdateAllResult<ModelType> {
+
+    private final List<ModelType> oldModels;
+    private final List<ModelType> newModels;
+    private final Throwable throwable;
+    private final DatabaseOperationMetadata databaseOperationMetadata;
+
+    public UpdateAllResult(@NonNull List<ModelType> oldModels, @NonNull List<ModelType> newModels, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        this(oldModels, newModels, null, databaseOperationMetadata);
+    }
+
+    public UpdateAllResult(@NonNull List<ModelType> oldModels, @NonNull Throwable throwable, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        this(oldModels, null, throwable, databaseOperationMetadata);
+    }
+
+    public UpdateAllResult(@NonNull List<ModelType> oldModels, @Nullable List<ModelType> newModels,
+                           @Nullable Throwable throwable, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        this.oldModels = Preconditions.checkNotNull(oldModels);
+        this.newModels = newModels;
+        this.throwable = throwable;
+        this.databaseOperationMetadata = Preconditions.checkNotNull(databaseOperationMetadata);
+    }
+
+    @NonNull
+    public List<ModelType> getOld() {
+        return oldModels;
+    }
+
+    @Nullable
+    public List<ModelType> getNew() {
+        return newModels;
+    }
+
+    @Nullable
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    @NonNull
+    public DatabaseOperationMetadata getDatabaseOperationMetadata() {
+        return databaseOperationMetadata;
+    }
+}
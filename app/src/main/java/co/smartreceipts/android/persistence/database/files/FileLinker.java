@@ -0,0 +1,100 @@
+package co.smartreceipts.android.persistence.database.files;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import java.io.File;
+
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Allows multiple receipts to share a single copy of a byte-identical file via hard links. Links require Lollipop (and
+ * a file system that supports them, which excludes some emulated external storage), so callers must always be ready
+ * to fall back to a regular copy when {@link #link(File, File)} returns {@code false}.
+ * <p>
+ * Please note that anything that modifies a linked receipt file must write a new file and rename it over the old one
+ * instead of writing in place, since the latter would also modify every other receipt that shares it.
+ * </p>
+ */
+public class FileLinker {
+
+    /**
+     * Creates a new hard link to an existing file
+     *
+     * @param existing the existing file
+     * @param link the new link to create. This must not exist yet
+     * @return {@code true} if this link was created. {@code false} otherwise
+     */
+    public boolean link(@NonNull File existing, @NonNull File link) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        return linkApi21(existing, link);
+    }
+
+    /**
+     * Replaces a file with a hard link to another one. This is done atomically, so the target file is left untouched
+     * if we fail
+     *
+     * @param existing the existing file to link to
+     * @param target the file to replace
+     * @return {@code true} if the target was replaced. {@code false} otherwise
+     */
+    public boolean replaceWithLink(@NonNull File existing, @NonNull File target) {
+        final File temporaryLink = new File(target.getParentFile(), "." + target.getName() + ".link");
+        if (temporaryLink.exists() && !temporaryLink.delete()) {
+            return false;
+        }
+        if (!link(existing, temporaryLink)) {
+            return false;
+        }
+        if (temporaryLink.renameTo(target)) {
+            return true;
+        } else {
+            Logger.warn(this, "Failed to replace {} with a link", target.getName());
+            if (!temporaryLink.delete()) {
+                Logger.error(this, "Failed to delete our temporary link {}", temporaryLink.getName());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param file1 the first file
+     * @param file2 the second file
+     * @return {@code true} if both of these are links to the same underlying file. {@code false} if they're not or if
+     * we're unable to tell
+     */
+    public boolean isSameFile(@NonNull File file1, @NonNull File file2) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        return isSameFileApi21(file1, file2);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean linkApi21(@NonNull File existing, @NonNull File link) {
+        try {
+            Os.link(existing.getAbsolutePath(), link.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            Logger.debug(this, "Unable to link {} to {}: {}", link.getName(), existing.getName(), e.getMessage());
+            return false;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean isSameFileApi21(@NonNull File file1, @NonNull File file2) {
+        try {
+            final StructStat stat1 = Os.stat(file1.getAbsolutePath());
+            final StructStat stat2 = Os.stat(file2.getAbsolutePath());
+            return stat1.st_dev == stat2.st_dev && stat1.st_ino == stat2.st_ino;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+}
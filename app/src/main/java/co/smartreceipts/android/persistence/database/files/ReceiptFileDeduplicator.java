@@ -0,0 +1,91 @@
+package co.smartreceipts.android.persistence.database.files;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.utils.log.Logger;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Reclaims the local storage that is used by duplicate receipt files (eg after a receipt was copied to another trip
+ * on a device that did not support links at the time), by replacing each byte-identical copy with a hard link to a
+ * single file. This reads every receipt file that isn't already indexed by the {@link ReceiptFileIndex}, so it's
+ * intended to be run as a background task.
+ */
+public class ReceiptFileDeduplicator {
+
+    private final ReceiptsTable mReceiptsTable;
+    private final ReceiptFileIndex mReceiptFileIndex;
+    private final FileLinker mFileLinker;
+
+    public ReceiptFileDeduplicator(@NonNull ReceiptsTable receiptsTable, @NonNull ReceiptFileIndex receiptFileIndex) {
+        this(receiptsTable, receiptFileIndex, new FileLinker());
+    }
+
+    @VisibleForTesting
+    ReceiptFileDeduplicator(@NonNull ReceiptsTable receiptsTable, @NonNull ReceiptFileIndex receiptFileIndex, @NonNull FileLinker fileLinker) {
+        mReceiptsTable = Preconditions.checkNotNull(receiptsTable);
+        mReceiptFileIndex = Preconditions.checkNotNull(receiptFileIndex);
+        mFileLinker = Preconditions.checkNotNull(fileLinker);
+    }
+
+    /**
+     * @return a {@link Single} that emits the number of bytes that were reclaimed
+     */
+    @NonNull
+    public Single<Long> reclaimDuplicateStorage() {
+        return mReceiptsTable.get().map(this::reclaimDuplicateStorageBlocking);
+    }
+
+    /**
+     * Reclaims our duplicate storage on a background thread. This should be called after a backup was restored, since
+     * the restored receipts were written directly to our database, so we first drop any stale cached receipts
+     */
+    public void reclaimDuplicateStorageInBackground() {
+        mReceiptsTable.clearCache();
+        reclaimDuplicateStorage()
+                .subscribeOn(Schedulers.io())
+                .subscribe(reclaimedBytes -> Logger.debug(this, "Completed our duplicate storage reclamation"),
+                        throwable -> Logger.warn(this, "Failed to reclaim our duplicate storage", throwable));
+    }
+
+    @VisibleForTesting
+    long reclaimDuplicateStorageBlocking(@NonNull List<Receipt> receipts) throws IOException {
+        final Map<String, File> filesByHash = new HashMap<>();
+        long reclaimedBytes = 0;
+        for (final Receipt receipt : receipts) {
+            final File file = receipt.getFile();
+            final String hash = mReceiptFileIndex.getHash(receipt.getId(), file);
+            if (hash == null) {
+                continue;
+            }
+
+            final File original = filesByHash.get(hash);
+            if (original == null) {
+                filesByHash.put(hash, file);
+            } else if (!original.equals(file) && !mFileLinker.isSameFile(original, file) && FileUtils.contentEquals(original, file)) {
+                final long length = file.length();
+                if (mFileLinker.replaceWithLink(original, file)) {
+                    Logger.debug(this, "Replaced the file for receipt {} with a link to {}", receipt.getId(), original.getName());
+                    mReceiptFileIndex.put(receipt.getId(), file, hash);
+                    reclaimedBytes += length;
+                }
+            }
+        }
+        Logger.info(this, "Reclaimed {} bytes of duplicate receipt files", reclaimedBytes);
+        return reclaimedBytes;
+    }
+}
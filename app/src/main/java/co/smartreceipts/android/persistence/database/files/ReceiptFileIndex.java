@@ -0,0 +1,184 @@
+package co.smartreceipts.android.persistence.database.files;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+
+import co.smartreceipts.android.persistence.database.tables.AbstractSqlTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.sync.model.impl.Identifier;
+import co.smartreceipts.android.utils.log.Logger;
+import wb.android.storage.StorageManager;
+
+/**
+ * Maintains a content hash (ie an MD5 checksum) of the file that is attached to each receipt. This lives alongside our
+ * receipts table, so copies and syncs can recognize byte-identical files without reading them again, and we can find
+ * an existing Google Drive file with identical content instead of uploading a new one.
+ * <p>
+ * Each hash is stored with the length and last modified time of the file that it was computed from. A hash is only
+ * trusted while these still match the file on disk, so any stale rows (eg after an image was rotated in place) are
+ * simply recomputed the next time that they're needed.
+ * </p>
+ */
+public class ReceiptFileIndex {
+
+    public static final String TABLE_NAME = "receipt_file_hashes";
+    public static final String COLUMN_RECEIPT_ID = "receipt_id";
+    public static final String COLUMN_HASH = "hash";
+    public static final String COLUMN_LENGTH = "length";
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    private final SQLiteOpenHelper mSQLiteOpenHelper;
+
+    public ReceiptFileIndex(@NonNull SQLiteOpenHelper sqLiteOpenHelper) {
+        mSQLiteOpenHelper = Preconditions.checkNotNull(sqLiteOpenHelper);
+    }
+
+    /**
+     * Creates our index table and the triggers that drop a receipt's hash when it's deleted or its file changes. This
+     * should be called after the receipts table has been created
+     *
+     * @param db the {@link SQLiteDatabase} to create these in
+     */
+    public void onCreate(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + COLUMN_RECEIPT_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_HASH + " TEXT NOT NULL, "
+                + COLUMN_LENGTH + " INTEGER DEFAULT 0, "
+                + COLUMN_LAST_MODIFIED + " INTEGER DEFAULT 0)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + COLUMN_HASH + " ON " + TABLE_NAME + " (" + COLUMN_HASH + ")");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_delete AFTER DELETE ON " + ReceiptsTable.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_RECEIPT_ID + " = old." + ReceiptsTable.COLUMN_ID + "; END");
+        // Note: Every receipt update re-writes its path (even if unchanged), so we only drop the hash if it actually changed
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_update AFTER UPDATE OF " + ReceiptsTable.COLUMN_PATH + " ON " + ReceiptsTable.TABLE_NAME
+                + " WHEN old." + ReceiptsTable.COLUMN_PATH + " IS NOT new." + ReceiptsTable.COLUMN_PATH + " BEGIN "
+                + "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_RECEIPT_ID + " = old." + ReceiptsTable.COLUMN_ID + "; END");
+    }
+
+    /**
+     * Creates our index if we're upgrading from a version that did not have one. We intentionally don't populate it
+     * here, since hashing every receipt file would make the upgrade very slow. Instead, each hash is computed lazily
+     *
+     * @param db the {@link SQLiteDatabase} to upgrade
+     * @param oldVersion the old database version
+     * @param newVersion the new database version
+     */
+    public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion <= 16) { // Add our receipt file hashes
+            onCreate(db);
+        }
+    }
+
+    /**
+     * Fetches the content hash of a receipt's file, computing (and indexing) it if we don't already have a current
+     * value for it. Please note that this may need to read the entire file, so it should not be called from the UI
+     * thread
+     *
+     * @param receiptId the id of the receipt
+     * @param file the receipt's file
+     * @return the hash of this file or {@code null} if it could not be read
+     */
+    @Nullable
+    public String getHash(int receiptId, @Nullable File file) {
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        Cursor cursor = null;
+        try {
+            cursor = mSQLiteOpenHelper.getReadableDatabase().query(TABLE_NAME, new String[]{COLUMN_HASH},
+                    COLUMN_RECEIPT_ID + " = ? AND " + COLUMN_LENGTH + " = ? AND " + COLUMN_LAST_MODIFIED + " = ?",
+                    new String[]{Integer.toString(receiptId), Long.toString(length), Long.toString(lastModified)}, null, null, null);
+            if (cursor.moveToFirst()) {
+                return cursor.getString(0);
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        final String hash = StorageManager.getMD5Checksum(file);
+        if (hash != null) {
+            put(receiptId, hash, length, lastModified);
+        } else {
+            Logger.warn(this, "Failed to compute the hash of the file for receipt {}", receiptId);
+        }
+        return hash;
+    }
+
+    /**
+     * Records the hash of a receipt's file (eg if we already know it, because this file is a copy of another one)
+     *
+     * @param receiptId the id of the receipt
+     * @param file the receipt's file
+     * @param hash the hash of this file's contents
+     */
+    public void put(int receiptId, @NonNull File file, @NonNull String hash) {
+        put(receiptId, hash, file.length(), file.lastModified());
+    }
+
+    /**
+     * Finds a Google Drive file that we can share with a receipt instead of uploading an identical copy of it. We only
+     * consider receipts that are fully synced (ie the contents of their Drive file match their local file) and that
+     * aren't waiting to be deleted (ie whose Drive file won't disappear from under us)
+     *
+     * @param receiptId the id of the receipt that we're about to upload
+     * @param hash the hash of this receipt's file
+     * @return the {@link Identifier} of a Drive file with identical contents or {@code null} if we don't have one
+     */
+    @Nullable
+    public Identifier findSyncedDriveFile(int receiptId, @NonNull String hash) {
+        final String query = "SELECT r." + AbstractSqlTable.COLUMN_DRIVE_SYNC_ID
+                + " FROM " + TABLE_NAME + " h INNER JOIN " + ReceiptsTable.TABLE_NAME + " r ON r." + ReceiptsTable.COLUMN_ID + " = h." + COLUMN_RECEIPT_ID
+                + " WHERE h." + COLUMN_HASH + " = ? AND h." + COLUMN_RECEIPT_ID + " != ?"
+                + " AND r." + AbstractSqlTable.COLUMN_DRIVE_SYNC_ID + " IS NOT NULL"
+                + " AND r." + AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED + " = 1"
+                + " AND r." + AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION + " = 0"
+                + " LIMIT 1";
+        Cursor cursor = null;
+        try {
+            cursor = mSQLiteOpenHelper.getReadableDatabase().rawQuery(query, new String[]{hash, Integer.toString(receiptId)});
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return new Identifier(cursor.getString(0));
+            } else {
+                return null;
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * @param receiptId the id of a receipt that uses this Drive file
+     * @param driveFileId the {@link Identifier} of the Drive file
+     * @return {@code true} if any other receipt also uses this Drive file, in which case it must not be modified or
+     * deleted on behalf of this receipt alone
+     */
+    public boolean isDriveFileShared(int receiptId, @NonNull Identifier driveFileId) {
+        return DatabaseUtils.queryNumEntries(mSQLiteOpenHelper.getReadableDatabase(), ReceiptsTable.TABLE_NAME,
+                AbstractSqlTable.COLUMN_DRIVE_SYNC_ID + " = ? AND " + ReceiptsTable.COLUMN_ID + " != ?",
+                new String[]{driveFileId.getId(), Integer.toString(receiptId)}) > 0;
+    }
+
+    private void put(int receiptId, @NonNull String hash, long length, long lastModified) {
+        final ContentValues values = new ContentValues(4);
+        values.put(COLUMN_RECEIPT_ID, receiptId);
+        values.put(COLUMN_HASH, hash);
+        values.put(COLUMN_LENGTH, length);
+        values.put(COLUMN_LAST_MODIFIED, lastModified);
+        mSQLiteOpenHelper.getWritableDatabase().insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
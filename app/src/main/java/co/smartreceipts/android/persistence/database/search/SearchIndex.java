@@ -0,0 +1,246 @@
+package co.smartreceipts.android.persistence.database.search;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.tables.DistanceTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.persistence.database.tables.TripsTable;
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Maintains a set of SQLite FTS4 shadow tables over the free-text columns of our receipts, trips, and distances. Each
+ * index row shares the rowid (ie the docid) of its source row and is kept current via triggers, so we can perform
+ * prefix searches against the index instead of scanning the source tables with {@code LIKE '%text%'} queries.
+ * <p>
+ * Please note that the index is only ever used to find candidate rowids. All queries join back against the source
+ * table, so any stale index rows (eg from an {@code INSERT OR REPLACE}, which does not fire our delete triggers) are
+ * simply ignored.
+ * </p>
+ */
+public class SearchIndex {
+
+    private static final IndexDefinition RECEIPTS = new IndexDefinition("receipts_search", ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID,
+            ReceiptsTable.COLUMN_NAME, ReceiptsTable.COLUMN_COMMENT);
+    private static final IndexDefinition TRIPS = new IndexDefinition("trips_search", TripsTable.TABLE_NAME, TripsTable.COLUMN_NAME,
+            TripsTable.COLUMN_NAME, TripsTable.COLUMN_COST_CENTER);
+    private static final IndexDefinition DISTANCE = new IndexDefinition("distance_search", DistanceTable.TABLE_NAME, DistanceTable.COLUMN_ID,
+            DistanceTable.COLUMN_LOCATION);
+    private static final IndexDefinition[] DEFINITIONS = new IndexDefinition[]{RECEIPTS, TRIPS, DISTANCE};
+
+    /**
+     * Creates each index and its triggers. This should be called after all source tables have been created
+     *
+     * @param db the {@link SQLiteDatabase} to create these in
+     */
+    public void onCreate(@NonNull SQLiteDatabase db) {
+        for (final IndexDefinition definition : DEFINITIONS) {
+            definition.create(db);
+        }
+    }
+
+    /**
+     * Creates and populates each index if we're upgrading from a version that did not have one. This should be called
+     * after all source tables have been upgraded
+     *
+     * @param db the {@link SQLiteDatabase} to upgrade
+     * @param oldVersion the old database version
+     * @param newVersion the new database version
+     */
+    public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion <= 15) { // Add our full-text search indices
+            for (final IndexDefinition definition : DEFINITIONS) {
+                definition.create(db);
+                definition.rebuild(db);
+            }
+        }
+    }
+
+    /**
+     * Repopulates each existing index from its source table. This should be called after the source tables were
+     * written without our triggers being kept in sync with them (eg when applying a change log from another device).
+     * Any index that does not exist yet is skipped, since {@link #onUpgrade(SQLiteDatabase, int, int)} will both create
+     * and populate it
+     *
+     * @param db the {@link SQLiteDatabase} to rebuild these in
+     */
+    public void rebuild(@NonNull SQLiteDatabase db) {
+        for (final IndexDefinition definition : DEFINITIONS) {
+            if (DatabaseUtils.queryNumEntries(db, "sqlite_master", "type = 'table' AND name = ?", new String[]{definition.indexName}) > 0) {
+                definition.rebuild(db);
+            }
+        }
+    }
+
+    /**
+     * Fetches the distinct, trimmed values of a column whose words start with each of the words in this text. If the
+     * text does not contain any words, all distinct values of this column will be returned instead
+     *
+     * @param db the {@link SQLiteDatabase} to query
+     * @param sourceTable the name of the source table (eg {@link ReceiptsTable#TABLE_NAME})
+     * @param column the indexed column within this table
+     * @param text the partial text that the user has entered
+     * @return a {@link Cursor} with a single {@code _id} column of matching values, sorted by this column
+     */
+    @NonNull
+    public Cursor getAutoCompleteCursor(@NonNull SQLiteDatabase db, @NonNull String sourceTable, @NonNull String column, @Nullable CharSequence text) {
+        final IndexDefinition definition = getDefinition(sourceTable, column);
+        final String matchQuery = buildPrefixQuery(column, text);
+        final String select = "SELECT DISTINCT TRIM(" + column + ") AS _id FROM " + sourceTable;
+        if (matchQuery == null) {
+            return db.rawQuery(select + " WHERE " + column + " IS NOT NULL ORDER BY " + column, null);
+        } else {
+            return db.rawQuery(select + " WHERE rowid IN (" + definition.getMatchingDocIdsQuery() + ") ORDER BY " + column, new String[]{ matchQuery });
+        }
+    }
+
+    /**
+     * @param db the {@link SQLiteDatabase} to query
+     * @param text the search text
+     * @return the ids of all receipts with a name or comment that matches each word in this text as a prefix
+     */
+    @NonNull
+    public List<Integer> searchReceiptIds(@NonNull SQLiteDatabase db, @Nullable CharSequence text) {
+        return toIntegers(search(db, RECEIPTS, text));
+    }
+
+    /**
+     * @param db the {@link SQLiteDatabase} to query
+     * @param text the search text
+     * @return the names of all trips with a name or cost center that matches each word in this text as a prefix
+     */
+    @NonNull
+    public List<String> searchTripNames(@NonNull SQLiteDatabase db, @Nullable CharSequence text) {
+        return search(db, TRIPS, text);
+    }
+
+    /**
+     * @param db the {@link SQLiteDatabase} to query
+     * @param text the search text
+     * @return the ids of all distances with a location that matches each word in this text as a prefix
+     */
+    @NonNull
+    public List<Integer> searchDistanceIds(@NonNull SQLiteDatabase db, @Nullable CharSequence text) {
+        return toIntegers(search(db, DISTANCE, text));
+    }
+
+    /**
+     * Converts free text into an FTS prefix query, in which each word of the text must be the prefix of some word in
+     * the indexed row. We strip all punctuation, since the default FTS tokenizer treats it as a separator anyway and
+     * this protects us from FTS query syntax errors (eg unbalanced quotes)
+     *
+     * @param column the column to restrict this query to or {@code null} to search all columns
+     * @param text the search text
+     * @return the FTS {@code MATCH} query or {@code null} if this text does not contain any words
+     */
+    @Nullable
+    static String buildPrefixQuery(@Nullable String column, @Nullable CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        final List<String> terms = new ArrayList<>();
+        for (final String token : text.toString().split("[^\\p{L}\\p{N}]+")) {
+            if (!TextUtils.isEmpty(token)) {
+                terms.add(column != null ? column + ":" + token + "*" : token + "*");
+            }
+        }
+        return terms.isEmpty() ? null : TextUtils.join(" ", terms);
+    }
+
+    @NonNull
+    private List<String> search(@NonNull SQLiteDatabase db, @NonNull IndexDefinition definition, @Nullable CharSequence text) {
+        final List<String> results = new ArrayList<>();
+        final String matchQuery = buildPrefixQuery(null, text);
+        if (matchQuery == null) {
+            return results;
+        }
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + definition.primaryKeyColumn + " FROM " + definition.sourceTable + " WHERE rowid IN (" + definition.getMatchingDocIdsQuery() + ")", new String[]{ matchQuery });
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    results.add(cursor.getString(0));
+                }
+                while (cursor.moveToNext());
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return results;
+    }
+
+    @NonNull
+    private static List<Integer> toIntegers(@NonNull List<String> values) {
+        final List<Integer> integers = new ArrayList<>(values.size());
+        for (final String value : values) {
+            integers.add(Integer.parseInt(value));
+        }
+        return integers;
+    }
+
+    @NonNull
+    private static IndexDefinition getDefinition(@NonNull String sourceTable, @NonNull String column) {
+        for (final IndexDefinition definition : DEFINITIONS) {
+            if (definition.sourceTable.equals(sourceTable) && definition.columns.contains(column)) {
+                return definition;
+            }
+        }
+        throw new IllegalArgumentException("No search index exists for " + sourceTable + "." + column);
+    }
+
+    private static final class IndexDefinition {
+
+        private final String indexName;
+        private final String sourceTable;
+        private final String primaryKeyColumn;
+        private final List<String> columns;
+
+        IndexDefinition(@NonNull String indexName, @NonNull String sourceTable, @NonNull String primaryKeyColumn, @NonNull String... columns) {
+            this.indexName = indexName;
+            this.sourceTable = sourceTable;
+            this.primaryKeyColumn = primaryKeyColumn;
+            this.columns = new ArrayList<>();
+            for (final String column : columns) {
+                this.columns.add(column);
+            }
+        }
+
+        void create(@NonNull SQLiteDatabase db) {
+            final String columnList = TextUtils.join(", ", columns);
+            final String newValues = "new." + TextUtils.join(", new.", columns);
+            final String deleteOld = "DELETE FROM " + indexName + " WHERE docid = old.rowid; ";
+            final String insertNew = "DELETE FROM " + indexName + " WHERE docid = new.rowid; "
+                    + "INSERT INTO " + indexName + "(docid, " + columnList + ") VALUES (new.rowid, " + newValues + "); ";
+
+            final String createIndex = "CREATE VIRTUAL TABLE IF NOT EXISTS " + indexName + " USING fts4(" + columnList + ")";
+            final String insertTrigger = "CREATE TRIGGER IF NOT EXISTS " + indexName + "_insert AFTER INSERT ON " + sourceTable + " BEGIN " + insertNew + "END";
+            final String updateTrigger = "CREATE TRIGGER IF NOT EXISTS " + indexName + "_update AFTER UPDATE ON " + sourceTable + " BEGIN " + deleteOld + insertNew + "END";
+            final String deleteTrigger = "CREATE TRIGGER IF NOT EXISTS " + indexName + "_delete AFTER DELETE ON " + sourceTable + " BEGIN " + deleteOld + "END";
+            Logger.debug(SearchIndex.class, createIndex);
+            db.execSQL(createIndex);
+            db.execSQL(insertTrigger);
+            db.execSQL(updateTrigger);
+            db.execSQL(deleteTrigger);
+        }
+
+        void rebuild(@NonNull SQLiteDatabase db) {
+            final String columnList = TextUtils.join(", ", columns);
+            db.execSQL("DELETE FROM " + indexName);
+            db.execSQL("INSERT INTO " + indexName + "(docid, " + columnList + ") SELECT rowid, " + columnList + " FROM " + sourceTable);
+        }
+
+        @NonNull
+        String getMatchingDocIdsQuery() {
+            return "SELECT docid FROM " + indexName + " WHERE " + indexName + " MATCH ?";
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package co.smartreceipts.android.persistence.database.search;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+
+/**
+ * The results of a global full-text search across our trips, receipts, and distances
+ */
+public class SearchResults {
+
+    private final List<Trip> trips;
+    private final List<Receipt> receipts;
+    private final List<Distance> distances;
+
+    public SearchResults(@NonNull List<Trip> trips, @NonNull List<Receipt> receipts, @NonNull List<Distance> distances) {
+        this.trips = Preconditions.checkNotNull(trips);
+        this.receipts = Preconditions.checkNotNull(receipts);
+        this.distances = Preconditions.checkNotNull(distances);
+    }
+
+    @NonNull
+    public List<Trip> getTrips() {
+        return trips;
+    }
+
+    @NonNull
+    public List<Receipt> getReceipts() {
+        return receipts;
+    }
+
+    @NonNull
+    public List<Distance> getDistances() {
+        return distances;
+    }
+
+    public boolean isEmpty() {
+        return trips.isEmpty() && receipts.isEmpty() && distances.isEmpty();
+    }
+}
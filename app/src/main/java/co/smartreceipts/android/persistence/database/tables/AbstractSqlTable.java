@@ -2,16 +2,22 @@ package co.smartreceipts.android.persistence.database.tables;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 
 import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import co.smartreceipts.android.persistence.database.defaults.TableDefaultsCustomizer;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
@@ -24,6 +30,7 @@ import co.smartreceipts.android.persistence.database.tables.ordering.DefaultOrde
 import co.smartreceipts.android.persistence.database.tables.ordering.OrderBy;
 import co.smartreceipts.android.sync.model.Syncable;
 import co.smartreceipts.android.sync.provider.SyncProvider;
+import co.smartreceipts.android.utils.log.Logger;
 import io.reactivex.Single;
 
 /**
@@ -40,6 +47,9 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
     public static final String COLUMN_DRIVE_MARKED_FOR_DELETION = "drive_marked_for_deletion";
     public static final String COLUMN_LAST_LOCAL_MODIFICATION_TIME = "last_local_modification_time";
 
+    // SQLite limits us to 999 arguments per query
+    private static final int MAX_QUERY_ARGUMENTS = 900;
+
     private final SQLiteOpenHelper mSQLiteOpenHelper;
     private final String mTableName;
 
@@ -49,6 +59,7 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
 
     private SQLiteDatabase initialNonRecursivelyCalledDatabase;
     private List<ModelType> mCachedResults;
+    private Map<PrimaryKeyType, ModelType> mCachedResultsByPrimaryKey;
 
     public AbstractSqlTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper, @NonNull String tableName, @NonNull DatabaseAdapter<ModelType, PrimaryKey<ModelType, PrimaryKeyType>> databaseAdapter,
                             @NonNull PrimaryKey<ModelType, PrimaryKeyType> primaryKey) {
@@ -126,6 +137,12 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
         return Single.fromCallable(() -> getUnsyncedBlocking(syncProvider));
     }
 
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> findByPrimaryKeys(@NonNull final List<PrimaryKeyType> primaryKeys) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.findByPrimaryKeysBlocking(primaryKeys));
+    }
+
     @NonNull
     @Override
     public final Single<ModelType> findByPrimaryKey(@NonNull final PrimaryKeyType primaryKeyType) {
@@ -178,6 +195,24 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
                 });
     }
 
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> insertAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.insertAllBlocking(modelTypes, databaseOperationMetadata));
+    }
+
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> updateAll(@NonNull final List<ModelType> oldModelTypes, @NonNull final List<ModelType> newModelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.updateAllBlocking(oldModelTypes, newModelTypes, databaseOperationMetadata));
+    }
+
+    @NonNull
+    @Override
+    public final Single<List<ModelType>> deleteAll(@NonNull final List<ModelType> modelTypes, @NonNull final DatabaseOperationMetadata databaseOperationMetadata) {
+        return Single.fromCallable(() -> AbstractSqlTable.this.deleteAllBlocking(modelTypes, databaseOperationMetadata));
+    }
+
     @NonNull
     public Single<Boolean> deleteSyncData(@NonNull final SyncProvider syncProvider) {
         return Single.fromCallable(() -> AbstractSqlTable.this.deleteSyncDataBlocking(syncProvider));
@@ -192,12 +227,13 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
         Cursor cursor = null;
         try {
             mCachedResults = new ArrayList<>();
+            mCachedResultsByPrimaryKey = new HashMap<>();
             cursor = getReadableDatabase().query(getTableName(), null, COLUMN_DRIVE_MARKED_FOR_DELETION + " = ?", new String[]{Integer.toString(0)}, null, null, mOrderBy.getOrderByPredicate());
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    mCachedResults.add(mDatabaseAdapter.read(cursor));
+            if (cursor != null) {
+                for (final ModelType modelType : readAll(cursor)) {
+                    mCachedResults.add(modelType);
+                    mCachedResultsByPrimaryKey.put(mPrimaryKey.getPrimaryKeyValue(modelType), modelType);
                 }
-                while (cursor.moveToNext());
             }
             return new ArrayList<>(mCachedResults);
         } finally {
@@ -211,17 +247,14 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
     public synchronized List<ModelType> getUnsyncedBlocking(@NonNull SyncProvider syncProvider) {
         Preconditions.checkArgument(syncProvider == SyncProvider.GoogleDrive, "Google Drive is the only supported provider at the moment");
 
-        final ArrayList<ModelType> results = new ArrayList<>();
         Cursor cursor = null;
         try {
             cursor = getReadableDatabase().query(getTableName(), null, COLUMN_DRIVE_IS_SYNCED + " = ?", new String[]{Integer.toString(0)}, null, null, null);
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    results.add(mDatabaseAdapter.read(cursor));
-                }
-                while (cursor.moveToNext());
+            if (cursor != null) {
+                return readAll(cursor);
+            } else {
+                return new ArrayList<>();
             }
-            return results;
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -229,68 +262,162 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
         }
     }
 
-    private Optional<ModelType> findByPrimaryKeyBlocking(@NonNull PrimaryKeyType primaryKeyType) {
-        // TODO: Consider using a Map/Cache/"SELECT" here to improve performance. The #get() call belong is overkill for a single item
-        final List<ModelType> entries = new ArrayList<>(getBlocking());
-        final int size = entries.size();
-        for (int i = 0; i < size; i++) {
-            final ModelType modelType = entries.get(i);
-            if (mPrimaryKey.getPrimaryKeyValue(modelType).equals(primaryKeyType)) {
-                return Optional.of(modelType);
+    /**
+     * Reads every row of a {@link Cursor} from this table. Subclasses may override this to resolve their column
+     * indices and any foreign key references once for the entire cursor, rather than once per row
+     *
+     * @param cursor the {@link Cursor} to read, which should be positioned before its first row
+     * @return a {@link List} of {@link ModelType} objects, one for each row of the cursor
+     */
+    @NonNull
+    protected List<ModelType> readAll(@NonNull Cursor cursor) {
+        final List<ModelType> results = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            do {
+                results.add(mDatabaseAdapter.read(cursor));
             }
+            while (cursor.moveToNext());
         }
-        return Optional.absent();
+        return results;
     }
 
-    @SuppressWarnings("unchecked")
-    public synchronized Optional<ModelType> insertBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
-        final ContentValues values = mDatabaseAdapter.write(modelType, databaseOperationMetadata);
-        if (getWritableDatabase().insertOrThrow(getTableName(), null, values) != -1) {
-            if (Integer.class.equals(mPrimaryKey.getPrimaryKeyClass())) {
-                Cursor cursor = null;
-                try {
-                    cursor = getReadableDatabase().rawQuery("SELECT last_insert_rowid()", null);
-
-                    final Integer id;
-                    if (cursor != null && cursor.moveToFirst() && cursor.getColumnCount() > 0) {
-                        id = cursor.getInt(0);
-                    } else {
-                        id = -1;
-                    }
+    private synchronized Optional<ModelType> findByPrimaryKeyBlocking(@NonNull PrimaryKeyType primaryKeyType) {
+        if (mCachedResults == null) {
+            // Populate both our cached results and our primary key index
+            getBlocking();
+        }
+        final ModelType modelType = mCachedResultsByPrimaryKey.get(primaryKeyType);
+        if (modelType != null) {
+            return Optional.of(modelType);
+        } else {
+            return Optional.absent();
+        }
+    }
 
-                    // Note: We do some quick hacks around generics here to ensure the types are consistent
-                    final PrimaryKey<ModelType, PrimaryKeyType> autoIncrementPrimaryKey = (PrimaryKey<ModelType, PrimaryKeyType>) new AutoIncrementIdPrimaryKey<>((PrimaryKey<ModelType, Integer>) mPrimaryKey, id);
+    /**
+     * Looks up each of these items in our cache if it's been populated. Otherwise, we fetch only these rows with a
+     * single query (per {@link #MAX_QUERY_ARGUMENTS} keys) rather than reading the entire table
+     */
+    @NonNull
+    private synchronized List<ModelType> findByPrimaryKeysBlocking(@NonNull List<PrimaryKeyType> primaryKeys) {
+        final Map<PrimaryKeyType, ModelType> results;
+        if (mCachedResults != null) {
+            results = mCachedResultsByPrimaryKey;
+        } else {
+            results = new HashMap<>();
+            final SQLiteDatabase db = getReadableDatabase();
+            for (int start = 0; start < primaryKeys.size(); start += MAX_QUERY_ARGUMENTS) {
+                final List<PrimaryKeyType> batch = primaryKeys.subList(start, Math.min(start + MAX_QUERY_ARGUMENTS, primaryKeys.size()));
+                final StringBuilder selection = new StringBuilder(mPrimaryKey.getPrimaryKeyColumn()).append(" IN (");
+                final String[] selectionArgs = new String[batch.size() + 1];
+                for (int i = 0; i < batch.size(); i++) {
+                    selection.append(i == 0 ? "?" : ", ?");
+                    selectionArgs[i] = batch.get(i).toString();
+                }
+                selection.append(") AND ").append(COLUMN_DRIVE_MARKED_FOR_DELETION).append(" = ?");
+                selectionArgs[batch.size()] = Integer.toString(0);
 
-                    final ModelType insertedItem = mDatabaseAdapter.build(modelType, autoIncrementPrimaryKey, databaseOperationMetadata);
-                    if (mCachedResults != null) {
-                        mCachedResults.add(insertedItem);
-                        if (insertedItem instanceof Comparable<?>) {
-                            Collections.sort((List<? extends Comparable>) mCachedResults);
+                Cursor cursor = null;
+                try {
+                    cursor = db.query(getTableName(), null, selection.toString(), selectionArgs, null, null, null);
+                    if (cursor != null) {
+                        for (final ModelType modelType : readAll(cursor)) {
+                            results.put(mPrimaryKey.getPrimaryKeyValue(modelType), modelType);
                         }
                     }
-                    return Optional.of(insertedItem);
-                } finally { // Close the cursor and db to avoid memory leaks
+                } finally {
                     if (cursor != null) {
                         cursor.close();
                     }
                 }
-            } else {
-                // If it's not an auto-increment id, just grab whatever the definition is...
-                final ModelType insertedItem = mDatabaseAdapter.build(modelType, mPrimaryKey, databaseOperationMetadata);
-                if (mCachedResults != null) {
-                    mCachedResults.add(insertedItem);
-                    if (insertedItem instanceof Comparable<?>) {
-                        Collections.sort((List<? extends Comparable>) mCachedResults);
-                    }
-                }
-                return Optional.of(insertedItem);
             }
+        }
+
+        // Return these in the order that they were requested, skipping any that we could not find
+        final List<ModelType> orderedResults = new ArrayList<>(primaryKeys.size());
+        for (final PrimaryKeyType primaryKey : primaryKeys) {
+            final ModelType modelType = results.get(primaryKey);
+            if (modelType != null) {
+                orderedResults.add(modelType);
+            }
+        }
+        return orderedResults;
+    }
+
+    @NonNull
+    @Override
+    public synchronized Optional<ModelType> findCachedByPrimaryKey(@NonNull PrimaryKeyType primaryKeyType) {
+        final ModelType modelType = mCachedResultsByPrimaryKey != null ? mCachedResultsByPrimaryKey.get(primaryKeyType) : null;
+        if (modelType != null) {
+            return Optional.of(modelType);
         } else {
             return Optional.absent();
         }
     }
 
-    @SuppressWarnings("unchecked")
+    public synchronized Optional<ModelType> insertBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final ContentValues values = mDatabaseAdapter.write(modelType, databaseOperationMetadata);
+        final long rowId = getWritableDatabase().insertOrThrow(getTableName(), null, values);
+        if (rowId != -1) {
+            final ModelType insertedItem = buildInsertedItem(modelType, rowId, databaseOperationMetadata);
+            if (mCachedResults != null) {
+                addToCache(insertedItem);
+                sortCache();
+            }
+            return Optional.of(insertedItem);
+        } else {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * Inserts all of these items within a single transaction, using a compiled {@link SQLiteStatement} for each
+     * distinct set of columns. Our cache is only updated (and re-sorted) once after all items have been written.
+     *
+     * @param modelTypes the items to insert
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return the inserted items in the same order as they were provided
+     * @throws SQLException if any of these inserts fail, in which case no items will have been inserted
+     */
+    @NonNull
+    public synchronized List<ModelType> insertAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final List<ModelType> insertedItems = new ArrayList<>(modelTypes.size());
+        final SQLiteDatabase db = getWritableDatabase();
+        final Map<String, SQLiteStatement> statements = new HashMap<>();
+        db.beginTransaction();
+        try {
+            for (final ModelType modelType : modelTypes) {
+                final ContentValues values = mDatabaseAdapter.write(modelType, databaseOperationMetadata);
+                final List<String> columns = getSortedColumns(values);
+                final StringBuilder sql = new StringBuilder("INSERT INTO ").append(getTableName()).append(" (").append(TextUtils.join(", ", columns)).append(") VALUES (");
+                for (int i = 0; i < columns.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+
+                final SQLiteStatement statement = getCompiledStatement(db, statements, sql.toString());
+                bindColumns(statement, columns, values);
+                final long rowId = statement.executeInsert();
+                if (rowId == -1) {
+                    throw new SQLException("Failed to insert " + modelType);
+                }
+                insertedItems.add(buildInsertedItem(modelType, rowId, databaseOperationMetadata));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            closeStatements(statements);
+        }
+
+        if (mCachedResults != null) {
+            for (final ModelType insertedItem : insertedItems) {
+                addToCache(insertedItem);
+            }
+            sortCache();
+        }
+        return insertedItems;
+    }
+
     public synchronized Optional<ModelType> updateBlocking(@NonNull ModelType oldModelType, @NonNull ModelType newModelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         final ContentValues values = mDatabaseAdapter.write(newModelType, databaseOperationMetadata);
         final String oldPrimaryKeyValue = mPrimaryKey.getPrimaryKeyValue(oldModelType).toString();
@@ -305,28 +432,13 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
         }
 
         if (updateSuccess) {
-            final ModelType updatedItem;
-            if (Integer.class.equals(mPrimaryKey.getPrimaryKeyClass())) {
-                // If it's an auto-increment key, ensure we're re-using the same id as the old key
-                final PrimaryKey<ModelType, PrimaryKeyType> autoIncrementPrimaryKey = (PrimaryKey<ModelType, PrimaryKeyType>) new AutoIncrementIdPrimaryKey<>((PrimaryKey<ModelType, Integer>) mPrimaryKey, (Integer) mPrimaryKey.getPrimaryKeyValue(oldModelType));
-                updatedItem = mDatabaseAdapter.build(newModelType, autoIncrementPrimaryKey, databaseOperationMetadata);
-            } else {
-                // Otherwise, we'll use whatever the user defined...
-                updatedItem = mDatabaseAdapter.build(newModelType, mPrimaryKey, databaseOperationMetadata);
-            }
+            final ModelType updatedItem = buildUpdatedItem(oldModelType, newModelType, databaseOperationMetadata);
             if (mCachedResults != null) {
-                mCachedResults.remove(oldModelType);
-                if (newModelType instanceof Syncable) {
-                    final Syncable syncable = (Syncable) newModelType;
-                    if (!syncable.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
-                        mCachedResults.add(updatedItem);
-                    }
-                } else {
-                    mCachedResults.add(updatedItem);
-                }
-                if (updatedItem instanceof Comparable<?>) {
-                    Collections.sort((List<? extends Comparable>) mCachedResults);
+                removeFromCache(oldModelType);
+                if (!isMarkedForDeletion(newModelType)) {
+                    addToCache(updatedItem);
                 }
+                sortCache();
             }
             return Optional.of(updatedItem);
         } else {
@@ -335,11 +447,81 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
 
     }
 
+    /**
+     * Updates all of these items within a single transaction, using a compiled {@link SQLiteStatement} for each
+     * distinct set of columns. Our cache is only updated (and re-sorted) once after all items have been written.
+     * <p>
+     * This batch is all or nothing. If any item no longer exists or, for {@link OperationFamilyType#Sync} operations,
+     * has been modified locally since the old item was read, the entire batch is rolled back. Callers should re-read
+     * these items and retry with the latest versions in this case.
+     * </p>
+     *
+     * @param oldModelTypes the old items that will be replaced
+     * @param newModelTypes the new items that will take the place of the old ones (in the same order)
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return the updated items in the same order as they were provided
+     * @throws SQLException if any of these updates fail, in which case no items will have been updated
+     */
+    @NonNull
+    public synchronized List<ModelType> updateAllBlocking(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        Preconditions.checkArgument(oldModelTypes.size() == newModelTypes.size(), "The old and new lists must be the same size");
+
+        final List<ModelType> updatedItems = new ArrayList<>(newModelTypes.size());
+        final SQLiteDatabase db = getWritableDatabase();
+        final Map<String, SQLiteStatement> statements = new HashMap<>();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < oldModelTypes.size(); i++) {
+                final ModelType oldModelType = oldModelTypes.get(i);
+                final ModelType newModelType = newModelTypes.get(i);
+                final ContentValues values = mDatabaseAdapter.write(newModelType, databaseOperationMetadata);
+                final List<String> columns = getSortedColumns(values);
+                final StringBuilder sql = new StringBuilder("UPDATE ").append(getTableName()).append(" SET ");
+                for (int j = 0; j < columns.size(); j++) {
+                    sql.append(j == 0 ? "" : ", ").append(columns.get(j)).append(" = ?");
+                }
+                sql.append(" WHERE ").append(mPrimaryKey.getPrimaryKeyColumn()).append(" = ?");
+
+                // For sync operations, ensure that this only succeeds if we haven't already updated this item more recently
+                final boolean isSyncUpdate = databaseOperationMetadata.getOperationFamilyType() == OperationFamilyType.Sync && oldModelType instanceof Syncable;
+                if (isSyncUpdate) {
+                    sql.append(" AND ").append(COLUMN_LAST_LOCAL_MODIFICATION_TIME).append(" >= ?");
+                }
+
+                final SQLiteStatement statement = getCompiledStatement(db, statements, sql.toString());
+                bindColumns(statement, columns, values);
+                statement.bindString(columns.size() + 1, mPrimaryKey.getPrimaryKeyValue(oldModelType).toString());
+                if (isSyncUpdate) {
+                    statement.bindLong(columns.size() + 2, ((Syncable) oldModelType).getSyncState().getLastLocalModificationTime().getTime());
+                }
+                if (statement.executeUpdateDelete() <= 0) {
+                    throw new SQLException("Failed to update " + oldModelType);
+                }
+                updatedItems.add(buildUpdatedItem(oldModelType, newModelType, databaseOperationMetadata));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            closeStatements(statements);
+        }
+
+        if (mCachedResults != null) {
+            for (int i = 0; i < oldModelTypes.size(); i++) {
+                removeFromCache(oldModelTypes.get(i));
+                if (!isMarkedForDeletion(newModelTypes.get(i))) {
+                    addToCache(updatedItems.get(i));
+                }
+            }
+            sortCache();
+        }
+        return updatedItems;
+    }
+
     public synchronized Optional<ModelType> deleteBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         final String primaryKeyValue = mPrimaryKey.getPrimaryKeyValue(modelType).toString();
         if (getWritableDatabase().delete(getTableName(), mPrimaryKey.getPrimaryKeyColumn() + " = ?", new String[]{primaryKeyValue}) > 0) {
             if (mCachedResults != null) {
-                mCachedResults.remove(modelType);
+                removeFromCache(modelType);
             }
             return Optional.of(modelType);
         } else {
@@ -347,6 +529,75 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
         }
     }
 
+    /**
+     * Deletes all of these items within a single transaction, using a single compiled {@link SQLiteStatement}
+     *
+     * @param modelTypes the items to delete
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return the deleted items in the same order as they were provided
+     * @throws SQLException if any of these deletes fail, in which case no items will have been deleted
+     */
+    @NonNull
+    public synchronized List<ModelType> deleteAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final SQLiteStatement statement = db.compileStatement("DELETE FROM " + getTableName() + " WHERE " + mPrimaryKey.getPrimaryKeyColumn() + " = ?");
+        db.beginTransaction();
+        try {
+            for (final ModelType modelType : modelTypes) {
+                statement.bindString(1, mPrimaryKey.getPrimaryKeyValue(modelType).toString());
+                if (statement.executeUpdateDelete() <= 0) {
+                    throw new SQLException("Failed to delete " + modelType);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        if (mCachedResults != null) {
+            for (final ModelType modelType : modelTypes) {
+                removeFromCache(modelType);
+            }
+        }
+        return new ArrayList<>(modelTypes);
+    }
+
+    /**
+     * Performs a set of operations against this table within a single transaction (eg replacing all of its items).
+     * Each of our batch operations updates our cache as soon as its own nested transaction ends, but these changes are
+     * discarded by SQLite if the outer transaction is then rolled back. If this happens, we clear our cache so that
+     * it will be re-populated from our database on the next read.
+     * <p>
+     * This should be used as the outermost transaction, since we cannot detect a rollback of any transaction that
+     * encloses it
+     * </p>
+     *
+     * @param operations the {@link TransactionOperations} to perform
+     * @return the result of these operations
+     */
+    public synchronized <T> T runInTransactionBlocking(@NonNull TransactionOperations<T> operations) {
+        final SQLiteDatabase db = getWritableDatabase();
+        boolean isCommitted = false;
+        try {
+            final T result;
+            db.beginTransaction();
+            try {
+                result = operations.run();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            isCommitted = true;
+            return result;
+        } finally {
+            if (!isCommitted) {
+                Logger.warn(this, "Rolled back a transaction on {}. Clearing our cache", getTableName());
+                clearCache();
+            }
+        }
+    }
+
     public synchronized boolean deleteSyncDataBlocking(@NonNull SyncProvider syncProvider) {
         Preconditions.checkArgument(syncProvider == SyncProvider.GoogleDrive, "Google Drive is the only supported provider at the moment");
 
@@ -360,16 +611,109 @@ public abstract class AbstractSqlTable<ModelType, PrimaryKeyType> implements Tab
         // Lastly - let's clear out all cached data
         if (mCachedResults != null) {
             mCachedResults.clear();
+            mCachedResultsByPrimaryKey.clear();
         }
 
         return true;
     }
 
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private ModelType buildInsertedItem(@NonNull ModelType modelType, long rowId, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (Integer.class.equals(mPrimaryKey.getPrimaryKeyClass())) {
+            // Note: We do some quick hacks around generics here to ensure the types are consistent
+            final PrimaryKey<ModelType, PrimaryKeyType> autoIncrementPrimaryKey = (PrimaryKey<ModelType, PrimaryKeyType>) new AutoIncrementIdPrimaryKey<>((PrimaryKey<ModelType, Integer>) mPrimaryKey, (int) rowId);
+            return mDatabaseAdapter.build(modelType, autoIncrementPrimaryKey, databaseOperationMetadata);
+        } else {
+            // If it's not an auto-increment id, just grab whatever the definition is...
+            return mDatabaseAdapter.build(modelType, mPrimaryKey, databaseOperationMetadata);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private ModelType buildUpdatedItem(@NonNull ModelType oldModelType, @NonNull ModelType newModelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        if (Integer.class.equals(mPrimaryKey.getPrimaryKeyClass())) {
+            // If it's an auto-increment key, ensure we're re-using the same id as the old key
+            final PrimaryKey<ModelType, PrimaryKeyType> autoIncrementPrimaryKey = (PrimaryKey<ModelType, PrimaryKeyType>) new AutoIncrementIdPrimaryKey<>((PrimaryKey<ModelType, Integer>) mPrimaryKey, (Integer) mPrimaryKey.getPrimaryKeyValue(oldModelType));
+            return mDatabaseAdapter.build(newModelType, autoIncrementPrimaryKey, databaseOperationMetadata);
+        } else {
+            // Otherwise, we'll use whatever the user defined...
+            return mDatabaseAdapter.build(newModelType, mPrimaryKey, databaseOperationMetadata);
+        }
+    }
+
+    private static boolean isMarkedForDeletion(@NonNull Object modelType) {
+        return modelType instanceof Syncable && ((Syncable) modelType).getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive);
+    }
+
+    private void addToCache(@NonNull ModelType modelType) {
+        mCachedResults.add(modelType);
+        mCachedResultsByPrimaryKey.put(mPrimaryKey.getPrimaryKeyValue(modelType), modelType);
+    }
+
+    private void removeFromCache(@NonNull ModelType modelType) {
+        mCachedResults.remove(modelType);
+        mCachedResultsByPrimaryKey.remove(mPrimaryKey.getPrimaryKeyValue(modelType));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sortCache() {
+        if (!mCachedResults.isEmpty() && mCachedResults.get(0) instanceof Comparable<?>) {
+            Collections.sort((List<? extends Comparable>) mCachedResults);
+        }
+    }
+
+    @NonNull
+    private static List<String> getSortedColumns(@NonNull ContentValues values) {
+        // Sort these, so rows with the same columns always share the same compiled statement
+        final List<String> columns = new ArrayList<>(values.keySet());
+        Collections.sort(columns);
+        return columns;
+    }
+
+    @NonNull
+    private static SQLiteStatement getCompiledStatement(@NonNull SQLiteDatabase db, @NonNull Map<String, SQLiteStatement> statements, @NonNull String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+        }
+        return statement;
+    }
+
+    private static void bindColumns(@NonNull SQLiteStatement statement, @NonNull List<String> columns, @NonNull ContentValues values) {
+        for (int i = 0; i < columns.size(); i++) {
+            // Note: SQLite bind indices start at 1
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, values.get(columns.get(i)));
+        }
+    }
+
+    private static void closeStatements(@NonNull Map<String, SQLiteStatement> statements) {
+        for (final SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+    }
+
+    /**
+     * A set of blocking operations that should be performed within a single transaction
+     *
+     * @param <T> the result type of these operations
+     */
+    public interface TransactionOperations<T> {
+
+        T run();
+    }
+
     @Override
     public synchronized void clearCache() {
         if (mCachedResults != null) {
             mCachedResults.clear();
             mCachedResults = null;
+            mCachedResultsByPrimaryKey.clear();
+            mCachedResultsByPrimaryKey = null;
         }
     }
 
@@ -0,0 +1,84 @@
+package co.smartreceipts.android.persistence.database.tables;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+
+import java.util.List;
+
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * A bounded, least-recently-used cache of the model objects that belong to each trip. Entries are keyed on the
+ * trip's primary key (ie its name) rather than the mutable {@link co.smartreceipts.android.model.Trip} object.
+ * <p>
+ * This cache is bounded by its number of trips (rather than items), so that a single large trip can always be cached
+ * without first evicting every other trip. Instead, we bound the heap that each trip may retain by skipping any
+ * oversized trips entirely (see {@link #putIfNotOversized(String, List)}).
+ * </p>
+ *
+ * @param <ModelType> the model object type that is cached for each trip
+ */
+final class PerTripCache<ModelType> extends LruCache<String, List<ModelType>> {
+
+    /**
+     * The default maximum number of trips that we will cache
+     */
+    static final int DEFAULT_MAX_TRIPS = 20;
+
+    /**
+     * The default maximum number of model objects that we will cache for a single trip
+     */
+    static final int DEFAULT_MAX_ITEMS_PER_TRIP = 5000;
+
+    private final int mMaxItemsPerTrip;
+
+    /**
+     * @param maxTrips the maximum number of trips to retain
+     * @param maxItemsPerTrip the maximum number of model objects to retain for a single trip
+     */
+    PerTripCache(int maxTrips, int maxItemsPerTrip) {
+        super(maxTrips);
+        mMaxItemsPerTrip = maxItemsPerTrip;
+    }
+
+    /**
+     * Caches the model objects for a trip, unless this trip has more than our maximum number of items per trip. In
+     * this case, we remove any previous entry for it instead, so that we never return stale results
+     *
+     * @param tripName the name of the trip
+     * @param modelTypes the {@link List} of model objects that belong to this trip
+     * @return {@code true} if these results were cached. {@code false} if they were oversized
+     */
+    boolean putIfNotOversized(@NonNull String tripName, @NonNull List<ModelType> modelTypes) {
+        if (modelTypes.size() > mMaxItemsPerTrip) {
+            Logger.debug(this, "Skipping our cache for a trip with {} items", modelTypes.size());
+            remove(tripName);
+            return false;
+        } else {
+            put(tripName, modelTypes);
+            return true;
+        }
+    }
+
+    /**
+     * @return {@code true} if we can cache another trip without evicting an existing one
+     */
+    boolean hasCapacity() {
+        return size() < maxSize();
+    }
+
+    /**
+     * Shrinks this cache in response to a memory pressure callback from the system
+     *
+     * @param level the trim level, as defined by {@link ComponentCallbacks2}
+     */
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+        }
+        Logger.debug(this, "Trimmed to {} at level {}. {}", size(), level, this);
+    }
+}
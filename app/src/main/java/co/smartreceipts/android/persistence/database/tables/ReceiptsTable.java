@@ -10,7 +10,9 @@ import com.hadisatrio.optional.Optional;
 
 import java.io.File;
 import java.sql.Date;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import co.smartreceipts.android.model.Category;
 import co.smartreceipts.android.model.PaymentMethod;
@@ -222,14 +224,53 @@ public class ReceiptsTable extends TripForeignKeyAbstractSqlTable<Receipt, Integ
         if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
             return super.deleteBlocking(receipt, databaseOperationMetadata);
         } else {
-            // TODO: Generalize this in a more generic, less drive specific way
-            final SyncState oldSyncState = receipt.getSyncState();
-            final SyncState newSyncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, oldSyncState.getSyncId(SyncProvider.GoogleDrive))),
-                    new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
-                    new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
-                    new Date(System.currentTimeMillis()));
-            final Receipt newReceipt = new ReceiptBuilderFactory(receipt).setSyncState(newSyncState).build();
-            return super.updateBlocking(receipt, newReceipt, databaseOperationMetadata);
+            return super.updateBlocking(receipt, buildMarkedForDeletion(receipt), databaseOperationMetadata);
         }
     }
+
+    @NonNull
+    @Override
+    public synchronized List<Receipt> deleteAllBlocking(@NonNull List<Receipt> receipts, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        // As with a single delete, receipts that are already marked for deletion are removed and all others are marked
+        final List<Receipt> receiptsToDelete = new ArrayList<>();
+        final List<Receipt> receiptsToMark = new ArrayList<>();
+        final List<Receipt> markedReceipts = new ArrayList<>();
+        for (final Receipt receipt : receipts) {
+            if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                receiptsToDelete.add(receipt);
+            } else {
+                receiptsToMark.add(receipt);
+                markedReceipts.add(buildMarkedForDeletion(receipt));
+            }
+        }
+
+        // Note: Each nested operation updates our caches once it completes, so we clear these if we fail to commit
+        return runInTransactionBlocking(() -> {
+            final List<Receipt> deletedReceipts = super.deleteAllBlocking(receiptsToDelete, databaseOperationMetadata);
+            final List<Receipt> updatedReceipts = super.updateAllBlocking(receiptsToMark, markedReceipts, databaseOperationMetadata);
+
+            // Return these in the same order as they were provided
+            final List<Receipt> results = new ArrayList<>(receipts.size());
+            int deletedIndex = 0, updatedIndex = 0;
+            for (final Receipt receipt : receipts) {
+                if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+                    results.add(deletedReceipts.get(deletedIndex++));
+                } else {
+                    results.add(updatedReceipts.get(updatedIndex++));
+                }
+            }
+            return results;
+        });
+    }
+
+    @NonNull
+    private Receipt buildMarkedForDeletion(@NonNull Receipt receipt) {
+        // TODO: Generalize this in a more generic, less drive specific way
+        final SyncState oldSyncState = receipt.getSyncState();
+        final SyncState newSyncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, oldSyncState.getSyncId(SyncProvider.GoogleDrive))),
+                new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
+                new Date(System.currentTimeMillis()));
+        return new ReceiptBuilderFactory(receipt).setSyncState(newSyncState).build();
+    }
 }
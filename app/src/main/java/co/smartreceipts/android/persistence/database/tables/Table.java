@@ -3,6 +3,8 @@ package co.smartreceipts.android.persistence.database.tables;
 import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 
+import com.hadisatrio.optional.Optional;
+
 import java.util.List;
 
 import co.smartreceipts.android.persistence.database.defaults.TableDefaultsCustomizer;
@@ -65,6 +67,28 @@ public interface Table<ModelType, PrimaryKeyType> {
     @NonNull
     Single<ModelType> findByPrimaryKey(@NonNull PrimaryKeyType primaryKeyType);
 
+    /**
+     * Looks up all objects for these primary keys. Unlike {@link #findByPrimaryKey(Object)}, this does not need to
+     * read the entire table if our results have not been cached
+     *
+     * @param primaryKeys the primary keys of the objects to find
+     * @return a {@link Single} with: the {@link List} of {@link ModelType} objects in the same order as their keys.
+     * Any keys that cannot be found are skipped
+     */
+    @NonNull
+    Single<List<ModelType>> findByPrimaryKeys(@NonNull List<PrimaryKeyType> primaryKeys);
+
+    /**
+     * Attempts to look up an object in our cached results without reading from the database. Unlike
+     * {@link #findByPrimaryKey(Object)}, this guarantees that we only return the instance that was previously
+     * provided to our callers
+     *
+     * @param primaryKeyType the primary key for this object
+     * @return the cached {@link ModelType} object or {@link Optional#absent()} if it is not cached
+     */
+    @NonNull
+    Optional<ModelType> findCachedByPrimaryKey(@NonNull PrimaryKeyType primaryKeyType);
+
     /**
      * Inserts a new object of type {@link ModelType} into this table. Please note that this is a blocking operation
      *
@@ -95,6 +119,40 @@ public interface Table<ModelType, PrimaryKeyType> {
     @NonNull
     Single<ModelType> delete(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
 
+    /**
+     * Inserts a list of new objects of type {@link ModelType} into this table within a single transaction. If any of
+     * these inserts fail, the entire transaction will be rolled back. Please note that this is a blocking operation
+     *
+     * @param modelTypes the objects to insert
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link Single} with: the inserted objects of type {@link ModelType} or {@link Exception} if the insert failed
+     */
+    @NonNull
+    Single<List<ModelType>> insertAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Updates a list of existing objects of type {@link ModelType} in this table within a single transaction. If any of
+     * these updates fail, the entire transaction will be rolled back. Please note that this is a blocking operation
+     *
+     * @param oldModelTypes the old objects that will be replaced
+     * @param newModelTypes the new objects that will take the place of the old ones (in the same order)
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link Single} with: the updated objects of type {@link ModelType} or {@link Exception} if the update failed
+     */
+    @NonNull
+    Single<List<ModelType>> updateAll(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
+    /**
+     * Removes a list of existing objects of type {@link ModelType} from this table within a single transaction. If
+     * any of these deletes fail, the entire transaction will be rolled back. Please note that this is a blocking operation
+     *
+     * @param modelTypes the objects to remove
+     * @param databaseOperationMetadata metadata about this particular database operation
+     * @return a {@link Single} with: the deleted objects of type {@link ModelType} if successful, {@link Exception} otherwise
+     */
+    @NonNull
+    Single<List<ModelType>> deleteAll(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata);
+
     /**
      * Clears any cached data in our table
      */
@@ -4,6 +4,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
@@ -12,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import co.smartreceipts.android.model.Trip;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
@@ -33,14 +35,21 @@ import io.reactivex.Single;
  */
 public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType> extends AbstractSqlTable<ModelType, PrimaryKeyType> {
 
-    private final HashMap<Trip, List<ModelType>> mPerTripCache = new HashMap<>();
+    private final PerTripCache<ModelType> mPerTripCache;
     private final SelectionBackedDatabaseAdapter<ModelType, PrimaryKey<ModelType, PrimaryKeyType>, Trip> mSelectionBackedDatabaseAdapter;
     private final String mTripForeignKeyReferenceColumnName;
     private final String mSortingOrderColumn;
 
     public TripForeignKeyAbstractSqlTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper, @NonNull String tableName, @NonNull SelectionBackedDatabaseAdapter<ModelType, PrimaryKey<ModelType, PrimaryKeyType>, Trip> databaseAdapter,
                                           @NonNull PrimaryKey<ModelType, PrimaryKeyType> primaryKey, @NonNull String tripForeignKeyReferenceColumnName, @NonNull String sortingOrderColumn) {
+        this(sqLiteOpenHelper, tableName, databaseAdapter, primaryKey, tripForeignKeyReferenceColumnName, sortingOrderColumn, PerTripCache.DEFAULT_MAX_TRIPS, PerTripCache.DEFAULT_MAX_ITEMS_PER_TRIP);
+    }
+
+    TripForeignKeyAbstractSqlTable(@NonNull SQLiteOpenHelper sqLiteOpenHelper, @NonNull String tableName, @NonNull SelectionBackedDatabaseAdapter<ModelType, PrimaryKey<ModelType, PrimaryKeyType>, Trip> databaseAdapter,
+                                   @NonNull PrimaryKey<ModelType, PrimaryKeyType> primaryKey, @NonNull String tripForeignKeyReferenceColumnName, @NonNull String sortingOrderColumn,
+                                   int maxCachedTrips, int maxCachedItemsPerTrip) {
         super(sqLiteOpenHelper, tableName, databaseAdapter, primaryKey, new OrderBy(sortingOrderColumn, true));
+        mPerTripCache = new PerTripCache<>(maxCachedTrips, maxCachedItemsPerTrip);
         mSelectionBackedDatabaseAdapter = databaseAdapter;
         mTripForeignKeyReferenceColumnName = Preconditions.checkNotNull(tripForeignKeyReferenceColumnName);
         mSortingOrderColumn = Preconditions.checkNotNull(sortingOrderColumn);
@@ -69,27 +78,36 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
         return Single.fromCallable(() -> TripForeignKeyAbstractSqlTable.this.getBlocking(trip, isDescending));
     }
 
+    @NonNull
+    @Override
+    protected List<ModelType> readAll(@NonNull Cursor cursor) {
+        return mSelectionBackedDatabaseAdapter.readAll(cursor);
+    }
+
     @NonNull
     public synchronized List<ModelType> getBlocking(@NonNull Trip trip, boolean isDescending) {
         // We only cache descending entries
         final boolean cacheResults = isDescending;
 
-        if (mPerTripCache.containsKey(trip) && cacheResults) {
-            return new ArrayList<>(mPerTripCache.get(trip));
+        if (cacheResults) {
+            final List<ModelType> cachedResults = mPerTripCache.get(trip.getName());
+            if (cachedResults != null) {
+                return new ArrayList<>(cachedResults);
+            }
         }
 
         Cursor cursor = null;
         try {
-            final List<ModelType> results = new ArrayList<>();
+            final List<ModelType> results;
             cursor = getReadableDatabase().query(getTableName(), null, mTripForeignKeyReferenceColumnName + "= ? AND " + COLUMN_DRIVE_MARKED_FOR_DELETION + " = ?", new String[]{ trip.getName(), Integer.toString(0) }, null, null, new OrderBy(mSortingOrderColumn, isDescending).getOrderByPredicate());
-            if (cursor != null && cursor.moveToFirst()) {
-                do {
-                    results.add(mSelectionBackedDatabaseAdapter.readForSelection(cursor, trip, isDescending));
-                }
-                while (cursor.moveToNext());
+            if (cursor != null) {
+                // Read all rows in a single batch, so foreign keys and column indices are only resolved once per query
+                results = mSelectionBackedDatabaseAdapter.readAllForSelection(cursor, trip, isDescending);
+            } else {
+                results = new ArrayList<>();
             }
             if (cacheResults) {
-                mPerTripCache.put(trip, results);
+                mPerTripCache.putIfNotOversized(trip.getName(), results);
             }
             return new ArrayList<>(results);
         } finally {
@@ -103,21 +121,28 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
     @Override
     public synchronized List<ModelType> getBlocking() {
         final List<ModelType> results = super.getBlocking();
-        final HashMap<Trip, List<ModelType>> localCache = new HashMap<>();
+        final Map<String, List<ModelType>> localCache = new HashMap<>();
+        final Map<String, List<ModelType>> currentCache = mPerTripCache.snapshot();
         for (int i = 0; i < results.size(); i++) {
             final ModelType modelType = results.get(i);
-            final Trip trip = getTripFor(modelType);
-            if (!mPerTripCache.containsKey(trip)) {
+            final String tripName = getTripFor(modelType).getName();
+            if (!currentCache.containsKey(tripName)) {
                 // Note: we only populate items here that haven't been previously added to the cache
-                if (localCache.containsKey(trip)) {
-                    final List<ModelType> perTripResults = localCache.get(trip);
+                if (localCache.containsKey(tripName)) {
+                    final List<ModelType> perTripResults = localCache.get(tripName);
                     perTripResults.add(modelType);
                 } else {
-                    localCache.put(trip, new ArrayList<>(Collections.singletonList(modelType)));
+                    localCache.put(tripName, new ArrayList<>(Collections.singletonList(modelType)));
                 }
             }
         }
-        mPerTripCache.putAll(localCache);
+        // Note: Our cache is bounded, so we only use these to fill any free space rather than evicting trips that are in use
+        for (final Map.Entry<String, List<ModelType>> entry : localCache.entrySet()) {
+            if (!mPerTripCache.hasCapacity()) {
+                break;
+            }
+            mPerTripCache.putIfNotOversized(entry.getKey(), entry.getValue());
+        }
         return results;
     }
 
@@ -126,13 +151,14 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
     public synchronized Optional<ModelType> insertBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         final Optional<ModelType> insertedItem = super.insertBlocking(modelType, databaseOperationMetadata);
         if (insertedItem.isPresent()) {
-            final Trip trip = getTripFor(insertedItem.get());
-            if (mPerTripCache.containsKey(trip)) {
-                final List<ModelType> perTripResults = mPerTripCache.get(trip);
+            final String tripName = getTripFor(insertedItem.get()).getName();
+            final List<ModelType> perTripResults = getCachedCopy(tripName);
+            if (perTripResults != null) {
                 perTripResults.add(insertedItem.get());
                 if (insertedItem.get() instanceof Comparable<?>) {
                     Collections.sort((List<? extends Comparable>)perTripResults);
                 }
+                mPerTripCache.putIfNotOversized(tripName, perTripResults);
             }
         }
         return insertedItem;
@@ -144,10 +170,11 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
         final Optional<ModelType> updatedItem = super.updateBlocking(oldModelType, newModelType, databaseOperationMetadata);
         if (updatedItem.isPresent()) {
             Logger.debug(this, "Successfully updated this item in our table");
-            final Trip oldTrip = getTripFor(oldModelType);
-            if (mPerTripCache.containsKey(oldTrip)) {
-                final List<ModelType> perTripResults = mPerTripCache.get(oldTrip);
-                perTripResults.remove(oldModelType);
+            final String oldTripName = getTripFor(oldModelType).getName();
+            final List<ModelType> oldPerTripResults = getCachedCopy(oldTripName);
+            if (oldPerTripResults != null) {
+                oldPerTripResults.remove(oldModelType);
+                mPerTripCache.putIfNotOversized(oldTripName, oldPerTripResults);
                 Logger.debug(this, "Found this item in our cache. Removing it");
             }
 
@@ -159,42 +186,98 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
                 }
             }
 
-            final Trip newTrip = getTripFor(updatedItem.get());
-            if (!isMarkedForDeletion && mPerTripCache.containsKey(newTrip)) {
+            final String newTripName = getTripFor(updatedItem.get()).getName();
+            final List<ModelType> newPerTripResults = isMarkedForDeletion ? null : getCachedCopy(newTripName);
+            if (newPerTripResults != null) {
                 Logger.debug(this, "This item is not marked for deletion. Adding it to our cache");
-                final List<ModelType> perTripResults = mPerTripCache.get(newTrip);
-                perTripResults.add(updatedItem.get());
+                newPerTripResults.add(updatedItem.get());
                 if (updatedItem.get() instanceof Comparable<?>) {
-                    Collections.sort((List<? extends Comparable>)perTripResults);
+                    Collections.sort((List<? extends Comparable>)newPerTripResults);
                 }
+                mPerTripCache.putIfNotOversized(newTripName, newPerTripResults);
             }
         }
         return updatedItem;
     }
 
+    @NonNull
+    @Override
+    public synchronized List<ModelType> insertAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final List<ModelType> insertedItems = super.insertAllBlocking(modelTypes, databaseOperationMetadata);
+        final Map<String, List<ModelType>> workingCopies = new HashMap<>();
+        for (final ModelType insertedItem : insertedItems) {
+            final List<ModelType> perTripResults = getWorkingCopy(workingCopies, getTripFor(insertedItem).getName());
+            if (perTripResults != null) {
+                perTripResults.add(insertedItem);
+            }
+        }
+        putWorkingCopies(workingCopies);
+        return insertedItems;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<ModelType> updateAllBlocking(@NonNull List<ModelType> oldModelTypes, @NonNull List<ModelType> newModelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final List<ModelType> updatedItems = super.updateAllBlocking(oldModelTypes, newModelTypes, databaseOperationMetadata);
+        final Map<String, List<ModelType>> workingCopies = new HashMap<>();
+        for (int i = 0; i < updatedItems.size(); i++) {
+            final ModelType oldModelType = oldModelTypes.get(i);
+            final List<ModelType> oldPerTripResults = getWorkingCopy(workingCopies, getTripFor(oldModelType).getName());
+            if (oldPerTripResults != null) {
+                oldPerTripResults.remove(oldModelType);
+            }
+
+            final ModelType newModelType = newModelTypes.get(i);
+            final boolean isMarkedForDeletion = newModelType instanceof Syncable && ((Syncable) newModelType).getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive);
+            final ModelType updatedItem = updatedItems.get(i);
+            final List<ModelType> newPerTripResults = getWorkingCopy(workingCopies, getTripFor(updatedItem).getName());
+            if (!isMarkedForDeletion && newPerTripResults != null) {
+                newPerTripResults.add(updatedItem);
+            }
+        }
+        putWorkingCopies(workingCopies);
+        return updatedItems;
+    }
+
     public synchronized void updateParentBlocking(@NonNull Trip oldTrip, @NonNull Trip newTrip) {
         final ContentValues contentValues = new ContentValues();
         contentValues.put(mTripForeignKeyReferenceColumnName, newTrip.getName());
         getWritableDatabase().update(getTableName(), contentValues, mTripForeignKeyReferenceColumnName + "= ?", new String[]{ oldTrip.getName() });
-        mPerTripCache.remove(oldTrip);
+        mPerTripCache.remove(oldTrip.getName());
     }
 
     @Override
     public synchronized Optional<ModelType> deleteBlocking(@NonNull ModelType modelType, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         final Optional<ModelType> deleteResult = super.deleteBlocking(modelType, databaseOperationMetadata);
         if (deleteResult.isPresent()) {
-            final Trip trip = getTripFor(modelType);
-            if (mPerTripCache.containsKey(trip)) {
-                final List<ModelType> perTripResults = mPerTripCache.get(trip);
+            final String tripName = getTripFor(modelType).getName();
+            final List<ModelType> perTripResults = getCachedCopy(tripName);
+            if (perTripResults != null) {
                 perTripResults.remove(modelType);
+                mPerTripCache.putIfNotOversized(tripName, perTripResults);
             }
         }
         return deleteResult;
     }
 
+    @NonNull
+    @Override
+    public synchronized List<ModelType> deleteAllBlocking(@NonNull List<ModelType> modelTypes, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
+        final List<ModelType> deletedItems = super.deleteAllBlocking(modelTypes, databaseOperationMetadata);
+        final Map<String, List<ModelType>> workingCopies = new HashMap<>();
+        for (final ModelType deletedItem : deletedItems) {
+            final List<ModelType> perTripResults = getWorkingCopy(workingCopies, getTripFor(deletedItem).getName());
+            if (perTripResults != null) {
+                perTripResults.remove(deletedItem);
+            }
+        }
+        putWorkingCopies(workingCopies);
+        return deletedItems;
+    }
+
     public synchronized void deleteParentBlocking(@NonNull Trip trip) {
         getWritableDatabase().delete(getTableName(), mTripForeignKeyReferenceColumnName + "= ?", new String[]{ trip.getName() });
-        mPerTripCache.remove(trip);
+        mPerTripCache.remove(trip.getName());
     }
 
     @Override
@@ -202,7 +285,7 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
         final boolean success = super.deleteSyncDataBlocking(syncProvider);
         if (success) {
             // Clear out our cached data, so we're not out of sync
-            mPerTripCache.clear();
+            mPerTripCache.evictAll();
         }
         return success;
     }
@@ -210,7 +293,66 @@ public abstract class TripForeignKeyAbstractSqlTable<ModelType, PrimaryKeyType>
     @Override
     public synchronized void clearCache() {
         super.clearCache();
-        mPerTripCache.clear();
+        mPerTripCache.evictAll();
+    }
+
+    /**
+     * Shrinks our per-trip cache in response to a memory pressure callback from the system
+     *
+     * @param level the trim level, as defined by {@link android.content.ComponentCallbacks2}
+     */
+    public synchronized void onTrimMemory(int level) {
+        mPerTripCache.onTrimMemory(level);
+    }
+
+    /**
+     * @return the {@link PerTripCache} that backs this table (for testing and diagnostic purposes)
+     */
+    @NonNull
+    PerTripCache<ModelType> getPerTripCache() {
+        return mPerTripCache;
+    }
+
+    /**
+     * Since our cache tracks the weight of each entry, we never mutate a cached list in place. Instead, we modify a
+     * copy of it and put that back into the cache
+     *
+     * @param tripName the name of the trip to fetch the cached results for
+     * @return a mutable copy of the cached results or {@code null} if this trip is not currently cached
+     */
+    @Nullable
+    private List<ModelType> getCachedCopy(@NonNull String tripName) {
+        final List<ModelType> cachedResults = mPerTripCache.get(tripName);
+        return cachedResults != null ? new ArrayList<>(cachedResults) : null;
+    }
+
+    /**
+     * Fetches a mutable copy of the cached results for a trip during a batch operation, so each trip's cache entry
+     * is only copied, sorted, and replaced once per batch
+     *
+     * @param workingCopies the {@link Map} of working copies for this batch (which may contain {@code null} values for uncached trips)
+     * @param tripName the name of the trip to fetch the cached results for
+     * @return a mutable copy of the cached results or {@code null} if this trip is not currently cached
+     */
+    @Nullable
+    private List<ModelType> getWorkingCopy(@NonNull Map<String, List<ModelType>> workingCopies, @NonNull String tripName) {
+        if (!workingCopies.containsKey(tripName)) {
+            workingCopies.put(tripName, getCachedCopy(tripName));
+        }
+        return workingCopies.get(tripName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putWorkingCopies(@NonNull Map<String, List<ModelType>> workingCopies) {
+        for (final Map.Entry<String, List<ModelType>> entry : workingCopies.entrySet()) {
+            final List<ModelType> perTripResults = entry.getValue();
+            if (perTripResults != null) {
+                if (!perTripResults.isEmpty() && perTripResults.get(0) instanceof Comparable<?>) {
+                    Collections.sort((List<? extends Comparable>) perTripResults);
+                }
+                mPerTripCache.putIfNotOversized(entry.getKey(), perTripResults);
+            }
+        }
     }
 
     /**
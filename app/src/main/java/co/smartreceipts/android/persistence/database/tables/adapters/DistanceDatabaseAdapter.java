@@ -7,6 +7,9 @@ import android.support.annotation.NonNull;
 import com.google.common.base.Preconditions;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import co.smartreceipts.android.model.Distance;
 import co.smartreceipts.android.model.Trip;
@@ -48,14 +51,49 @@ public final class DistanceDatabaseAdapter implements SelectionBackedDatabaseAda
     @NonNull
     @Override
     public Distance readForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
-        final int idIndex = cursor.getColumnIndex(DistanceTable.COLUMN_ID);
-        final int locationIndex = cursor.getColumnIndex(DistanceTable.COLUMN_LOCATION);
-        final int distanceIndex = cursor.getColumnIndex(DistanceTable.COLUMN_DISTANCE);
-        final int dateIndex = cursor.getColumnIndex(DistanceTable.COLUMN_DATE);
-        final int timezoneIndex = cursor.getColumnIndex(DistanceTable.COLUMN_TIMEZONE);
-        final int rateIndex = cursor.getColumnIndex(DistanceTable.COLUMN_RATE);
-        final int rateCurrencyIndex = cursor.getColumnIndex(DistanceTable.COLUMN_RATE_CURRENCY);
-        final int commentIndex = cursor.getColumnIndex(DistanceTable.COLUMN_COMMENT);
+        return readForSelection(cursor, new ColumnIndices(cursor), trip);
+    }
+
+    @NonNull
+    @Override
+    public List<Distance> readAll(@NonNull Cursor cursor) {
+        final List<Distance> distances = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            final ColumnIndices columnIndices = new ColumnIndices(cursor);
+            final Map<String, Trip> tripLookup = TripLookups.findAll(mTripsTable, cursor, columnIndices.parentIndex);
+            do {
+                final Trip trip = TripLookups.get(mTripsTable, tripLookup, cursor.getString(columnIndices.parentIndex));
+                distances.add(readForSelection(cursor, columnIndices, trip));
+            }
+            while (cursor.moveToNext());
+        }
+        return distances;
+    }
+
+    @NonNull
+    @Override
+    public List<Distance> readAllForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
+        final List<Distance> distances = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            final ColumnIndices columnIndices = new ColumnIndices(cursor);
+            do {
+                distances.add(readForSelection(cursor, columnIndices, trip));
+            }
+            while (cursor.moveToNext());
+        }
+        return distances;
+    }
+
+    @NonNull
+    private Distance readForSelection(@NonNull Cursor cursor, @NonNull ColumnIndices columnIndices, @NonNull Trip trip) {
+        final int idIndex = columnIndices.idIndex;
+        final int locationIndex = columnIndices.locationIndex;
+        final int distanceIndex = columnIndices.distanceIndex;
+        final int dateIndex = columnIndices.dateIndex;
+        final int timezoneIndex = columnIndices.timezoneIndex;
+        final int rateIndex = columnIndices.rateIndex;
+        final int rateCurrencyIndex = columnIndices.rateCurrencyIndex;
+        final int commentIndex = columnIndices.commentIndex;
 
         final int id = cursor.getInt(idIndex);
         final String location = cursor.getString(locationIndex);
@@ -65,7 +103,7 @@ public final class DistanceDatabaseAdapter implements SelectionBackedDatabaseAda
         final BigDecimal rate = BigDecimal.valueOf(cursor.getDouble(rateIndex));
         final String rateCurrency = cursor.getString(rateCurrencyIndex);
         final String comment = cursor.getString(commentIndex);
-        final SyncState syncState = mSyncStateAdapter.read(cursor);
+        final SyncState syncState = mSyncStateAdapter.read(cursor, columnIndices.syncStateColumnIndices);
 
         return new DistanceBuilderFactory(id)
                 .setTrip(trip)
@@ -107,4 +145,34 @@ public final class DistanceDatabaseAdapter implements SelectionBackedDatabaseAda
     public Distance build(@NonNull Distance distance, @NonNull PrimaryKey<Distance, Integer> primaryKey, @NonNull DatabaseOperationMetadata databaseOperationMetadata) {
         return new DistanceBuilderFactory(primaryKey.getPrimaryKeyValue(distance), distance).setSyncState(mSyncStateAdapter.get(distance.getSyncState(), databaseOperationMetadata)).build();
     }
+
+    /**
+     * Caches the column indices of a distance {@link Cursor}, so we can look these up once per query
+     */
+    private static final class ColumnIndices {
+
+        private final int idIndex;
+        private final int parentIndex;
+        private final int locationIndex;
+        private final int distanceIndex;
+        private final int dateIndex;
+        private final int timezoneIndex;
+        private final int rateIndex;
+        private final int rateCurrencyIndex;
+        private final int commentIndex;
+        private final SyncStateAdapter.ColumnIndices syncStateColumnIndices;
+
+        ColumnIndices(@NonNull Cursor cursor) {
+            idIndex = cursor.getColumnIndex(DistanceTable.COLUMN_ID);
+            parentIndex = cursor.getColumnIndex(DistanceTable.COLUMN_PARENT);
+            locationIndex = cursor.getColumnIndex(DistanceTable.COLUMN_LOCATION);
+            distanceIndex = cursor.getColumnIndex(DistanceTable.COLUMN_DISTANCE);
+            dateIndex = cursor.getColumnIndex(DistanceTable.COLUMN_DATE);
+            timezoneIndex = cursor.getColumnIndex(DistanceTable.COLUMN_TIMEZONE);
+            rateIndex = cursor.getColumnIndex(DistanceTable.COLUMN_RATE);
+            rateCurrencyIndex = cursor.getColumnIndex(DistanceTable.COLUMN_RATE_CURRENCY);
+            commentIndex = cursor.getColumnIndex(DistanceTable.COLUMN_COMMENT);
+            syncStateColumnIndices = new SyncStateAdapter.ColumnIndices(cursor);
+        }
+    }
 }
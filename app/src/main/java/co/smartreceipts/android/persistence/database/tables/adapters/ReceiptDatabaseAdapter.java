@@ -10,6 +10,10 @@ import com.hadisatrio.optional.Optional;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import co.smartreceipts.android.model.Category;
 import co.smartreceipts.android.model.PaymentMethod;
@@ -62,28 +66,70 @@ public final class ReceiptDatabaseAdapter implements SelectionBackedDatabaseAdap
         return readForSelection(cursor, trip, true);
     }
 
+    @NonNull
+    @Override
+    public List<Receipt> readAll(@NonNull Cursor cursor) {
+        final List<Receipt> receipts = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            // Resolve our column indices, parent trips, and other foreign keys once for the entire cursor
+            final ColumnIndices columnIndices = new ColumnIndices(cursor);
+            final Map<String, Trip> tripLookup = TripLookups.findAll(mTripsTable, cursor, columnIndices.parentIndex);
+            final Map<String, Category> categoryLookup = new HashMap<>();
+            final Map<Integer, Optional<PaymentMethod>> paymentMethodLookup = new HashMap<>();
+            do {
+                final Trip trip = TripLookups.get(mTripsTable, tripLookup, cursor.getString(columnIndices.parentIndex));
+                receipts.add(readForSelection(cursor, columnIndices, trip, true, categoryLookup, paymentMethodLookup));
+            }
+            while (cursor.moveToNext());
+        }
+        return receipts;
+    }
+
 
     @NonNull
     @Override
     public Receipt readForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
+        return readForSelection(cursor, new ColumnIndices(cursor), trip, isDescending, new HashMap<>(), new HashMap<>());
+    }
+
+    @NonNull
+    @Override
+    public List<Receipt> readAllForSelection(@NonNull Cursor cursor, @NonNull Trip trip, boolean isDescending) {
+        final List<Receipt> receipts = new ArrayList<>(cursor.getCount());
+        if (cursor.moveToFirst()) {
+            // Resolve our column indices and foreign keys once for the entire cursor instead of once per row
+            final ColumnIndices columnIndices = new ColumnIndices(cursor);
+            final Map<String, Category> categoryLookup = new HashMap<>();
+            final Map<Integer, Optional<PaymentMethod>> paymentMethodLookup = new HashMap<>();
+            do {
+                receipts.add(readForSelection(cursor, columnIndices, trip, isDescending, categoryLookup, paymentMethodLookup));
+            }
+            while (cursor.moveToNext());
+        }
+        return receipts;
+    }
+
+    @NonNull
+    private Receipt readForSelection(@NonNull Cursor cursor, @NonNull ColumnIndices columnIndices, @NonNull Trip trip, boolean isDescending,
+                                     @NonNull Map<String, Category> categoryLookup, @NonNull Map<Integer, Optional<PaymentMethod>> paymentMethodLookup) {
 
-        final int idIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ID);
-        final int pathIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PATH);
-        final int nameIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NAME);
-        final int categoryIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_CATEGORY);
-        final int priceIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PRICE);
-        final int taxIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TAX);
-        final int exchangeRateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXCHANGE_RATE);
-        final int dateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_DATE);
-        final int timeZoneIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TIMEZONE);
-        final int commentIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_COMMENT);
-        final int reimbursableIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_REIMBURSABLE);
-        final int currencyIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ISO4217);
-        final int fullpageIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE);
-        final int paymentMethodIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID);
-        final int extra_edittext_1_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1);
-        final int extra_edittext_2_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2);
-        final int extra_edittext_3_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3);
+        final int idIndex = columnIndices.idIndex;
+        final int pathIndex = columnIndices.pathIndex;
+        final int nameIndex = columnIndices.nameIndex;
+        final int categoryIndex = columnIndices.categoryIndex;
+        final int priceIndex = columnIndices.priceIndex;
+        final int taxIndex = columnIndices.taxIndex;
+        final int exchangeRateIndex = columnIndices.exchangeRateIndex;
+        final int dateIndex = columnIndices.dateIndex;
+        final int timeZoneIndex = columnIndices.timeZoneIndex;
+        final int commentIndex = columnIndices.commentIndex;
+        final int reimbursableIndex = columnIndices.reimbursableIndex;
+        final int currencyIndex = columnIndices.currencyIndex;
+        final int fullpageIndex = columnIndices.fullpageIndex;
+        final int paymentMethodIdIndex = columnIndices.paymentMethodIdIndex;
+        final int extra_edittext_1_Index = columnIndices.extra_edittext_1_Index;
+        final int extra_edittext_2_Index = columnIndices.extra_edittext_2_Index;
+        final int extra_edittext_3_Index = columnIndices.extra_edittext_3_Index;
 
         final int id = cursor.getInt(idIndex);
         final String path = cursor.getString(pathIndex);
@@ -110,15 +156,23 @@ public final class ReceiptDatabaseAdapter implements SelectionBackedDatabaseAdap
         if (!TextUtils.isEmpty(path) && !DatabaseHelper.NO_DATA.equals(path)) {
             file = mStorageManager.getFile(trip.getDirectory(), path);
         }
-        final SyncState syncState = mSyncStateAdapter.read(cursor);
+        final SyncState syncState = mSyncStateAdapter.read(cursor, columnIndices.syncStateColumnIndices);
 
-        // TODO: How to use JOINs w/o blocking
-        final Category categoryImpl = mCategoriesTable.findByPrimaryKey(category).onErrorReturn(ignored -> new ImmutableCategoryImpl(category, category)).blockingGet();
-        final Optional<PaymentMethod> paymentMethodOptional =
-                mPaymentMethodTable.findByPrimaryKey(paymentMethodId)
-                        .map(Optional::of)
-                        .onErrorReturn(ignored -> Optional.absent())
-                        .blockingGet();
+        // Note: Each distinct foreign key is only resolved once per cursor, since the lookup maps are shared across rows
+        Category categoryImpl = categoryLookup.get(category);
+        if (categoryImpl == null) {
+            categoryImpl = mCategoriesTable.findByPrimaryKey(category).onErrorReturn(ignored -> new ImmutableCategoryImpl(category, category)).blockingGet();
+            categoryLookup.put(category, categoryImpl);
+        }
+        Optional<PaymentMethod> paymentMethodOptional = paymentMethodLookup.get(paymentMethodId);
+        if (paymentMethodOptional == null) {
+            paymentMethodOptional =
+                    mPaymentMethodTable.findByPrimaryKey(paymentMethodId)
+                            .map(Optional::of)
+                            .onErrorReturn(ignored -> Optional.absent())
+                            .blockingGet();
+            paymentMethodLookup.put(paymentMethodId, paymentMethodOptional);
+        }
 
         final int index = isDescending ? cursor.getCount() - cursor.getPosition() : cursor.getPosition() + 1;
 
@@ -228,5 +282,53 @@ public final class ReceiptDatabaseAdapter implements SelectionBackedDatabaseAdap
         return new ReceiptBuilderFactory(primaryKey.getPrimaryKeyValue(receipt), receipt).setSyncState(mSyncStateAdapter.get(receipt.getSyncState(), databaseOperationMetadata)).build();
     }
 
+    /**
+     * Caches the column indices of a receipts {@link Cursor}, so we can look these up once per query
+     */
+    private static final class ColumnIndices {
+
+        private final int idIndex;
+        private final int parentIndex;
+        private final int pathIndex;
+        private final int nameIndex;
+        private final int categoryIndex;
+        private final int priceIndex;
+        private final int taxIndex;
+        private final int exchangeRateIndex;
+        private final int dateIndex;
+        private final int timeZoneIndex;
+        private final int commentIndex;
+        private final int reimbursableIndex;
+        private final int currencyIndex;
+        private final int fullpageIndex;
+        private final int paymentMethodIdIndex;
+        private final int extra_edittext_1_Index;
+        private final int extra_edittext_2_Index;
+        private final int extra_edittext_3_Index;
+        private final SyncStateAdapter.ColumnIndices syncStateColumnIndices;
+
+        ColumnIndices(@NonNull Cursor cursor) {
+            idIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ID);
+            parentIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PARENT);
+            pathIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PATH);
+            nameIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NAME);
+            categoryIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_CATEGORY);
+            priceIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PRICE);
+            taxIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TAX);
+            exchangeRateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXCHANGE_RATE);
+            dateIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_DATE);
+            timeZoneIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_TIMEZONE);
+            commentIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_COMMENT);
+            reimbursableIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_REIMBURSABLE);
+            currencyIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_ISO4217);
+            fullpageIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_NOTFULLPAGEIMAGE);
+            paymentMethodIdIndex = cursor.getColumnIndex(ReceiptsTable.COLUMN_PAYMENT_METHOD_ID);
+            extra_edittext_1_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_1);
+            extra_edittext_2_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_2);
+            extra_edittext_3_Index = cursor.getColumnIndex(ReceiptsTable.COLUMN_EXTRA_EDITTEXT_3);
+            syncStateColumnIndices = new SyncStateAdapter.ColumnIndices(cursor);
+        }
+    }
+
 
 }
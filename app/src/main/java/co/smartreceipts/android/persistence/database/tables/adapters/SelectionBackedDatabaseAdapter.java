@@ -3,6 +3,8 @@ package co.smartreceipts.android.persistence.database.tables.adapters;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 /**
  * A slightly extended version of the {@link DatabaseAdapter} contract that supports a specific selection type
  *
@@ -23,4 +25,29 @@ public interface SelectionBackedDatabaseAdapter<ModelType, KeyType, SelectionMod
     @NonNull
     ModelType readForSelection(@NonNull Cursor cursor, @NonNull SelectionModelType selectionModelType, boolean isDescending);
 
+    /**
+     * Consumes all rows of a database cursor in a single batch for a given selection. Unlike repeated calls to
+     * {@link #readForSelection(Cursor, Object, boolean)}, implementations are expected to resolve column indices
+     * and any foreign key references once for the entire cursor
+     *
+     * @param cursor the {@link Cursor} connection to the database
+     * @param selectionModelType the {@link SelectionModelType} that was treated as the parent for these {@link ModelType}s
+     * @param isDescending {@code true} for descending order, {@code false} for ascending
+     * @return a {@link List} of {@link ModelType} objects, one for each row of the cursor
+     */
+    @NonNull
+    List<ModelType> readAllForSelection(@NonNull Cursor cursor, @NonNull SelectionModelType selectionModelType, boolean isDescending);
+
+    /**
+     * Consumes all rows of a database cursor in a single batch, where each row may belong to a different
+     * {@link SelectionModelType}. Like {@link #readAllForSelection(Cursor, Object, boolean)}, implementations are
+     * expected to resolve column indices once for the entire cursor, and each distinct {@link SelectionModelType}
+     * should only be looked up once
+     *
+     * @param cursor the {@link Cursor} connection to the database, which should be positioned before its first row
+     * @return a {@link List} of {@link ModelType} objects, one for each row of the cursor
+     */
+    @NonNull
+    List<ModelType> readAll(@NonNull Cursor cursor);
+
 }
@@ -29,15 +29,22 @@ public class SyncStateAdapter {
 
     @NonNull
     public SyncState read(@NonNull Cursor cursor) {
-        final int driveIdentifierIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_DRIVE_SYNC_ID);
-        final int driveIsSyncedIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED);
-        final int driveMarkedForDeletionIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION);
-        final int lastLocalModificationTimeIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME);
+        return read(cursor, new ColumnIndices(cursor));
+    }
 
-        final String driveIdentifierString = cursor.getString(driveIdentifierIndex);
-        final boolean driveIsSynced = cursor.getInt(driveIsSyncedIndex) > 0;
-        final boolean driveMarkedForDeletion = cursor.getInt(driveMarkedForDeletionIndex) > 0;
-        final long lastLocalModificationTimeLong = cursor.getLong(lastLocalModificationTimeIndex);
+    /**
+     * Reads the sync state of the current row, using column indices that were resolved once for the entire cursor
+     *
+     * @param cursor the {@link Cursor} connection to the database
+     * @param columnIndices the {@link ColumnIndices} of this cursor
+     * @return the {@link SyncState} of the current row
+     */
+    @NonNull
+    public SyncState read(@NonNull Cursor cursor, @NonNull ColumnIndices columnIndices) {
+        final String driveIdentifierString = cursor.getString(columnIndices.driveIdentifierIndex);
+        final boolean driveIsSynced = cursor.getInt(columnIndices.driveIsSyncedIndex) > 0;
+        final boolean driveMarkedForDeletion = cursor.getInt(columnIndices.driveMarkedForDeletionIndex) > 0;
+        final long lastLocalModificationTimeLong = cursor.getLong(columnIndices.lastLocalModificationTimeIndex);
 
         final Date lastLocalModificationTime = new Date(lastLocalModificationTimeLong);
 
@@ -110,4 +117,22 @@ public class SyncStateAdapter {
         }
     }
 
+    /**
+     * Caches the sync column indices of a {@link Cursor}, so we can look these up once per query
+     */
+    public static final class ColumnIndices {
+
+        private final int driveIdentifierIndex;
+        private final int driveIsSyncedIndex;
+        private final int driveMarkedForDeletionIndex;
+        private final int lastLocalModificationTimeIndex;
+
+        public ColumnIndices(@NonNull Cursor cursor) {
+            driveIdentifierIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_DRIVE_SYNC_ID);
+            driveIsSyncedIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED);
+            driveMarkedForDeletionIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION);
+            lastLocalModificationTimeIndex = cursor.getColumnIndex(AbstractSqlTable.COLUMN_LAST_LOCAL_MODIFICATION_TIME);
+        }
+    }
+
 }
@@ -0,0 +1,69 @@
+package co.smartreceipts.android.persistence.database.tables.adapters;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.persistence.database.tables.Table;
+
+/**
+ * Resolves the parent {@link Trip} of each row in a {@link Cursor} with a single batch lookup, so we don't need to
+ * query the trips table once per row when reading items from many different trips
+ */
+final class TripLookups {
+
+    private TripLookups() {
+    }
+
+    /**
+     * Finds the parent trips of every row in this cursor, starting at its current position. The cursor is returned to
+     * this position afterwards
+     *
+     * @param tripsTable the {@link Table} of trips
+     * @param cursor the {@link Cursor} to read, which should be positioned on its first row
+     * @param parentIndex the column index of the parent trip's name
+     * @return a {@link Map} of trip names to {@link Trip}s
+     */
+    @NonNull
+    static Map<String, Trip> findAll(@NonNull Table<Trip, String> tripsTable, @NonNull Cursor cursor, int parentIndex) {
+        final int position = cursor.getPosition();
+        final Set<String> tripNames = new LinkedHashSet<>();
+        do {
+            final String tripName = cursor.getString(parentIndex);
+            if (tripName != null) {
+                tripNames.add(tripName);
+            }
+        }
+        while (cursor.moveToNext());
+        cursor.moveToPosition(position);
+
+        final Map<String, Trip> tripLookup = new HashMap<>();
+        for (final Trip trip : tripsTable.findByPrimaryKeys(new ArrayList<>(tripNames)).blockingGet()) {
+            tripLookup.put(trip.getName(), trip);
+        }
+        return tripLookup;
+    }
+
+    /**
+     * @param tripsTable the {@link Table} of trips
+     * @param tripLookup the {@link Map} that was returned by {@link #findAll(Table, Cursor, int)}
+     * @param tripName the name of the trip to get
+     * @return the {@link Trip} with this name
+     */
+    @NonNull
+    static Trip get(@NonNull Table<Trip, String> tripsTable, @NonNull Map<String, Trip> tripLookup, @NonNull String tripName) {
+        Trip trip = tripLookup.get(tripName);
+        if (trip == null) {
+            // Fall back to a single lookup, which fails in the same way as reading this row on its own would
+            trip = tripsTable.findByPrimaryKey(tripName).blockingGet();
+            tripLookup.put(tripName, trip);
+        }
+        return trip;
+    }
+}
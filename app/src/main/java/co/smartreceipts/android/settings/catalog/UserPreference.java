@@ -44,6 +44,7 @@ public final class UserPreference<T> {
         public static final UserPreference<Boolean> PrintUserIdByPdfPhoto = new UserPreference<>(Boolean.class, R.string.pref_output_print_receipt_id_by_photo_key, R.bool.pref_output_print_receipt_id_by_photo_defaultValue);
         public static final UserPreference<Boolean> PrintReceiptCommentByPdfPhoto = new UserPreference<>(Boolean.class, R.string.pref_output_print_receipt_comment_by_photo_key, R.bool.pref_output_print_receipt_comment_by_photo_defaultValue);
         public static final UserPreference<Boolean> PrintReceiptsTableInLandscape = new UserPreference<>(Boolean.class, R.string.pref_output_receipts_landscape_key, R.bool.pref_output_receipts_landscape_defaultValue);
+        public static final UserPreference<Integer> PdfImageDpi = new UserPreference<>(Integer.class, R.string.pref_output_pdf_image_dpi_key, R.integer.pref_output_pdf_image_dpi_defaultValue);
     }
 
     public static final class Email {
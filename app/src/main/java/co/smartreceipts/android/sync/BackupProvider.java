@@ -12,6 +12,7 @@ import java.util.List;
 import co.smartreceipts.android.sync.errors.CriticalSyncError;
 import co.smartreceipts.android.sync.errors.SyncErrorType;
 import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
+import co.smartreceipts.android.sync.model.RestoreProgress;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import io.reactivex.Observable;
 import io.reactivex.Single;
@@ -71,6 +72,12 @@ public interface BackupProvider {
     @NonNull
     Single<Boolean> restoreBackup(@NonNull RemoteBackupMetadata remoteBackupMetadata, boolean overwriteExistingData);
 
+    /**
+     * @return an {@link Observable} that emits the {@link RestoreProgress} of the current (or most recent) restore
+     */
+    @NonNull
+    Observable<RestoreProgress> getRestoreProgress();
+
     /**
      * Deletes an existing backup
      *
@@ -19,6 +19,7 @@ import co.smartreceipts.android.di.scopes.ApplicationScope;
 import co.smartreceipts.android.sync.errors.CriticalSyncError;
 import co.smartreceipts.android.sync.errors.SyncErrorType;
 import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
+import co.smartreceipts.android.sync.model.RestoreProgress;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import co.smartreceipts.android.sync.network.NetworkManager;
 import co.smartreceipts.android.sync.network.SupportedNetworkType;
@@ -118,6 +119,12 @@ public class BackupProvidersManager implements BackupProvider {
         return backupProvider.restoreBackup(remoteBackupMetadata, overwriteExistingData);
     }
 
+    @NonNull
+    @Override
+    public Observable<RestoreProgress> getRestoreProgress() {
+        return backupProvider.getRestoreProgress();
+    }
+
     @NonNull
     @Override
     public Single<Boolean> deleteBackup(@NonNull RemoteBackupMetadata remoteBackupMetadata) {
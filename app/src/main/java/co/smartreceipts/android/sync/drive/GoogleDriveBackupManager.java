@@ -33,12 +33,14 @@ import co.smartreceipts.android.sync.drive.device.GoogleDriveSyncMetadata;
 import co.smartreceipts.android.sync.drive.managers.DriveDatabaseManager;
 import co.smartreceipts.android.sync.drive.managers.DriveReceiptsManager;
 import co.smartreceipts.android.sync.drive.managers.DriveRestoreDataManager;
+import co.smartreceipts.android.sync.drive.managers.DriveUploadQueue;
 import co.smartreceipts.android.sync.drive.managers.GoogleDriveTableManager;
 import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
 import co.smartreceipts.android.sync.drive.services.DriveUploadCompleteManager;
 import co.smartreceipts.android.sync.errors.CriticalSyncError;
 import co.smartreceipts.android.sync.errors.SyncErrorType;
 import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
+import co.smartreceipts.android.sync.model.RestoreProgress;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import co.smartreceipts.android.sync.network.NetworkManager;
 import co.smartreceipts.android.sync.network.NetworkStateChangeListener;
@@ -86,10 +88,10 @@ public class GoogleDriveBackupManager implements BackupProvider, GoogleApiClient
         mDriveTaskManager = new DriveStreamsManager(context, mGoogleApiClient, mGoogleDriveSyncMetadata, mSyncErrorStream, driveUploadCompleteManager);
         mActivityReference = new AtomicReference<>(new WeakReference<FragmentActivity>(null));
 
-        final DriveDatabaseManager driveDatabaseManager = new DriveDatabaseManager(context,
+        final DriveDatabaseManager driveDatabaseManager = new DriveDatabaseManager(context, databaseHelper,
                 mDriveTaskManager, mGoogleDriveSyncMetadata, mNetworkManager, analytics);
         mDriveReceiptsManager = new DriveReceiptsManager(receiptTableController, databaseHelper.getReceiptsTable(),
-                mDriveTaskManager, driveDatabaseManager, mNetworkManager, analytics);
+                mDriveTaskManager, driveDatabaseManager, mNetworkManager, analytics, databaseHelper.getReceiptFileIndex(), new DriveUploadQueue(context));
         mDriveRestoreDataManager = new DriveRestoreDataManager(context, mDriveTaskManager, databaseHelper, driveDatabaseManager);
 
         mGoogleDriveTableManager = googleDriveTableManager;
@@ -154,6 +156,12 @@ public class GoogleDriveBackupManager implements BackupProvider, GoogleApiClient
         return mDriveRestoreDataManager.restoreBackup(remoteBackupMetadata, overwriteExistingData);
     }
 
+    @NonNull
+    @Override
+    public Observable<RestoreProgress> getRestoreProgress() {
+        return mDriveRestoreDataManager.getRestoreProgress();
+    }
+
     @NonNull
     @Override
     public Single<Boolean> deleteBackup(@NonNull RemoteBackupMetadata remoteBackupMetadata) {
@@ -0,0 +1,735 @@
+package co.smartreceipts.android.sync.drive.changes;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import co.smartreceipts.android.persistence.DatabaseHelper;
+import co.smartreceipts.android.persistence.database.search.SearchIndex;
+import co.smartreceipts.android.persistence.database.tables.Table;
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Tracks the row-level changes that have been made to our database since it was last uploaded in full, so that we only
+ * need to upload a small, append-only change log after each edit instead of the entire database.
+ * <p>
+ * The remote copy of our database is therefore made up of two files: a full snapshot of the database and a change log,
+ * whose header records the SHA-1 of the snapshot that it applies to. Each sync appends a single change set to the log,
+ * which contains the full contents of every row that was inserted or modified and the row id of every row that was
+ * deleted since the previous sync. Once the log grows beyond a maximum size (or the database schema changes), we
+ * compact it by uploading a new snapshot and starting a new, empty log.
+ * </p>
+ * <p>
+ * Changes are detected by comparing a digest of each row against the digests of what we last uploaded (which are
+ * persisted locally), since {@link co.smartreceipts.android.persistence.database.tables.AbstractSqlTable#COLUMN_LAST_LOCAL_MODIFICATION_TIME}
+ * is not updated for all writes (eg sync state changes) and cannot capture deletions.
+ * </p>
+ * <p>
+ * We only track the rows of our model tables (ie those of {@link DatabaseHelper#getTables()}). Everything else in the
+ * database is derived from these (eg the full-text search index and its shadow tables), so it is rebuilt when the
+ * change log is applied instead of being uploaded with each edit.
+ * </p>
+ * <p>
+ * Callers should {@link #prepare(SQLiteOpenHelper, boolean)} an upload, send it, and then either {@link #commit()} or
+ * {@link #rollback()} it depending on whether the upload succeeded. This class is not designed to handle multiple
+ * uploads in parallel.
+ * </p>
+ */
+public class DatabaseChangeLog {
+
+    /**
+     * The name of the change log file, both locally and in Drive
+     */
+    public static final String FILE_NAME = DatabaseHelper.DATABASE_NAME + ".changes";
+
+    private static final String INDEX_FILE_NAME = FILE_NAME + ".index";
+    private static final int DEFAULT_MAX_CHANGES_BYTES = 256 * 1024;
+
+    private static final int MAGIC = 0x5352434C; // "SRCL"
+    private static final int FORMAT_VERSION = 1;
+    private static final String ROW_ID_ALIAS = "change_log_row_id";
+
+    private static final byte OP_UPSERT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_FLOAT = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_BLOB = 4;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * A file that should be uploaded to Drive in order to bring the remote copy of our database up to date
+     */
+    public static final class Upload {
+
+        private final File mFile;
+        private final boolean mIsSnapshot;
+
+        Upload(@NonNull File file, boolean isSnapshot) {
+            mFile = Preconditions.checkNotNull(file);
+            mIsSnapshot = isSnapshot;
+        }
+
+        /**
+         * @return the {@link File} to upload. Snapshots are named {@link DatabaseHelper#DATABASE_NAME} and change logs
+         * are named {@link #FILE_NAME}
+         */
+        @NonNull
+        public File getFile() {
+            return mFile;
+        }
+
+        /**
+         * @return {@code true} if this is a full snapshot of the database or {@code false} if it is the change log
+         */
+        public boolean isSnapshot() {
+            return mIsSnapshot;
+        }
+    }
+
+    private final File mDirectory;
+    private final File mChangesFile;
+    private final File mIndexFile;
+    private final Set<String> mTableNames;
+    private final long mMaxChangesBytes;
+
+    private State mCommittedState;
+    private State mPendingState;
+    private Upload mPendingUpload;
+    private long mRollbackLength = -1;
+
+    /**
+     * @param directory a private directory, in which we can store our change log and snapshot copies
+     * @param tableNames the names of the tables whose rows we track (see {@link #getTableNames(List)})
+     */
+    public DatabaseChangeLog(@NonNull File directory, @NonNull Collection<String> tableNames) {
+        this(directory, tableNames, DEFAULT_MAX_CHANGES_BYTES);
+    }
+
+    /**
+     * @param directory a private directory, in which we can store our change log and snapshot copies
+     * @param tableNames the names of the tables whose rows we track (see {@link #getTableNames(List)})
+     * @param maxChangesBytes the maximum size of the change log, beyond which we will upload a new snapshot instead
+     */
+    public DatabaseChangeLog(@NonNull File directory, @NonNull Collection<String> tableNames, long maxChangesBytes) {
+        mDirectory = Preconditions.checkNotNull(directory);
+        mChangesFile = new File(directory, FILE_NAME);
+        mIndexFile = new File(directory, INDEX_FILE_NAME);
+        mTableNames = Collections.unmodifiableSet(new LinkedHashSet<>(Preconditions.checkNotNull(tableNames)));
+        mMaxChangesBytes = maxChangesBytes;
+    }
+
+    /**
+     * @param tables our model {@link Table}s (ie {@link DatabaseHelper#getTables()})
+     * @return the names of these tables, which is the set of tables whose changes we should track
+     */
+    @NonNull
+    public static List<String> getTableNames(@NonNull List<Table> tables) {
+        final List<String> tableNames = new ArrayList<>(tables.size());
+        for (final Table table : tables) {
+            tableNames.add(table.getTableName());
+        }
+        return tableNames;
+    }
+
+    /**
+     * Determines what needs to be uploaded in order to bring the remote copy of this database up to date. If a change
+     * log is returned, the new change set will have already been appended to it.
+     * <p>
+     * We hold a transaction on the writable connection of our database while we read it. This blocks all other writes
+     * until we've finished (but still allows reads), which guarantees that we see a consistent version of it and that
+     * the file won't change underneath us while we copy it for a snapshot.
+     * </p>
+     *
+     * @param databaseHelper the {@link SQLiteOpenHelper} for our main database
+     * @param forceSnapshot {@code true} if we must upload a full snapshot (eg because no snapshot exists remotely)
+     * @return the {@link Upload} to perform or {@code null} if nothing has changed since our last upload
+     * @throws IOException if we failed to read the database or write our change log
+     */
+    @Nullable
+    public synchronized Upload prepare(@NonNull SQLiteOpenHelper databaseHelper, boolean forceSnapshot) throws IOException {
+        Preconditions.checkState(mPendingUpload == null, "A previous upload was neither committed nor rolled back");
+
+        final State committedState = getCommittedState();
+        final File snapshotFile = new File(mDirectory, DatabaseHelper.DATABASE_NAME);
+        final String snapshotDigest;
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            if (!forceSnapshot && committedState != null && mChangesFile.exists()) {
+                if (db.getVersion() == committedState.schemaVersion) {
+                    final ByteArrayOutputStream changeSet = new ByteArrayOutputStream();
+                    final DataOutputStream changeSetStream = new DataOutputStream(changeSet);
+                    final State currentState = readState(db, mTableNames, committedState.snapshotDigest, committedState, changeSetStream);
+                    changeSetStream.flush();
+
+                    if (changeSet.size() == 0) {
+                        Logger.debug(this, "No database changes were found since our last upload");
+                        return null;
+                    }
+                    final long changesLength = mChangesFile.length();
+                    if (changesLength + changeSet.size() <= mMaxChangesBytes) {
+                        Logger.info(this, "Appending {} bytes of database changes to our {} byte change log", changeSet.size(), changesLength);
+                        mRollbackLength = changesLength;
+                        mPendingState = currentState;
+                        mPendingUpload = new Upload(mChangesFile, false);
+                        try {
+                            appendChangeSet(changeSet.toByteArray());
+                        } catch (IOException e) {
+                            rollback();
+                            throw e;
+                        }
+                        return mPendingUpload;
+                    } else {
+                        Logger.info(this, "Our change log has reached its maximum size. Uploading a new snapshot");
+                    }
+                } else {
+                    Logger.info(this, "Our database schema has changed from {} to {}. Uploading a new snapshot", committedState.schemaVersion, db.getVersion());
+                }
+            }
+            snapshotDigest = copy(new File(db.getPath()), snapshotFile);
+        } finally {
+            db.endTransaction();
+        }
+
+        // Our row digests are read from the snapshot (rather than the live database), so these describe exactly what we upload
+        SQLiteDatabase snapshotDb = null;
+        try {
+            snapshotDb = SQLiteDatabase.openDatabase(snapshotFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+            mPendingState = readState(snapshotDb, mTableNames, snapshotDigest, null, null);
+        } finally {
+            if (snapshotDb != null) {
+                snapshotDb.close();
+            }
+        }
+        mPendingUpload = new Upload(snapshotFile, true);
+        return mPendingUpload;
+    }
+
+    /**
+     * Records that the last prepared {@link Upload} was successfully sent to Drive
+     *
+     * @throws IOException if we failed to persist this state
+     */
+    public synchronized void commit() throws IOException {
+        Preconditions.checkState(mPendingUpload != null, "No upload was prepared");
+        final State pendingState = mPendingState;
+        final Upload pendingUpload = mPendingUpload;
+        clearPending();
+
+        try {
+            if (pendingUpload.isSnapshot()) {
+                // Any existing remote change log applies to a different snapshot, so it will now be ignored
+                writeHeader(pendingState);
+                if (!pendingUpload.getFile().delete()) {
+                    Logger.warn(this, "Failed to delete our snapshot copy");
+                }
+            }
+            writeIndex(pendingState);
+            mCommittedState = pendingState;
+        } catch (IOException e) {
+            // Force a new snapshot next time, since we no longer know what the remote data looks like
+            mCommittedState = null;
+            deleteQuietly(mIndexFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Discards the last prepared {@link Upload}, since it failed to be sent to Drive
+     */
+    public synchronized void rollback() {
+        if (mPendingUpload == null) {
+            return;
+        }
+        final Upload pendingUpload = mPendingUpload;
+        final long rollbackLength = mRollbackLength;
+        clearPending();
+
+        if (pendingUpload.isSnapshot()) {
+            deleteQuietly(pendingUpload.getFile());
+        } else {
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(mChangesFile, "rw");
+                file.setLength(rollbackLength);
+            } catch (IOException e) {
+                Logger.error(this, "Failed to roll back our change log. Uploading a new snapshot next time", e);
+                mCommittedState = null;
+                deleteQuietly(mIndexFile);
+            } finally {
+                IOUtils.closeQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * Applies a change log, which was downloaded from Drive, to the snapshot that it was recorded against. Change sets
+     * that were only partially written are ignored, as are the rows of any table that isn't one of our model tables.
+     * Our search index is then rebuilt from the updated tables.
+     *
+     * @param changesFile the change log file
+     * @param databaseFile the snapshot database file, which will be modified
+     * @param tableNames the names of the tables whose rows we track (see {@link #getTableNames(List)})
+     * @return {@code true} if the changes were applied or {@code false} if they belong to a different snapshot
+     * @throws IOException if we failed to read either file
+     */
+    public static boolean apply(@NonNull File changesFile, @NonNull File databaseFile, @NonNull Collection<String> tableNames) throws IOException {
+        final String databaseDigest = digest(databaseFile);
+        DataInputStream in = null;
+        SQLiteDatabase db = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(changesFile)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unrecognized change log format");
+            }
+            final String snapshotDigest = in.readUTF();
+            in.readInt(); // The schema version, which is implied by the snapshot
+            if (!snapshotDigest.equals(databaseDigest)) {
+                Logger.info(DatabaseChangeLog.class, "This change log belongs to a different snapshot. Ignoring it");
+                return false;
+            }
+
+            db = SQLiteDatabase.openDatabase(databaseFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READWRITE);
+            db.beginTransaction();
+            try {
+                byte[] changeSet;
+                int count = 0;
+                while ((changeSet = readChangeSet(in)) != null) {
+                    applyChangeSet(db, tableNames, changeSet);
+                    count++;
+                }
+                new SearchIndex().rebuild(db);
+                db.setTransactionSuccessful();
+                Logger.info(DatabaseChangeLog.class, "Applied {} database change sets", count);
+            } finally {
+                db.endTransaction();
+            }
+            return true;
+        } finally {
+            if (db != null) {
+                db.close();
+            }
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized long getChangesLength() {
+        return mChangesFile.length();
+    }
+
+    @Nullable
+    private State getCommittedState() {
+        if (mCommittedState == null && mIndexFile.exists()) {
+            try {
+                mCommittedState = readIndex();
+            } catch (IOException e) {
+                Logger.warn(this, "Failed to read our change log index. Uploading a new snapshot", e);
+                deleteQuietly(mIndexFile);
+            }
+        }
+        return mCommittedState;
+    }
+
+    private void clearPending() {
+        mPendingState = null;
+        mPendingUpload = null;
+        mRollbackLength = -1;
+    }
+
+    /**
+     * Reads the digest of each row in this database. If a previous state is provided, the contents of each row that
+     * differs from it are written to the change set along with the row ids of any that have been deleted
+     */
+    @NonNull
+    private static State readState(@NonNull SQLiteDatabase db, @NonNull Set<String> tableNames, @NonNull String snapshotDigest,
+                                   @Nullable State previousState, @Nullable DataOutputStream changeSet) throws IOException {
+        final State state = new State(snapshotDigest, db.getVersion());
+        for (final String table : tableNames) {
+            final Map<Long, Long> rowDigests = new HashMap<>();
+            final Map<Long, Long> previousRowDigests = previousState != null ? previousState.rowDigests.get(table) : null;
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery("SELECT rowid AS " + ROW_ID_ALIAS + ", * FROM " + table, null);
+                final int columnCount = cursor.getColumnCount();
+                while (cursor.moveToNext()) {
+                    final long rowId = cursor.getLong(0);
+                    final long rowDigest = digestRow(cursor);
+                    rowDigests.put(rowId, rowDigest);
+
+                    final Long previousRowDigest = previousRowDigests != null ? previousRowDigests.get(rowId) : null;
+                    if (changeSet != null && (previousRowDigest == null || previousRowDigest != rowDigest)) {
+                        changeSet.writeByte(OP_UPSERT);
+                        changeSet.writeUTF(table);
+                        changeSet.writeLong(rowId);
+                        changeSet.writeInt(columnCount - 1);
+                        for (int i = 1; i < columnCount; i++) {
+                            changeSet.writeUTF(cursor.getColumnName(i));
+                            writeValue(changeSet, cursor, i);
+                        }
+                    }
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            state.rowDigests.put(table, rowDigests);
+        }
+
+        if (previousState != null && changeSet != null) {
+            for (final Map.Entry<String, Map<Long, Long>> entry : previousState.rowDigests.entrySet()) {
+                final Map<Long, Long> rowDigests = state.rowDigests.get(entry.getKey());
+                for (final Long rowId : entry.getValue().keySet()) {
+                    if (rowDigests == null || !rowDigests.containsKey(rowId)) {
+                        changeSet.writeByte(OP_DELETE);
+                        changeSet.writeUTF(entry.getKey());
+                        changeSet.writeLong(rowId);
+                    }
+                }
+            }
+        }
+        return state;
+    }
+
+    private static long digestRow(@NonNull Cursor cursor) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 1; i < cursor.getColumnCount(); i++) {
+            final int type = cursor.getType(i);
+            hash = (hash ^ type) * FNV_PRIME;
+            if (type == Cursor.FIELD_TYPE_INTEGER) {
+                hash = digestLong(hash, cursor.getLong(i));
+            } else if (type == Cursor.FIELD_TYPE_FLOAT) {
+                hash = digestLong(hash, Double.doubleToLongBits(cursor.getDouble(i)));
+            } else if (type == Cursor.FIELD_TYPE_STRING) {
+                final String value = cursor.getString(i);
+                hash = digestLong(hash, value.length());
+                for (int j = 0; j < value.length(); j++) {
+                    hash = (hash ^ value.charAt(j)) * FNV_PRIME;
+                }
+            } else if (type == Cursor.FIELD_TYPE_BLOB) {
+                final byte[] value = cursor.getBlob(i);
+                hash = digestLong(hash, value.length);
+                for (final byte b : value) {
+                    hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static long digestLong(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ ((value >>> (i * 8)) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static void writeValue(@NonNull DataOutputStream out, @NonNull Cursor cursor, int index) throws IOException {
+        final int type = cursor.getType(index);
+        if (type == Cursor.FIELD_TYPE_INTEGER) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeLong(cursor.getLong(index));
+        } else if (type == Cursor.FIELD_TYPE_FLOAT) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeDouble(cursor.getDouble(index));
+        } else if (type == Cursor.FIELD_TYPE_STRING) {
+            // Note: writeUTF is limited to 64KB, so we write the raw bytes instead
+            final byte[] bytes = cursor.getString(index).getBytes(UTF_8);
+            out.writeByte(TYPE_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (type == Cursor.FIELD_TYPE_BLOB) {
+            final byte[] bytes = cursor.getBlob(index);
+            out.writeByte(TYPE_BLOB);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            out.writeByte(TYPE_NULL);
+        }
+    }
+
+    private static void readValue(@NonNull DataInputStream in, @NonNull ContentValues values, @NonNull String column) throws IOException {
+        final byte type = in.readByte();
+        if (type == TYPE_INTEGER) {
+            values.put(column, in.readLong());
+        } else if (type == TYPE_FLOAT) {
+            values.put(column, in.readDouble());
+        } else if (type == TYPE_STRING) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            values.put(column, new String(bytes, UTF_8));
+        } else if (type == TYPE_BLOB) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            values.put(column, bytes);
+        } else if (type == TYPE_NULL) {
+            values.putNull(column);
+        } else {
+            throw new IOException("Unrecognized value type: " + type);
+        }
+    }
+
+    private static void applyChangeSet(@NonNull SQLiteDatabase db, @NonNull Collection<String> tableNames, @NonNull byte[] changeSet) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(changeSet));
+        while (in.available() > 0) {
+            final byte op = in.readByte();
+            final String table = in.readUTF();
+            final long rowId = in.readLong();
+            if (op == OP_UPSERT) {
+                final int columnCount = in.readInt();
+                final ContentValues values = new ContentValues(columnCount + 1);
+                values.put("rowid", rowId);
+                for (int i = 0; i < columnCount; i++) {
+                    readValue(in, values, in.readUTF());
+                }
+                if (tableNames.contains(table)) {
+                    db.replaceOrThrow(table, null, values);
+                } else {
+                    Logger.warn(DatabaseChangeLog.class, "Ignoring a change to {}, which is not one of our tables", table);
+                }
+            } else if (op == OP_DELETE) {
+                if (tableNames.contains(table)) {
+                    db.delete(table, "rowid = ?", new String[]{Long.toString(rowId)});
+                } else {
+                    Logger.warn(DatabaseChangeLog.class, "Ignoring a deletion from {}, which is not one of our tables", table);
+                }
+            } else {
+                throw new IOException("Unrecognized change log operation: " + op);
+            }
+        }
+    }
+
+    private void appendChangeSet(@NonNull byte[] changeSet) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(changeSet);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mChangesFile, true)));
+            out.writeInt(changeSet.length);
+            out.write(changeSet);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * @return the next complete change set in this stream or {@code null} if there are none left
+     */
+    @Nullable
+    private static byte[] readChangeSet(@NonNull DataInputStream in) throws IOException {
+        try {
+            final int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            final byte[] changeSet = new byte[length];
+            in.readFully(changeSet);
+            final int expectedCrc = in.readInt();
+            final CRC32 crc = new CRC32();
+            crc.update(changeSet);
+            if ((int) crc.getValue() != expectedCrc) {
+                Logger.warn(DatabaseChangeLog.class, "Found a corrupt change set. Ignoring the remainder of this change log");
+                return null;
+            }
+            return changeSet;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private void writeHeader(@NonNull State state) throws IOException {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mChangesFile, false)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(state.snapshotDigest);
+            out.writeInt(state.schemaVersion);
+            out.flush();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private void writeIndex(@NonNull State state) throws IOException {
+        final File tempFile = new File(mDirectory, INDEX_FILE_NAME + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(state.snapshotDigest);
+            out.writeInt(state.schemaVersion);
+            out.writeInt(state.rowDigests.size());
+            for (final Map.Entry<String, Map<Long, Long>> entry : state.rowDigests.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (final Map.Entry<Long, Long> row : entry.getValue().entrySet()) {
+                    out.writeLong(row.getKey());
+                    out.writeLong(row.getValue());
+                }
+            }
+            out.flush();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (!tempFile.renameTo(mIndexFile)) {
+            deleteQuietly(tempFile);
+            throw new IOException("Failed to save our change log index");
+        }
+    }
+
+    @NonNull
+    private State readIndex() throws IOException {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unrecognized change log index format");
+            }
+            final State state = new State(in.readUTF(), in.readInt());
+            final int tableCount = in.readInt();
+            for (int i = 0; i < tableCount; i++) {
+                final String table = in.readUTF();
+                final int rowCount = in.readInt();
+                final Map<Long, Long> rowDigests = new HashMap<>(rowCount * 2);
+                for (int j = 0; j < rowCount; j++) {
+                    rowDigests.put(in.readLong(), in.readLong());
+                }
+                state.rowDigests.put(table, rowDigests);
+            }
+            return state;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Copies a file, returning the hex-encoded SHA-1 of its contents
+     */
+    @NonNull
+    private static String copy(@NonNull File source, @NonNull File destination) throws IOException {
+        final File parent = destination.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(destination);
+            final MessageDigest digest = newSha1();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                digest.update(buffer, 0, read);
+            }
+            out.flush();
+            return toHex(digest.digest());
+        } finally {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    @NonNull
+    private static String digest(@NonNull File file) throws IOException {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final MessageDigest digest = newSha1();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return toHex(digest.digest());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    @NonNull
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required to be supported on all devices", e);
+        }
+    }
+
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void deleteQuietly(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.warn(DatabaseChangeLog.class, "Failed to delete {}", file.getName());
+        }
+    }
+
+    /**
+     * The digest of each row (keyed by table and then row id) for a particular version of our database
+     */
+    private static final class State {
+
+        private final String snapshotDigest;
+        private final int schemaVersion;
+        private final Map<String, Map<Long, Long>> rowDigests = new HashMap<>();
+
+        State(@NonNull String snapshotDigest, int schemaVersion) {
+            this.snapshotDigest = snapshotDigest;
+            this.schemaVersion = schemaVersion;
+        }
+    }
+}
@@ -16,6 +16,7 @@ public class GoogleDriveSyncMetadata {
     private static final String PREFS_GOOGLE_DRIVE = "prefs_google_drive.xml";
     private static final String KEY_DEVICE_IDENTIFIER = "key_device_identifier";
     private static final String KEY_DRIVE_DATABASE_IDENTIFIER = "key_drive_database_identifier";
+    private static final String KEY_DRIVE_DATABASE_CHANGES_IDENTIFIER = "key_drive_database_changes_identifier";
     private static final String KEY_DRIVE_LAST_SYNC = "key_drive_last_sync";
 
     private final SharedPreferences mSharedPreferences;
@@ -58,6 +59,22 @@ public class GoogleDriveSyncMetadata {
         mSharedPreferences.edit().putLong(KEY_DRIVE_LAST_SYNC, System.currentTimeMillis()).apply();
     }
 
+    @Nullable
+    public synchronized Identifier getDatabaseChangesSyncIdentifier() {
+        final String id = mSharedPreferences.getString(KEY_DRIVE_DATABASE_CHANGES_IDENTIFIER, null);
+        if (id != null) {
+            return new Identifier(id);
+        } else {
+            return null;
+        }
+    }
+
+    public synchronized void setDatabaseChangesSyncIdentifier(@NonNull Identifier databaseChangesSyncIdentifier) {
+        Preconditions.checkNotNull(databaseChangesSyncIdentifier);
+        mSharedPreferences.edit().putString(KEY_DRIVE_DATABASE_CHANGES_IDENTIFIER, databaseChangesSyncIdentifier.getId()).apply();
+        mSharedPreferences.edit().putLong(KEY_DRIVE_LAST_SYNC, System.currentTimeMillis()).apply();
+    }
+
     @NonNull
     public synchronized Date getLastDatabaseSyncTime() {
         final long syncTime = mSharedPreferences.getLong(KEY_DRIVE_LAST_SYNC, 0L);
@@ -11,11 +11,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import co.smartreceipts.android.analytics.Analytics;
 import co.smartreceipts.android.analytics.events.ErrorEvent;
 import co.smartreceipts.android.persistence.DatabaseHelper;
+import co.smartreceipts.android.sync.drive.changes.DatabaseChangeLog;
 import co.smartreceipts.android.sync.drive.device.GoogleDriveSyncMetadata;
 import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import co.smartreceipts.android.sync.network.NetworkManager;
 import co.smartreceipts.android.utils.log.Logger;
+import io.reactivex.Maybe;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
@@ -23,47 +25,69 @@ import io.reactivex.schedulers.Schedulers;
 
 public class DriveDatabaseManager {
 
+    private static final String CHANGE_LOG_DIRECTORY = "drive_database_changes";
+
     private final Context mContext;
+    private final DatabaseHelper mDatabaseHelper;
     private final DriveStreamsManager mDriveTaskManager;
     private final GoogleDriveSyncMetadata mGoogleDriveSyncMetadata;
     private final NetworkManager mNetworkManager;
     private final Analytics mAnalytics;
+    private final DatabaseChangeLog mDatabaseChangeLog;
     private final Scheduler mObserveOnScheduler;
     private final Scheduler mSubscribeOnScheduler;
     private final AtomicBoolean mIsSyncInProgress = new AtomicBoolean(false);
 
-    public DriveDatabaseManager(@NonNull Context context, @NonNull DriveStreamsManager driveTaskManager,
+    public DriveDatabaseManager(@NonNull Context context, @NonNull DatabaseHelper databaseHelper, @NonNull DriveStreamsManager driveTaskManager,
                                 @NonNull GoogleDriveSyncMetadata googleDriveSyncMetadata,
                                 @NonNull NetworkManager networkManager, @NonNull Analytics analytics) {
-        this(context, driveTaskManager, googleDriveSyncMetadata, networkManager, analytics, Schedulers.io(), Schedulers.io());
+        this(context, databaseHelper, driveTaskManager, googleDriveSyncMetadata, networkManager, analytics, Schedulers.io(), Schedulers.io());
+    }
+
+    public DriveDatabaseManager(@NonNull Context context, @NonNull DatabaseHelper databaseHelper, @NonNull DriveStreamsManager driveTaskManager,
+                                @NonNull GoogleDriveSyncMetadata googleDriveSyncMetadata, @NonNull NetworkManager networkManager, @NonNull Analytics analytics,
+                                @NonNull Scheduler observeOnScheduler, @NonNull Scheduler subscribeOnScheduler) {
+        this(context, databaseHelper, driveTaskManager, googleDriveSyncMetadata, networkManager, analytics,
+                new DatabaseChangeLog(new File(context.getCacheDir(), CHANGE_LOG_DIRECTORY), DatabaseChangeLog.getTableNames(databaseHelper.getTables())),
+                observeOnScheduler, subscribeOnScheduler);
     }
 
-    public DriveDatabaseManager(@NonNull Context context, @NonNull DriveStreamsManager driveTaskManager, @NonNull GoogleDriveSyncMetadata googleDriveSyncMetadata,
-                                @NonNull NetworkManager networkManager, @NonNull Analytics analytics, @NonNull Scheduler observeOnScheduler, @NonNull Scheduler subscribeOnScheduler) {
+    public DriveDatabaseManager(@NonNull Context context, @NonNull DatabaseHelper databaseHelper, @NonNull DriveStreamsManager driveTaskManager,
+                                @NonNull GoogleDriveSyncMetadata googleDriveSyncMetadata, @NonNull NetworkManager networkManager, @NonNull Analytics analytics,
+                                @NonNull DatabaseChangeLog databaseChangeLog, @NonNull Scheduler observeOnScheduler, @NonNull Scheduler subscribeOnScheduler) {
         mContext = Preconditions.checkNotNull(context.getApplicationContext());
+        mDatabaseHelper = Preconditions.checkNotNull(databaseHelper);
         mDriveTaskManager = Preconditions.checkNotNull(driveTaskManager);
         mGoogleDriveSyncMetadata = Preconditions.checkNotNull(googleDriveSyncMetadata);
         mNetworkManager = Preconditions.checkNotNull(networkManager);
         mAnalytics = Preconditions.checkNotNull(analytics);
+        mDatabaseChangeLog = Preconditions.checkNotNull(databaseChangeLog);
         mObserveOnScheduler = Preconditions.checkNotNull(observeOnScheduler);
         mSubscribeOnScheduler = Preconditions.checkNotNull(subscribeOnScheduler);
     }
 
+    /**
+     * Brings the copy of our database in Drive up to date. Typically, this only requires us to upload the rows that
+     * changed since our last sync (via the {@link DatabaseChangeLog}), but we periodically upload a full snapshot of
+     * the database as well in order to keep the change log small. Our database remains open while we do this, but the
+     * {@link DatabaseChangeLog} blocks all writes to it while it is being read
+     */
     public void syncDatabase() {
         if (mNetworkManager.isNetworkAvailable()) {
-            // TODO: Make sure the database is closed or inactive before performing this
-            // TODO: We can trigger this off of our #close() method in DB helper
             final File filesDir = mContext.getExternalFilesDir(null);
             if (filesDir != null) {
                 final File dbFile = new File(filesDir, DatabaseHelper.DATABASE_NAME);
                 if (dbFile.exists()) {
                     if (!mIsSyncInProgress.getAndSet(true)) {
-                        getSyncDatabaseObservable(dbFile)
+                        getSyncDatabaseObservable()
                                 .observeOn(mObserveOnScheduler)
                                 .subscribeOn(mSubscribeOnScheduler)
-                                .subscribe(identifier -> {
-                                    Logger.info(DriveDatabaseManager.this, "Successfully synced our database");
-                                    mGoogleDriveSyncMetadata.setDatabaseSyncIdentifier(identifier);
+                                .subscribe(uploaded -> {
+                                    if (uploaded) {
+                                        Logger.info(DriveDatabaseManager.this, "Successfully synced our database");
+                                    } else {
+                                        Logger.debug(DriveDatabaseManager.this, "Our database has not changed since it was last synced");
+                                    }
                                     mIsSyncInProgress.set(false);
                                 }, throwable -> {
                                     mIsSyncInProgress.set(false);
@@ -84,13 +108,41 @@ public class DriveDatabaseManager {
         }
     }
 
+    /**
+     * @return a {@link Single} that emits {@code true} if we uploaded any changes or {@code false} if there were none
+     */
+    @NonNull
+    private Single<Boolean> getSyncDatabaseObservable() {
+        return Maybe.fromCallable(() -> mDatabaseChangeLog.prepare(mDatabaseHelper, mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier() == null))
+                .flatMap(upload -> getUploadObservable(upload)
+                        .doOnSuccess(identifier -> {
+                            if (upload.isSnapshot()) {
+                                mGoogleDriveSyncMetadata.setDatabaseSyncIdentifier(identifier);
+                            } else {
+                                mGoogleDriveSyncMetadata.setDatabaseChangesSyncIdentifier(identifier);
+                            }
+                            mDatabaseChangeLog.commit();
+                        })
+                        .doOnError(throwable -> mDatabaseChangeLog.rollback())
+                        .toMaybe())
+                .map(identifier -> true)
+                .toSingle(false);
+    }
+
     @NonNull
-    private Single<Identifier> getSyncDatabaseObservable(@NonNull final File dbFile) {
-        final Identifier driveDatabaseId = mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier();
-        if (driveDatabaseId != null) {
-            return mDriveTaskManager.updateDriveFile(driveDatabaseId, dbFile);
+    private Single<Identifier> getUploadObservable(@NonNull DatabaseChangeLog.Upload upload) {
+        final Identifier driveFileId;
+        if (upload.isSnapshot()) {
+            Logger.info(this, "Uploading a full snapshot of our database ({} bytes)", upload.getFile().length());
+            driveFileId = mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier();
+        } else {
+            Logger.info(this, "Uploading our database change log ({} bytes)", upload.getFile().length());
+            driveFileId = mGoogleDriveSyncMetadata.getDatabaseChangesSyncIdentifier();
+        }
+        if (driveFileId != null) {
+            return mDriveTaskManager.updateDriveFile(driveFileId, upload.getFile());
         } else {
-            return mDriveTaskManager.uploadFileToDrive(dbFile);
+            return mDriveTaskManager.uploadFileToDrive(upload.getFile());
         }
     }
 }
@@ -6,6 +6,14 @@ import android.support.annotation.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import co.smartreceipts.android.analytics.Analytics;
@@ -13,23 +21,39 @@ import co.smartreceipts.android.analytics.events.ErrorEvent;
 import co.smartreceipts.android.model.Receipt;
 import co.smartreceipts.android.model.factory.ReceiptBuilderFactoryFactory;
 import co.smartreceipts.android.persistence.database.controllers.TableController;
+import co.smartreceipts.android.persistence.database.files.ReceiptFileIndex;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import co.smartreceipts.android.persistence.database.operations.OperationFamilyType;
 import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
 import co.smartreceipts.android.sync.drive.rx.DriveStreamMappings;
 import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
 import co.smartreceipts.android.sync.model.SyncState;
+import co.smartreceipts.android.sync.model.impl.Identifier;
 import co.smartreceipts.android.sync.network.NetworkManager;
 import co.smartreceipts.android.sync.provider.SyncProvider;
 import co.smartreceipts.android.utils.log.Logger;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
 
 
+/**
+ * Syncs our receipts with Google Drive. Rather than starting an upload for each receipt as soon as we're notified about
+ * it, receipts are added to a {@link DriveUploadQueue} and at most a fixed number of them are synced at the same time.
+ * If a receipt changes again before we've started to sync it, only its latest version is uploaded, and receipts that
+ * fail to sync are retried with an exponential back-off.
+ * <p>
+ * Receipts with byte-identical files (as tracked by the {@link ReceiptFileIndex}) share a single Drive file, so we
+ * never modify or delete a Drive file on behalf of one receipt while another one still uses it.
+ * </p>
+ */
 public class DriveReceiptsManager {
 
+    private static final int DEFAULT_MAX_CONCURRENT_SYNCS = 3;
+
     private final TableController<Receipt> mReceiptTableController;
     private final ReceiptsTable mReceiptsTable;
     private final DriveStreamsManager mDriveTaskManager;
@@ -38,22 +62,36 @@ public class DriveReceiptsManager {
     private final Analytics mAnalytics;
     private final DriveStreamMappings mDriveStreamMappings;
     private final ReceiptBuilderFactoryFactory mReceiptBuilderFactoryFactory;
+    private final ReceiptFileIndex mReceiptFileIndex;
+    private final DriveUploadQueue mUploadQueue;
+    private final int mMaxConcurrentSyncs;
     private final Scheduler mObserveOnScheduler;
     private final Scheduler mSubscribeOnScheduler;
+    private final Scheduler mRetryScheduler;
     private final AtomicBoolean mIsEnabled = new AtomicBoolean(true);
     private final AtomicBoolean mIsIntializing = new AtomicBoolean(false);
+    private final Map<Integer, Receipt> mPendingReceipts = new LinkedHashMap<>();
+    private final Set<Integer> mInFlightReceiptIds = new HashSet<>();
+    private Disposable mRetryDisposable;
+    private long mRetryTime = Long.MAX_VALUE;
 
     public DriveReceiptsManager(@NonNull TableController<Receipt> receiptsTableController, @NonNull ReceiptsTable receiptsTable,
                                 @NonNull DriveStreamsManager driveTaskManager, @NonNull DriveDatabaseManager driveDatabaseManager,
-                                @NonNull NetworkManager networkManager, @NonNull Analytics analytics) {
-        this(receiptsTableController, receiptsTable, driveTaskManager, driveDatabaseManager, networkManager, analytics, new DriveStreamMappings(), new ReceiptBuilderFactoryFactory(), Schedulers.io(), Schedulers.io());
+                                @NonNull NetworkManager networkManager, @NonNull Analytics analytics, @NonNull ReceiptFileIndex receiptFileIndex,
+                                @NonNull DriveUploadQueue uploadQueue) {
+        this(receiptsTableController, receiptsTable, driveTaskManager, driveDatabaseManager, networkManager, analytics, new DriveStreamMappings(),
+                new ReceiptBuilderFactoryFactory(), receiptFileIndex, uploadQueue, DEFAULT_MAX_CONCURRENT_SYNCS, Schedulers.io(), Schedulers.io(),
+                Schedulers.computation());
     }
 
     public DriveReceiptsManager(@NonNull TableController<Receipt> receiptsTableController, @NonNull ReceiptsTable receiptsTable,
                                 @NonNull DriveStreamsManager driveTaskManager, @NonNull DriveDatabaseManager driveDatabaseManager,
                                 @NonNull NetworkManager networkManager, @NonNull Analytics analytics, @NonNull DriveStreamMappings driveStreamMappings,
-                                @NonNull ReceiptBuilderFactoryFactory receiptBuilderFactoryFactory, @NonNull Scheduler observeOnScheduler,
-                                @NonNull Scheduler subscribeOnScheduler) {
+                                @NonNull ReceiptBuilderFactoryFactory receiptBuilderFactoryFactory, @NonNull ReceiptFileIndex receiptFileIndex,
+                                @NonNull DriveUploadQueue uploadQueue,
+                                int maxConcurrentSyncs, @NonNull Scheduler observeOnScheduler, @NonNull Scheduler subscribeOnScheduler,
+                                @NonNull Scheduler retryScheduler) {
+        Preconditions.checkArgument(maxConcurrentSyncs > 0, "We must be allowed to sync at least one receipt at a time");
         mReceiptTableController = Preconditions.checkNotNull(receiptsTableController);
         mReceiptsTable = Preconditions.checkNotNull(receiptsTable);
         mDriveTaskManager = Preconditions.checkNotNull(driveTaskManager);
@@ -62,8 +100,12 @@ public class DriveReceiptsManager {
         mAnalytics = Preconditions.checkNotNull(analytics);
         mDriveStreamMappings = Preconditions.checkNotNull(driveStreamMappings);
         mReceiptBuilderFactoryFactory = Preconditions.checkNotNull(receiptBuilderFactoryFactory);
+        mReceiptFileIndex = Preconditions.checkNotNull(receiptFileIndex);
+        mUploadQueue = Preconditions.checkNotNull(uploadQueue);
+        mMaxConcurrentSyncs = maxConcurrentSyncs;
         mObserveOnScheduler = Preconditions.checkNotNull(observeOnScheduler);
         mSubscribeOnScheduler = Preconditions.checkNotNull(subscribeOnScheduler);
+        mRetryScheduler = Preconditions.checkNotNull(retryScheduler);
     }
 
     public synchronized void initialize() {
@@ -72,6 +114,14 @@ public class DriveReceiptsManager {
                 if (!mIsIntializing.getAndSet(true)) {
                     Logger.info(this, "Performing initialization of drive receipts");
                     mReceiptsTable.getUnsynced(SyncProvider.GoogleDrive)
+                            .doOnSuccess(receipts -> {
+                                // Drop anything from a previous session that no longer needs to be synced
+                                final List<Integer> receiptIds = new ArrayList<>(receipts.size());
+                                for (final Receipt receipt : receipts) {
+                                    receiptIds.add(receipt.getId());
+                                }
+                                mUploadQueue.retainAll(receiptIds);
+                            })
                             .flatMapObservable(Observable::fromIterable)
                             .subscribeOn(mSubscribeOnScheduler)
                             .observeOn(mObserveOnScheduler)
@@ -100,6 +150,7 @@ public class DriveReceiptsManager {
     public synchronized void enable() {
         Logger.info(this, "Enabling Drive Receipts Manager");
         mIsEnabled.set(true);
+        startPendingSyncs();
     }
 
     public synchronized void disable() {
@@ -124,24 +175,7 @@ public class DriveReceiptsManager {
         Preconditions.checkArgument(!receipt.getSyncState().isSynced(SyncProvider.GoogleDrive), "Cannot sync an already synced receipt");
         Preconditions.checkArgument(!receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive), "Cannot insert/update a receipt that is marked for deletion");
 
-        if (mNetworkManager.isNetworkAvailable()) {
-            onInsertOrUpdateObservable(receipt)
-                    .observeOn(mObserveOnScheduler)
-                    .subscribeOn(mSubscribeOnScheduler)
-                    .map(syncState -> mReceiptBuilderFactoryFactory.build(receipt).setSyncState(syncState).build())
-                    .flatMapObservable(newReceipt -> {
-                            Logger.info(DriveReceiptsManager.this, "Updating receipt " + receipt.getId() + " to reflect its sync state");
-                            return mReceiptTableController.update(receipt, newReceipt, new DatabaseOperationMetadata(OperationFamilyType.Sync));
-                    })
-                    .subscribe(newReceipt -> {
-                            Logger.info(DriveReceiptsManager.this, "Successfully updated receipt " + receipt.getId() + " to reflect its sync state");
-                    }, throwable -> {
-                            mAnalytics.record(new ErrorEvent(DriveReceiptsManager.this, throwable));
-                            Logger.error(DriveReceiptsManager.this, "Failed to handle insert/update for " + receipt.getId() + " to reflect its sync state", throwable);
-                    });
-        } else {
-            Logger.warn(this, "No network. Skipping insert/update");
-        }
+        enqueue(receipt);
     }
 
     public synchronized void handleDelete(@NonNull final Receipt receipt) {
@@ -161,30 +195,189 @@ public class DriveReceiptsManager {
         Preconditions.checkArgument(!receipt.getSyncState().isSynced(SyncProvider.GoogleDrive), "Cannot delete an already synced receipt");
         Preconditions.checkArgument(receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive), "Cannot delete a receipt that isn't marked for deletion");
 
+        enqueue(receipt);
+    }
+
+    /**
+     * Adds a receipt to our queue, replacing any older version of it that we haven't started to sync yet
+     */
+    private void enqueue(@NonNull Receipt receipt) {
+        mUploadQueue.enqueue(receipt.getId());
+        if (mPendingReceipts.put(receipt.getId(), receipt) != null) {
+            Logger.debug(this, "Coalescing pending sync for receipt {}", receipt.getId());
+        }
+
         if (mNetworkManager.isNetworkAvailable()) {
-            mDriveTaskManager.deleteDriveFile(receipt.getSyncState(), true)
+            startPendingSyncs();
+        } else {
+            Logger.warn(this, "No network. Deferring sync for receipt {}", receipt.getId());
+        }
+    }
+
+    /**
+     * Starts syncing as many of our pending receipts as we're allowed to, skipping any that are still backing off from
+     * an earlier failure (or that are already being synced). If we skipped a receipt that is backing off, we'll check
+     * again once its next attempt is due
+     */
+    private synchronized void startPendingSyncs() {
+        if (!mIsEnabled.get() || !mNetworkManager.isNetworkAvailable()) {
+            return;
+        }
+
+        final long now = mRetryScheduler.now(TimeUnit.MILLISECONDS);
+        long nextRetryTime = Long.MAX_VALUE;
+        final List<Receipt> receiptsToSync = new ArrayList<>();
+        final Iterator<Map.Entry<Integer, Receipt>> iterator = mPendingReceipts.entrySet().iterator();
+        while (iterator.hasNext() && mInFlightReceiptIds.size() < mMaxConcurrentSyncs) {
+            final Map.Entry<Integer, Receipt> entry = iterator.next();
+            if (mInFlightReceiptIds.contains(entry.getKey())) {
+                // We'll pick up this newer version once the in-flight one completes
+                continue;
+            }
+            final long nextAttemptTime = mUploadQueue.getNextAttemptTime(entry.getKey());
+            if (nextAttemptTime > now) {
+                nextRetryTime = Math.min(nextRetryTime, nextAttemptTime);
+                continue;
+            }
+            iterator.remove();
+            mInFlightReceiptIds.add(entry.getKey());
+            receiptsToSync.add(entry.getValue());
+        }
+        scheduleRetry(nextRetryTime, now);
+
+        // Note: These may complete synchronously, so we start them only once we're done with our iterator
+        for (final Receipt receipt : receiptsToSync) {
+            sync(receipt);
+        }
+    }
+
+    private void scheduleRetry(long retryTime, long now) {
+        if (retryTime == Long.MAX_VALUE || (retryTime >= mRetryTime && mRetryDisposable != null && !mRetryDisposable.isDisposed())) {
+            return;
+        }
+        if (mRetryDisposable != null) {
+            mRetryDisposable.dispose();
+        }
+        mRetryTime = retryTime;
+        mRetryDisposable = Completable.timer(retryTime - now, TimeUnit.MILLISECONDS, mRetryScheduler)
+                .subscribe(() -> {
+                    synchronized (DriveReceiptsManager.this) {
+                        mRetryTime = Long.MAX_VALUE;
+                    }
+                    startPendingSyncs();
+                });
+    }
+
+    private void sync(@NonNull final Receipt receipt) {
+        if (receipt.getSyncState().isMarkedForDeletion(SyncProvider.GoogleDrive)) {
+            onDeleteObservable(receipt)
                     .flatMapObservable(syncState -> Observable.just(mReceiptBuilderFactoryFactory.build(receipt).setSyncState(syncState).build()))
                     .observeOn(mObserveOnScheduler)
                     .subscribeOn(mSubscribeOnScheduler)
                     .subscribe(newReceipt -> {
                         Logger.info(DriveReceiptsManager.this, "Attempting to fully delete receipt " + newReceipt.getId() + " that is marked for deletion");
                         mReceiptTableController.delete(newReceipt, new DatabaseOperationMetadata(OperationFamilyType.Sync));
+                        onSyncCompleted(receipt);
                     }, throwable -> {
                         mAnalytics.record(new ErrorEvent(DriveReceiptsManager.this, throwable));
                         Logger.error(DriveReceiptsManager.this, "Failed to handle delete for " + receipt.getId() + " to reflect its sync state", throwable);
+                        onSyncFailed(receipt);
+                    });
+        } else {
+            onInsertOrUpdateObservable(receipt)
+                    .observeOn(mObserveOnScheduler)
+                    .subscribeOn(mSubscribeOnScheduler)
+                    .map(syncState -> mReceiptBuilderFactoryFactory.build(receipt).setSyncState(syncState).build())
+                    .flatMapObservable(newReceipt -> {
+                            Logger.info(DriveReceiptsManager.this, "Updating receipt " + receipt.getId() + " to reflect its sync state");
+                            return mReceiptTableController.update(receipt, newReceipt, new DatabaseOperationMetadata(OperationFamilyType.Sync));
+                    })
+                    .subscribe(newReceipt -> {
+                            Logger.info(DriveReceiptsManager.this, "Successfully updated receipt " + receipt.getId() + " to reflect its sync state");
+                    }, throwable -> {
+                            mAnalytics.record(new ErrorEvent(DriveReceiptsManager.this, throwable));
+                            Logger.error(DriveReceiptsManager.this, "Failed to handle insert/update for " + receipt.getId() + " to reflect its sync state", throwable);
+                            onSyncFailed(receipt);
+                    }, () -> onSyncCompleted(receipt));
+        }
+    }
+
+    private synchronized void onSyncCompleted(@NonNull Receipt receipt) {
+        mInFlightReceiptIds.remove(receipt.getId());
+        if (mPendingReceipts.remove(receipt.getId()) != null) {
+            // It changed while we were syncing it, so our pending version has a stale sync state. Fetch the latest one
+            Logger.info(this, "Receipt {} changed while it was being synced. Syncing its latest version", receipt.getId());
+            mInFlightReceiptIds.add(receipt.getId());
+            mReceiptsTable.findByPrimaryKey(receipt.getId())
+                    .subscribeOn(mSubscribeOnScheduler)
+                    .observeOn(mObserveOnScheduler)
+                    .subscribe(latestReceipt -> {
+                        synchronized (DriveReceiptsManager.this) {
+                            mInFlightReceiptIds.remove(receipt.getId());
+                            if (latestReceipt.getSyncState().isSynced(SyncProvider.GoogleDrive)) {
+                                mUploadQueue.remove(receipt.getId());
+                                startPendingSyncs();
+                            } else {
+                                enqueue(latestReceipt);
+                            }
+                        }
+                    }, throwable -> {
+                        Logger.warn(DriveReceiptsManager.this, "Failed to find the latest version of receipt {}", receipt.getId());
+                        synchronized (DriveReceiptsManager.this) {
+                            mInFlightReceiptIds.remove(receipt.getId());
+                            mUploadQueue.remove(receipt.getId());
+                            startPendingSyncs();
+                        }
                     });
         } else {
-            Logger.warn(DriveReceiptsManager.this, "No network. Skipping delete");
+            mUploadQueue.remove(receipt.getId());
+            startPendingSyncs();
         }
     }
 
+    private synchronized void onSyncFailed(@NonNull Receipt receipt) {
+        mInFlightReceiptIds.remove(receipt.getId());
+        mUploadQueue.retryLater(receipt.getId(), mRetryScheduler.now(TimeUnit.MILLISECONDS));
+        if (!mPendingReceipts.containsKey(receipt.getId())) {
+            mPendingReceipts.put(receipt.getId(), receipt);
+        }
+        startPendingSyncs();
+    }
+
+    @NonNull
+    private Single<SyncState> onDeleteObservable(@NonNull final Receipt receipt) {
+        return Single.defer(() -> {
+            final SyncState oldSyncState = receipt.getSyncState();
+            final Identifier driveFileId = oldSyncState.getSyncId(SyncProvider.GoogleDrive);
+            if (driveFileId != null && mReceiptFileIndex.isDriveFileShared(receipt.getId(), driveFileId)) {
+                Logger.info(this, "Receipt " + receipt.getId() + " shares its Drive file with another receipt. Keeping the file");
+                return Single.just(mDriveStreamMappings.postDeleteSyncState(oldSyncState, true));
+            } else {
+                return mDriveTaskManager.deleteDriveFile(oldSyncState, true);
+            }
+        });
+    }
+
     @NonNull
     private Single<SyncState> onInsertOrUpdateObservable(@NonNull final Receipt receipt) {
+        // Note: We defer this, since checking our file index may require us to read the entire receipt file
+        return Single.defer(() -> onInsertOrUpdateSingle(receipt));
+    }
+
+    @NonNull
+    private Single<SyncState> onInsertOrUpdateSingle(@NonNull final Receipt receipt) {
         final SyncState oldSyncState = receipt.getSyncState();
         final File receiptFile = receipt.getFile();
+        final Identifier driveFileId = oldSyncState.getSyncId(SyncProvider.GoogleDrive);
 
-        if (oldSyncState.getSyncId(SyncProvider.GoogleDrive) == null) {
+        if (driveFileId == null) {
             if (receiptFile != null && receiptFile.exists()) {
+                final String hash = mReceiptFileIndex.getHash(receipt.getId(), receiptFile);
+                final Identifier identicalDriveFileId = hash != null ? mReceiptFileIndex.findSyncedDriveFile(receipt.getId(), hash) : null;
+                if (identicalDriveFileId != null) {
+                    Logger.info(this, "Found receipt " + receipt.getId() + " with a file that is identical to one in Drive. Sharing it");
+                    return Single.just(mDriveStreamMappings.postShareSyncState(oldSyncState, identicalDriveFileId));
+                }
                 Logger.info(this, "Found receipt " + receipt.getId() + " with a non-uploaded file. Uploading");
                 return mDriveTaskManager.uploadFileToDrive(oldSyncState, receiptFile);
             } else {
@@ -192,9 +385,17 @@ public class DriveReceiptsManager {
                 return Single.just(mDriveStreamMappings.postInsertSyncState(oldSyncState, null));
             }
         } else {
+            final boolean isDriveFileShared = mReceiptFileIndex.isDriveFileShared(receipt.getId(), driveFileId);
             if (receiptFile != null) {
+                if (isDriveFileShared) {
+                    Logger.info(this, "Found receipt " + receipt.getId() + " with a new file, whose old file is shared with another receipt. Uploading");
+                    return mDriveTaskManager.uploadFileToDrive(oldSyncState, receiptFile);
+                }
                 Logger.info(this, "Found receipt " + receipt.getId() + " with a new file. Updating");
                 return mDriveTaskManager.updateDriveFile(oldSyncState, receiptFile);
+            } else if (isDriveFileShared) {
+                Logger.info(this, "Found receipt " + receipt.getId() + " with a stale reference to a shared file. Keeping the file");
+                return Single.just(mDriveStreamMappings.postDeleteSyncState(oldSyncState, false));
             } else {
                 Logger.info(this, "Found receipt " + receipt.getId() + " with a stale file reference. Removing");
                 return mDriveTaskManager.deleteDriveFile(oldSyncState, false);
@@ -2,10 +2,12 @@ package co.smartreceipts.android.sync.drive.managers;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import com.google.android.gms.drive.DriveFolder;
 import com.google.android.gms.drive.DriveId;
 import com.google.common.base.Preconditions;
 import com.hadisatrio.optional.Optional;
@@ -15,11 +17,14 @@ import java.io.IOException;
 import java.util.List;
 
 import co.smartreceipts.android.persistence.DatabaseHelper;
+import co.smartreceipts.android.persistence.database.files.ReceiptFileDeduplicator;
 import co.smartreceipts.android.persistence.database.tables.AbstractSqlTable;
 import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.sync.drive.changes.DatabaseChangeLog;
 import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
 import co.smartreceipts.android.sync.manual.ManualBackupTask;
 import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
+import co.smartreceipts.android.sync.model.RestoreProgress;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import co.smartreceipts.android.utils.log.Logger;
 import io.reactivex.Observable;
@@ -33,6 +38,7 @@ public class DriveRestoreDataManager {
     private final DriveDatabaseManager mDriveDatabaseManager;
     private final DatabaseHelper mDatabaseHelper;
     private final File mStorageDirectory;
+    private final DriveRestoreDownloader mDriveRestoreDownloader;
 
     @SuppressWarnings("ConstantConditions")
     public DriveRestoreDataManager(@NonNull Context context, @NonNull DriveStreamsManager driveStreamsManager, @NonNull DatabaseHelper databaseHelper,
@@ -42,11 +48,26 @@ public class DriveRestoreDataManager {
 
     public DriveRestoreDataManager(@NonNull Context context, @NonNull DriveStreamsManager driveStreamsManager, @NonNull DatabaseHelper databaseHelper,
                                    @NonNull DriveDatabaseManager driveDatabaseManager, @NonNull File storageDirectory) {
+        this(context, driveStreamsManager, databaseHelper, driveDatabaseManager, storageDirectory, new DriveRestoreDownloader(driveStreamsManager));
+    }
+
+    public DriveRestoreDataManager(@NonNull Context context, @NonNull DriveStreamsManager driveStreamsManager, @NonNull DatabaseHelper databaseHelper,
+                                   @NonNull DriveDatabaseManager driveDatabaseManager, @NonNull File storageDirectory,
+                                   @NonNull DriveRestoreDownloader driveRestoreDownloader) {
         mContext = Preconditions.checkNotNull(context.getApplicationContext());
         mDriveStreamsManager = Preconditions.checkNotNull(driveStreamsManager);
         mDatabaseHelper = Preconditions.checkNotNull(databaseHelper);
         mDriveDatabaseManager = Preconditions.checkNotNull(driveDatabaseManager);
         mStorageDirectory = Preconditions.checkNotNull(storageDirectory);
+        mDriveRestoreDownloader = Preconditions.checkNotNull(driveRestoreDownloader);
+    }
+
+    /**
+     * @return an {@link Observable} that emits the aggregate progress of the receipt files that we're restoring
+     */
+    @NonNull
+    public Observable<RestoreProgress> getRestoreProgress() {
+        return mDriveRestoreDownloader.getProgress();
     }
 
     @NonNull
@@ -62,6 +83,9 @@ public class DriveRestoreDataManager {
                 .doOnSuccess(aBoolean -> {
                     Logger.debug(this, "Syncing database following merge operation");
                     mDriveDatabaseManager.syncDatabase();
+                    if (aBoolean) {
+                        new ReceiptFileDeduplicator(mDatabaseHelper.getReceiptsTable(), mDatabaseHelper.getReceiptFileIndex()).reclaimDuplicateStorageInBackground();
+                    }
                 });
     }
 
@@ -111,17 +135,18 @@ public class DriveRestoreDataManager {
                 })
                 .flatMapObservable(driveFolder -> {
                     Logger.debug(DriveRestoreDataManager.this, "Fetching receipts database in drive for this folder");
-                    return mDriveStreamsManager.getFilesInFolder(driveFolder, DatabaseHelper.DATABASE_NAME);
-                })
-                .take(1)
-                .flatMap(driveId -> {
-                    Logger.debug(DriveRestoreDataManager.this, "Converting database drive id to drive file");
-                    return Observable.just(driveId.asDriveFile());
-                })
-                .flatMapSingle(driveFile -> {
-                    Logger.debug(DriveRestoreDataManager.this, "Downloading database file");
-                    final File tempDbFile = new File(downloadLocation, ManualBackupTask.DATABASE_EXPORT_NAME);
-                    return mDriveStreamsManager.download(driveFile, tempDbFile);
+                    return mDriveStreamsManager.getFilesInFolder(driveFolder, DatabaseHelper.DATABASE_NAME)
+                            .take(1)
+                            .flatMap(driveId -> {
+                                Logger.debug(DriveRestoreDataManager.this, "Converting database drive id to drive file");
+                                return Observable.just(driveId.asDriveFile());
+                            })
+                            .flatMapSingle(driveFile -> {
+                                Logger.debug(DriveRestoreDataManager.this, "Downloading database file");
+                                final File tempDbFile = new File(downloadLocation, ManualBackupTask.DATABASE_EXPORT_NAME);
+                                return mDriveStreamsManager.download(driveFile, tempDbFile);
+                            })
+                            .flatMapSingle(file -> applyDatabaseChanges(driveFolder, file, downloadLocation));
                 })
                 .flatMap(file -> {
                     Logger.debug(DriveRestoreDataManager.this, "Retrieving partial receipts from our temporary drive database");
@@ -140,11 +165,15 @@ public class DriveRestoreDataManager {
                         return !receiptFile.exists();
                     }
                 })
-                .flatMapSingle(partialReceipt -> {
-                    Logger.debug(DriveRestoreDataManager.this, "Downloading file for partial receipt: {}", partialReceipt.driveId);
-                    return downloadFileForReceipt(partialReceipt, downloadLocation);
+                .map(partialReceipt -> {
+                    final File receiptFile = new File(new File(downloadLocation, partialReceipt.parentTripName), partialReceipt.fileName);
+                    return new DriveRestoreDownloader.Request(partialReceipt.driveId, receiptFile);
                 })
-                .toList();
+                .toList()
+                .flatMap(requests -> {
+                    Logger.debug(DriveRestoreDataManager.this, "Downloading {} receipt files", requests.size());
+                    return mDriveRestoreDownloader.download(requests, downloadLocation);
+                });
     }
 
     private Single<Boolean> deletePreviousTemporaryDatabase(@NonNull final File inDirectory) {
@@ -162,6 +191,34 @@ public class DriveRestoreDataManager {
         });
     }
 
+    /**
+     * Our database snapshot may be followed by a change log of the edits that were made after it was uploaded (see
+     * {@link DatabaseChangeLog}), so we apply these to our temporary copy of the database if present
+     */
+    private Single<File> applyDatabaseChanges(@NonNull final DriveFolder driveFolder, @NonNull final File temporaryDatabaseFile, @NonNull final File inDirectory) {
+        return mDriveStreamsManager.getFilesInFolder(driveFolder, DatabaseChangeLog.FILE_NAME)
+                .take(1)
+                .flatMapSingle(driveId -> {
+                    Logger.debug(DriveRestoreDataManager.this, "Downloading database change log");
+                    return mDriveStreamsManager.download(driveId.asDriveFile(), new File(inDirectory, DatabaseChangeLog.FILE_NAME));
+                })
+                .map(changesFile -> {
+                    try {
+                        if (DatabaseChangeLog.apply(changesFile, temporaryDatabaseFile, DatabaseChangeLog.getTableNames(mDatabaseHelper.getTables()))) {
+                            Logger.info(DriveRestoreDataManager.this, "Applied our database change log");
+                        }
+                    } catch (IOException | SQLException e) {
+                        Logger.error(DriveRestoreDataManager.this, "Failed to apply our database change log. Restoring from the snapshot alone", e);
+                    } finally {
+                        if (!changesFile.delete()) {
+                            Logger.warn(DriveRestoreDataManager.this, "Failed to delete our temporary database change log");
+                        }
+                    }
+                    return temporaryDatabaseFile;
+                })
+                .last(temporaryDatabaseFile);
+    }
+
     private Observable<PartialReceipt> getPartialReceipts(@NonNull final File temporaryDatabaseFile) {
         Preconditions.checkNotNull(temporaryDatabaseFile);
 
@@ -213,15 +270,6 @@ public class DriveRestoreDataManager {
         });
     }
 
-    private Single<File> downloadFileForReceipt(@NonNull final PartialReceipt partialReceipt, @NonNull final File inDirectory) {
-        return mDriveStreamsManager.getDriveId(partialReceipt.driveId)
-                .flatMap(driveId -> Single.just(driveId.asDriveFile()))
-                .flatMap(driveFile -> {
-                    final File receiptFile = new File(new File(inDirectory, partialReceipt.parentTripName), partialReceipt.fileName);
-                    return mDriveStreamsManager.download(driveFile, receiptFile);
-                });
-    }
-
     /**
      * A subset of receipt metadata so we don't need to full new as many objects as normally required,
      * since this will have a lot of extra memory overhead
@@ -0,0 +1,195 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.smartreceipts.android.persistence.database.files.FileLinker;
+import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
+import co.smartreceipts.android.sync.model.RestoreProgress;
+import co.smartreceipts.android.sync.model.impl.Identifier;
+import co.smartreceipts.android.utils.log.Logger;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ * Downloads the receipt files for a restore, with a limited number of downloads in flight at a time.
+ * <p>
+ * Each file is first downloaded to a temporary file alongside its destination, verified against the size of the
+ * remote file, and only then moved into place. Completed files are recorded in a {@link DriveRestoreManifest}, so
+ * that a failed or interrupted restore continues where it stopped when it's retried. Please note that Drive does not
+ * allow us to resume a partial download of a single file, so any files that were in flight are downloaded again.
+ * </p>
+ * <p>
+ * Receipts with identical files may share a single Drive file, so each Drive file is only downloaded once and then
+ * linked (or copied) to the other receipts that use it.
+ * </p>
+ */
+public class DriveRestoreDownloader {
+
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 3;
+
+    private final RestoreFileSource mRestoreFileSource;
+    private final FileLinker mFileLinker;
+    private final int mMaxConcurrentDownloads;
+    private final Scheduler mSubscribeOnScheduler;
+    private final Subject<RestoreProgress> mProgressSubject = BehaviorSubject.<RestoreProgress>create().toSerialized();
+
+    public DriveRestoreDownloader(@NonNull DriveStreamsManager driveStreamsManager) {
+        this(new RestoreFileSource.Drive(driveStreamsManager), new FileLinker(), DEFAULT_MAX_CONCURRENT_DOWNLOADS, Schedulers.io());
+    }
+
+    @VisibleForTesting
+    DriveRestoreDownloader(@NonNull RestoreFileSource restoreFileSource, @NonNull FileLinker fileLinker, int maxConcurrentDownloads,
+                           @NonNull Scheduler subscribeOnScheduler) {
+        Preconditions.checkArgument(maxConcurrentDownloads > 0, "We must allow at least one download");
+        mRestoreFileSource = Preconditions.checkNotNull(restoreFileSource);
+        mFileLinker = Preconditions.checkNotNull(fileLinker);
+        mMaxConcurrentDownloads = maxConcurrentDownloads;
+        mSubscribeOnScheduler = Preconditions.checkNotNull(subscribeOnScheduler);
+    }
+
+    /**
+     * @return an {@link Observable} that emits the aggregate {@link RestoreProgress} of the current (or most recent) restore
+     */
+    @NonNull
+    public Observable<RestoreProgress> getProgress() {
+        return mProgressSubject;
+    }
+
+    /**
+     * Downloads a set of files, skipping any that were completed by a previous attempt to download into this directory
+     *
+     * @param requests the {@link Request}s to download
+     * @param directory the directory that we're restoring to. All destinations must be within this
+     * @return a {@link Single} that emits all of the requested files once they have been downloaded. If any downloads
+     * fail, the others are still completed before this emits an error
+     */
+    @NonNull
+    public Single<List<File>> download(@NonNull final List<Request> requests, @NonNull final File directory) {
+        Preconditions.checkNotNull(requests);
+        Preconditions.checkNotNull(directory);
+
+        return Single.defer(() -> {
+            final DriveRestoreManifest manifest = new DriveRestoreManifest(directory);
+            final Map<Identifier, List<File>> destinationsByDriveFile = new LinkedHashMap<>();
+            for (final Request request : requests) {
+                List<File> destinations = destinationsByDriveFile.get(request.driveFileId);
+                if (destinations == null) {
+                    destinations = new ArrayList<>();
+                    destinationsByDriveFile.put(request.driveFileId, destinations);
+                }
+                destinations.add(request.destination);
+            }
+
+            final AtomicInteger completedFiles = new AtomicInteger();
+            final AtomicLong downloadedBytes = new AtomicLong();
+            mProgressSubject.onNext(new RestoreProgress(0, requests.size(), 0));
+
+            return Observable.fromIterable(destinationsByDriveFile.entrySet())
+                    .flatMap(entry -> restore(entry.getKey(), entry.getValue(), manifest, downloadedBytes)
+                            .subscribeOn(mSubscribeOnScheduler)
+                            .doOnSuccess(files -> mProgressSubject.onNext(new RestoreProgress(completedFiles.addAndGet(files.size()), requests.size(), downloadedBytes.get())))
+                            .toObservable(), true, mMaxConcurrentDownloads)
+                    .<File>flatMapIterable(files -> files)
+                    .toList()
+                    .doOnSuccess(files -> {
+                        Logger.info(DriveRestoreDownloader.this, "Restored {} files after downloading {} bytes", files.size(), downloadedBytes.get());
+                        manifest.delete();
+                    });
+        });
+    }
+
+    @NonNull
+    private Single<List<File>> restore(@NonNull final Identifier driveFileId, @NonNull final List<File> destinations,
+                                       @NonNull final DriveRestoreManifest manifest, @NonNull final AtomicLong downloadedBytes) {
+        return Single.defer(() -> {
+            File localCopy = null;
+            final List<File> incompleteDestinations = new ArrayList<>();
+            for (final File destination : destinations) {
+                if (manifest.isComplete(driveFileId, destination)) {
+                    if (localCopy == null) {
+                        localCopy = destination;
+                    }
+                } else {
+                    incompleteDestinations.add(destination);
+                }
+            }
+
+            if (incompleteDestinations.isEmpty()) {
+                Logger.debug(DriveRestoreDownloader.this, "Skipping {}, which was restored previously", driveFileId);
+                return Single.just(destinations);
+            }
+
+            final Single<File> source;
+            if (localCopy != null) {
+                source = Single.just(localCopy);
+            } else {
+                source = downloadAndVerify(driveFileId, incompleteDestinations.remove(0), manifest, downloadedBytes);
+            }
+            return source.map(file -> {
+                for (final File destination : incompleteDestinations) {
+                    Logger.debug(DriveRestoreDownloader.this, "Reusing our download of {} for {}", driveFileId, destination.getName());
+                    if (!mFileLinker.replaceWithLink(file, destination)) {
+                        FileUtils.copyFile(file, destination);
+                    }
+                    manifest.markComplete(driveFileId, destination);
+                }
+                return destinations;
+            });
+        });
+    }
+
+    @NonNull
+    private Single<File> downloadAndVerify(@NonNull final Identifier driveFileId, @NonNull final File destination,
+                                           @NonNull final DriveRestoreManifest manifest, @NonNull final AtomicLong downloadedBytes) {
+        final File temporaryFile = new File(destination.getParentFile(), "." + destination.getName() + ".download");
+        return mRestoreFileSource.getSize(driveFileId)
+                .flatMap(expectedSize -> mRestoreFileSource.download(driveFileId, temporaryFile)
+                        .map(file -> {
+                            if (file.length() != expectedSize) {
+                                throw new IOException("Downloaded " + file.length() + " of " + expectedSize + " bytes for " + destination.getName());
+                            }
+                            if (!file.renameTo(destination)) {
+                                throw new IOException("Failed to move our download to " + destination.getName());
+                            }
+                            manifest.markComplete(driveFileId, destination);
+                            downloadedBytes.addAndGet(expectedSize);
+                            return destination;
+                        }))
+                .doOnError(throwable -> {
+                    Logger.error(DriveRestoreDownloader.this, "Failed to download {}", driveFileId, throwable);
+                    FileUtils.deleteQuietly(temporaryFile);
+                });
+    }
+
+    /**
+     * A request to restore a single receipt file
+     */
+    public static final class Request {
+
+        private final Identifier driveFileId;
+        private final File destination;
+
+        public Request(@NonNull Identifier driveFileId, @NonNull File destination) {
+            this.driveFileId = Preconditions.checkNotNull(driveFileId);
+            this.destination = Preconditions.checkNotNull(destination);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import co.smartreceipts.android.sync.model.impl.Identifier;
+import co.smartreceipts.android.utils.log.Logger;
+import wb.android.storage.StorageManager;
+
+/**
+ * Records each file that a {@link DriveRestoreDownloader} has finished restoring, so that an interrupted restore can
+ * continue where it stopped instead of downloading everything again. The manifest lives in the download directory
+ * itself and is deleted once a restore has completed.
+ * <p>
+ * Each entry is appended as a single line, containing the Drive file that it was restored from, its length, its last
+ * modified time, its path (relative to the download directory) and the MD5 checksum of its contents. An entry is only
+ * trusted while the file on disk still matches it, so a torn write at the end of the manifest (or a file that was
+ * modified since) simply causes that file to be downloaded again. We only fall back to the checksum if the length
+ * matches but the last modified time does not (eg because the file was copied), so resuming a restore does not
+ * require us to read every file that was already restored.
+ * </p>
+ */
+public class DriveRestoreManifest {
+
+    public static final String FILE_NAME = ".drive_restore_manifest";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char SEPARATOR = '\t';
+
+    private final File mDirectory;
+    private final File mManifestFile;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+    @WorkerThread
+    DriveRestoreManifest(@NonNull File directory) {
+        mDirectory = Preconditions.checkNotNull(directory);
+        mManifestFile = new File(directory, FILE_NAME);
+        load();
+    }
+
+    /**
+     * Checks if a file has been fully restored by a previous attempt. Please note that this reads the entire file in
+     * order to verify its checksum if its last modified time has changed since then
+     *
+     * @param driveFileId the {@link Identifier} of the Drive file that this should be restored from
+     * @param file the restored file
+     * @return {@code true} if this file matches what we previously restored. {@code false} otherwise
+     */
+    @WorkerThread
+    boolean isComplete(@NonNull Identifier driveFileId, @NonNull File file) {
+        final Entry entry = mEntries.get(getRelativePath(file));
+        if (entry == null || !entry.driveFileId.equals(driveFileId.getId()) || !file.isFile() || file.length() != entry.length) {
+            return false;
+        }
+        return file.lastModified() == entry.lastModified || entry.checksum.equals(StorageManager.getMD5Checksum(file));
+    }
+
+    /**
+     * Records that a file has been fully restored
+     *
+     * @param driveFileId the {@link Identifier} of the Drive file that this was restored from
+     * @param file the restored file
+     * @throws IOException if we failed to checksum this file or to persist our entry
+     */
+    @WorkerThread
+    void markComplete(@NonNull Identifier driveFileId, @NonNull File file) throws IOException {
+        final String checksum = StorageManager.getMD5Checksum(file);
+        if (checksum == null) {
+            throw new IOException("Failed to compute the checksum of " + file.getName());
+        }
+
+        final Entry entry = new Entry(driveFileId.getId(), file.length(), file.lastModified(), getRelativePath(file), checksum);
+        synchronized (this) {
+            OutputStream outputStream = null;
+            try {
+                // Note: We lead with a new line, so that a previously torn entry can't corrupt this one
+                outputStream = new FileOutputStream(mManifestFile, true);
+                outputStream.write(("\n" + entry.driveFileId + SEPARATOR + entry.length + SEPARATOR + entry.lastModified + SEPARATOR + entry.path
+                        + SEPARATOR + entry.checksum).getBytes(UTF_8));
+                outputStream.flush();
+            } finally {
+                IOUtils.closeQuietly(outputStream);
+            }
+            mEntries.put(entry.path, entry);
+        }
+    }
+
+    /**
+     * Deletes this manifest once our restore has completed
+     */
+    synchronized void delete() {
+        mEntries.clear();
+        if (mManifestFile.exists() && !mManifestFile.delete()) {
+            Logger.warn(this, "Failed to delete our restore manifest");
+        }
+    }
+
+    private void load() {
+        if (!mManifestFile.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(mManifestFile), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Entry entry = parse(line);
+                if (entry != null) {
+                    mEntries.put(entry.path, entry);
+                }
+            }
+            Logger.info(this, "Resuming a previous restore with {} completed files", mEntries.size());
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to read our restore manifest. Restoring all files", e);
+            mEntries.clear();
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    @Nullable
+    private static Entry parse(@NonNull String line) {
+        // Note: Paths may contain our separator, so we read these from both ends of the line
+        final int lengthStart = line.indexOf(SEPARATOR) + 1;
+        final int lastModifiedStart = lengthStart > 0 ? line.indexOf(SEPARATOR, lengthStart) + 1 : 0;
+        final int pathStart = lastModifiedStart > 0 ? line.indexOf(SEPARATOR, lastModifiedStart) + 1 : 0;
+        final int checksumStart = line.lastIndexOf(SEPARATOR) + 1;
+        if (lengthStart <= 0 || lastModifiedStart <= 0 || pathStart <= 0 || checksumStart <= pathStart) {
+            return null;
+        }
+        try {
+            final long length = Long.parseLong(line.substring(lengthStart, lastModifiedStart - 1));
+            final long lastModified = Long.parseLong(line.substring(lastModifiedStart, pathStart - 1));
+            return new Entry(line.substring(0, lengthStart - 1), length, lastModified, line.substring(pathStart, checksumStart - 1), line.substring(checksumStart));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private String getRelativePath(@NonNull File file) {
+        return mDirectory.toURI().relativize(file.toURI()).getPath();
+    }
+
+    private static final class Entry {
+        private final String driveFileId;
+        private final long length;
+        private final long lastModified;
+        private final String path;
+        private final String checksum;
+
+        private Entry(@NonNull String driveFileId, long length, long lastModified, @NonNull String path, @NonNull String checksum) {
+            this.driveFileId = driveFileId;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.path = path;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import co.smartreceipts.android.utils.PreFixedThreadFactory;
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Tracks the receipts that are waiting to be synced with Google Drive, along with how many times we've already failed
+ * to sync each of them. This is backed by a small, private database of its own (ie not the user's receipts database,
+ * which is itself uploaded to Drive), so pending work and its retry back-off survive process death.
+ * <p>
+ * Each receipt appears at most once, so rapid edits to a single receipt coalesce into a single entry. Reads are served
+ * from memory, while writes are persisted in order on a background thread to keep disk access off of the caller. Our
+ * persisted entries are also restored on this thread, so any changes that are made before they're loaded take
+ * precedence over them.
+ * </p>
+ */
+public class DriveUploadQueue {
+
+    private static final String DATABASE_NAME = "drive_upload_queue.db";
+    private static final int DATABASE_VERSION = 1;
+
+    @VisibleForTesting
+    static final String TABLE_NAME = "drive_upload_queue";
+    private static final String COLUMN_RECEIPT_ID = "receipt_id";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_NEXT_ATTEMPT_TIME = "next_attempt_time";
+
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final SQLiteOpenHelper mOpenHelper;
+    private final Executor mWriteExecutor;
+    private final long mInitialBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final Map<Integer, Entry> mEntries = new LinkedHashMap<>();
+    private Set<Integer> mChangedBeforeLoad = new HashSet<>();
+    private Set<Integer> mRetainedBeforeLoad;
+
+    public DriveUploadQueue(@NonNull Context context) {
+        this(new OpenHelper(context.getApplicationContext(), DATABASE_NAME), Executors.newSingleThreadExecutor(new PreFixedThreadFactory("DriveUploadQueue")),
+                DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    @VisibleForTesting
+    DriveUploadQueue(@NonNull SQLiteOpenHelper openHelper, @NonNull Executor writeExecutor, long initialBackoffMillis, long maxBackoffMillis) {
+        Preconditions.checkArgument(initialBackoffMillis > 0 && maxBackoffMillis >= initialBackoffMillis);
+        mOpenHelper = Preconditions.checkNotNull(openHelper);
+        mWriteExecutor = Preconditions.checkNotNull(writeExecutor);
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mWriteExecutor.execute(this::load);
+    }
+
+    /**
+     * Adds a receipt to this queue. If it's already present, its existing retry back-off is preserved
+     *
+     * @param receiptId the id of the receipt to sync
+     */
+    public synchronized void enqueue(int receiptId) {
+        if (!mEntries.containsKey(receiptId)) {
+            final Entry entry = new Entry(0, 0);
+            mEntries.put(receiptId, entry);
+            persist(receiptId, entry);
+        }
+    }
+
+    /**
+     * Removes a receipt from this queue (eg after it was successfully synced)
+     *
+     * @param receiptId the id of the receipt to remove
+     */
+    public synchronized void remove(final int receiptId) {
+        onChangedBeforeLoad(receiptId);
+        if (mEntries.remove(receiptId) != null) {
+            mWriteExecutor.execute(() -> mOpenHelper.getWritableDatabase().delete(TABLE_NAME, COLUMN_RECEIPT_ID + " = ?", new String[]{Integer.toString(receiptId)}));
+        }
+    }
+
+    /**
+     * Removes all receipts from this queue, except for the ones that are provided
+     *
+     * @param receiptIds the ids of the receipts to keep
+     */
+    public synchronized void retainAll(@NonNull Collection<Integer> receiptIds) {
+        if (mChangedBeforeLoad != null) {
+            mRetainedBeforeLoad = new HashSet<>(receiptIds);
+        }
+        final Set<Integer> staleReceiptIds = new HashSet<>(mEntries.keySet());
+        staleReceiptIds.removeAll(receiptIds);
+        for (final Integer staleReceiptId : staleReceiptIds) {
+            remove(staleReceiptId);
+        }
+    }
+
+    /**
+     * Records a failed attempt to sync a receipt, scheduling its next attempt with an exponential back-off
+     *
+     * @param receiptId the id of the receipt that failed to sync
+     * @param now the current time in milliseconds
+     * @return the time (in milliseconds) at which this receipt should next be attempted
+     */
+    public synchronized long retryLater(int receiptId, long now) {
+        final Entry previous = mEntries.get(receiptId);
+        final int attempts = previous != null ? previous.attempts + 1 : 1;
+        final long backoff = mInitialBackoffMillis << Math.min(attempts - 1, 30);
+        final Entry entry = new Entry(attempts, now + (backoff > 0 ? Math.min(backoff, mMaxBackoffMillis) : mMaxBackoffMillis));
+        Logger.info(this, "Sync attempt {} for receipt {} failed. Retrying in {}ms", attempts, receiptId, entry.nextAttemptTime - now);
+        onChangedBeforeLoad(receiptId);
+        mEntries.put(receiptId, entry);
+        persist(receiptId, entry);
+        return entry.nextAttemptTime;
+    }
+
+    /**
+     * @param receiptId the id of the receipt to check
+     * @return the time (in milliseconds) before which we should not attempt to sync this receipt or {@code 0} if it
+     * may be synced immediately
+     */
+    public synchronized long getNextAttemptTime(int receiptId) {
+        final Entry entry = mEntries.get(receiptId);
+        return entry != null ? entry.nextAttemptTime : 0;
+    }
+
+    /**
+     * @return the ids of all receipts in this queue
+     */
+    @NonNull
+    public synchronized List<Integer> getReceiptIds() {
+        return new ArrayList<>(mEntries.keySet());
+    }
+
+    /**
+     * Restores our persisted entries. This runs on our write executor, so it's always ordered before any writes that
+     * were made since we were created. Receipts that were removed or retried before this completes are not overwritten
+     * (although a persisted entry replaces one that was only enqueued, so its back-off is preserved), and any
+     * receipts that were excluded by {@link #retainAll(Collection)} are removed
+     */
+    private void load() {
+        final Map<Integer, Entry> persistedEntries = new LinkedHashMap<>();
+        Cursor cursor = null;
+        try {
+            cursor = mOpenHelper.getReadableDatabase().query(TABLE_NAME, new String[]{COLUMN_RECEIPT_ID, COLUMN_ATTEMPTS, COLUMN_NEXT_ATTEMPT_TIME},
+                    null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                persistedEntries.put(cursor.getInt(0), new Entry(cursor.getInt(1), cursor.getLong(2)));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        final List<Integer> staleReceiptIds = new ArrayList<>();
+        synchronized (this) {
+            for (final Map.Entry<Integer, Entry> persistedEntry : persistedEntries.entrySet()) {
+                final Integer receiptId = persistedEntry.getKey();
+                if (mRetainedBeforeLoad != null && !mRetainedBeforeLoad.contains(receiptId)) {
+                    staleReceiptIds.add(receiptId);
+                } else if (!mChangedBeforeLoad.contains(receiptId)) {
+                    mEntries.put(receiptId, persistedEntry.getValue());
+                }
+            }
+            mChangedBeforeLoad = null;
+            mRetainedBeforeLoad = null;
+        }
+        for (final Integer staleReceiptId : staleReceiptIds) {
+            mOpenHelper.getWritableDatabase().delete(TABLE_NAME, COLUMN_RECEIPT_ID + " = ?", new String[]{Integer.toString(staleReceiptId)});
+        }
+        Logger.debug(this, "Restored {} pending receipt syncs", persistedEntries.size() - staleReceiptIds.size());
+    }
+
+    private void onChangedBeforeLoad(int receiptId) {
+        if (mChangedBeforeLoad != null) {
+            mChangedBeforeLoad.add(receiptId);
+        }
+    }
+
+    private void persist(final int receiptId, @NonNull final Entry entry) {
+        mWriteExecutor.execute(() -> {
+            synchronized (this) {
+                if (mEntries.get(receiptId) != entry) {
+                    // This entry was since replaced (eg by a persisted one), so we'll defer to that instead
+                    return;
+                }
+            }
+            final ContentValues values = new ContentValues(3);
+            values.put(COLUMN_RECEIPT_ID, receiptId);
+            values.put(COLUMN_ATTEMPTS, entry.attempts);
+            values.put(COLUMN_NEXT_ATTEMPT_TIME, entry.nextAttemptTime);
+            mOpenHelper.getWritableDatabase().insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        });
+    }
+
+    private static final class Entry {
+
+        private final int attempts;
+        private final long nextAttemptTime;
+
+        Entry(int attempts, long nextAttemptTime) {
+            this.attempts = attempts;
+            this.nextAttemptTime = nextAttemptTime;
+        }
+    }
+
+    @VisibleForTesting
+    static final class OpenHelper extends SQLiteOpenHelper {
+
+        OpenHelper(@NonNull Context context, @NonNull String name) {
+            super(context, name, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                    + COLUMN_RECEIPT_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_ATTEMPTS + " INTEGER DEFAULT 0, "
+                    + COLUMN_NEXT_ATTEMPT_TIME + " INTEGER DEFAULT 0)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // No upgrades yet
+        }
+    }
+}
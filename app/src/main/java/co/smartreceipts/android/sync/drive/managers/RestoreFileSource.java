@@ -0,0 +1,61 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.drive.Metadata;
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+
+import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
+import co.smartreceipts.android.sync.model.impl.Identifier;
+import io.reactivex.Single;
+
+/**
+ * Provides the remote files that a {@link DriveRestoreDownloader} restores from, so that it can be exercised without
+ * a live connection to Google Drive
+ */
+interface RestoreFileSource {
+
+    /**
+     * @param identifier the {@link Identifier} of the remote file
+     * @return a {@link Single} that emits the size of this file in bytes
+     */
+    @NonNull
+    Single<Long> getSize(@NonNull Identifier identifier);
+
+    /**
+     * @param identifier the {@link Identifier} of the remote file
+     * @param destination the local {@link File} to download to
+     * @return a {@link Single} that emits the destination file once it has been downloaded
+     */
+    @NonNull
+    Single<File> download(@NonNull Identifier identifier, @NonNull File destination);
+
+    /**
+     * The default {@link RestoreFileSource}, which downloads our files via a {@link DriveStreamsManager}
+     */
+    class Drive implements RestoreFileSource {
+
+        private final DriveStreamsManager mDriveStreamsManager;
+
+        Drive(@NonNull DriveStreamsManager driveStreamsManager) {
+            mDriveStreamsManager = Preconditions.checkNotNull(driveStreamsManager);
+        }
+
+        @NonNull
+        @Override
+        public Single<Long> getSize(@NonNull Identifier identifier) {
+            return mDriveStreamsManager.getDriveId(identifier)
+                    .flatMap(driveId -> mDriveStreamsManager.getMetadata(driveId.asDriveFile()))
+                    .map(Metadata::getFileSize);
+        }
+
+        @NonNull
+        @Override
+        public Single<File> download(@NonNull Identifier identifier, @NonNull File destination) {
+            return mDriveStreamsManager.getDriveId(identifier)
+                    .flatMap(driveId -> mDriveStreamsManager.download(driveId.asDriveFile(), destination));
+        }
+    }
+}
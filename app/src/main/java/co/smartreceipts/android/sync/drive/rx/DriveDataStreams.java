@@ -36,7 +36,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import co.smartreceipts.android.persistence.DatabaseHelper;
@@ -48,6 +50,7 @@ import co.smartreceipts.android.sync.drive.services.DriveUploadCompleteManager;
 import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
 import co.smartreceipts.android.sync.model.impl.DefaultRemoteBackupMetadata;
 import co.smartreceipts.android.sync.model.impl.Identifier;
+import co.smartreceipts.android.utils.PreFixedThreadFactory;
 import co.smartreceipts.android.utils.UriUtils;
 import co.smartreceipts.android.utils.log.Logger;
 import io.reactivex.Observable;
@@ -60,6 +63,13 @@ class DriveDataStreams {
     private static final String SMART_RECEIPTS_FOLDER = "Smart Receipts";
     private static final CustomPropertyKey SMART_RECEIPTS_FOLDER_KEY = new CustomPropertyKey("smart_receipts_id", CustomPropertyKey.PUBLIC);
 
+    /**
+     * The maximum number of file streams that we'll copy at the same time. Additional copies wait in line, so a large
+     * sync cannot spawn a thread per file
+     */
+    private static final int MAX_STREAM_COPY_THREADS = 3;
+    private static final long STREAM_COPY_THREAD_KEEP_ALIVE_SECONDS = 30;
+
     private final GoogleApiClient mGoogleApiClient;
     private final GoogleDriveSyncMetadata mGoogleDriveSyncMetadata;
     private final Context mContext;
@@ -71,7 +81,7 @@ class DriveDataStreams {
     public DriveDataStreams(@NonNull Context context, @NonNull GoogleApiClient googleApiClient,
                             @NonNull GoogleDriveSyncMetadata googleDriveSyncMetadata,
                             @NonNull DriveUploadCompleteManager driveUploadCompleteManager) {
-        this(googleApiClient, context, googleDriveSyncMetadata, new DeviceMetadata(context), driveUploadCompleteManager, Executors.newCachedThreadPool());
+        this(googleApiClient, context, googleDriveSyncMetadata, new DeviceMetadata(context), driveUploadCompleteManager, newStreamCopyExecutor());
     }
 
     public DriveDataStreams(@NonNull GoogleApiClient googleApiClient, @NonNull Context context, @NonNull GoogleDriveSyncMetadata googleDriveSyncMetadata,
@@ -544,6 +554,7 @@ class DriveDataStreams {
             @Override
             public void onFailure(@NonNull Status status) {
                 Logger.error(DriveDataStreams.this, "Failed to downloaded the drive resource with status: {}", status);
+                emitter.onError(new IOException(status.getStatusMessage()));
             }
         }));
     }
@@ -551,4 +562,12 @@ class DriveDataStreams {
     private boolean isValidSmartReceiptsFolder(@NonNull Metadata metadata) {
         return metadata.isInAppFolder() && metadata.isFolder() && !metadata.isTrashed();
     }
+
+    @NonNull
+    private static Executor newStreamCopyExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_STREAM_COPY_THREADS, MAX_STREAM_COPY_THREADS,
+                STREAM_COPY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new PreFixedThreadFactory("DriveDataStreams"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
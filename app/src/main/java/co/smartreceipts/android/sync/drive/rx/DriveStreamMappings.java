@@ -38,6 +38,19 @@ public class DriveStreamMappings {
                 new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)), new Date(System.currentTimeMillis()));
     }
 
+    /**
+     * Builds the sync state of a receipt that shares an existing Drive file with identical contents instead of
+     * uploading its own copy of it
+     */
+    @NonNull
+    public SyncState postShareSyncState(@NonNull SyncState oldSyncState, @NonNull Identifier driveFileId) {
+        Preconditions.checkNotNull(oldSyncState);
+        Preconditions.checkNotNull(driveFileId);
+
+        return new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, driveFileId)), newDriveSyncedStatusMap(),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)), new Date(System.currentTimeMillis()));
+    }
+
     @NonNull
     public SyncState postDeleteSyncState(@NonNull SyncState oldSyncState, boolean isFullDelete) {
         final MarkedForDeletionMap markedForDeletionMap;
@@ -1,36 +1,59 @@
 package co.smartreceipts.android.sync.manual;
 
+import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import co.smartreceipts.android.date.DateUtils;
 import co.smartreceipts.android.persistence.DatabaseHelper;
 import co.smartreceipts.android.persistence.PersistenceManager;
+import co.smartreceipts.android.sync.drive.managers.DriveRestoreManifest;
 import co.smartreceipts.android.utils.log.Logger;
+import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
 import io.reactivex.subjects.ReplaySubject;
+import io.reactivex.subjects.Subject;
+import wb.android.storage.SDCardFileManager;
 import wb.android.storage.SDCardStateException;
 import wb.android.storage.StorageManager;
+import wb.android.storage.StreamingZipWriter;
 
+/**
+ * Exports all of our data (ie the database, preferences, internal files, and trip folders) into a single .smr archive.
+ * Each source is streamed straight into the archive, so every byte is only read once and written once, and we don't
+ * need any free space beyond the archive itself.
+ */
 public class ManualBackupTask {
 
     public static final String DATABASE_EXPORT_NAME = "receipts_backup.db";
 
     private static final String EXPORT_FILENAME = DateUtils.getCurrentDateAsYYYY_MM_DDString() + "_SmartReceipts.smr";
+    private static final String PARTIAL_EXPORT_EXTENSION = ".smr.partial";
     private static final String DATABASE_JOURNAL = "receipts.db-journal";
+    private static final String SHARED_PREFERENCES_DIRECTORY = "shared_prefs";
+    private static final String INTERNAL_DIRECTORY = "Internal";
+    private static final int BUFFER_SIZE = 8192;
 
     private final PersistenceManager mPersistenceManager;
     private final Scheduler mObserveOnScheduler;
     private final Scheduler mSubscribeOnScheduler;
+    private final Subject<Integer> mProgressSubject = BehaviorSubject.createDefault(0).toSerialized();
     private ReplaySubject<Uri> mBackupBehaviorSubject;
+    private AtomicBoolean mIsBackupCancelled;
 
     ManualBackupTask(@NonNull PersistenceManager persistenceManager) {
         this(persistenceManager, Schedulers.io(), Schedulers.io());
@@ -45,65 +68,163 @@ public class ManualBackupTask {
     @NonNull
     public synchronized ReplaySubject<Uri> backupData() {
         if (mBackupBehaviorSubject == null) {
-            mBackupBehaviorSubject = ReplaySubject.create();
-            backupDataToSingle()
+            final ReplaySubject<Uri> backupBehaviorSubject = ReplaySubject.create();
+            mBackupBehaviorSubject = backupBehaviorSubject;
+            mIsBackupCancelled = new AtomicBoolean(false);
+            backupDataToSingle(mIsBackupCancelled)
                     .observeOn(mObserveOnScheduler)
                     .subscribeOn(mSubscribeOnScheduler)
                     .toObservable()
-                    .subscribe(mBackupBehaviorSubject);
+                    .subscribe(backupBehaviorSubject);
+            // Note: We return our local reference, since a synchronous backup may have been cancelled (and cleared) by now
+            return backupBehaviorSubject;
         }
         return mBackupBehaviorSubject;
     }
 
+    /**
+     * @return an {@link Observable} that emits the progress of the current backup as a percentage
+     */
     @NonNull
-    private Single<Uri> backupDataToSingle() {
+    public Observable<Integer> getProgress() {
+        return mProgressSubject;
+    }
+
+    /**
+     * Cancels the current backup (if any), which will then fail with an {@link java.io.InterruptedIOException}. The
+     * next call to {@link #backupData()} will start a new backup
+     */
+    public synchronized void cancel() {
+        if (mIsBackupCancelled != null) {
+            Logger.info(this, "Cancelling our backup");
+            mIsBackupCancelled.set(true);
+        }
+        mIsBackupCancelled = null;
+        mBackupBehaviorSubject = null;
+    }
+
+    @NonNull
+    private Single<Uri> backupDataToSingle(@NonNull final AtomicBoolean isCancelled) {
         return Single.create(emitter -> {
+            File partialExportFile = null;
+            StreamingZipWriter zipWriter = null;
             try {
-                final StorageManager external = mPersistenceManager.getExternalStorageManager();
+                final long startTime = System.currentTimeMillis();
+                final SDCardFileManager external = mPersistenceManager.getExternalStorageManager();
                 final StorageManager internal = mPersistenceManager.getInternalStorageManager();
-                external.delete(external.getFile(EXPORT_FILENAME)); //Remove old export
-
-                external.copy(external.getFile(DatabaseHelper.DATABASE_NAME), external.getFile(DATABASE_EXPORT_NAME), true);
-                final File prefs = internal.getFile(internal.getRoot().getParentFile(), "shared_prefs");
+                final File exportFile = external.getFile(EXPORT_FILENAME);
+                external.delete(exportFile); //Remove old export
 
-                //Preferences File
+                // Collect everything up front, so we know how much data we'll need to write
+                final File database = external.getFile(DatabaseHelper.DATABASE_NAME);
+                final Map<String, File> files = new LinkedHashMap<>();
+                final File prefs = internal.getFile(internal.getRoot().getParentFile(), SHARED_PREFERENCES_DIRECTORY);
                 if (prefs != null && prefs.exists()) {
-                    File sdPrefs = external.getFile("shared_prefs");
-                    Logger.debug(ManualBackupTask.this,
-                            "Copying the prefs file from: {} to {}", prefs.getAbsolutePath(), sdPrefs.getAbsolutePath());
-                    try {
-                        external.copy(prefs, sdPrefs, true);
-                    } catch (IOException e) {
-                        Logger.error(this, e);
+                    addFiles(prefs, SHARED_PREFERENCES_DIRECTORY + "/", null, files);
+                }
+                addFiles(internal.getRoot(), INTERNAL_DIRECTORY + "/", null, files);
+                addFiles(external.getRoot(), "", new BackupFileFilter(external.getRoot()), files);
+                long totalBytes = database.length();
+                for (final File file : files.values()) {
+                    totalBytes += file.length();
+                }
+                Logger.debug(ManualBackupTask.this, "Backing up {} files with {} bytes", files.size() + 1, totalBytes);
+
+                final long progressTotalBytes = Math.max(totalBytes, 1);
+                final AtomicInteger lastProgress = new AtomicInteger(0);
+                mProgressSubject.onNext(0);
+                partialExportFile = File.createTempFile("backup", PARTIAL_EXPORT_EXTENSION, external.getRoot());
+                zipWriter = new StreamingZipWriter(partialExportFile, BUFFER_SIZE, bytesRead -> {
+                    final int progress = (int) Math.min(100, bytesRead * 100 / progressTotalBytes);
+                    if (lastProgress.getAndSet(progress) != progress) {
+                        mProgressSubject.onNext(progress);
+                    }
+                    return !isCancelled.get() && !emitter.isDisposed();
+                });
+
+                writeDatabaseSnapshot(zipWriter, database);
+                for (final Map.Entry<String, File> entry : files.entrySet()) {
+                    if (entry.getValue().isFile()) {
+                        zipWriter.putFile(entry.getKey(), entry.getValue());
+                    } else {
+                        Logger.warn(ManualBackupTask.this, "Skipping {}, which was deleted during our backup", entry.getKey());
                     }
                 }
+                zipWriter.finish();
 
-                //Internal Files
-                final File[] internalFiles = internal.listFilesAndDirectories();
-                if (internalFiles != null && internalFiles.length > 0) {
-                    Logger.debug(ManualBackupTask.this, "Copying {} files/directories to the SD Card.", internalFiles.length);
-                    final File internalOnSD = external.mkdir("Internal");
-                    internal.copy(internalOnSD, true);
+                if (!partialExportFile.renameTo(exportFile)) {
+                    throw new IOException("Failed to rename our backup to " + EXPORT_FILENAME);
                 }
-
-                //Finish
-                File zip = external.zipBuffered(8192, new BackupFileFilter());
-                zip = external.rename(zip, EXPORT_FILENAME);
-                emitter.onSuccess(Uri.fromFile(zip));
+                partialExportFile = null;
+                mProgressSubject.onNext(100);
+                Logger.info(ManualBackupTask.this, "Completed our backup of {} bytes in {}ms", zipWriter.getBytesRead(), System.currentTimeMillis() - startTime);
+                emitter.onSuccess(Uri.fromFile(exportFile));
             } catch (IOException | SDCardStateException e) {
                 Logger.error(this, e);
                 emitter.onError(e);
+            } finally {
+                if (zipWriter != null) {
+                    zipWriter.close();
+                }
+                if (partialExportFile != null && !partialExportFile.delete()) {
+                    Logger.warn(ManualBackupTask.this, "Failed to delete our incomplete backup");
+                }
             }
         });
     }
 
+    /**
+     * Writes a consistent snapshot of our database. Android does not expose SQLite's online backup API and VACUUM INTO
+     * requires a newer version of SQLite than many of our devices ship with, so we instead hold a transaction on our
+     * writable connection while we stream the database file. This blocks all other writes until we've finished (but
+     * still allows reads), which guarantees that the file won't change underneath us.
+     */
+    private void writeDatabaseSnapshot(@NonNull StreamingZipWriter zipWriter, @NonNull File database) throws IOException {
+        final SQLiteDatabase db = mPersistenceManager.getDatabase().getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            zipWriter.putFile(DATABASE_EXPORT_NAME, database);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void addFiles(@NonNull File directory, @NonNull String prefix, @Nullable FileFilter filter, @NonNull Map<String, File> output) {
+        final File[] files = filter != null ? directory.listFiles(filter) : directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                addFiles(file, prefix + file.getName() + "/", filter, output);
+            } else {
+                output.put(prefix + file.getName(), file);
+            }
+        }
+    }
+
     private static final class BackupFileFilter implements FileFilter {
 
+        private final File mRoot;
+
+        BackupFileFilter(@NonNull File root) {
+            mRoot = root;
+        }
+
         @Override
         public boolean accept(File file) {
-            return !file.getName().equalsIgnoreCase(DatabaseHelper.DATABASE_NAME) &&
-                    !file.getName().equalsIgnoreCase(DATABASE_JOURNAL) &&
-                    !file.getName().endsWith(".smr"); //Ignore previous backups
+            final String name = file.getName();
+            if (mRoot.equals(file.getParentFile())) {
+                // Ignore any leftover copies from when our backups were staged on the SD Card
+                if (name.equalsIgnoreCase(DATABASE_EXPORT_NAME) || name.equals(SHARED_PREFERENCES_DIRECTORY) || name.equals(INTERNAL_DIRECTORY)
+                        || name.equals(DriveRestoreManifest.FILE_NAME)) {
+                    return false;
+                }
+            }
+            return !name.equalsIgnoreCase(DatabaseHelper.DATABASE_NAME) &&
+                    !name.equalsIgnoreCase(DATABASE_JOURNAL) &&
+                    !name.endsWith(PARTIAL_EXPORT_EXTENSION) &&
+                    !name.endsWith(".smr"); //Ignore previous backups
         }
     }
 }
@@ -15,6 +15,7 @@ import java.util.Map;
 
 import co.smartreceipts.android.persistence.DatabaseHelper;
 import co.smartreceipts.android.persistence.PersistenceManager;
+import co.smartreceipts.android.persistence.database.files.ReceiptFileDeduplicator;
 import co.smartreceipts.android.utils.log.Logger;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
@@ -151,7 +152,11 @@ public class ManualRestoreTask {
         }
         DatabaseHelper db = mPersistenceManager.getDatabase();
         Logger.debug(this, "Merging database");
-        return db.merge(external.getFile(ManualBackupTask.DATABASE_EXPORT_NAME).getAbsolutePath(), mContext.getPackageName(), overwrite);
+        final boolean mergeResult = db.merge(external.getFile(ManualBackupTask.DATABASE_EXPORT_NAME).getAbsolutePath(), mContext.getPackageName(), overwrite);
+        if (mergeResult) {
+            new ReceiptFileDeduplicator(db.getReceiptsTable(), db.getReceiptFileIndex()).reclaimDuplicateStorageInBackground();
+        }
+        return mergeResult;
     }
 
     private static final class RestoreRequest {
@@ -0,0 +1,47 @@
+package co.smartreceipts.android.sync.model;
+
+/**
+ * The aggregate progress of a restore
+ */
+public final class RestoreProgress {
+
+    private final int completedFiles;
+    private final int totalFiles;
+    private final long downloadedBytes;
+
+    public RestoreProgress(int completedFiles, int totalFiles, long downloadedBytes) {
+        this.completedFiles = completedFiles;
+        this.totalFiles = totalFiles;
+        this.downloadedBytes = downloadedBytes;
+    }
+
+    /**
+     * @return the number of files that have been restored, including any that were restored by a previous attempt
+     */
+    public int getCompletedFiles() {
+        return completedFiles;
+    }
+
+    /**
+     * @return the total number of files to restore
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    /**
+     * @return the number of bytes that have been downloaded by this attempt
+     */
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "RestoreProgress{" +
+                "completedFiles=" + completedFiles +
+                ", totalFiles=" + totalFiles +
+                ", downloadedBytes=" + downloadedBytes +
+                '}';
+    }
+}
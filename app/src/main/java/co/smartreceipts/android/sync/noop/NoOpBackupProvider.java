@@ -15,6 +15,7 @@ import co.smartreceipts.android.sync.BackupProvidersManager;
 import co.smartreceipts.android.sync.errors.CriticalSyncError;
 import co.smartreceipts.android.sync.errors.SyncErrorType;
 import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
+import co.smartreceipts.android.sync.model.RestoreProgress;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import io.reactivex.Observable;
 import io.reactivex.Single;
@@ -64,6 +65,12 @@ public class NoOpBackupProvider implements BackupProvider {
         return Single.just(false);
     }
 
+    @NonNull
+    @Override
+    public Observable<RestoreProgress> getRestoreProgress() {
+        return Observable.empty();
+    }
+
     @NonNull
     @Override
     public Single<Boolean> deleteBackup(@NonNull RemoteBackupMetadata remoteBackupMetadata) {
@@ -3,6 +3,7 @@ package co.smartreceipts.android.sync.widget.backups;
 import android.app.Dialog;
 import android.app.ProgressDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -10,6 +11,8 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
 import android.widget.Toast;
 
+import java.io.InterruptedIOException;
+
 import javax.inject.Inject;
 
 import co.smartreceipts.android.R;
@@ -19,7 +22,7 @@ import co.smartreceipts.android.persistence.PersistenceManager;
 import co.smartreceipts.android.sync.manual.ManualBackupAndRestoreTaskCache;
 import dagger.android.support.AndroidSupportInjection;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.CompositeDisposable;
 
 
 public class ExportBackupWorkerProgressDialogFragment extends DialogFragment {
@@ -30,7 +33,7 @@ public class ExportBackupWorkerProgressDialogFragment extends DialogFragment {
     Analytics analytics;
 
     private ManualBackupAndRestoreTaskCache manualBackupAndRestoreTaskCache;
-    private Disposable disposable;
+    private CompositeDisposable compositeDisposable;
 
     @Override
     public void onAttach(Context context) {
@@ -49,8 +52,14 @@ public class ExportBackupWorkerProgressDialogFragment extends DialogFragment {
     public Dialog onCreateDialog(@Nullable Bundle savedInstanceState) {
         ProgressDialog dialog = new ProgressDialog(getActivity(), getTheme());
         dialog.setMessage(getString(R.string.dialog_export_working));
-        dialog.setIndeterminate(true);
-        dialog.setProgressStyle(ProgressDialog.STYLE_SPINNER);
+        dialog.setIndeterminate(false);
+        dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        dialog.setMax(100);
+        dialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(android.R.string.cancel), (dialogInterface, which) -> {
+            if (manualBackupAndRestoreTaskCache != null) {
+                manualBackupAndRestoreTaskCache.getManualBackupTask().cancel();
+            }
+        });
         return dialog;
     }
 
@@ -63,7 +72,16 @@ public class ExportBackupWorkerProgressDialogFragment extends DialogFragment {
     @Override
     public void onResume() {
         super.onResume();
-        disposable = manualBackupAndRestoreTaskCache.getManualBackupTask().backupData().observeOn(AndroidSchedulers.mainThread())
+        compositeDisposable = new CompositeDisposable();
+        compositeDisposable.add(manualBackupAndRestoreTaskCache.getManualBackupTask().getProgress()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(progress -> {
+                    final ProgressDialog dialog = (ProgressDialog) getDialog();
+                    if (dialog != null) {
+                        dialog.setProgress(progress);
+                    }
+                }));
+        compositeDisposable.add(manualBackupAndRestoreTaskCache.getManualBackupTask().backupData().observeOn(AndroidSchedulers.mainThread())
                 .subscribe(uri -> {
                     if (uri != null) {
                         final Intent sentIntent = new Intent(Intent.ACTION_SEND);
@@ -74,15 +92,17 @@ public class ExportBackupWorkerProgressDialogFragment extends DialogFragment {
                         Toast.makeText(getContext(), getString(R.string.EXPORT_ERROR), Toast.LENGTH_LONG).show();
                     }
                 }, throwable -> {
-                    analytics.record(new ErrorEvent(ExportBackupWorkerProgressDialogFragment.this, throwable));
-                    Toast.makeText(getContext(), getString(R.string.EXPORT_ERROR), Toast.LENGTH_LONG).show();
+                    if (!(throwable instanceof InterruptedIOException)) {
+                        analytics.record(new ErrorEvent(ExportBackupWorkerProgressDialogFragment.this, throwable));
+                        Toast.makeText(getContext(), getString(R.string.EXPORT_ERROR), Toast.LENGTH_LONG).show();
+                    }
                     dismiss();
-                }, this::dismiss);
+                }, this::dismiss));
     }
 
     @Override
     public void onPause() {
-        disposable.dispose();
+        compositeDisposable.dispose();
         super.onPause();
     }
 }
@@ -23,7 +23,7 @@ import co.smartreceipts.android.persistence.database.tables.Table;
 import co.smartreceipts.android.sync.manual.ManualBackupAndRestoreTaskCache;
 import dagger.android.support.AndroidSupportInjection;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.CompositeDisposable;
 
 
 public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragment {
@@ -39,7 +39,7 @@ public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragmen
     TripTableController tripTableController;
 
     private ManualBackupAndRestoreTaskCache manualBackupAndRestoreTaskCache;
-    private Disposable disposable;
+    private CompositeDisposable compositeDisposable;
 
     private Uri uri;
     private boolean overwrite;
@@ -87,7 +87,17 @@ public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragmen
     @Override
     public void onResume() {
         super.onResume();
-        disposable = manualBackupAndRestoreTaskCache.getManualRestoreTask().restoreData(uri, overwrite).observeOn(AndroidSchedulers.mainThread())
+        compositeDisposable = new CompositeDisposable();
+        compositeDisposable.add(persistenceManager.getDatabase().getMergeProgress()
+                .filter(progress -> progress.getTotalRows() > 0)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(progress -> {
+                    final ProgressDialog dialog = (ProgressDialog) getDialog();
+                    if (dialog != null) {
+                        dialog.setMessage(getString(R.string.progress_import_data, progress.getMergedRows(), progress.getTotalRows()));
+                    }
+                }));
+        compositeDisposable.add(manualBackupAndRestoreTaskCache.getManualRestoreTask().restoreData(uri, overwrite).observeOn(AndroidSchedulers.mainThread())
                 .subscribe(success -> {
                     if (success != null && success) {
                         Toast.makeText(getActivity(), R.string.toast_import_complete, Toast.LENGTH_LONG).show();
@@ -103,12 +113,12 @@ public class ImportLocalBackupWorkerProgressDialogFragment extends DialogFragmen
                     analytics.record(new ErrorEvent(ImportLocalBackupWorkerProgressDialogFragment.this, throwable));
                     Toast.makeText(getActivity(), getString(R.string.IMPORT_ERROR), Toast.LENGTH_LONG).show();
                     dismiss();
-                }, this::dismiss);
+                }, this::dismiss));
     }
 
     @Override
     public void onPause() {
-        disposable.dispose();
+        compositeDisposable.dispose();
         super.onPause();
     }
 }
@@ -24,7 +24,7 @@ import co.smartreceipts.android.sync.model.RemoteBackupMetadata;
 import co.smartreceipts.android.sync.network.NetworkManager;
 import dagger.android.support.AndroidSupportInjection;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.schedulers.Schedulers;
 
 
@@ -45,7 +45,7 @@ public class ImportRemoteBackupWorkerProgressDialogFragment extends DialogFragme
     BackupProvidersManager backupProvidersManager;
 
     private RemoteBackupsDataCache remoteBackupsDataCache;
-    private Disposable disposable;
+    private CompositeDisposable compositeDisposable;
 
     private RemoteBackupMetadata backupMetadata;
     private boolean overwrite;
@@ -94,7 +94,26 @@ public class ImportRemoteBackupWorkerProgressDialogFragment extends DialogFragme
     @Override
     public void onResume() {
         super.onResume();
-        disposable = remoteBackupsDataCache.restoreBackup(backupMetadata, overwrite)
+        compositeDisposable = new CompositeDisposable();
+        compositeDisposable.add(backupProvidersManager.getRestoreProgress()
+                .filter(progress -> progress.getTotalFiles() > 0)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(progress -> {
+                    final ProgressDialog dialog = (ProgressDialog) getDialog();
+                    if (dialog != null) {
+                        dialog.setMessage(getString(R.string.progress_import_files, progress.getCompletedFiles(), progress.getTotalFiles()));
+                    }
+                }));
+        compositeDisposable.add(database.getMergeProgress()
+                .filter(progress -> progress.getTotalRows() > 0)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(progress -> {
+                    final ProgressDialog dialog = (ProgressDialog) getDialog();
+                    if (dialog != null) {
+                        dialog.setMessage(getString(R.string.progress_import_data, progress.getMergedRows(), progress.getTotalRows()));
+                    }
+                }));
+        compositeDisposable.add(remoteBackupsDataCache.restoreBackup(backupMetadata, overwrite)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(success -> {
@@ -116,12 +135,12 @@ public class ImportRemoteBackupWorkerProgressDialogFragment extends DialogFragme
                 }, () -> {
                     remoteBackupsDataCache.removeCachedRestoreBackupFor(backupMetadata);
                     dismiss();
-                });
+                }));
     }
 
     @Override
     public void onPause() {
-        disposable.dispose();
+        compositeDisposable.dispose();
         super.onPause();
     }
 }
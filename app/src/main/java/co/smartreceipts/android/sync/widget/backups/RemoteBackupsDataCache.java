@@ -31,9 +31,12 @@ import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.ReplaySubject;
 import wb.android.storage.StorageManager;
+import wb.android.storage.ZipEngine;
 
 public class RemoteBackupsDataCache {
 
+    private static final int ZIP_BUFFER_SIZE = 8192;
+
     private final Context mContext;
     private final BackupProvidersManager mBackupProvidersManager;
     private final NetworkManager mNetworkManager;
@@ -162,7 +165,7 @@ public class RemoteBackupsDataCache {
                 }
             })
                     .andThen(downloadData(remoteBackupMetadata, debugMode, cacheDir))
-                    .map(files -> StorageManager.getInstance(mContext).zip(cacheDir))
+                    .map(files -> StorageManager.getInstance(mContext).zipBuffered(cacheDir, null, new ZipEngine(ZIP_BUFFER_SIZE, mContext.getCacheDir())))
                     .subscribeOn(Schedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .toObservable()
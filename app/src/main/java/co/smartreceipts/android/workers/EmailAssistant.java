@@ -6,25 +6,26 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.Bitmap.CompressFormat;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Paint.Align;
-import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.widget.Toast;
 
+import org.apache.commons.io.IOUtils;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import co.smartreceipts.android.R;
 import co.smartreceipts.android.activities.NavigationHandler;
@@ -43,12 +44,17 @@ import co.smartreceipts.android.utils.IntentUtils;
 import co.smartreceipts.android.utils.log.Logger;
 import co.smartreceipts.android.workers.reports.Report;
 import co.smartreceipts.android.workers.reports.ReportGenerationException;
+import co.smartreceipts.android.workers.reports.ReportOrchestrator;
+import co.smartreceipts.android.workers.reports.ReportSnapshot;
+import co.smartreceipts.android.workers.reports.cache.ReportArtifactCache;
+import co.smartreceipts.android.workers.reports.cache.ReportFingerprint;
 import co.smartreceipts.android.workers.reports.csv.CsvReportWriter;
 import co.smartreceipts.android.workers.reports.csv.CsvTableGenerator;
 import co.smartreceipts.android.workers.reports.formatting.SmartReceiptsFormattableString;
 import co.smartreceipts.android.workers.reports.pdf.PdfBoxFullPdfReport;
 import co.smartreceipts.android.workers.reports.pdf.PdfBoxImagesOnlyReport;
 import co.smartreceipts.android.workers.reports.pdf.misc.TooManyColumnsException;
+import co.smartreceipts.android.workers.reports.zip.StampedImagesZipExporter;
 import wb.android.flex.Flex;
 import wb.android.storage.StorageManager;
 
@@ -238,7 +244,6 @@ public class EmailAssistant {
         private final WeakReference<ProgressDialog> mProgressDialog;
         private final File[] mFiles;
         private final EnumSet<EmailOptions> mOptions;
-        private boolean memoryErrorOccured = false;
 
         public EmailAttachmentWriter(PersistenceManager persistenceManager,
                                      ProgressDialog dialog,
@@ -249,20 +254,17 @@ public class EmailAssistant {
             mProgressDialog = new WeakReference<>(dialog);
             mOptions = options;
             mFiles = new File[]{null, null, null, null};
-            memoryErrorOccured = false;
         }
 
         @Override
-        // TODO: Add all close(s) in finally statements
         protected WriterResults doInBackground(Trip... trips) {
             if (trips.length == 0) {
                 return WriterResults.getFullFailureInstance(); //Should never be reached
             }
 
-            // Set up our initial variables
+            // Read everything that our reports need once, so each format is built from the same data
             final Trip trip = trips[0];
-            final List<Receipt> receipts = mDB.getReceiptsTable().getBlocking(trip, false);
-            final int len = receipts.size();
+            final ReportSnapshot snapshot = ReportSnapshot.load(mDB, trip);
             final WriterResults results = new WriterResults();
 
             // Make our trip output directory exists in a good state
@@ -273,91 +275,165 @@ public class EmailAssistant {
                     dir = mStorageManager.mkdir(trip.getName());
                 }
             }
+            final File outputDirectory = dir;
+
+            // Each artifact is only regenerated if one of its inputs has changed since we last built it
+            final ReportArtifactCache artifactCache = new ReportArtifactCache(context, outputDirectory);
 
             Logger.info(this, "Generating the following report types {}.", mOptions);
+            final Map<EmailOptions, Callable<File>> generators = new EnumMap<>(EmailOptions.class);
             if (mOptions.contains(EmailOptions.PDF_FULL)) {
-                final Report pdfFullReport = new PdfBoxFullPdfReport(context, persistenceManager, flex);
-                try {
-                    mFiles[EmailOptions.PDF_FULL.getIndex()] = pdfFullReport.generate(trip);
-                } catch (ReportGenerationException e) {
-                    if (e.getCause() instanceof TooManyColumnsException) {
-                        results.didPDFFailTooManyColumns = true;
-                    }
-                    results.didPDFFailCompletely = true;
-                }
+                generators.put(EmailOptions.PDF_FULL, () -> generateFullPdf(snapshot, artifactCache));
             }
             if (mOptions.contains(EmailOptions.PDF_IMAGES_ONLY)) {
-                final Report pdfimagesReport = new PdfBoxImagesOnlyReport(context, persistenceManager, flex);
-                try {
-                    mFiles[EmailOptions.PDF_IMAGES_ONLY.getIndex()] = pdfimagesReport.generate(trip);
-                } catch (ReportGenerationException e) {
-                    results.didPDFFailCompletely = true;
-                }
+                generators.put(EmailOptions.PDF_IMAGES_ONLY, () -> generateImagesPdf(snapshot, artifactCache));
             }
             if (mOptions.contains(EmailOptions.CSV)) {
-                mStorageManager.delete(dir, dir.getName() + ".csv");
+                generators.put(EmailOptions.CSV, () -> generateCsv(snapshot, outputDirectory, artifactCache));
+            }
+            if (mOptions.contains(EmailOptions.ZIP_IMAGES_STAMPED)) {
+                generators.put(EmailOptions.ZIP_IMAGES_STAMPED, () -> generateStampedImagesZip(snapshot, artifactCache));
+            }
 
-                final List<Column<Receipt>> csvColumns = mDB.getCSVTable().get().blockingGet();
-                final CsvTableGenerator<Receipt> csvTableGenerator = new CsvTableGenerator<Receipt>(csvColumns, new LegacyReceiptFilter(mPreferenceManager), true, false);
-                String data = csvTableGenerator.generate(receipts);
+            final AtomicInteger completedCount = new AtomicInteger(0);
+            final ReportOrchestrator<EmailOptions> orchestrator = new ReportOrchestrator<>(generators.size(), new ReportOrchestrator.Listener<EmailOptions>() {
+                @Override
+                public void onFormatStarted(@NonNull EmailOptions format) {
+                    Logger.debug(EmailAttachmentWriter.this, "Started generating the {} report", format);
+                }
+
+                @Override
+                public void onFormatCompleted(@NonNull EmailOptions format, @Nullable File file) {
+                    Logger.debug(EmailAttachmentWriter.this, "Finished generating the {} report", format);
+                    publishProgress(completedCount.incrementAndGet(), generators.size());
+                }
+
+                @Override
+                public void onFormatFailed(@NonNull EmailOptions format, @NonNull Throwable error) {
+                    publishProgress(completedCount.incrementAndGet(), generators.size());
+                }
+            });
+
+            final ReportOrchestrator.Results<EmailOptions> orchestratorResults;
+            try {
+                // Each format that decodes receipt images budgets its memory for the entire heap, so we build these one at a time
+                orchestratorResults = orchestrator.generate(generators, EnumSet.of(EmailOptions.PDF_FULL, EmailOptions.PDF_IMAGES_ONLY, EmailOptions.ZIP_IMAGES_STAMPED));
+            } finally {
+                orchestrator.close();
+            }
+
+            for (final EmailOptions option : generators.keySet()) {
+                mFiles[option.getIndex()] = orchestratorResults.getFile(option);
+                final Throwable failure = orchestratorResults.getFailure(option);
+                if (failure != null) {
+                    if (option == EmailOptions.PDF_FULL || option == EmailOptions.PDF_IMAGES_ONLY) {
+                        if (failure.getCause() instanceof TooManyColumnsException) {
+                            results.didPDFFailTooManyColumns = true;
+                        }
+                        results.didPDFFailCompletely = true;
+                    } else if (option == EmailOptions.CSV) {
+                        results.didCSVFailCompletely = true;
+                    } else {
+                        results.didZIPFailCompletely = true;
+                    }
+                }
+            }
+            return results;
+        }
+
+        @NonNull
+        private File generateFullPdf(@NonNull ReportSnapshot snapshot, @NonNull ReportArtifactCache artifactCache) throws ReportGenerationException {
+            final String fingerprint = new ReportFingerprint(EmailOptions.PDF_FULL.name()).addTrip(snapshot.getTrip()).addReceipts(snapshot.getReceipts(), true)
+                    .addDistances(snapshot.getDistances()).addColumns(snapshot.getPdfColumns()).addPreferences(mPreferenceManager).build();
+            final File cachedFile = artifactCache.get(EmailOptions.PDF_FULL.name(), fingerprint);
+            if (cachedFile != null) {
+                return cachedFile;
+            }
+            artifactCache.invalidate(EmailOptions.PDF_FULL.name());
+            final Report pdfFullReport = new PdfBoxFullPdfReport(context, persistenceManager, flex, snapshot);
+            final File file = pdfFullReport.generate(snapshot.getTrip());
+            artifactCache.put(EmailOptions.PDF_FULL.name(), fingerprint, file);
+            return file;
+        }
+
+        @NonNull
+        private File generateImagesPdf(@NonNull ReportSnapshot snapshot, @NonNull ReportArtifactCache artifactCache) throws ReportGenerationException {
+            final String fingerprint = new ReportFingerprint(EmailOptions.PDF_IMAGES_ONLY.name()).addTrip(snapshot.getTrip()).addReceipts(snapshot.getReceipts(), true)
+                    .addPreferences(mPreferenceManager).build();
+            final File cachedFile = artifactCache.get(EmailOptions.PDF_IMAGES_ONLY.name(), fingerprint);
+            if (cachedFile != null) {
+                return cachedFile;
+            }
+            artifactCache.invalidate(EmailOptions.PDF_IMAGES_ONLY.name());
+            final Report pdfimagesReport = new PdfBoxImagesOnlyReport(context, persistenceManager, flex, snapshot);
+            final File file = pdfimagesReport.generate(snapshot.getTrip());
+            artifactCache.put(EmailOptions.PDF_IMAGES_ONLY.name(), fingerprint, file);
+            return file;
+        }
+
+        @NonNull
+        private File generateCsv(@NonNull ReportSnapshot snapshot, @NonNull File dir, @NonNull ReportArtifactCache artifactCache) throws IOException {
+            final String fingerprint = new ReportFingerprint(EmailOptions.CSV.name()).addTrip(snapshot.getTrip()).addReceipts(snapshot.getReceipts(), false)
+                    .addDistances(snapshot.getDistances()).addColumns(snapshot.getCsvColumns()).addPreferences(mPreferenceManager).build();
+            final File cachedFile = artifactCache.get(EmailOptions.CSV.name(), fingerprint);
+            if (cachedFile != null) {
+                return cachedFile;
+            }
+            artifactCache.invalidate(EmailOptions.CSV.name());
+            mStorageManager.delete(dir, dir.getName() + ".csv");
+
+            final CsvTableGenerator<Receipt> csvTableGenerator = new CsvTableGenerator<Receipt>(snapshot.getCsvColumns(), new LegacyReceiptFilter(mPreferenceManager), true, false);
+
+            String filename = dir.getName() + ".csv";
+            File csvFile = new File(dir, filename);
+            Writer csvWriter = null;
+            try {
+                // Stream each table directly to the file, so we never hold the full csv in memory
+                csvWriter = new CsvReportWriter(csvFile).openWriter();
+                csvTableGenerator.generate(snapshot.getReceipts(), csvWriter);
                 if (mPreferenceManager.get(UserPreference.Distance.PrintDistanceTableInReports)) {
-                    final List<Distance> distances = new ArrayList<>(mDB.getDistanceTable().getBlocking(trip, false));
-                    if (!distances.isEmpty()) {
+                    if (!snapshot.getDistances().isEmpty()) {
+                        final List<Distance> distances = new ArrayList<>(snapshot.getDistances());
                         Collections.reverse(distances); // Reverse the list, so we print the most recent one first
 
                         // CSVs cannot print special characters
                         final ColumnDefinitions<Distance> distanceColumnDefinitions = new DistanceColumnDefinitions(context, mDB, mPreferenceManager, flex, true);
                         final List<Column<Distance>> distanceColumns = distanceColumnDefinitions.getAllColumns();
-                        data += "\n\n";
-                        data += new CsvTableGenerator<>(distanceColumns, true, true).generate(distances);
+                        csvWriter.write("\n\n");
+                        new CsvTableGenerator<>(distanceColumns, true, true).generate(distances, csvWriter);
                     }
                 }
+                csvWriter.close();
+                csvWriter = null;
+                artifactCache.put(EmailOptions.CSV.name(), fingerprint, csvFile);
+                return csvFile;
+            } finally {
+                IOUtils.closeQuietly(csvWriter);
+            }
+        }
 
-                String filename = dir.getName() + ".csv";
-                File csvFile = new File(dir, filename);
-                try {
-                    mFiles[EmailOptions.CSV.getIndex()] = csvFile;
-                    new CsvReportWriter(csvFile).write(data);
-                } catch (IOException e) {
-                    Logger.error(this, "Failed to write the csv file", e);
-                    results.didCSVFailCompletely = true;
-                }
+        @NonNull
+        private File generateStampedImagesZip(@NonNull ReportSnapshot snapshot, @NonNull ReportArtifactCache artifactCache) throws IOException {
+            final Trip trip = snapshot.getTrip();
+            final String fingerprint = new ReportFingerprint(EmailOptions.ZIP_IMAGES_STAMPED.name()).addTrip(trip).addReceipts(snapshot.getReceipts(), true)
+                    .addPreferences(mPreferenceManager).build();
+            final File cachedFile = artifactCache.get(EmailOptions.ZIP_IMAGES_STAMPED.name(), fingerprint);
+            if (cachedFile != null) {
+                return cachedFile;
             }
-            if (mOptions.contains(EmailOptions.ZIP_IMAGES_STAMPED)) {
-                mStorageManager.delete(dir, dir.getName() + ".zip");
-                dir = mStorageManager.mkdir(trip.getDirectory(), trip.getName());
-                for (int i = 0; i < len; i++) {
-                    if (!filterOutReceipt(mPreferenceManager, receipts.get(i)) && receipts.get(i).hasImage()) {
-                        try {
-                            Bitmap b = stampImage(trip, receipts.get(i), Bitmap.Config.ARGB_8888);
-                            if (b != null) {
-                                mStorageManager.writeBitmap(dir, b, receipts.get(i).getImage().getName(), CompressFormat.JPEG, 85);
-                                b.recycle();
-                                b = null;
-                            }
-                        } catch (OutOfMemoryError e) {
-                            Logger.error(this, "Trying to recover from OOM", e);
-                            System.gc();
-                            try {
-                                Bitmap b = stampImage(trip, receipts.get(i), Bitmap.Config.RGB_565);
-                                if (b != null) {
-                                    mStorageManager.writeBitmap(dir, b, receipts.get(i).getImage().getName(), CompressFormat.JPEG, 85);
-                                    b.recycle();
-                                }
-                            } catch (OutOfMemoryError e2) {
-                                Logger.error(this, "Failed to recover from OOM", e2);
-                                results.didZIPFailCompletely = true;
-                                memoryErrorOccured = true;
-                                break;
-                            }
-                        }
-                    }
+            artifactCache.invalidate(EmailOptions.ZIP_IMAGES_STAMPED.name());
+
+            final List<Receipt> receipts = new ArrayList<>();
+            for (final Receipt receipt : snapshot.getReceipts()) {
+                if (!filterOutReceipt(mPreferenceManager, receipt)) {
+                    receipts.add(receipt);
                 }
-                File zip = mStorageManager.zipBuffered(dir, 2048);
-                mStorageManager.deleteRecursively(dir);
-                mFiles[EmailOptions.ZIP_IMAGES_STAMPED.getIndex()] = zip;
             }
-            return results;
+            final File zip = new File(trip.getDirectory(), trip.getName() + ".zip");
+            final StampedImagesZipExporter exporter = new StampedImagesZipExporter(context, flex, mPreferenceManager, Runtime.getRuntime().maxMemory() / 8);
+            exporter.export(trip, receipts, zip);
+            artifactCache.put(EmailOptions.ZIP_IMAGES_STAMPED.name(), fingerprint, zip);
+            return zip;
         }
 
         /**
@@ -378,115 +454,6 @@ public class EmailAssistant {
             }
         }
 
-        private static final float IMG_SCALE_FACTOR = 2.1f;
-        private static final float HW_RATIO = 0.75f;
-
-        private Bitmap stampImage(final Trip trip, final Receipt receipt, Bitmap.Config config) {
-            if (!receipt.hasImage()) {
-                return null;
-            }
-            Bitmap foreground = mStorageManager.getMutableMemoryEfficientBitmap(receipt.getImage());
-            if (foreground != null) { // It can be null if file not found
-                // Size the image
-                int foreWidth = foreground.getWidth();
-                int foreHeight = foreground.getHeight();
-                if (foreHeight > foreWidth) {
-                    foreWidth = (int) (foreHeight * HW_RATIO);
-                } else {
-                    foreHeight = (int) (foreWidth / HW_RATIO);
-                }
-
-                // Set up the paddings
-                int xPad = (int) (foreWidth / IMG_SCALE_FACTOR);
-                int yPad = (int) (foreHeight / IMG_SCALE_FACTOR);
-
-                // Set up an all white background for our canvas
-                Bitmap background = Bitmap.createBitmap(foreWidth + xPad, foreHeight + yPad, config);
-                Canvas canvas = new Canvas(background);
-                canvas.drawARGB(0xFF, 0xFF, 0xFF, 0xFF); //This represents White color
-
-                // Set up the paint
-                Paint dither = new Paint();
-                dither.setDither(true);
-                dither.setFilterBitmap(false);
-                canvas.drawBitmap(foreground, (background.getWidth() - foreground.getWidth()) / 2, (background.getHeight() - foreground.getHeight()) / 2, dither);
-                Paint brush = new Paint();
-                brush.setAntiAlias(true);
-                brush.setTypeface(Typeface.SANS_SERIF);
-                brush.setColor(Color.BLACK);
-                brush.setStyle(Paint.Style.FILL);
-                brush.setTextAlign(Align.LEFT);
-
-                // Set up the number of items to draw
-                int num = 5;
-                if (mPreferenceManager.get(UserPreference.Receipts.IncludeTaxField)) {
-                    num++;
-                }
-                if (receipt.hasExtraEditText1()) {
-                    num++;
-                }
-                if (receipt.hasExtraEditText2()) {
-                    num++;
-                }
-                if (receipt.hasExtraEditText3()) {
-                    num++;
-                }
-                float spacing = getOptimalSpacing(num, yPad / 2, brush);
-                float y = spacing * 4;
-                canvas.drawText(trip.getName(), xPad / 2, y, brush);
-                y += spacing;
-                canvas.drawText(trip.getFormattedStartDate(context, persistenceManager.getPreferenceManager().get(UserPreference.General.DateSeparator)) + " -- " + trip.getFormattedEndDate(context, persistenceManager.getPreferenceManager().get(UserPreference.General.DateSeparator)), xPad / 2, y, brush);
-                y += spacing;
-                y = background.getHeight() - yPad / 2 + spacing * 2;
-                canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_NAME) + ": " + receipt.getName(), xPad / 2, y, brush);
-                y += spacing;
-                canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_PRICE) + ": " + receipt.getPrice().getDecimalFormattedPrice() + " " + receipt.getPrice().getCurrencyCode(), xPad / 2, y, brush);
-                y += spacing;
-                if (mPreferenceManager.get(UserPreference.Receipts.IncludeTaxField)) {
-                    canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_TAX) + ": " + receipt.getTax().getDecimalFormattedPrice() + " " + receipt.getPrice().getCurrencyCode(), xPad / 2, y, brush);
-                    y += spacing;
-                }
-                canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_DATE) + ": " + receipt.getFormattedDate(context, persistenceManager.getPreferenceManager().get(UserPreference.General.DateSeparator)), xPad / 2, y, brush);
-                y += spacing;
-                canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_CATEGORY) + ": " + receipt.getCategory().getName(), xPad / 2, y, brush);
-                y += spacing;
-                canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_COMMENT) + ": " + receipt.getComment(), xPad / 2, y, brush);
-                y += spacing;
-                if (receipt.hasExtraEditText1()) {
-                    canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_1) + ": " + receipt.getExtraEditText1(), xPad / 2, y, brush);
-                    y += spacing;
-                }
-                if (receipt.hasExtraEditText2()) {
-                    canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_2) + ": " + receipt.getExtraEditText2(), xPad / 2, y, brush);
-                    y += spacing;
-                }
-                if (receipt.hasExtraEditText3()) {
-                    canvas.drawText(flex.getString(context, R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_3) + ": " + receipt.getExtraEditText3(), xPad / 2, y, brush);
-                    y += spacing;
-                }
-
-                // Clear out the dead data here
-                foreground.recycle();
-                foreground = null;
-
-                // And return
-                return background;
-            } else {
-                return null;
-            }
-        }
-
-        private float getOptimalSpacing(int count, int space, Paint brush) {
-            float fontSize = 8f; //Seed
-            brush.setTextSize(fontSize);
-            while (space > (count + 2) * brush.getFontSpacing()) {
-                brush.setTextSize(++fontSize);
-            }
-            brush.setTextSize(--fontSize);
-            return brush.getFontSpacing();
-        }
-
-
         @Override
         protected void onPostExecute(WriterResults result) {
             ProgressDialog dialog = mProgressDialog.get();
@@ -528,9 +495,9 @@ public class EmailAssistant {
 
         @Override
         protected void onProgressUpdate(Integer... values) {
-            if (memoryErrorOccured) {
-                memoryErrorOccured = false;
-                Toast.makeText(context, "Error: Not enough memory to stamp the images. Try stopping some other apps and try again.", Toast.LENGTH_LONG).show();
+            final ProgressDialog dialog = mProgressDialog.get();
+            if (dialog != null && values.length == 2) {
+                dialog.setMessage("Building Reports... (" + values[0] + "/" + values[1] + ")");
             }
         }
 
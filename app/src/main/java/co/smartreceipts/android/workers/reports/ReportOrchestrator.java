@@ -0,0 +1,216 @@
+package co.smartreceipts.android.workers.reports;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Builds multiple report formats (eg a PDF and a CSV) for the same trip concurrently on a bounded pool of worker
+ * threads, so the total time that a user waits is that of the slowest format instead of the sum of all of them.
+ * <p>
+ * Each format is isolated from the others: if one fails (including with an {@link OutOfMemoryError}), its failure
+ * is recorded and reported via the {@link Listener} while the remaining formats continue to be built. Callers
+ * should generally share a single {@link ReportSnapshot} across the generators, so all formats are built from the
+ * same data without re-reading the database.
+ * </p>
+ * <p>
+ * Formats that decode receipt images size their memory budget and worker pool for the entire heap, so running two of
+ * them at once could exhaust it. These should be marked as image heavy when calling {@link #generate(Map, Set)}, which
+ * ensures that they are built one at a time (while all other formats continue to be built alongside them).
+ * </p>
+ *
+ * @param <FormatType> the type that identifies each report format
+ */
+public class ReportOrchestrator<FormatType> implements Closeable {
+
+    /**
+     * Receives progress updates for each format. Please note that these callbacks are invoked on the worker thread that
+     * is building the format (ie not the main thread), and multiple callbacks may be received concurrently.
+     */
+    public interface Listener<FormatType> {
+
+        void onFormatStarted(@NonNull FormatType format);
+
+        void onFormatCompleted(@NonNull FormatType format, @Nullable File file);
+
+        void onFormatFailed(@NonNull FormatType format, @NonNull Throwable error);
+    }
+
+    /**
+     * The outcome of each of the formats that we were asked to build
+     */
+    public static final class Results<FormatType> {
+
+        private final Map<FormatType, File> files;
+        private final Map<FormatType, Throwable> failures;
+
+        private Results(@NonNull Map<FormatType, File> files, @NonNull Map<FormatType, Throwable> failures) {
+            this.files = Collections.unmodifiableMap(files);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * @param format the format to check
+         * @return the generated {@link File} or {@code null} if this format failed or produced no output
+         */
+        @Nullable
+        public File getFile(@NonNull FormatType format) {
+            return files.get(format);
+        }
+
+        /**
+         * @param format the format to check
+         * @return the reason that this format failed or {@code null} if it succeeded
+         */
+        @Nullable
+        public Throwable getFailure(@NonNull FormatType format) {
+            return failures.get(format);
+        }
+    }
+
+    private final ExecutorService executorService;
+    private final Listener<FormatType> listener;
+    private final Semaphore imageHeavyPermit = new Semaphore(1);
+
+    /**
+     * @param maxConcurrentFormats the maximum number of formats to build at the same time
+     * @param listener the {@link Listener} to notify as each format progresses
+     */
+    public ReportOrchestrator(int maxConcurrentFormats, @NonNull Listener<FormatType> listener) {
+        this(Executors.newFixedThreadPool(Math.max(1, Math.min(maxConcurrentFormats, Runtime.getRuntime().availableProcessors()))), listener);
+    }
+
+    @VisibleForTesting
+    ReportOrchestrator(@NonNull ExecutorService executorService, @NonNull Listener<FormatType> listener) {
+        this.executorService = Preconditions.checkNotNull(executorService);
+        this.listener = Preconditions.checkNotNull(listener);
+    }
+
+    /**
+     * Builds each of the requested formats, blocking until all of them have either completed or failed
+     *
+     * @param generators a {@link Callable} that builds each format
+     * @return the {@link Results} of each format
+     */
+    @NonNull
+    public Results<FormatType> generate(@NonNull Map<FormatType, Callable<File>> generators) {
+        return generate(generators, Collections.<FormatType>emptySet());
+    }
+
+    /**
+     * Builds each of the requested formats, blocking until all of them have either completed or failed
+     *
+     * @param generators a {@link Callable} that builds each format
+     * @param imageHeavyFormats the formats that must not be built at the same time as one another
+     * @return the {@link Results} of each format
+     */
+    @NonNull
+    public Results<FormatType> generate(@NonNull Map<FormatType, Callable<File>> generators, @NonNull Set<FormatType> imageHeavyFormats) {
+        // Submit the lighter formats first, so they never wait for a thread behind an image heavy one that's blocked
+        final Map<FormatType, Future<File>> futures = new LinkedHashMap<>();
+        for (final Map.Entry<FormatType, Callable<File>> entry : generators.entrySet()) {
+            if (!imageHeavyFormats.contains(entry.getKey())) {
+                futures.put(entry.getKey(), executorService.submit(new IsolatedGenerator(entry.getKey(), entry.getValue(), false)));
+            }
+        }
+        for (final Map.Entry<FormatType, Callable<File>> entry : generators.entrySet()) {
+            if (imageHeavyFormats.contains(entry.getKey())) {
+                futures.put(entry.getKey(), executorService.submit(new IsolatedGenerator(entry.getKey(), entry.getValue(), true)));
+            }
+        }
+
+        final Map<FormatType, File> files = new LinkedHashMap<>();
+        final Map<FormatType, Throwable> failures = new LinkedHashMap<>();
+        boolean interrupted = false;
+        for (final Map.Entry<FormatType, Future<File>> entry : futures.entrySet()) {
+            if (interrupted) {
+                entry.getValue().cancel(true);
+                failures.put(entry.getKey(), new InterruptedException());
+                continue;
+            }
+            try {
+                files.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                failures.put(entry.getKey(), e.getCause() != null ? e.getCause() : e);
+            } catch (InterruptedException e) {
+                Logger.warn(this, "Interrupted while waiting for the {} report", entry.getKey());
+                entry.getValue().cancel(true);
+                failures.put(entry.getKey(), e);
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return new Results<>(files, failures);
+    }
+
+    /**
+     * Stops all worker threads. Any formats that are still being built will be interrupted.
+     */
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    private final class IsolatedGenerator implements Callable<File> {
+
+        private final FormatType format;
+        private final Callable<File> generator;
+        private final boolean isImageHeavy;
+
+        IsolatedGenerator(@NonNull FormatType format, @NonNull Callable<File> generator, boolean isImageHeavy) {
+            this.format = format;
+            this.generator = generator;
+            this.isImageHeavy = isImageHeavy;
+        }
+
+        @Override
+        public File call() throws Exception {
+            if (isImageHeavy) {
+                imageHeavyPermit.acquire();
+                try {
+                    return generate();
+                } finally {
+                    imageHeavyPermit.release();
+                }
+            } else {
+                return generate();
+            }
+        }
+
+        private File generate() throws Exception {
+            listener.onFormatStarted(format);
+            try {
+                final File file = generator.call();
+                listener.onFormatCompleted(format, file);
+                return file;
+            } catch (Exception e) {
+                Logger.error(ReportOrchestrator.this, "Failed to generate the " + format + " report", e);
+                listener.onFormatFailed(format, e);
+                throw e;
+            } catch (OutOfMemoryError e) {
+                Logger.error(ReportOrchestrator.this, "Ran out of memory while generating the " + format + " report", e);
+                listener.onFormatFailed(format, e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package co.smartreceipts.android.workers.reports;
+
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import co.smartreceipts.android.model.Column;
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.persistence.DatabaseHelper;
+
+/**
+ * An immutable view of all the database content that is required to build the reports for a particular trip. This
+ * allows us to read everything once (instead of once per report format) and then share it across multiple reports
+ * that are being generated concurrently, with the guarantee that all of them were built from the same data.
+ */
+public final class ReportSnapshot {
+
+    private final Trip trip;
+    private final List<Receipt> receipts;
+    private final List<Distance> distances;
+    private final List<Column<Receipt>> pdfColumns;
+    private final List<Column<Receipt>> csvColumns;
+
+    public ReportSnapshot(@NonNull Trip trip, @NonNull List<Receipt> receipts, @NonNull List<Distance> distances,
+                          @NonNull List<Column<Receipt>> pdfColumns, @NonNull List<Column<Receipt>> csvColumns) {
+        this.trip = Preconditions.checkNotNull(trip);
+        this.receipts = Collections.unmodifiableList(new ArrayList<>(receipts));
+        this.distances = Collections.unmodifiableList(new ArrayList<>(distances));
+        this.pdfColumns = Collections.unmodifiableList(new ArrayList<>(pdfColumns));
+        this.csvColumns = Collections.unmodifiableList(new ArrayList<>(csvColumns));
+    }
+
+    /**
+     * Reads a new snapshot from the database. This method blocks until all tables have been read.
+     *
+     * @param databaseHelper the {@link DatabaseHelper} to read from
+     * @param trip the {@link Trip} to snapshot
+     * @return a new {@link ReportSnapshot}
+     */
+    @NonNull
+    public static ReportSnapshot load(@NonNull DatabaseHelper databaseHelper, @NonNull Trip trip) {
+        return new ReportSnapshot(trip,
+                databaseHelper.getReceiptsTable().getBlocking(trip, false),
+                databaseHelper.getDistanceTable().getBlocking(trip, false),
+                databaseHelper.getPDFTable().get().blockingGet(),
+                databaseHelper.getCSVTable().get().blockingGet());
+    }
+
+    @NonNull
+    public Trip getTrip() {
+        return trip;
+    }
+
+    @NonNull
+    public List<Receipt> getReceipts() {
+        return receipts;
+    }
+
+    @NonNull
+    public List<Distance> getDistances() {
+        return distances;
+    }
+
+    @NonNull
+    public List<Column<Receipt>> getPdfColumns() {
+        return pdfColumns;
+    }
+
+    @NonNull
+    public List<Column<Receipt>> getCsvColumns() {
+        return csvColumns;
+    }
+}
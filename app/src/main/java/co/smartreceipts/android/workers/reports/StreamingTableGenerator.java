@@ -0,0 +1,24 @@
+package co.smartreceipts.android.workers.reports;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * A variant of the {@link TableGenerator} contract, which writes each row of the table to a {@link Writer} as it is
+ * generated instead of building the entire table in memory first
+ */
+public interface StreamingTableGenerator<DataType> {
+
+    /**
+     * Generates a report from a {@link List} of {@link DataType} and writes it to a {@link Writer}. Please note that
+     * the caller remains responsible for closing this writer
+     *
+     * @param list a {@link List} of {@link DataType} to build the table from
+     * @param writer the {@link Writer} to write the table to
+     * @throws IOException if we failed to write the table
+     */
+    void generate(@NonNull List<DataType> list, @NonNull Writer writer) throws IOException;
+}
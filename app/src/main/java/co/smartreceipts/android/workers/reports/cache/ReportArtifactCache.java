@@ -0,0 +1,103 @@
+package co.smartreceipts.android.workers.reports.cache;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Remembers the {@link ReportFingerprint} of each report artifact that we generate for a trip, so that we can return
+ * the previously generated file (instead of building it again) if none of its inputs have changed since. Each
+ * artifact type is tracked independently, so changing an input that only affects one of them (eg a CSV column) will
+ * not force us to regenerate the others.
+ * <p>
+ * Entries are stored in our application's cache directory (so they are never included in our backups or synced to
+ * Drive) and only point to the artifacts in the trip directory. Along with the fingerprint, we record the path, size,
+ * and modification time of the artifact itself, so an entry is ignored if the file was deleted or overwritten.
+ * </p>
+ */
+public class ReportArtifactCache {
+
+    static final String DIRECTORY_NAME = "report_cache";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+
+    /**
+     * @param context the current application {@link Context}
+     * @param tripDirectory the directory of the trip whose reports we are caching
+     */
+    public ReportArtifactCache(@NonNull Context context, @NonNull File tripDirectory) {
+        this.directory = new File(new File(context.getCacheDir(), DIRECTORY_NAME), Preconditions.checkNotNull(tripDirectory).getName());
+    }
+
+    /**
+     * Fetches the previously generated artifact for a particular fingerprint
+     *
+     * @param artifactType the type of artifact
+     * @param fingerprint the current fingerprint of this artifact's inputs
+     * @return the previously generated artifact or {@code null} if it is missing or out of date
+     */
+    @Nullable
+    public File get(@NonNull String artifactType, @NonNull String fingerprint) {
+        final File entry = new File(directory, artifactType);
+        if (!entry.exists()) {
+            return null;
+        }
+        try {
+            final List<String> lines = FileUtils.readLines(entry, UTF_8);
+            if (lines.size() != 4 || !fingerprint.equals(lines.get(0))) {
+                return null;
+            }
+            final File artifact = new File(lines.get(1));
+            if (artifact.isFile() && Long.toString(artifact.length()).equals(lines.get(2)) && Long.toString(artifact.lastModified()).equals(lines.get(3))) {
+                Logger.info(this, "Re-using the existing {} artifact for {}", artifactType, artifact.getName());
+                return artifact;
+            } else {
+                return null;
+            }
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to read the cached {} artifact", artifactType, e);
+            return null;
+        }
+    }
+
+    /**
+     * Records that an artifact was successfully generated
+     *
+     * @param artifactType the type of artifact
+     * @param fingerprint the fingerprint of the inputs that were used to generate it
+     * @param artifact the generated file
+     */
+    public void put(@NonNull String artifactType, @NonNull String fingerprint, @NonNull File artifact) {
+        final File entry = new File(directory, artifactType);
+        final List<String> lines = Arrays.asList(fingerprint, artifact.getAbsolutePath(), Long.toString(artifact.length()), Long.toString(artifact.lastModified()));
+        try {
+            FileUtils.writeLines(entry, UTF_8.name(), lines);
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to cache the {} artifact", artifactType, e);
+            FileUtils.deleteQuietly(entry);
+        }
+    }
+
+    /**
+     * Forgets about an artifact (eg because we are about to regenerate or delete it)
+     *
+     * @param artifactType the type of artifact
+     */
+    public void invalidate(@NonNull String artifactType) {
+        FileUtils.deleteQuietly(new File(directory, artifactType));
+    }
+}
@@ -0,0 +1,167 @@
+package co.smartreceipts.android.workers.reports.cache;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import co.smartreceipts.android.BuildConfig;
+import co.smartreceipts.android.model.Column;
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+
+/**
+ * Builds a fingerprint (ie a hash) of all the inputs that contribute to a particular report artifact, which allows
+ * us to determine if a previously generated artifact is still up to date (see {@link ReportArtifactCache}).
+ * <p>
+ * Since not every edit path refreshes the last local modification time of a row, we hash the content of each row
+ * alongside of it rather than relying on the timestamp alone.
+ * </p>
+ */
+public class ReportFingerprint {
+
+    /**
+     * All the preferences that may alter the content of a report
+     */
+    private static final List<UserPreference<?>> REPORT_PREFERENCES = Collections.unmodifiableList(Arrays.<UserPreference<?>>asList(
+            UserPreference.General.DefaultCurrency,
+            UserPreference.General.DateSeparator,
+            UserPreference.General.IncludeCostCenter,
+            UserPreference.Receipts.MinimumReceiptPrice,
+            UserPreference.Receipts.OnlyIncludeReimbursable,
+            UserPreference.Receipts.IncludeTaxField,
+            UserPreference.Receipts.UsePreTaxPrice,
+            UserPreference.Receipts.UsePaymentMethods,
+            UserPreference.ReportOutput.UserId,
+            UserPreference.ReportOutput.PrintUserIdByPdfPhoto,
+            UserPreference.ReportOutput.PrintReceiptCommentByPdfPhoto,
+            UserPreference.ReportOutput.PrintReceiptsTableInLandscape,
+            UserPreference.ReportOutput.PdfImageDpi,
+            UserPreference.Distance.DefaultDistanceRate,
+            UserPreference.Distance.PrintDistanceTableInReports,
+            UserPreference.Distance.IncludeDistancePriceInReports,
+            UserPreference.Distance.PrintDistanceAsDailyReceiptInReports,
+            UserPreference.Distance.ShowDistanceAsPriceInSubtotal,
+            UserPreference.PlusSubscription.PdfFooterString));
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte SEPARATOR = 0;
+
+    private final MessageDigest digest;
+
+    /**
+     * @param artifactType a unique name for the type of artifact that we are fingerprinting
+     */
+    public ReportFingerprint(@NonNull String artifactType) {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required to be supported on all devices", e);
+        }
+        // Changes to the app or locale can change the output even if the data is identical
+        add(artifactType).add(BuildConfig.VERSION_CODE).add(Locale.getDefault());
+    }
+
+    @NonNull
+    public ReportFingerprint add(@Nullable Object value) {
+        digest.update(String.valueOf(value).getBytes(UTF_8));
+        digest.update(SEPARATOR);
+        return this;
+    }
+
+    @NonNull
+    public ReportFingerprint addTrip(@NonNull Trip trip) {
+        add(trip.getName()).add(trip.getDirectoryPath()).add(trip.getStartDate().getTime()).add(trip.getStartTimeZone().getID())
+                .add(trip.getEndDate().getTime()).add(trip.getEndTimeZone().getID()).add(trip.getDefaultCurrencyCode())
+                .add(trip.getComment()).add(trip.getCostCenter()).add(trip.getSyncState().getLastLocalModificationTime().getTime());
+        return this;
+    }
+
+    /**
+     * @param receipts the receipts in this report
+     * @param includeFiles {@code true} if the report embeds the receipt images/pdfs
+     */
+    @NonNull
+    public ReportFingerprint addReceipts(@NonNull List<Receipt> receipts, boolean includeFiles) {
+        add(receipts.size());
+        for (final Receipt receipt : receipts) {
+            add(receipt.getId()).add(receipt.getSyncState().getLastLocalModificationTime().getTime()).add(receipt.getIndex())
+                    .add(receipt.getName()).add(receipt.getCategory().getName()).add(receipt.getCategory().getCode())
+                    .add(receipt.getComment()).add(receipt.getDate().getTime()).add(receipt.getTimeZone().getID())
+                    .add(receipt.isReimbursable()).add(receipt.isFullPage()).add(receipt.getExtraEditText1())
+                    .add(receipt.getExtraEditText2()).add(receipt.getExtraEditText3()).add(receipt.getFileName());
+            addPrice(receipt.getPrice()).addPrice(receipt.getTax());
+            add(receipt.getPaymentMethod() != null ? receipt.getPaymentMethod().getMethod() : null);
+            if (includeFiles) {
+                addFile(receipt.getFile());
+            }
+        }
+        return this;
+    }
+
+    @NonNull
+    public ReportFingerprint addDistances(@NonNull List<Distance> distances) {
+        add(distances.size());
+        for (final Distance distance : distances) {
+            add(distance.getId()).add(distance.getSyncState().getLastLocalModificationTime().getTime()).add(distance.getLocation())
+                    .add(distance.getDistance()).add(distance.getRate()).add(distance.getDate().getTime())
+                    .add(distance.getTimeZone().getID()).add(distance.getComment());
+            addPrice(distance.getPrice());
+        }
+        return this;
+    }
+
+    @NonNull
+    public ReportFingerprint addColumns(@NonNull List<? extends Column<?>> columns) {
+        add(columns.size());
+        for (final Column<?> column : columns) {
+            add(column.getId()).add(column.getName()).add(column.getSyncState().getLastLocalModificationTime().getTime());
+        }
+        return this;
+    }
+
+    @NonNull
+    public ReportFingerprint addPreferences(@NonNull UserPreferenceManager preferences) {
+        for (final UserPreference<?> preference : REPORT_PREFERENCES) {
+            add(preferences.get(preference));
+        }
+        return this;
+    }
+
+    /**
+     * @return the hex-encoded fingerprint of all the values that were added. This builder should not be used afterwards
+     */
+    @NonNull
+    public String build() {
+        final byte[] bytes = digest.digest();
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private ReportFingerprint addPrice(@NonNull Price price) {
+        return add(price.getPrice()).add(price.getCurrencyCode()).add(price.getExchangeRate());
+    }
+
+    private void addFile(@Nullable File file) {
+        if (file != null) {
+            add(file.getAbsolutePath()).add(file.length()).add(file.lastModified());
+        } else {
+            add(null);
+        }
+    }
+}
@@ -7,9 +7,13 @@ import com.google.common.base.Preconditions;
 import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.IOUtils;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
  * After having seen a few instances in which CSV files were failing for foreign languages when attemping
@@ -19,6 +23,9 @@ import java.io.IOException;
  */
 public class CsvReportWriter {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
     private final File outputFile;
 
     public CsvReportWriter(@NonNull File outputFile) {
@@ -35,4 +42,24 @@ public class CsvReportWriter {
             IOUtils.closeQuietly(fileOutputStream);
         }
     }
+
+    /**
+     * Opens a buffered, UTF-8 {@link Writer} over our output file (after writing the byte order mark), which allows
+     * us to stream a report to disk without holding the whole thing in memory. The caller is responsible for closing
+     * this writer
+     *
+     * @return the {@link Writer} for this file
+     * @throws IOException if we failed to open the file
+     */
+    @NonNull
+    public Writer openWriter() throws IOException {
+        final FileOutputStream fileOutputStream = new FileOutputStream(this.outputFile);
+        try {
+            IOUtils.write(ByteOrderMark.UTF_8.getBytes(), fileOutputStream);
+            return new BufferedWriter(new OutputStreamWriter(fileOutputStream, UTF_8), BUFFER_SIZE);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(fileOutputStream);
+            throw e;
+        }
+    }
 }
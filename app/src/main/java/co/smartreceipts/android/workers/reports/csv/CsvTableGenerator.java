@@ -2,25 +2,32 @@ package co.smartreceipts.android.workers.reports.csv;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 import co.smartreceipts.android.filters.Filter;
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Column;
+import co.smartreceipts.android.workers.reports.StreamingTableGenerator;
 import co.smartreceipts.android.workers.reports.TableGenerator;
 
 /**
  * Implements the {@link TableGenerator} contract to generate
- * a {@link String}, which is a CSV
+ * a {@link String}, which is a CSV. For larger reports, the {@link StreamingTableGenerator} variant should be
+ * preferred, since this writes each row directly to the output instead of building the whole CSV in memory.
  *
  * @author williambaumann
  */
-public final class CsvTableGenerator<DataType> implements TableGenerator<String, DataType> {
+public final class CsvTableGenerator<DataType> implements TableGenerator<String, DataType>, StreamingTableGenerator<DataType> {
 
-    private static final String QUOTE = "\"";
-    private static final String ESCAPED_QUOTE = "\"\"";
-    private static final String[] STRINGS_THAT_MUST_BE_QUOTED = {",", "\"", "\n", "\r\n"};
+    private static final char QUOTE = '"';
+    private static final char SEPARATOR = ',';
+    private static final char NEW_LINE = '\n';
 
     private final List<Column<DataType>> mColumns;
     private final Filter<DataType> mFilter;
@@ -41,59 +48,104 @@ public final class CsvTableGenerator<DataType> implements TableGenerator<String,
     @NonNull
     @Override
     public String generate(@NonNull List<DataType> list) {
-        if (!list.isEmpty()) {
-            final int columnCount = mColumns.size();
-            final StringBuilder csvBuilder = new StringBuilder("");
+        final StringWriter stringWriter = new StringWriter();
+        try {
+            generate(list, stringWriter);
+        } catch (IOException e) {
+            // Note: This should never happen, since a StringWriter never throws
+            throw new IllegalStateException("Failed to write to a StringWriter", e);
+        }
+        return stringWriter.toString();
+    }
 
-            // Add the header
-            if (mPrintHeaders) {
-                for (int i = 0; i < columnCount; i++) {
-                    addCell(csvBuilder, mColumns.get(i).getHeader());
-                }
-                csvBuilder.append("\n");
+    @Override
+    public void generate(@NonNull List<DataType> list, @NonNull Writer writer) throws IOException {
+        if (list.isEmpty()) {
+            return; // Just write an empty csv if we don't have any objects
+        }
+        final int columnCount = mColumns.size();
+
+        // Add the header
+        if (mPrintHeaders) {
+            for (int i = 0; i < columnCount; i++) {
+                writeCell(writer, mColumns.get(i).getHeader());
             }
+            writer.write(NEW_LINE);
+        }
 
-            // Add each row
-            final List<DataType> filteredList = new ArrayList<>(list.size());
-            for (int j = 0; j < list.size(); j++) {
-                final DataType data = list.get(j);
-                if (mFilter == null || mFilter.accept(data)) {
-                    for (int i = 0; i < columnCount; i++) {
-                        addCell(csvBuilder, mColumns.get(i).getValue(data));
+        // Add each row, while accumulating the footers in the same pass
+        final List<Accumulator<DataType, String>> footers = mPrintFooters ? beginFooters() : null;
+        for (int j = 0; j < list.size(); j++) {
+            final DataType data = list.get(j);
+            if (mFilter == null || mFilter.accept(data)) {
+                for (int i = 0; i < columnCount; i++) {
+                    writeCell(writer, mColumns.get(i).getValue(data));
+                    if (footers != null) {
+                        footers.get(i).accept(data);
                     }
-                    filteredList.add(data);
                 }
-                csvBuilder.append("\n");
             }
+            writer.write(NEW_LINE);
+        }
 
-            // Add the footer
-            if (mPrintFooters) {
-                for (int i = 0; i < columnCount; i++) {
-                    addCell(csvBuilder, mColumns.get(i).getFooter(filteredList));
-                }
-                csvBuilder.append("\n");
+        // Add the footer
+        if (footers != null) {
+            for (int i = 0; i < columnCount; i++) {
+                writeCell(writer, footers.get(i).finish());
             }
-            return csvBuilder.toString();
-        } else {
-            return ""; // Just return an empty csv if we don't have any objects
+            writer.write(NEW_LINE);
         }
     }
 
+    @NonNull
+    private List<Accumulator<DataType, String>> beginFooters() {
+        final List<Accumulator<DataType, String>> footers = new ArrayList<>(mColumns.size());
+        for (final Column<DataType> column : mColumns) {
+            footers.add(column.beginFooter());
+        }
+        return footers;
+    }
 
-    private void addCell(@NonNull StringBuilder csvBuilder, @Nullable String value) {
+    private static void writeCell(@NonNull Writer writer, @Nullable String value) throws IOException {
         if (value != null) {
-            if (value.contains(QUOTE)) {
-                value = value.replace(QUOTE, ESCAPED_QUOTE);
-            }
-            for (String stringToQuote : STRINGS_THAT_MUST_BE_QUOTED) {
-                if (value.contains(stringToQuote)) {
-                    value = QUOTE + value + QUOTE;
-                    break;
+            if (mustBeQuoted(value)) {
+                // Escape each quote by doubling it, while writing the surrounding runs of characters in bulk
+                writer.write(QUOTE);
+                final int length = value.length();
+                int runStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (value.charAt(i) == QUOTE) {
+                        writer.write(value, runStart, i + 1 - runStart);
+                        writer.write(QUOTE);
+                        runStart = i + 1;
+                    }
                 }
+                writer.write(value, runStart, length - runStart);
+                writer.write(QUOTE);
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write(SEPARATOR);
+    }
+
+    /**
+     * Checks if a cell must be quoted (ie it contains a comma, a quote, or a new line) in a single pass over its
+     * characters
+     *
+     * @param value the cell value to check
+     * @return {@code true} if this value must be surrounded by quotes. {@code false} otherwise
+     */
+    @VisibleForTesting
+    static boolean mustBeQuoted(@NonNull String value) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c == SEPARATOR || c == QUOTE || c == NEW_LINE) {
+                return true;
             }
-            csvBuilder.append(value);
         }
-        csvBuilder.append(",");
+        return false;
     }
 
 }
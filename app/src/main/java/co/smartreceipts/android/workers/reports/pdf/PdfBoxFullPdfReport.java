@@ -3,6 +3,8 @@ package co.smartreceipts.android.workers.reports.pdf;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
+import com.google.common.base.Preconditions;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,27 +17,49 @@ import co.smartreceipts.android.model.impl.columns.distance.DistanceColumnDefini
 import co.smartreceipts.android.persistence.DatabaseHelper;
 import co.smartreceipts.android.persistence.PersistenceManager;
 import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.workers.reports.ReportSnapshot;
 import co.smartreceipts.android.workers.reports.pdf.pdfbox.PdfBoxReportFile;
 import wb.android.flex.Flex;
 import wb.android.storage.StorageManager;
 
 public class PdfBoxFullPdfReport extends PdfBoxAbstractReport {
 
+    private final ReportSnapshot snapshot;
+
     public PdfBoxFullPdfReport(@NonNull Context context, @NonNull PersistenceManager persistenceManager, Flex flex) {
         super(context, persistenceManager, flex);
+        this.snapshot = null;
+    }
+
+    /**
+     * Creates a report that is built from a previously loaded {@link ReportSnapshot} instead of the database
+     */
+    public PdfBoxFullPdfReport(@NonNull Context context, @NonNull PersistenceManager persistenceManager, Flex flex, @NonNull ReportSnapshot snapshot) {
+        super(context, persistenceManager, flex);
+        this.snapshot = Preconditions.checkNotNull(snapshot);
     }
 
     protected PdfBoxFullPdfReport(@NonNull Context context, @NonNull DatabaseHelper db, @NonNull UserPreferenceManager preferences, @NonNull StorageManager storageManager, Flex flex) {
         super(context, db, preferences, storageManager, flex);
+        this.snapshot = null;
     }
 
     @Override
     public void createSections(@NonNull Trip trip, PdfBoxReportFile pdfBoxReportFile) {
-        final List<Receipt> receipts = new ArrayList<>(getDatabase().getReceiptsTable().getBlocking(trip, false));
-        final List<Column<Receipt>> columns = getDatabase().getPDFTable().get().blockingGet();
+        final List<Receipt> receipts;
+        final List<Column<Receipt>> columns;
+        final List<Distance> distances;
+        if (snapshot != null) {
+            receipts = new ArrayList<>(snapshot.getReceipts());
+            columns = snapshot.getPdfColumns();
+            distances = new ArrayList<>(snapshot.getDistances());
+        } else {
+            receipts = new ArrayList<>(getDatabase().getReceiptsTable().getBlocking(trip, false));
+            columns = getDatabase().getPDFTable().get().blockingGet();
+            distances = new ArrayList<>(getDatabase().getDistanceTable().getBlocking(trip, false));
+        }
 
         final ColumnDefinitions<Distance> distanceColumnDefinitions = new DistanceColumnDefinitions(getContext(), getDatabase(), getPreferences(), getFlex(), true);
-        final List<Distance> distances = new ArrayList<>(getDatabase().getDistanceTable().getBlocking(trip, false));
         final List<Column<Distance>> distanceColumns = distanceColumnDefinitions.getAllColumns();
 
         pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsTableSection(trip, receipts, columns, distances, distanceColumns));
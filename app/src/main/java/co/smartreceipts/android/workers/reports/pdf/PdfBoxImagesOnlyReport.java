@@ -3,6 +3,8 @@ package co.smartreceipts.android.workers.reports.pdf;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
+import com.google.common.base.Preconditions;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,25 +13,39 @@ import co.smartreceipts.android.model.Trip;
 import co.smartreceipts.android.persistence.DatabaseHelper;
 import co.smartreceipts.android.persistence.PersistenceManager;
 import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.workers.reports.ReportSnapshot;
 import co.smartreceipts.android.workers.reports.pdf.pdfbox.PdfBoxReportFile;
 import wb.android.flex.Flex;
 import wb.android.storage.StorageManager;
 
 public class PdfBoxImagesOnlyReport extends PdfBoxAbstractReport {
 
+    private final ReportSnapshot snapshot;
+
     public PdfBoxImagesOnlyReport(@NonNull Context context, @NonNull PersistenceManager persistenceManager,
                                   @NonNull Flex flex) {
         super(context, persistenceManager, flex);
+        this.snapshot = null;
+    }
+
+    /**
+     * Creates a report that is built from a previously loaded {@link ReportSnapshot} instead of the database
+     */
+    public PdfBoxImagesOnlyReport(@NonNull Context context, @NonNull PersistenceManager persistenceManager,
+                                  @NonNull Flex flex, @NonNull ReportSnapshot snapshot) {
+        super(context, persistenceManager, flex);
+        this.snapshot = Preconditions.checkNotNull(snapshot);
     }
 
     public PdfBoxImagesOnlyReport(@NonNull Context context, @NonNull DatabaseHelper db, @NonNull UserPreferenceManager preferences,
                                   @NonNull StorageManager storageManager, @NonNull Flex flex) {
         super(context, db, preferences, storageManager, flex);
+        this.snapshot = null;
     }
 
     @Override
     public void createSections(@NonNull Trip trip, @NonNull PdfBoxReportFile pdfBoxReportFile) {
-        final List<Receipt> receipts = new ArrayList<>(getDatabase().getReceiptsTable().getBlocking(trip, false));
+        final List<Receipt> receipts = new ArrayList<>(snapshot != null ? snapshot.getReceipts() : getDatabase().getReceiptsTable().getBlocking(trip, false));
         pdfBoxReportFile.addSection(pdfBoxReportFile.createReceiptsImagesSection(trip, receipts));
     }
 
@@ -0,0 +1,120 @@
+package co.smartreceipts.android.workers.reports.pdf.fonts;
+
+import android.support.annotation.NonNull;
+import android.util.LruCache;
+
+import com.google.common.base.Preconditions;
+import com.tom_roush.pdfbox.pdmodel.font.PDFont;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memoises the measurements of a particular {@link PdfFontSpec}. Since both the column width calculations and the
+ * text renderers measure the same strings many times over (and each measurement requires us to encode the string and
+ * walk the glyph widths of the {@link PDFont}), we cache:
+ * <ul>
+ * <li>The advance width of each glyph, which is looked up from the font once</li>
+ * <li>The width of recently measured strings</li>
+ * </ul>
+ * Please note that this class is not thread safe, since each PDF document is generated on a single thread (and each
+ * document loads its own fonts).
+ */
+public class PdfFontMetrics {
+
+    private static final int MAX_CACHED_STRINGS = 4096;
+    private static final int DIRECT_ADVANCE_TABLE_SIZE = 256;
+
+    private final PDFont font;
+    private final int size;
+    private final float[] directAdvances = new float[DIRECT_ADVANCE_TABLE_SIZE];
+    private final Map<Integer, Float> advances = new HashMap<>();
+    private final LruCache<String, Float> stringWidths = new LruCache<>(MAX_CACHED_STRINGS);
+    private Float fontHeight;
+    private Float fontAboveBaselineHeight;
+
+    public PdfFontMetrics(@NonNull PDFont font, int size) {
+        this.font = Preconditions.checkNotNull(font);
+        this.size = size;
+        Arrays.fill(directAdvances, Float.NaN);
+    }
+
+    /**
+     * Returns the width of a string, when rendered with this font
+     *
+     * @param text the string to measure
+     * @return the width in PDF units
+     * @throws IOException if the font could not be read
+     */
+    public float getStringWidth(@NonNull String text) throws IOException {
+        Float width = stringWidths.get(text);
+        if (width == null) {
+            width = measure(text) * size / 1000F;
+            stringWidths.put(text, width);
+        }
+        return width;
+    }
+
+    /**
+     * @return the full height of this font (including the bounding box)
+     */
+    public float getFontHeight() {
+        if (fontHeight == null) {
+            fontHeight = font.getFontDescriptor().getFontBoundingBox().getHeight() / 1000 * size;
+        }
+        return fontHeight;
+    }
+
+    /**
+     * @return the height of this font, excluding the descent (ie starting from the baseline and above)
+     */
+    public float getFontAboveBaselineHeight() {
+        if (fontAboveBaselineHeight == null) {
+            fontAboveBaselineHeight = (font.getFontDescriptor().getFontBoundingBox().getHeight()
+                    + font.getFontDescriptor().getDescent()) //descent is negative
+                    / 1000 * size;
+        }
+        return fontAboveBaselineHeight;
+    }
+
+    /**
+     * Sums the advance of each glyph in the same order as {@link PDFont#getStringWidth(String)}, which yields an
+     * identical result without needing to re-encode the entire string
+     */
+    private float measure(@NonNull String text) throws IOException {
+        try {
+            float width = 0;
+            int i = 0;
+            while (i < text.length()) {
+                final int codePoint = text.codePointAt(i);
+                width += getAdvance(codePoint);
+                i += Character.charCount(codePoint);
+            }
+            return width;
+        } catch (IllegalArgumentException e) {
+            // If we cannot encode, try it again with the unicode "?"/tofu character
+            // We just use latin chars for a best guess here
+            return font.getStringWidth(text.replaceAll("\\P{InBasic_Latin}", "\uFFFD\uFFFD"));
+        }
+    }
+
+    private float getAdvance(int codePoint) throws IOException {
+        if (codePoint < DIRECT_ADVANCE_TABLE_SIZE) {
+            float advance = directAdvances[codePoint];
+            if (Float.isNaN(advance)) {
+                advance = font.getStringWidth(new String(Character.toChars(codePoint)));
+                directAdvances[codePoint] = advance;
+            }
+            return advance;
+        } else {
+            Float advance = advances.get(codePoint);
+            if (advance == null) {
+                advance = font.getStringWidth(new String(Character.toChars(codePoint)));
+                advances.put(codePoint, advance);
+            }
+            return advance;
+        }
+    }
+}
@@ -9,10 +9,12 @@ public class PdfFontSpec {
 
     private final PDFont font;
     private final int size;
+    private final PdfFontMetrics metrics;
 
     public PdfFontSpec(@NonNull PDFont font, int size) {
         this.font = Preconditions.checkNotNull(font);
         this.size = size;
+        this.metrics = new PdfFontMetrics(font, size);
     }
 
     @NonNull
@@ -24,4 +26,12 @@ public class PdfFontSpec {
             return size;
         }
 
+    /**
+     * @return the {@link PdfFontMetrics}, which caches the measurements for this font and size
+     */
+    @NonNull
+    public PdfFontMetrics getMetrics() {
+        return metrics;
+    }
+
 }
@@ -12,13 +12,28 @@ import co.smartreceipts.android.filters.LegacyReceiptFilter;
 import co.smartreceipts.android.model.Receipt;
 import co.smartreceipts.android.model.Trip;
 import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
 import co.smartreceipts.android.utils.log.Logger;
 import co.smartreceipts.android.workers.reports.pdf.renderer.Renderer;
+import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.ImagePreparationPipeline;
+import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.ImagePreparer;
+import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.ResampledImageCache;
 import co.smartreceipts.android.workers.reports.pdf.renderer.impl.PdfGridGenerator;
 
 
 public class PdfBoxReceiptsImagesPdfSection extends PdfBoxSection {
 
+    /**
+     * The fraction of our maximum heap that we allow prepared (but not yet written) images to occupy
+     */
+    private static final int IMAGE_PREPARATION_HEAP_FRACTION = 8;
+
+    /**
+     * The range of image resolutions that we allow, since extreme values are either illegible or enormous
+     */
+    private static final int MIN_IMAGE_DPI = 36;
+    private static final int MAX_IMAGE_DPI = 600;
+
     private final PDDocument pdDocument;
     private final UserPreferenceManager userPreferenceManager;
     private final List<Receipt> receipts;
@@ -41,17 +56,27 @@ public class PdfBoxReceiptsImagesPdfSection extends PdfBoxSection {
         float availableHeight = pdfBoxContext.getPageSize().getHeight() - 2 * pdfBoxContext.getPageMarginVertical()
                 - pageDecorations.getHeaderHeight() - pageDecorations.getFooterHeight();
 
-        final PdfGridGenerator gridGenerator = new PdfGridGenerator(pdfBoxContext, pdDocument, new LegacyReceiptFilter(userPreferenceManager),
-                pageDecorations, availableWidth, availableHeight);
+        // Images start decoding in the background as soon as the grid is generated, so this overlaps with measuring
+        final ResampledImageCache resampledImageCache = new ResampledImageCache(pdfBoxContext.getAndroidContext());
+        resampledImageCache.trim();
+        final int imageDpi = Math.max(MIN_IMAGE_DPI, Math.min(MAX_IMAGE_DPI, userPreferenceManager.get(UserPreference.ReportOutput.PdfImageDpi)));
+        final ImagePreparationPipeline imagePreparationPipeline = new ImagePreparationPipeline(new ImagePreparer(pdfBoxContext.getAndroidContext(), resampledImageCache),
+                Runtime.getRuntime().maxMemory() / IMAGE_PREPARATION_HEAP_FRACTION, imageDpi);
+        try {
+            final PdfGridGenerator gridGenerator = new PdfGridGenerator(pdfBoxContext, pdDocument, new LegacyReceiptFilter(userPreferenceManager),
+                    pageDecorations, imagePreparationPipeline, availableWidth, availableHeight);
 
-        final List<Renderer> renderers = gridGenerator.generate(receipts);
-        for (final Renderer renderer : renderers) {
-            Logger.debug(this, "Performing measure of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
-            renderer.measure();
-        }
-        for (final Renderer renderer : renderers) {
-            Logger.debug(this, "Performing render of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
-            renderer.render(writer);
+            final List<Renderer> renderers = gridGenerator.generate(receipts);
+            for (final Renderer renderer : renderers) {
+                Logger.debug(this, "Performing measure of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
+                renderer.measure();
+            }
+            for (final Renderer renderer : renderers) {
+                Logger.debug(this, "Performing render of {} at {}.", renderer.getClass().getSimpleName(), System.currentTimeMillis());
+                renderer.render(writer);
+            }
+        } finally {
+            imagePreparationPipeline.close();
         }
     }
 }
@@ -2,7 +2,9 @@ package co.smartreceipts.android.workers.reports.pdf.pdfbox;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 
+import com.tom_roush.pdfbox.io.MemoryUsageSetting;
 import com.tom_roush.pdfbox.pdmodel.PDDocument;
 
 import java.io.IOException;
@@ -22,13 +24,21 @@ import co.smartreceipts.android.workers.reports.pdf.fonts.PdfFontManager;
 
 public class PdfBoxReportFile implements PdfReportFile, PdfBoxSectionFactory {
 
+    /**
+     * The maximum number of bytes of document content (eg embedded images) that we keep in main memory before
+     * spilling over to a scratch file in our cache directory. This is sized to comfortably fit a single page of
+     * receipt images, so that large reports don't require that every image remain on the heap until we save
+     */
+    @VisibleForTesting
+    static final long MAX_MAIN_MEMORY_BYTES = 4 * 1024 * 1024;
+
     private final DefaultPdfBoxContext pdfBoxContext;
     private final PDDocument pdDocument;
     private final List<PdfBoxSection> sections;
 
 
     public PdfBoxReportFile(@NonNull Context androidContext, @NonNull UserPreferenceManager preferences) throws IOException {
-        pdDocument = new PDDocument();
+        pdDocument = new PDDocument(newMemoryUsageSetting(androidContext));
         sections = new ArrayList<>();
 
         final PdfColorManager colorManager = new PdfColorManager();
@@ -39,6 +49,17 @@ public class PdfBoxReportFile implements PdfReportFile, PdfBoxSectionFactory {
     }
 
 
+    /**
+     * @param androidContext the current application {@link Context}
+     * @return the {@link MemoryUsageSetting} for our document, which keeps up to {@link #MAX_MAIN_MEMORY_BYTES} on the
+     * heap and spills everything else over to a scratch file in our cache directory
+     */
+    @NonNull
+    @VisibleForTesting
+    static MemoryUsageSetting newMemoryUsageSetting(@NonNull Context androidContext) {
+        return MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY_BYTES).setTempDir(androidContext.getCacheDir());
+    }
+
     @Override
     public void writeFile(@NonNull OutputStream outStream, @NonNull Trip trip) throws IOException {
         try {
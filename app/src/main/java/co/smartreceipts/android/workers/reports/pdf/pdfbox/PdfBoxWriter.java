@@ -11,8 +11,6 @@ import com.tom_roush.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import com.tom_roush.pdfbox.util.awt.AWTColor;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import co.smartreceipts.android.workers.reports.pdf.colors.PdfColorStyle;
 import co.smartreceipts.android.workers.reports.pdf.fonts.PdfFontSpec;
@@ -25,12 +23,18 @@ import co.smartreceipts.android.workers.reports.pdf.utils.HeavyHandedReplaceIlle
  * coordinate (0, 0) as the bottom-left of the page. Since I find it more meaningful to treat (0, 0)
  * as the top-left of the page (ie the same as Android), all public methods in this class will
  * also implicitly handle this translation.
+ * <p>
+ * Pages are streamed into the {@link PDDocument} as soon as they are created, and each page's content
+ * stream is closed as soon as we move on to the next one. This writer never holds a reference to a
+ * completed page or any of the {@link PDImageXObject}s drawn on it, so when the document is backed by
+ * a scratch file (see {@link PdfBoxReportFile}), the heap cost of a report is bounded by the page that
+ * is currently being written rather than the entire report.
+ * </p>
  */
 public class PdfBoxWriter {
     private final PDDocument mDocument;
     private final PdfBoxContext mContext;
     private final PdfBoxPageDecorations mPageDecorations;
-    private final List<PDPage> mPages;
 
     private float currentYPosition;
     private float topOfPageYPosition = -1;
@@ -43,7 +47,6 @@ public class PdfBoxWriter {
         mDocument = doc;
         mContext = context;
         mPageDecorations = pageDecorations;
-        mPages = new ArrayList<>();
     }
 
     /**
@@ -52,12 +55,10 @@ public class PdfBoxWriter {
      * @throws IOException if this operation fails
      */
     public void newPage() throws IOException {
-        if (contentStream != null) {
-            contentStream.close();
-        }
+        closeCurrentPage();
 
         PDPage page = new PDPage(mContext.getPageSize());
-        mPages.add(page);
+        mDocument.addPage(page);
         contentStream = new PDPageContentStream(mDocument, page);
         mPageDecorations.writeHeader(contentStream);
         currentYPosition = page.getMediaBox().getHeight() - mContext.getPageMarginVertical() - mPageDecorations.getHeaderHeight();
@@ -129,12 +130,23 @@ public class PdfBoxWriter {
      * @throws IOException if we fail to write this item
      */
     public void writeAndClose() throws IOException {
-        if (contentStream != null) {
-            contentStream.close();
-        }
+        closeCurrentPage();
+    }
 
-        for (PDPage page : mPages) {
-            mDocument.addPage(page);
+    /**
+     * Closes the content stream of the page that we are currently writing (if any). Since the page
+     * was already added to our document, this flushes its content (and any images drawn on it) out to
+     * the document's backing store and drops our last reference to it.
+     *
+     * @throws IOException if we fail to close the content stream
+     */
+    private void closeCurrentPage() throws IOException {
+        if (contentStream != null) {
+            try {
+                contentStream.close();
+            } finally {
+                contentStream = null;
+            }
         }
     }
 
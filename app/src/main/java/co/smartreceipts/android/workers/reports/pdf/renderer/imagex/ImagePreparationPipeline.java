@@ -0,0 +1,173 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * A bounded producer/consumer pipeline that prepares image payloads (see {@link ImagePreparer}) on a pool of worker
+ * threads ahead of the single thread that writes our PDF. Images are enqueued in the order that they will be rendered,
+ * and the workers are allowed to run ahead of the writer for as long as the estimated memory of all prepared (but not
+ * yet taken) payloads fits within our budget. Each payload that the writer takes frees up its share of the budget,
+ * which in turn allows the next image to be submitted.
+ * <p>
+ * Please note that the {@link com.tom_roush.pdfbox.pdmodel.PDDocument} itself is not thread safe, so only the
+ * decoding, scaling, and encoding steps are performed in parallel. The resulting payloads are embedded in the
+ * document on the writer thread (see {@link PreparedImagePDImageXFactory}).
+ * </p>
+ */
+public class ImagePreparationPipeline implements Closeable {
+
+    private static final float POINTS_PER_INCH = 72f;
+
+    /**
+     * A conservative estimate of the peak memory required per target pixel. This covers the sub-sampled bitmap (which
+     * may be up to 4x the target area), the scaled bitmap, and the encoded output
+     */
+    private static final int ESTIMATED_BYTES_PER_PIXEL = 4 * 6;
+
+    private final ExecutorService executorService;
+    private final ImagePreparer imagePreparer;
+    private final long memoryBudgetBytes;
+    private final int targetDpi;
+    private final List<Request> requests = new ArrayList<>();
+
+    private int nextRequestToSubmit = 0;
+    private long inFlightBytes = 0;
+
+    /**
+     * @param imagePreparer the {@link ImagePreparer} to use for each image
+     * @param memoryBudgetBytes the estimated number of bytes that all prepared (but not yet taken) images may hold
+     * @param targetDpi the resolution (in dots per inch of the drawn image) that images should be resampled to
+     */
+    public ImagePreparationPipeline(@NonNull ImagePreparer imagePreparer, long memoryBudgetBytes, int targetDpi) {
+        this(Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors())), imagePreparer, memoryBudgetBytes, targetDpi);
+    }
+
+    @VisibleForTesting
+    ImagePreparationPipeline(@NonNull ExecutorService executorService, @NonNull ImagePreparer imagePreparer, long memoryBudgetBytes, int targetDpi) {
+        Preconditions.checkArgument(targetDpi > 0, "The target DPI must be positive");
+        this.executorService = Preconditions.checkNotNull(executorService);
+        this.imagePreparer = Preconditions.checkNotNull(imagePreparer);
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.targetDpi = targetDpi;
+    }
+
+    /**
+     * Enqueues an image to be prepared. Images must be enqueued in the order in which they will be taken.
+     *
+     * @param file the image file
+     * @param width the width (in PDF points) of the area that this image will be drawn in
+     * @param height the height (in PDF points) of the area that this image will be drawn in
+     * @return the ticket that should be passed to {@link #take(int)} to retrieve this payload
+     */
+    public synchronized int enqueue(@NonNull File file, float width, float height) {
+        final int widthPixels = Math.max(1, (int) Math.ceil(width * targetDpi / POINTS_PER_INCH));
+        final int heightPixels = Math.max(1, (int) Math.ceil(height * targetDpi / POINTS_PER_INCH));
+        requests.add(new Request(Preconditions.checkNotNull(file), widthPixels, heightPixels));
+        submitWithinBudget();
+        return requests.size() - 1;
+    }
+
+    /**
+     * Retrieves the prepared payload for a particular ticket, blocking until it is available. Each ticket may only be
+     * taken once.
+     *
+     * @param ticket the ticket that was returned from {@link #enqueue(File, float, float)}
+     * @return the encoded bytes of this image (see {@link ImagePreparer#prepare(File, int, int)})
+     * @throws IOException if we failed to prepare this image
+     */
+    @NonNull
+    public byte[] take(int ticket) throws IOException {
+        final Request request;
+        synchronized (this) {
+            request = requests.get(ticket);
+            Preconditions.checkState(!request.taken, "This image was already taken");
+            request.taken = true;
+            while (nextRequestToSubmit <= ticket) {
+                submitNext();
+            }
+        }
+
+        try {
+            return request.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while preparing " + request.file);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException("Failed to prepare " + request.file, cause);
+            }
+        } finally {
+            synchronized (this) {
+                request.future = null;
+                inFlightBytes -= request.estimatedBytes;
+                submitWithinBudget();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        executorService.shutdownNow();
+    }
+
+    private void submitWithinBudget() {
+        while (nextRequestToSubmit < requests.size()) {
+            final Request request = requests.get(nextRequestToSubmit);
+            if (inFlightBytes > 0 && inFlightBytes + request.estimatedBytes > memoryBudgetBytes) {
+                break;
+            }
+            submitNext();
+        }
+    }
+
+    private void submitNext() {
+        final Request request = requests.get(nextRequestToSubmit++);
+        inFlightBytes += request.estimatedBytes;
+        request.future = executorService.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                Logger.debug(ImagePreparationPipeline.this, "Preparing {} at {}x{}", request.file.getName(), request.width, request.height);
+                return imagePreparer.prepare(request.file, request.width, request.height);
+            }
+        });
+    }
+
+    private static final class Request {
+
+        private final File file;
+        private final int width;
+        private final int height;
+        private final long estimatedBytes;
+        private Future<byte[]> future;
+        private boolean taken;
+
+        Request(@NonNull File file, int width, int height) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.estimatedBytes = (long) width * height * ESTIMATED_BYTES_PER_PIXEL;
+        }
+    }
+}
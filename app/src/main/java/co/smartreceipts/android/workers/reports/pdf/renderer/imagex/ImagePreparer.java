@@ -0,0 +1,174 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import co.smartreceipts.android.utils.UriUtils;
+
+/**
+ * Decodes a receipt image file, downscales it to fit inside a target pixel size, and re-encodes the result in its
+ * original format, so the payload can be embedded directly in our PDF. JPEGs are re-encoded as JPEGs, while PNGs are
+ * re-encoded as PNGs (and later embedded via {@link com.tom_roush.pdfbox.pdmodel.graphics.image.LosslessFactory}), so
+ * we never introduce compression artifacts into an image that was saved losslessly. Images are sub-sampled while
+ * decoding (via {@link BitmapFactory.Options#inSampleSize}), so we never hold the full resolution bitmap in memory.
+ * Resampled payloads are optionally stored in a {@link ResampledImageCache}, allowing subsequent reports to skip this
+ * work. This class does not touch the underlying PDF document, so it is safe to call from any thread.
+ */
+public class ImagePreparer {
+
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * The quality hint is ignored for lossless formats, but we still need to supply one
+     */
+    private static final int PNG_QUALITY = 100;
+
+    private static final byte[] PNG_SIGNATURE = new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final Context context;
+    private final ResampledImageCache resampledImageCache;
+
+    public ImagePreparer(@NonNull Context context) {
+        this(context, null);
+    }
+
+    public ImagePreparer(@NonNull Context context, @Nullable ResampledImageCache resampledImageCache) {
+        this.context = Preconditions.checkNotNull(context.getApplicationContext());
+        this.resampledImageCache = resampledImageCache;
+    }
+
+    /**
+     * Prepares the payload for an image file
+     *
+     * @param file the image file to prepare
+     * @param maxWidth the maximum width (in pixels) of the resulting image
+     * @param maxHeight the maximum height (in pixels) of the resulting image
+     * @return the JPEG- or PNG-encoded bytes of the image (matching the format of the file), which fit within the
+     * desired size
+     * @throws IOException if we fail to read, decode, or encode this file
+     */
+    @NonNull
+    public byte[] prepare(@NonNull File file, int maxWidth, int maxHeight) throws IOException {
+        final String fileExtension = UriUtils.getExtension(file, context);
+        Preconditions.checkNotNull(fileExtension, "This file does not have a valid extension: " + file);
+
+        final boolean isJpeg = fileExtension.equalsIgnoreCase("jpg") || fileExtension.equalsIgnoreCase("jpeg");
+        if (!isJpeg && !fileExtension.equalsIgnoreCase("png")) {
+            throw new IllegalArgumentException("Unknown file extension: " + fileExtension);
+        }
+
+        final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            throw new IOException("Failed to decode the bounds of " + file);
+        }
+
+        final int[] targetSize = getTargetSize(boundsOptions.outWidth, boundsOptions.outHeight, maxWidth, maxHeight);
+        if (targetSize[0] == boundsOptions.outWidth && targetSize[1] == boundsOptions.outHeight) {
+            // This image is already small enough, so we can embed the original bytes without any re-encoding
+            return FileUtils.readFileToByteArray(file);
+        }
+
+        final String cacheKey = resampledImageCache != null ? resampledImageCache.getKey(file, targetSize[0], targetSize[1]) : null;
+        if (cacheKey != null) {
+            final byte[] cachedPayload = resampledImageCache.get(cacheKey);
+            if (cachedPayload != null) {
+                return cachedPayload;
+            }
+        }
+
+        final Bitmap.CompressFormat format = isJpeg ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG;
+        final byte[] payload = resample(file, boundsOptions, targetSize[0], targetSize[1], format);
+        if (cacheKey != null) {
+            resampledImageCache.put(cacheKey, payload);
+        }
+        return payload;
+    }
+
+    /**
+     * @param payload a payload from {@link #prepare(File, int, int)}
+     * @return {@code true} if this is a PNG payload, which should be embedded losslessly. {@code false} for a JPEG
+     */
+    public static boolean isPng(@NonNull byte[] payload) {
+        if (payload.length < PNG_SIGNATURE.length) {
+            return false;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (payload[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    private byte[] resample(@NonNull File file, @NonNull BitmapFactory.Options boundsOptions, int targetWidth, int targetHeight,
+                            @NonNull Bitmap.CompressFormat format) throws IOException {
+        final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = getInSampleSize(boundsOptions.outWidth, boundsOptions.outHeight, targetWidth, targetHeight);
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), decodeOptions);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + file);
+        }
+        try {
+            if (bitmap.getWidth() != targetWidth || bitmap.getHeight() != targetHeight) {
+                final Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+                if (scaledBitmap != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaledBitmap;
+                }
+            }
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            if (!bitmap.compress(format, format == Bitmap.CompressFormat.JPEG ? JPEG_QUALITY : PNG_QUALITY, outputStream)) {
+                throw new IOException("Failed to encode " + file + " as a " + format);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            if (!bitmap.isRecycled()) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Determines the largest size that fits inside the desired bounds while maintaining the aspect ratio of the source
+     * image. Images are never scaled up.
+     *
+     * @return an int array of {width, height}
+     */
+    @NonNull
+    @VisibleForTesting
+    static int[] getTargetSize(int sourceWidth, int sourceHeight, int maxWidth, int maxHeight) {
+        final float scale = Math.min((float) maxWidth / sourceWidth, (float) maxHeight / sourceHeight);
+        if (scale >= 1) {
+            return new int[] {sourceWidth, sourceHeight};
+        } else {
+            return new int[] {Math.max(1, Math.round(sourceWidth * scale)), Math.max(1, Math.round(sourceHeight * scale))};
+        }
+    }
+
+    /**
+     * Determines the largest power of two that we can sub-sample by while decoding without dropping below the target size
+     */
+    @VisibleForTesting
+    static int getInSampleSize(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (sourceWidth / (inSampleSize * 2) >= targetWidth && sourceHeight / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
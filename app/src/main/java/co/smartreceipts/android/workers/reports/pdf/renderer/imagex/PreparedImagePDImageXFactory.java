@@ -0,0 +1,50 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+
+import com.google.common.base.Preconditions;
+import com.tom_roush.pdfbox.pdmodel.PDDocument;
+import com.tom_roush.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import com.tom_roush.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import com.tom_roush.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Embeds an image payload that was prepared ahead of time by an {@link ImagePreparationPipeline}. JPEG payloads are
+ * embedded as-is, while PNG payloads are embedded losslessly (see {@link ImagePreparer#isPng(byte[])})
+ */
+public class PreparedImagePDImageXFactory implements PDImageXFactory {
+
+    private final PDDocument pdDocument;
+    private final ImagePreparationPipeline pipeline;
+    private final int ticket;
+
+    public PreparedImagePDImageXFactory(@NonNull PDDocument pdDocument, @NonNull ImagePreparationPipeline pipeline, int ticket) {
+        this.pdDocument = Preconditions.checkNotNull(pdDocument);
+        this.pipeline = Preconditions.checkNotNull(pipeline);
+        this.ticket = ticket;
+    }
+
+    @NonNull
+    @Override
+    public PDImageXObject get() throws IOException {
+        final byte[] payload = pipeline.take(ticket);
+        if (!ImagePreparer.isPng(payload)) {
+            return JPEGFactory.createFromStream(pdDocument, new ByteArrayInputStream(payload));
+        }
+
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(payload, 0, payload.length);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode a prepared PNG image");
+        }
+        try {
+            return LosslessFactory.createFromImage(pdDocument, bitmap);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
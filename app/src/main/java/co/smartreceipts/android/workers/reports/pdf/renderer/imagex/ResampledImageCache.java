@@ -0,0 +1,132 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import co.smartreceipts.android.utils.log.Logger;
+import wb.android.storage.StorageManager;
+
+/**
+ * A disk cache of resampled image payloads (see {@link ImagePreparer}), which is stored in our application's cache
+ * directory so it is never included in our backups or synced to Drive. Entries are keyed on a hash of the source
+ * image's content and the size that it was resampled to, so edited or replaced receipt images will never be served a
+ * stale result (and a single cache can be shared by all trips). This allows us to skip the decoding and encoding steps
+ * entirely when the same report is generated multiple times.
+ * <p>
+ * This class is safe to use from multiple threads, since entries are written to a temporary file before being
+ * atomically renamed into place.
+ * </p>
+ */
+public class ResampledImageCache {
+
+    static final String DIRECTORY_NAME = "resampled_images";
+
+    /**
+     * Entries that have not been used for this long are removed by {@link #trim()}
+     */
+    private static final long MAX_UNUSED_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Temporary files that are older than this were abandoned by a previous (crashed) run
+     */
+    private static final long MAX_TEMPORARY_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String EXTENSION = ".image";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final File directory;
+
+    public ResampledImageCache(@NonNull Context context) {
+        this.directory = new File(Preconditions.checkNotNull(context).getCacheDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * Generates the cache key for an image file at a particular size
+     *
+     * @param file the source image file
+     * @param width the width (in pixels) that this image is resampled to
+     * @param height the height (in pixels) that this image is resampled to
+     * @return the key for this entry or {@code null} if we could not hash the file content
+     */
+    @Nullable
+    public String getKey(@NonNull File file, int width, int height) {
+        final String checksum = StorageManager.getMD5Checksum(file);
+        if (checksum == null) {
+            return null;
+        } else {
+            return checksum + "_" + width + "x" + height;
+        }
+    }
+
+    /**
+     * Fetches a cached payload
+     *
+     * @param key the key from {@link #getKey(File, int, int)}
+     * @return the cached payload or {@code null} if we don't have one
+     */
+    @Nullable
+    public byte[] get(@NonNull String key) {
+        final File file = new File(directory, key + EXTENSION);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final byte[] payload = FileUtils.readFileToByteArray(file);
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                Logger.debug(this, "Failed to mark {} as recently used", file.getName());
+            }
+            return payload;
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to read cached image {}", file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves a payload to this cache. Failures are logged but otherwise ignored, since the cache is optional
+     *
+     * @param key the key from {@link #getKey(File, int, int)}
+     * @param payload the resampled image payload
+     */
+    public void put(@NonNull String key, @NonNull byte[] payload) {
+        final File file = new File(directory, key + EXTENSION);
+        final File temporaryFile = new File(directory, key + "." + Thread.currentThread().getId() + TEMPORARY_EXTENSION);
+        try {
+            FileUtils.writeByteArrayToFile(temporaryFile, payload);
+            if (!temporaryFile.renameTo(file)) {
+                Logger.warn(this, "Failed to move {} into the cache", file.getName());
+                FileUtils.deleteQuietly(temporaryFile);
+            }
+        } catch (IOException e) {
+            Logger.warn(this, "Failed to cache image {}", file.getName(), e);
+            FileUtils.deleteQuietly(temporaryFile);
+        }
+    }
+
+    /**
+     * Removes all entries that have not been used recently (along with any abandoned temporary files)
+     */
+    public void trim() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (final File file : files) {
+            final long maxAge = file.getName().endsWith(TEMPORARY_EXTENSION) ? MAX_TEMPORARY_AGE_MILLIS : MAX_UNUSED_AGE_MILLIS;
+            if (now - file.lastModified() > maxAge) {
+                Logger.debug(this, "Removing unused cached image {}", file.getName());
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+}
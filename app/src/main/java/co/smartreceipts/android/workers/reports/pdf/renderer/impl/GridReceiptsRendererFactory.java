@@ -20,8 +20,9 @@ import co.smartreceipts.android.workers.reports.pdf.renderer.empty.EmptyRenderer
 import co.smartreceipts.android.workers.reports.pdf.renderer.formatting.Padding;
 import co.smartreceipts.android.workers.reports.pdf.renderer.grid.GridRenderer;
 import co.smartreceipts.android.workers.reports.pdf.renderer.grid.GridRowRenderer;
-import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.ImagePDImageXFactory;
+import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.ImagePreparationPipeline;
 import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.PDImageXRenderer;
+import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.PreparedImagePDImageXFactory;
 import co.smartreceipts.android.workers.reports.pdf.renderer.pages.SinglePageRenderer;
 
 public class GridReceiptsRendererFactory {
@@ -33,22 +34,25 @@ public class GridReceiptsRendererFactory {
     private final UserPreferenceManager userPreferenceManager;
     private final PDDocument pdDocument;
     private final PdfBoxPageDecorations decorations;
+    private final ImagePreparationPipeline imagePreparationPipeline;
     private final List<Receipt> receipts = new ArrayList<>();
     private final int columns;
     private final int rows;
 
     public GridReceiptsRendererFactory(@NonNull Context context, @NonNull UserPreferenceManager userPreferenceManager,
-                                       @NonNull PDDocument pdDocument, @NonNull PdfBoxPageDecorations decorations) {
-        this(context, userPreferenceManager, pdDocument, decorations, DEFAULT_NUMBER_COLUMNS, DEFAULT_NUMBER_ROWS);
+                                       @NonNull PDDocument pdDocument, @NonNull PdfBoxPageDecorations decorations,
+                                       @NonNull ImagePreparationPipeline imagePreparationPipeline) {
+        this(context, userPreferenceManager, pdDocument, decorations, imagePreparationPipeline, DEFAULT_NUMBER_COLUMNS, DEFAULT_NUMBER_ROWS);
     }
 
     public GridReceiptsRendererFactory(@NonNull Context context, @NonNull UserPreferenceManager userPreferenceManager,
                                        @NonNull PDDocument pdDocument, @NonNull PdfBoxPageDecorations decorations,
-                                       int columns, int rows) {
+                                       @NonNull ImagePreparationPipeline imagePreparationPipeline, int columns, int rows) {
         this.context = Preconditions.checkNotNull(context.getApplicationContext());
         this.userPreferenceManager = Preconditions.checkNotNull(userPreferenceManager);
         this.pdDocument = Preconditions.checkNotNull(pdDocument);
         this.decorations = Preconditions.checkNotNull(decorations);
+        this.imagePreparationPipeline = Preconditions.checkNotNull(imagePreparationPipeline);
         this.columns = columns;
         this.rows = rows;
     }
@@ -72,6 +76,10 @@ public class GridReceiptsRendererFactory {
 
         Logger.debug(this, "Building a {}x{} grid that contains {} receipts", rows, columns, receipts.size());
         final GridRenderer gridRenderer = new GridRenderer(width, height);
+
+        // Each image is drawn inside (and hence never larger than) its grid cell, so we prepare it for that size
+        final float cellWidth = width / columns;
+        final float cellHeight = height / rows;
         for (int row = 0; row < rows; row++) {
             final List<Renderer> labelRows = new ArrayList<>();
             final List<Renderer> imageRows = new ArrayList<>();
@@ -83,7 +91,8 @@ public class GridReceiptsRendererFactory {
 
                     labelRows.add(new ReceiptLabelTextRenderer(receipt, context, pdDocument, userPreferenceManager, color, fontSpec));
                     if (receipt.hasImage()) {
-                        imageRows.add(new PDImageXRenderer(new ImagePDImageXFactory(context, pdDocument, receipt.getFile())));
+                        final int ticket = imagePreparationPipeline.enqueue(receipt.getFile(), cellWidth, cellHeight);
+                        imageRows.add(new PDImageXRenderer(new PreparedImagePDImageXFactory(pdDocument, imagePreparationPipeline, ticket)));
                     } else {
                         throw new IllegalArgumentException("Unsupported file type: " + receipt.getFile());
                     }
@@ -23,7 +23,7 @@ import co.smartreceipts.android.workers.reports.pdf.renderer.Renderer;
 import co.smartreceipts.android.workers.reports.pdf.renderer.formatting.Padding;
 import co.smartreceipts.android.workers.reports.pdf.renderer.grid.GridRowRenderer;
 import co.smartreceipts.android.workers.reports.pdf.renderer.grid.PdfGridRenderer;
-import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.LollipopPdfPDImageXFactory;
+import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.ImagePreparationPipeline;
 import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.PDImageXRenderer;
 import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.PdfPDImageXFactory;
 import co.smartreceipts.android.workers.reports.pdf.renderer.imagex.PdfPDImageXFactoryFactory;
@@ -41,6 +41,7 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
     private final PDDocument pdDocument;
     private final UserPreferenceManager userPreferenceManager;
     private final PdfBoxPageDecorations decorations;
+    private final ImagePreparationPipeline imagePreparationPipeline;
     private final Filter<Receipt> filter;
     private final AWTColor color;
     private final PdfFontSpec fontSpec;
@@ -50,18 +51,20 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
     private final float availableHeight;
 
     public PdfGridGenerator(@NonNull PdfBoxContext pdfBoxContext, @NonNull PDDocument pdDocument, @NonNull Filter<Receipt> filter,
-                            @NonNull PdfBoxPageDecorations decorations, float availableWidth, float availableHeight) {
-        this(pdfBoxContext, pdDocument, filter, decorations, pdfBoxContext.getColorManager().getColor(PdfColorStyle.Default),
+                            @NonNull PdfBoxPageDecorations decorations, @NonNull ImagePreparationPipeline imagePreparationPipeline,
+                            float availableWidth, float availableHeight) {
+        this(pdfBoxContext, pdDocument, filter, decorations, imagePreparationPipeline, pdfBoxContext.getColorManager().getColor(PdfColorStyle.Default),
                 pdfBoxContext.getFontManager().getFont(PdfFontStyle.Small), DEFAULT_PADDING, availableWidth, availableHeight);
     }
 
     public PdfGridGenerator(@NonNull PdfBoxContext pdfBoxContext, @NonNull PDDocument pdDocument, @NonNull Filter<Receipt> filter,
-                            @NonNull PdfBoxPageDecorations decorations, @NonNull AWTColor color, @NonNull PdfFontSpec fontSpec,
+                            @NonNull PdfBoxPageDecorations decorations, @NonNull ImagePreparationPipeline imagePreparationPipeline, @NonNull AWTColor color, @NonNull PdfFontSpec fontSpec,
                             @NonNull Padding padding, float availableWidth, float availableHeight) {
         this.pdfBoxContext = Preconditions.checkNotNull(pdfBoxContext);
         this.pdDocument = Preconditions.checkNotNull(pdDocument);
         this.filter = Preconditions.checkNotNull(filter);
         this.decorations = Preconditions.checkNotNull(decorations);
+        this.imagePreparationPipeline = Preconditions.checkNotNull(imagePreparationPipeline);
         this.userPreferenceManager = Preconditions.checkNotNull(pdfBoxContext.getPreferences());
         this.color = Preconditions.checkNotNull(color);
         this.fontSpec = Preconditions.checkNotNull(fontSpec);
@@ -110,7 +113,7 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
                 } else {
                     Logger.debug(this, "Creating page for full page receipt.");
                     final GridReceiptsRendererFactory fullPageFactory = new GridReceiptsRendererFactory(pdfBoxContext.getAndroidContext(),
-                            pdfBoxContext.getPreferences(), pdDocument, decorations, FULL_PAGE_ROWS_COLS, FULL_PAGE_ROWS_COLS);
+                            pdfBoxContext.getPreferences(), pdDocument, decorations, imagePreparationPipeline, FULL_PAGE_ROWS_COLS, FULL_PAGE_ROWS_COLS);
                     fullPageFactory.addReceipt(receipt);
                     constructRendererAndAddToList(fullPageFactory, renderers);
                 }
@@ -118,7 +121,7 @@ public class PdfGridGenerator implements TableGenerator<List<Renderer>, Receipt>
                 if (rendererFactory == null) {
                     Logger.debug(this, "Creating new receipt grid for this pdf");
                     rendererFactory = new GridReceiptsRendererFactory(pdfBoxContext.getAndroidContext(),
-                            pdfBoxContext.getPreferences(), pdDocument, decorations);
+                            pdfBoxContext.getPreferences(), pdDocument, decorations, imagePreparationPipeline);
                 }
 
                 rendererFactory.addReceipt(receipt);
@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import co.smartreceipts.android.filters.Filter;
+import co.smartreceipts.android.model.Accumulator;
 import co.smartreceipts.android.model.Column;
 import co.smartreceipts.android.workers.reports.TableGenerator;
 import co.smartreceipts.android.workers.reports.pdf.colors.PdfColorStyle;
@@ -55,7 +56,10 @@ public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowR
     public List<GridRowRenderer> generate(@NonNull List<DataType> list) throws IOException {
         final List<GridRowRenderer> gridRows = new ArrayList<>();
         final int colCount = columns.size();
-        final List<DataType> filteredList = new ArrayList<>(list.size());
+        final List<Accumulator<DataType, String>> footers = new ArrayList<>(colCount);
+        for (int i = 0; i < colCount; i++) {
+            footers.add(columns.get(i).beginFooter());
+        }
 
         float availableWidth = pdfBoxContext.getPageSize().getWidth() - 2 * pdfBoxContext.getPageMarginHorizontal();
 
@@ -95,9 +99,9 @@ public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowR
             for (int j = 0; j < list.size(); j++) {
                 final DataType data = list.get(j);
                 if (filter == null || filter.accept(data)) {
-                    filteredList.add(data);
                     final List<TextRenderer> columnRenderers = new ArrayList<>();
                     for (int i = 0; i < colCount; i++) {
+                        footers.get(i).accept(data);
                         final TextRenderer textRenderer = new TextRenderer(
                                 pdfBoxContext.getAndroidContext(),
                                 pdDocument,
@@ -125,7 +129,7 @@ public class PdfTableGenerator<DataType> implements TableGenerator<List<GridRowR
                 final TextRenderer textRenderer = new TextRenderer(
                         pdfBoxContext.getAndroidContext(),
                         pdDocument,
-                        columns.get(i).getFooter(filteredList),
+                        footers.get(i).finish(),
                         pdfBoxContext.getColorManager().getColor(PdfColorStyle.Outline),
                         pdfBoxContext.getFontManager().getFont(PdfFontStyle.Default));
                 textRenderer.getRenderingFormatting().addFormatting(DEFAULT_PADDING);
@@ -19,13 +19,7 @@ public class PdfBoxUtils {
      */
     public static float getStringWidth(@NonNull String text, @NonNull PdfFontSpec fontSpec)
             throws IOException {
-        try {
-            return fontSpec.getFont().getStringWidth(text) * fontSpec.getSize() / 1000F;
-        } catch (IllegalArgumentException e) {
-            // If we cannot encode, try it again with the unicode "?"/tofu character
-            // We just use latin chars for a best guess here
-            return fontSpec.getFont().getStringWidth(text.replaceAll("\\P{InBasic_Latin}", "\uFFFD\uFFFD")) * fontSpec.getSize() / 1000F;
-        }
+        return fontSpec.getMetrics().getStringWidth(text);
     }
 
     /**
@@ -35,8 +29,7 @@ public class PdfBoxUtils {
      * @throws IOException
      */
     public static float getFontHeight(@NonNull PdfFontSpec fontSpec) {
-        return fontSpec.getFont().getFontDescriptor().getFontBoundingBox().getHeight() / 1000
-                * fontSpec.getSize();
+        return fontSpec.getMetrics().getFontHeight();
     }
 
 
@@ -48,9 +41,7 @@ public class PdfBoxUtils {
      * @throws IOException
      */
     public static float getFontAboveBaselineHeight(@NonNull PdfFontSpec fontSpec) {
-        return (fontSpec.getFont().getFontDescriptor().getFontBoundingBox().getHeight()
-                + fontSpec.getFont().getFontDescriptor().getDescent()) //descent is negative
-                / 1000 * fontSpec.getSize();
+        return fontSpec.getMetrics().getFontAboveBaselineHeight();
     }
 
     /**
@@ -0,0 +1,385 @@
+package co.smartreceipts.android.workers.reports.zip;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.common.base.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import co.smartreceipts.android.R;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import co.smartreceipts.android.utils.log.Logger;
+import wb.android.flex.Flex;
+import wb.android.storage.StreamingZipWriter;
+
+/**
+ * Exports a zip file of receipt images, each of which is "stamped" with the details of its trip and receipt. Each
+ * stamped image is encoded into a re-used in-memory buffer and then STORED in the zip (since deflating a JPEG again
+ * burns CPU without any meaningful reduction in size), so we never write intermediate files to disk.
+ * <p>
+ * Peak memory usage is bounded by the budget that is provided to the constructor. We only ever hold two bitmaps: one
+ * that we decode each receipt image into (which is re-used via {@link BitmapFactory.Options#inBitmap}) and the canvas
+ * that we stamp onto (which is re-used via {@link Bitmap#reconfigure(int, int, Bitmap.Config)}). Images are
+ * sub-sampled as required to keep both of these within the budget.
+ * </p>
+ * <p>
+ * This class is not thread safe and should only be used from a single background thread.
+ * </p>
+ */
+public class StampedImagesZipExporter {
+
+    private static final float IMG_SCALE_FACTOR = 2.1f;
+    private static final float HW_RATIO = 0.75f;
+    private static final int JPEG_QUALITY = 85;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * We decode in {@link Bitmap.Config#RGB_565} and stamp in {@link Bitmap.Config#ARGB_8888}. Since the canvas is
+     * always at least as large as the decoded image, each canvas pixel costs us at most 2 + 4 bytes
+     */
+    private static final int BYTES_PER_CANVAS_PIXEL = 6;
+
+    private final Context context;
+    private final Flex flex;
+    private final UserPreferenceManager preferences;
+    private final long maxCanvasPixels;
+    private final Paint imagePaint;
+    private final Paint textPaint;
+    private final Map<Long, Float> textSizeCache = new HashMap<>();
+
+    private Bitmap decodeBitmap;
+    private Bitmap canvasBitmap;
+
+    /**
+     * @param context the current {@link Context}
+     * @param flex the {@link Flex} instance for our stamp labels
+     * @param preferences the {@link UserPreferenceManager} for our stamp formatting
+     * @param memoryBudgetBytes the maximum number of bytes to use for bitmaps
+     */
+    public StampedImagesZipExporter(@NonNull Context context, @NonNull Flex flex, @NonNull UserPreferenceManager preferences, long memoryBudgetBytes) {
+        this.context = Preconditions.checkNotNull(context);
+        this.flex = Preconditions.checkNotNull(flex);
+        this.preferences = Preconditions.checkNotNull(preferences);
+        Preconditions.checkArgument(memoryBudgetBytes > 0, "The memory budget must be positive");
+        this.maxCanvasPixels = memoryBudgetBytes / BYTES_PER_CANVAS_PIXEL;
+
+        this.imagePaint = new Paint();
+        this.imagePaint.setDither(true);
+        this.imagePaint.setFilterBitmap(false);
+
+        this.textPaint = new Paint();
+        this.textPaint.setAntiAlias(true);
+        this.textPaint.setTypeface(Typeface.SANS_SERIF);
+        this.textPaint.setColor(Color.BLACK);
+        this.textPaint.setStyle(Paint.Style.FILL);
+        this.textPaint.setTextAlign(Paint.Align.LEFT);
+    }
+
+    /**
+     * Stamps the image of each receipt and writes all of them to a zip file. Receipts without images are skipped.
+     *
+     * @param trip the parent {@link Trip}
+     * @param receipts the {@link List} of {@link Receipt}s to export
+     * @param outputFile the zip {@link File} to write. Any existing file will be overwritten, and it will be deleted if
+     *                   we fail to write it (rather than leaving a truncated zip behind)
+     * @throws IOException if we failed to write the zip file
+     */
+    public void export(@NonNull Trip trip, @NonNull List<Receipt> receipts, @NonNull File outputFile) throws IOException {
+        final StampText stampText = new StampText(trip);
+        final Set<String> entryNames = new HashSet<>();
+        final EncodedImageBuffer encodedImage = new EncodedImageBuffer();
+        StreamingZipWriter zipWriter = null;
+        boolean isComplete = false;
+        try {
+            zipWriter = new StreamingZipWriter(outputFile, BUFFER_SIZE, null);
+            for (final Receipt receipt : receipts) {
+                if (!receipt.hasImage()) {
+                    continue;
+                }
+                final String entryName = receipt.getImage().getName();
+                if (!entryNames.add(entryName)) {
+                    Logger.warn(this, "Skipping duplicate zip entry {}", entryName);
+                    continue;
+                }
+                final Bitmap stampedBitmap = stamp(receipt, stampText);
+                if (stampedBitmap != null) {
+                    encodedImage.reset();
+                    if (!stampedBitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, encodedImage)) {
+                        throw new IOException("Failed to encode the stamped image for " + entryName);
+                    }
+                    zipWriter.putStream(entryName, encodedImage.toInputStream(), System.currentTimeMillis(), false);
+                }
+            }
+            zipWriter.finish();
+            isComplete = true;
+        } finally {
+            if (zipWriter != null) {
+                zipWriter.close();
+            }
+            releaseBitmaps();
+            if (!isComplete && outputFile.exists() && !outputFile.delete()) {
+                Logger.warn(this, "Failed to delete our incomplete zip file {}", outputFile.getName());
+            }
+        }
+    }
+
+    /**
+     * Determines the size of the canvas that we stamp a decoded image onto. This pads the image to a 3:4 aspect ratio and
+     * then adds space around it for the text
+     *
+     * @param imageWidth the width of the decoded image
+     * @param imageHeight the height of the decoded image
+     * @return an array of {width, height, horizontal padding, vertical padding}
+     */
+    @NonNull
+    @VisibleForTesting
+    static int[] getCanvasSize(int imageWidth, int imageHeight) {
+        int foreWidth = imageWidth;
+        int foreHeight = imageHeight;
+        if (foreHeight > foreWidth) {
+            foreWidth = (int) (foreHeight * HW_RATIO);
+        } else {
+            foreHeight = (int) (foreWidth / HW_RATIO);
+        }
+        final int xPad = (int) (foreWidth / IMG_SCALE_FACTOR);
+        final int yPad = (int) (foreHeight / IMG_SCALE_FACTOR);
+        return new int[]{foreWidth + xPad, foreHeight + yPad, xPad, yPad};
+    }
+
+    /**
+     * @param imageWidth the original width of the image
+     * @param imageHeight the original height of the image
+     * @param maxCanvasPixels the maximum number of pixels that our canvas may contain
+     * @return the power of two sample size that allows us to stamp this image within our budget
+     */
+    @VisibleForTesting
+    static int getInSampleSize(int imageWidth, int imageHeight, long maxCanvasPixels) {
+        int sampleSize = 1;
+        while (sampleSize < Math.max(imageWidth, imageHeight)) {
+            // Decoders may round up, so we use the ceiling to stay conservative
+            final int[] canvasSize = getCanvasSize(divideRoundingUp(imageWidth, sampleSize), divideRoundingUp(imageHeight, sampleSize));
+            if ((long) canvasSize[0] * canvasSize[1] <= maxCanvasPixels) {
+                break;
+            }
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @Nullable
+    private Bitmap stamp(@NonNull Receipt receipt, @NonNull StampText stampText) {
+        final Bitmap image = decode(receipt.getImage());
+        if (image == null) {
+            return null; // It can be null if file not found
+        }
+
+        final int[] canvasSize = getCanvasSize(image.getWidth(), image.getHeight());
+        final int xPad = canvasSize[2];
+        final int yPad = canvasSize[3];
+        final Bitmap background = obtainCanvasBitmap(canvasSize[0], canvasSize[1]);
+        final Canvas canvas = new Canvas(background);
+        canvas.drawARGB(0xFF, 0xFF, 0xFF, 0xFF); //This represents White color
+        canvas.drawBitmap(image, (background.getWidth() - image.getWidth()) / 2, (background.getHeight() - image.getHeight()) / 2, imagePaint);
+
+        final List<String> receiptLines = stampText.getReceiptLines(receipt);
+        final float spacing = getOptimalSpacing(receiptLines.size(), yPad / 2);
+        float y = spacing * 4;
+        canvas.drawText(stampText.tripName, xPad / 2, y, textPaint);
+        y += spacing;
+        canvas.drawText(stampText.tripDates, xPad / 2, y, textPaint);
+        y = background.getHeight() - yPad / 2 + spacing * 2;
+        for (final String line : receiptLines) {
+            canvas.drawText(line, xPad / 2, y, textPaint);
+            y += spacing;
+        }
+        return background;
+    }
+
+    @Nullable
+    private Bitmap decode(@NonNull File file) {
+        final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), boundsOptions);
+        if (boundsOptions.outWidth <= 0 || boundsOptions.outHeight <= 0) {
+            Logger.warn(this, "Failed to read the bounds of {}", file.getName());
+            return null;
+        }
+
+        final int sampleSize = getInSampleSize(boundsOptions.outWidth, boundsOptions.outHeight, maxCanvasPixels);
+        final long requiredBytes = 2L * divideRoundingUp(boundsOptions.outWidth, sampleSize) * divideRoundingUp(boundsOptions.outHeight, sampleSize);
+        if (decodeBitmap != null && decodeBitmap.getAllocationByteCount() < requiredBytes) {
+            // Free our existing bitmap before we allocate the larger one, so we never hold both
+            decodeBitmap.recycle();
+            decodeBitmap = null;
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inDither = true;
+        options.inMutable = true;
+        options.inBitmap = decodeBitmap;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        } catch (IllegalArgumentException e) {
+            // The decoder could not re-use our bitmap for this image (eg due to an unsupported format)
+            Logger.warn(this, "Unable to re-use our bitmap for {}", file.getName());
+            releaseDecodeBitmap();
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        }
+        if (bitmap != null && bitmap != decodeBitmap) {
+            releaseDecodeBitmap();
+            decodeBitmap = bitmap;
+        }
+        return bitmap;
+    }
+
+    @NonNull
+    private Bitmap obtainCanvasBitmap(int width, int height) {
+        final long requiredBytes = 4L * width * height;
+        if (canvasBitmap != null && canvasBitmap.getAllocationByteCount() >= requiredBytes) {
+            canvasBitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            if (canvasBitmap != null) {
+                canvasBitmap.recycle();
+            }
+            canvasBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return canvasBitmap;
+    }
+
+    /**
+     * Sizes our text paint, such that the desired number of lines fit within the available space. Most receipt images
+     * in a trip share the same dimensions, so we only measure each (count, space) combination once
+     */
+    private float getOptimalSpacing(int count, int space) {
+        final Long key = ((long) count << 32) | space;
+        final Float cachedTextSize = textSizeCache.get(key);
+        if (cachedTextSize != null) {
+            textPaint.setTextSize(cachedTextSize);
+        } else {
+            float fontSize = 8f; //Seed
+            textPaint.setTextSize(fontSize);
+            while (space > (count + 2) * textPaint.getFontSpacing()) {
+                textPaint.setTextSize(++fontSize);
+            }
+            textPaint.setTextSize(--fontSize);
+            textSizeCache.put(key, fontSize);
+        }
+        return textPaint.getFontSpacing();
+    }
+
+    private void releaseDecodeBitmap() {
+        if (decodeBitmap != null) {
+            decodeBitmap.recycle();
+            decodeBitmap = null;
+        }
+    }
+
+    private void releaseBitmaps() {
+        releaseDecodeBitmap();
+        if (canvasBitmap != null) {
+            canvasBitmap.recycle();
+            canvasBitmap = null;
+        }
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} that we re-use for each encoded image, which can be read back without copying
+     */
+    private static final class EncodedImageBuffer extends ByteArrayOutputStream {
+
+        @NonNull
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * Builds the text for each stamp. The labels and trip details are identical for every receipt, so we only resolve
+     * these once per export
+     */
+    private final class StampText {
+
+        private final String tripName;
+        private final String tripDates;
+        private final String dateSeparator;
+        private final boolean includeTax;
+        private final String nameLabel;
+        private final String priceLabel;
+        private final String taxLabel;
+        private final String dateLabel;
+        private final String categoryLabel;
+        private final String commentLabel;
+        private final String extra1Label;
+        private final String extra2Label;
+        private final String extra3Label;
+
+        StampText(@NonNull Trip trip) {
+            dateSeparator = preferences.get(UserPreference.General.DateSeparator);
+            includeTax = preferences.get(UserPreference.Receipts.IncludeTaxField);
+            tripName = trip.getName();
+            tripDates = trip.getFormattedStartDate(context, dateSeparator) + " -- " + trip.getFormattedEndDate(context, dateSeparator);
+            nameLabel = flex.getString(context, R.string.RECEIPTMENU_FIELD_NAME) + ": ";
+            priceLabel = flex.getString(context, R.string.RECEIPTMENU_FIELD_PRICE) + ": ";
+            taxLabel = flex.getString(context, R.string.RECEIPTMENU_FIELD_TAX) + ": ";
+            dateLabel = flex.getString(context, R.string.RECEIPTMENU_FIELD_DATE) + ": ";
+            categoryLabel = flex.getString(context, R.string.RECEIPTMENU_FIELD_CATEGORY) + ": ";
+            commentLabel = flex.getString(context, R.string.RECEIPTMENU_FIELD_COMMENT) + ": ";
+            extra1Label = flex.getString(context, R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_1) + ": ";
+            extra2Label = flex.getString(context, R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_2) + ": ";
+            extra3Label = flex.getString(context, R.string.RECEIPTMENU_FIELD_EXTRA_EDITTEXT_3) + ": ";
+        }
+
+        @NonNull
+        List<String> getReceiptLines(@NonNull Receipt receipt) {
+            final List<String> lines = new ArrayList<>(9);
+            lines.add(nameLabel + receipt.getName());
+            lines.add(priceLabel + receipt.getPrice().getDecimalFormattedPrice() + " " + receipt.getPrice().getCurrencyCode());
+            if (includeTax) {
+                lines.add(taxLabel + receipt.getTax().getDecimalFormattedPrice() + " " + receipt.getPrice().getCurrencyCode());
+            }
+            lines.add(dateLabel + receipt.getFormattedDate(context, dateSeparator));
+            lines.add(categoryLabel + receipt.getCategory().getName());
+            lines.add(commentLabel + receipt.getComment());
+            if (receipt.hasExtraEditText1()) {
+                lines.add(extra1Label + receipt.getExtraEditText1());
+            }
+            if (receipt.hasExtraEditText2()) {
+                lines.add(extra2Label + receipt.getExtraEditText2());
+            }
+            if (receipt.hasExtraEditText3()) {
+                lines.add(extra3Label + receipt.getExtraEditText3());
+            }
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package co.smartreceipts.android.model.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.factory.ExchangeRateBuilderFactory;
+import co.smartreceipts.android.model.factory.PriceBuilderFactory;
+import co.smartreceipts.android.model.impl.columns.ConstantFooterAccumulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class NetPriceAccumulatorTest {
+
+    private static final PriceCurrency USD = PriceCurrency.getInstance("USD");
+    private static final PriceCurrency EUR = PriceCurrency.getInstance("EUR");
+
+    // Class under test
+    NetPriceAccumulator mNetPriceAccumulator;
+
+    Price mUsd;
+    Price mExchangedEur;
+    Price mEur;
+
+    @Before
+    public void setUp() throws Exception {
+        mNetPriceAccumulator = new NetPriceAccumulator(USD);
+        mUsd = new PriceBuilderFactory().setCurrency(USD).setPrice(10.25).build();
+        mExchangedEur = new PriceBuilderFactory().setCurrency(EUR).setPrice(10)
+                .setExchangeRate(new ExchangeRateBuilderFactory().setBaseCurrency(EUR).setRate("USD", 1.5).build()).build();
+        mEur = new PriceBuilderFactory().setCurrency(EUR).setPrice(2).build();
+    }
+
+    @Test
+    public void finishWithoutPrices() {
+        final ImmutableNetPriceImpl netPrice = mNetPriceAccumulator.finish();
+        assertEquals(0, netPrice.getPrice().signum());
+        assertTrue(netPrice.areAllExchangeRatesValid());
+        assertEquals(USD, netPrice.getCurrency());
+    }
+
+    @Test
+    public void finishMatchesNetPrice() {
+        final List<Price> prices = Arrays.asList(mUsd, mExchangedEur, mEur);
+        for (final Price price : prices) {
+            mNetPriceAccumulator.accept(price);
+        }
+        assertSameNetPrice(new ImmutableNetPriceImpl(USD, prices), mNetPriceAccumulator.finish());
+    }
+
+    @Test
+    public void mergeMatchesSinglePass() {
+        final NetPriceAccumulator otherAccumulator = new NetPriceAccumulator(USD);
+        mNetPriceAccumulator.accept(mUsd);
+        otherAccumulator.accept(mExchangedEur);
+        otherAccumulator.accept(mEur);
+
+        mNetPriceAccumulator.merge(otherAccumulator);
+
+        final ImmutableNetPriceImpl netPrice = mNetPriceAccumulator.finish();
+        assertSameNetPrice(new ImmutableNetPriceImpl(USD, Arrays.asList(mUsd, mExchangedEur, mEur)), netPrice);
+        assertFalse(netPrice.areAllExchangeRatesValid());
+        assertEquals(0, new BigDecimal("25.25").compareTo(netPrice.getCurrencyToPriceMap().get(USD)));
+        assertEquals(0, new BigDecimal("2").compareTo(netPrice.getCurrencyToPriceMap().get(EUR)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeWithDifferentBaseCurrencyThrows() {
+        mNetPriceAccumulator.merge(new NetPriceAccumulator(EUR));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void mergeWithDifferentTypeThrows() {
+        mNetPriceAccumulator.merge(new ConstantFooterAccumulator(""));
+    }
+
+    private static void assertSameNetPrice(ImmutableNetPriceImpl expected, ImmutableNetPriceImpl actual) {
+        assertEquals(0, expected.getPrice().compareTo(actual.getPrice()));
+        assertEquals(expected.areAllExchangeRatesValid(), actual.areAllExchangeRatesValid());
+        assertEquals(expected.getCurrencyToPriceMap(), actual.getCurrencyToPriceMap());
+        assertEquals(expected.getDecimalFormattedPrice(), actual.getDecimalFormattedPrice());
+        assertEquals(expected.getCurrencyCodeFormattedPrice(), actual.getCurrencyCodeFormattedPrice());
+    }
+
+}
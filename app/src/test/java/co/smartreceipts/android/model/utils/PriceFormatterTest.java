@@ -0,0 +1,110 @@
+package co.smartreceipts.android.model.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import co.smartreceipts.android.utils.TestLocaleToggler;
+
+import static org.junit.Assert.assertEquals;
+
+public class PriceFormatterTest {
+
+    private static final String[] VALUES = new String[] {"0", "2.5", "2.54", "2.545", "2.555", "-2.545", "-0.001", "-0.005", "0.004",
+            "1234567.891", "-99.999", "100", "1E+3", "9223372036854775807", "12345678901234567890.12"};
+
+    @Before
+    public void setUp() throws Exception {
+        TestLocaleToggler.setDefaultLocale(Locale.US);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestLocaleToggler.resetDefaultLocale();
+    }
+
+    @Test
+    public void format() {
+        assertEquals("2.54", PriceFormatter.format(new BigDecimal("2.54"), 2));
+        assertEquals("0.50", PriceFormatter.format(new BigDecimal("0.5"), 2));
+        assertEquals("-12.300", PriceFormatter.format(new BigDecimal("-12.3"), 3));
+        assertEquals("3", PriceFormatter.format(new BigDecimal("2.5412"), 0));
+    }
+
+    @Test
+    public void formatMatchesDecimalFormat() {
+        for (int precision = 0; precision <= 4; precision++) {
+            final DecimalFormat decimalFormat = newDecimalFormat(precision);
+            for (final String value : VALUES) {
+                final BigDecimal decimal = new BigDecimal(value);
+                assertEquals(value + " @ " + precision, decimalFormat.format(decimal), PriceFormatter.format(decimal, precision));
+            }
+        }
+    }
+
+    @Test
+    public void formatMatchesDecimalFormatForOtherLocales() {
+        TestLocaleToggler.resetDefaultLocale();
+        TestLocaleToggler.setDefaultLocale(Locale.GERMANY);
+        final DecimalFormat decimalFormat = newDecimalFormat(2);
+        for (final String value : VALUES) {
+            final BigDecimal decimal = new BigDecimal(value);
+            assertEquals(value, decimalFormat.format(decimal), PriceFormatter.format(decimal, 2));
+        }
+    }
+
+    @Test
+    public void append() {
+        final StringBuilder stringBuilder = new StringBuilder("USD");
+        PriceFormatter.append(stringBuilder, new BigDecimal("2.5"), 2).append(",");
+        assertEquals("USD2.50,", stringBuilder.toString());
+    }
+
+    @Test
+    public void formatIsThreadSafe() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final int offset = i;
+                futures.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int j = 0; j < 10000; j++) {
+                            final int cents = j * 4 + offset;
+                            final String expected = (cents / 100) + "." + String.format(Locale.US, "%02d", cents % 100);
+                            if (!expected.equals(PriceFormatter.format(new BigDecimal(cents).movePointLeft(2), 2))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (final Future<Boolean> future : futures) {
+                assertEquals(true, future.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static DecimalFormat newDecimalFormat(int precision) {
+        final DecimalFormat decimalFormat = new DecimalFormat();
+        decimalFormat.setMaximumFractionDigits(precision);
+        decimalFormat.setMinimumFractionDigits(precision);
+        decimalFormat.setGroupingUsed(false);
+        return decimalFormat;
+    }
+
+}
@@ -0,0 +1,252 @@
+package co.smartreceipts.android.persistence;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import co.smartreceipts.android.model.Category;
+import co.smartreceipts.android.model.factory.CategoryBuilderFactory;
+import co.smartreceipts.android.model.impl.columns.receipts.ReceiptColumnDefinitions;
+import co.smartreceipts.android.persistence.database.defaults.WhiteLabelFriendlyTableDefaultsCustomizer;
+import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
+import co.smartreceipts.android.persistence.database.tables.CategoriesTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import io.reactivex.observers.TestObserver;
+import wb.android.storage.StorageManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseHelperTest {
+
+    private static final String PACKAGE_NAME = "co.smartreceipts.android";
+
+    // Class under test
+    DatabaseHelper mDatabaseHelper;
+
+    DatabaseHelper mImportDatabaseHelper;
+
+    @Mock
+    StorageManager mStorageManager;
+
+    @Mock
+    UserPreferenceManager mPreferences;
+
+    @Mock
+    WhiteLabelFriendlyTableDefaultsCustomizer mTableDefaultsCustomizer;
+
+    File mDirectory;
+
+    File mImportDatabaseFile;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mPreferences.get(UserPreference.General.DefaultCurrency)).thenReturn("USD");
+
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "database_helper_test");
+        assertTrue(mDirectory.isDirectory() || mDirectory.mkdirs());
+        mImportDatabaseFile = new File(mDirectory, "import.db");
+        mDatabaseHelper = new DatabaseHelper(RuntimeEnvironment.application, mStorageManager, mPreferences, new File(mDirectory, DatabaseHelper.DATABASE_NAME).getAbsolutePath(),
+                new ReceiptColumnDefinitions(), mTableDefaultsCustomizer);
+        mImportDatabaseHelper = new DatabaseHelper(RuntimeEnvironment.application, mStorageManager, mPreferences, mImportDatabaseFile.getAbsolutePath(),
+                new ReceiptColumnDefinitions(), mTableDefaultsCustomizer);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabaseHelper.close();
+        mImportDatabaseHelper.close();
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void mergeEmptyDatabase() {
+        mImportDatabaseHelper.close();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+        assertEquals(0, getReceiptCount(mDatabaseHelper));
+    }
+
+    @Test
+    public void mergeReceiptsAtBatchBoundaries() {
+        final int[] receiptCounts = new int[] { 1, DatabaseHelper.MERGE_BATCH_SIZE - 1, DatabaseHelper.MERGE_BATCH_SIZE, DatabaseHelper.MERGE_BATCH_SIZE + 1, 2 * DatabaseHelper.MERGE_BATCH_SIZE + 1 };
+        int insertedReceipts = 0;
+        for (final int receiptCount : receiptCounts) {
+            // Each pass adds new receipts to our import, so only these will be merged (and all existing ones ignored)
+            for (int i = insertedReceipts; i < receiptCount; i++) {
+                insertReceipt(mImportDatabaseHelper, "receipt" + i + ".jpg", "receipt" + i, i, 1.00);
+            }
+            insertedReceipts = receiptCount;
+            mImportDatabaseHelper.close();
+
+            assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+            assertEquals(receiptCount, getReceiptCount(mDatabaseHelper));
+        }
+    }
+
+    @Test
+    public void mergeReportsProgressAfterEachBatch() {
+        for (int i = 0; i <= DatabaseHelper.MERGE_BATCH_SIZE; i++) {
+            insertReceipt(mImportDatabaseHelper, "receipt" + i + ".jpg", "receipt" + i, i, 1.00);
+        }
+        mImportDatabaseHelper.close();
+        final TestObserver<DatabaseHelper.MergeProgress> testObserver = mDatabaseHelper.getMergeProgress().test();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+
+        final List<DatabaseHelper.MergeProgress> progress = testObserver.values();
+        assertTrue(progress.size() >= 2);
+        int lastMergedRows = 0;
+        for (final DatabaseHelper.MergeProgress mergeProgress : progress) {
+            assertTrue(mergeProgress.getMergedRows() > lastMergedRows);
+            assertTrue(mergeProgress.getMergedRows() <= mergeProgress.getTotalRows());
+            assertTrue(mergeProgress.getTotalRows() >= DatabaseHelper.MERGE_BATCH_SIZE + 1);
+            lastMergedRows = mergeProgress.getMergedRows();
+        }
+        testObserver.assertNoErrors();
+        testObserver.assertNotComplete();
+        testObserver.dispose();
+    }
+
+    @Test
+    public void mergeDeduplicatesReceiptsInDifferentBatches() {
+        insertReceipt(mImportDatabaseHelper, "duplicate.jpg", "duplicate", 0, 1.00);
+        for (int i = 1; i <= DatabaseHelper.MERGE_BATCH_SIZE; i++) {
+            insertReceipt(mImportDatabaseHelper, "receipt" + i + ".jpg", "receipt" + i, i, 1.00);
+        }
+        insertReceipt(mImportDatabaseHelper, "duplicate.jpg", "duplicate", 0, 2.00);
+        mImportDatabaseHelper.close();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+
+        assertEquals(DatabaseHelper.MERGE_BATCH_SIZE + 1, getReceiptCount(mDatabaseHelper));
+        assertEquals(1.00, getReceiptPrice(mDatabaseHelper, "duplicate"), 0.001);
+    }
+
+    @Test
+    public void mergeWithoutOverwriteKeepsExistingReceipts() {
+        insertReceipt(mDatabaseHelper, "existing.jpg", "existing", 1, 1.00);
+        insertReceipt(mImportDatabaseHelper, "existing.jpg", "existing", 1, 2.00);
+        insertReceipt(mImportDatabaseHelper, "new.jpg", "new", 2, 3.00);
+        mImportDatabaseHelper.close();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+
+        assertEquals(2, getReceiptCount(mDatabaseHelper));
+        assertEquals(1.00, getReceiptPrice(mDatabaseHelper, "existing"), 0.001);
+        assertEquals(3.00, getReceiptPrice(mDatabaseHelper, "new"), 0.001);
+    }
+
+    @Test
+    public void mergeWithOverwriteReplacesExistingReceipts() {
+        insertReceipt(mDatabaseHelper, "existing.jpg", "existing", 1, 1.00);
+        insertReceipt(mImportDatabaseHelper, "existing.jpg", "existing", 1, 2.00);
+        insertReceipt(mImportDatabaseHelper, "new.jpg", "new", 2, 3.00);
+        mImportDatabaseHelper.close();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, true));
+
+        assertEquals(2, getReceiptCount(mDatabaseHelper));
+        assertEquals(2.00, getReceiptPrice(mDatabaseHelper, "existing"), 0.001);
+        assertEquals(3.00, getReceiptPrice(mDatabaseHelper, "new"), 0.001);
+    }
+
+    @Test
+    public void mergeReplacesAllCategoriesOnlyOnce() {
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        final ContentValues existingCategory = new ContentValues();
+        existingCategory.put(CategoriesTable.COLUMN_NAME, "existing");
+        existingCategory.put(CategoriesTable.COLUMN_CODE, "EX");
+        db.insert(CategoriesTable.TABLE_NAME, null, existingCategory);
+
+        final int categoryCount = DatabaseHelper.MERGE_BATCH_SIZE + 1;
+        final SQLiteDatabase importDb = mImportDatabaseHelper.getWritableDatabase();
+        importDb.delete(CategoriesTable.TABLE_NAME, null, null);
+        for (int i = 0; i < categoryCount; i++) {
+            final ContentValues values = new ContentValues();
+            values.put(CategoriesTable.COLUMN_NAME, "category" + i);
+            values.put(CategoriesTable.COLUMN_CODE, "C" + i);
+            importDb.insert(CategoriesTable.TABLE_NAME, null, values);
+        }
+        mImportDatabaseHelper.close();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+
+        // The existing category is removed within the first batch, but the second batch must not remove the first
+        assertEquals(categoryCount, DatabaseUtils.queryNumEntries(mDatabaseHelper.getReadableDatabase(), CategoriesTable.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabaseHelper.getReadableDatabase(), CategoriesTable.TABLE_NAME,
+                CategoriesTable.COLUMN_NAME + " = ?", new String[]{"existing"}));
+    }
+
+    @Test
+    public void mergeReplacesCachedCategories() {
+        final Category existingCategory = mDatabaseHelper.getCategoriesTable().insert(new CategoryBuilderFactory().setName("existing").setCode("EX").build(),
+                new DatabaseOperationMetadata()).blockingGet();
+        assertEquals(Collections.singletonList(existingCategory), mDatabaseHelper.getCategoriesTable().get().blockingGet());
+
+        final SQLiteDatabase importDb = mImportDatabaseHelper.getWritableDatabase();
+        importDb.delete(CategoriesTable.TABLE_NAME, null, null);
+        final ContentValues values = new ContentValues();
+        values.put(CategoriesTable.COLUMN_NAME, "imported");
+        values.put(CategoriesTable.COLUMN_CODE, "IM");
+        importDb.insert(CategoriesTable.TABLE_NAME, null, values);
+        mImportDatabaseHelper.close();
+
+        assertTrue(mDatabaseHelper.merge(mImportDatabaseFile.getAbsolutePath(), PACKAGE_NAME, false));
+
+        // Our cache should reflect the merge without needing to be cleared
+        final Category importedCategory = new CategoryBuilderFactory().setName("imported").setCode("IM").build();
+        assertEquals(Collections.singletonList(importedCategory), mDatabaseHelper.getCategoriesTable().get().blockingGet());
+        mDatabaseHelper.getCategoriesTable().clearCache();
+        assertEquals(Collections.singletonList(importedCategory), mDatabaseHelper.getCategoriesTable().get().blockingGet());
+    }
+
+    private static void insertReceipt(DatabaseHelper databaseHelper, String path, String name, long date, double price) {
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_PATH, path);
+        values.put(ReceiptsTable.COLUMN_NAME, name);
+        values.put(ReceiptsTable.COLUMN_PARENT, "trip");
+        values.put(ReceiptsTable.COLUMN_DATE, date);
+        values.put(ReceiptsTable.COLUMN_PRICE, price);
+        databaseHelper.getWritableDatabase().insert(ReceiptsTable.TABLE_NAME, null, values);
+    }
+
+    private static long getReceiptCount(DatabaseHelper databaseHelper) {
+        return DatabaseUtils.queryNumEntries(databaseHelper.getReadableDatabase(), ReceiptsTable.TABLE_NAME);
+    }
+
+    private static double getReceiptPrice(DatabaseHelper databaseHelper, String name) {
+        Cursor cursor = null;
+        try {
+            cursor = databaseHelper.getReadableDatabase().query(ReceiptsTable.TABLE_NAME, new String[]{ReceiptsTable.COLUMN_PRICE},
+                    ReceiptsTable.COLUMN_NAME + " = ?", new String[]{name}, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1, cursor.getCount());
+            return cursor.getDouble(0);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
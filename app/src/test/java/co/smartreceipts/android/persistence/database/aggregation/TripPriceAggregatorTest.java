@@ -0,0 +1,248 @@
+package co.smartreceipts.android.persistence.database.aggregation;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import co.smartreceipts.android.model.Category;
+import co.smartreceipts.android.model.PaymentMethod;
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.model.impl.ImmutableNetPriceImpl;
+import co.smartreceipts.android.persistence.database.defaults.TableDefaultsCustomizer;
+import co.smartreceipts.android.persistence.database.tables.AbstractSqlTable;
+import co.smartreceipts.android.persistence.database.tables.DistanceTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.persistence.database.tables.Table;
+import co.smartreceipts.android.persistence.database.tables.TestSQLiteOpenHelper;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import wb.android.storage.StorageManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class TripPriceAggregatorTest {
+
+    private static final String TRIP_1 = "Trip1";
+    private static final String TRIP_2 = "Trip2";
+    private static final String USD = "USD";
+    private static final String EUR = "EUR";
+    private static final long YESTERDAY = System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L;
+
+    // Class under test
+    TripPriceAggregator mTripPriceAggregator;
+
+    @Mock
+    Trip mTrip1;
+
+    @Mock
+    Trip mTrip2;
+
+    @Mock
+    Table<Trip, String> mTripsTable;
+
+    @Mock
+    Table<PaymentMethod, Integer> mPaymentMethodTable;
+
+    @Mock
+    Table<Category, String> mCategoryTable;
+
+    @Mock
+    StorageManager mStorageManager;
+
+    @Mock
+    UserPreferenceManager mPreferences;
+
+    @Mock
+    TableDefaultsCustomizer mTableDefaultsCustomizer;
+
+    SQLiteOpenHelper mSQLiteOpenHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(mTrip1.getName()).thenReturn(TRIP_1);
+        when(mTrip2.getName()).thenReturn(TRIP_2);
+        when(mTrip1.getTripCurrency()).thenReturn(PriceCurrency.getInstance(USD));
+        when(mTrip2.getTripCurrency()).thenReturn(PriceCurrency.getInstance(USD));
+        when(mPreferences.get(UserPreference.General.DefaultCurrency)).thenReturn(USD);
+        when(mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(false);
+        when(mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)).thenReturn(false);
+
+        mSQLiteOpenHelper = new TestSQLiteOpenHelper(RuntimeEnvironment.application);
+        new ReceiptsTable(mSQLiteOpenHelper, mTripsTable, mPaymentMethodTable, mCategoryTable, mStorageManager, mPreferences)
+                .onCreate(mSQLiteOpenHelper.getWritableDatabase(), mTableDefaultsCustomizer);
+        new DistanceTable(mSQLiteOpenHelper, mTripsTable, USD)
+                .onCreate(mSQLiteOpenHelper.getWritableDatabase(), mTableDefaultsCustomizer);
+
+        mTripPriceAggregator = new TripPriceAggregator(mSQLiteOpenHelper, mPreferences);
+    }
+
+    @After
+    public void tearDown() {
+        mSQLiteOpenHelper.getWritableDatabase().execSQL("DROP TABLE IF EXISTS " + ReceiptsTable.TABLE_NAME);
+        mSQLiteOpenHelper.getWritableDatabase().execSQL("DROP TABLE IF EXISTS " + DistanceTable.TABLE_NAME);
+    }
+
+    @Test
+    public void aggregateEmptyTrips() {
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "0", true, "0");
+        assertPrice(mTrip2, "0", true, "0");
+    }
+
+    @Test
+    public void aggregateAllTripsInOneQuery() {
+        insertReceipt(TRIP_1, 10.5, USD, -1, true, YESTERDAY, false);
+        insertReceipt(TRIP_1, 20.25, USD, -1, true, System.currentTimeMillis(), false);
+        insertReceipt(TRIP_2, 5, USD, -1, true, YESTERDAY, false);
+
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "30.75", true, "20.25");
+        assertPrice(mTrip2, "5", true, "0");
+    }
+
+    @Test
+    public void aggregateSingleTrip() {
+        insertReceipt(TRIP_1, 10.5, USD, -1, true, YESTERDAY, false);
+        insertReceipt(TRIP_2, 5, USD, -1, true, YESTERDAY, false);
+
+        mTripPriceAggregator.aggregateBlocking(mTrip1);
+
+        assertPrice(mTrip1, "10.5", true, "0");
+    }
+
+    @Test
+    public void aggregateSumsPricesExactly() {
+        // Note: Summing these as doubles would give us 0.9999999999999999
+        for (int i = 0; i < 10; i++) {
+            insertReceipt(TRIP_1, 0.1, USD, -1, true, YESTERDAY, false);
+        }
+        insertReceipt(TRIP_1, 0.1, EUR, 1.1, true, YESTERDAY, false);
+
+        mTripPriceAggregator.aggregateBlocking(mTrip1);
+
+        assertPrice(mTrip1, "1.11", true, "0");
+    }
+
+    @Test
+    public void aggregateUsesExchangeRates() {
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, false);
+        insertReceipt(TRIP_1, 10, EUR, 1.5, true, YESTERDAY, false);
+
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "25", true, "0");
+    }
+
+    @Test
+    public void aggregateWithoutExchangeRates() {
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, false);
+        insertReceipt(TRIP_1, 10, EUR, -1, true, YESTERDAY, false);
+
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "20", false, "0");
+    }
+
+    @Test
+    public void aggregateIgnoresReceiptsMarkedForDeletion() {
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, false);
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, true);
+
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "10", true, "0");
+    }
+
+    @Test
+    public void aggregateOnlyReimbursable() {
+        when(mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(true);
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, false);
+        insertReceipt(TRIP_1, 15, USD, -1, false, YESTERDAY, false);
+
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "10", true, "0");
+    }
+
+    @Test
+    public void aggregateExcludesDistancesWhenDisabled() {
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, false);
+        insertDistance(TRIP_1, 10, 0.5, USD, System.currentTimeMillis());
+
+        mTripPriceAggregator.aggregateBlocking(Arrays.asList(mTrip1, mTrip2));
+
+        assertPrice(mTrip1, "10", true, "0");
+    }
+
+    @Test
+    public void aggregateIncludesDistancesWhenEnabled() {
+        when(mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)).thenReturn(true);
+        insertReceipt(TRIP_1, 10, USD, -1, true, YESTERDAY, false);
+        insertDistance(TRIP_1, 10, 0.5, USD, System.currentTimeMillis());
+
+        mTripPriceAggregator.aggregateBlocking(mTrip1);
+
+        assertPrice(mTrip1, "15", true, "5");
+    }
+
+    private void assertPrice(Trip trip, String expectedTotal, boolean expectAllExchangeRatesValid, String expectedDaily) {
+        final ArgumentCaptor<Price> priceCaptor = ArgumentCaptor.forClass(Price.class);
+        final ArgumentCaptor<Price> dailyCaptor = ArgumentCaptor.forClass(Price.class);
+        verify(trip).setPrice(priceCaptor.capture());
+        verify(trip).setDailySubTotal(dailyCaptor.capture());
+
+        final Price price = priceCaptor.getValue();
+        assertEquals(0, new BigDecimal(expectedTotal).compareTo(price.getPrice()));
+        assertEquals(USD, price.getCurrencyCode());
+        if (price instanceof ImmutableNetPriceImpl) {
+            assertEquals(expectAllExchangeRatesValid, ((ImmutableNetPriceImpl) price).areAllExchangeRatesValid());
+        } else {
+            assertTrue(expectAllExchangeRatesValid);
+        }
+        assertEquals(0, new BigDecimal(expectedDaily).compareTo(dailyCaptor.getValue().getPrice()));
+    }
+
+    private void insertReceipt(String parent, double price, String currency, double exchangeRate, boolean reimbursable, long date, boolean markedForDeletion) {
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_PARENT, parent);
+        values.put(ReceiptsTable.COLUMN_PRICE, price);
+        values.put(ReceiptsTable.COLUMN_ISO4217, currency);
+        values.put(ReceiptsTable.COLUMN_EXCHANGE_RATE, exchangeRate);
+        values.put(ReceiptsTable.COLUMN_REIMBURSABLE, reimbursable);
+        values.put(ReceiptsTable.COLUMN_DATE, date);
+        values.put(AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION, markedForDeletion);
+        mSQLiteOpenHelper.getWritableDatabase().insert(ReceiptsTable.TABLE_NAME, null, values);
+    }
+
+    private void insertDistance(String parent, double distance, double rate, String currency, long date) {
+        final ContentValues values = new ContentValues();
+        values.put(DistanceTable.COLUMN_PARENT, parent);
+        values.put(DistanceTable.COLUMN_DISTANCE, distance);
+        values.put(DistanceTable.COLUMN_RATE, rate);
+        values.put(DistanceTable.COLUMN_RATE_CURRENCY, currency);
+        values.put(DistanceTable.COLUMN_DATE, date);
+        mSQLiteOpenHelper.getWritableDatabase().insert(DistanceTable.TABLE_NAME, null, values);
+    }
+}
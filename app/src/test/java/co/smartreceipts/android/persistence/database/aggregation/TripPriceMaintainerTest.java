@@ -0,0 +1,208 @@
+package co.smartreceipts.android.persistence.database.aggregation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.util.Arrays;
+
+import co.smartreceipts.android.model.Distance;
+import co.smartreceipts.android.model.Price;
+import co.smartreceipts.android.model.PriceCurrency;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.model.factory.ExchangeRateBuilderFactory;
+import co.smartreceipts.android.model.factory.PriceBuilderFactory;
+import co.smartreceipts.android.model.impl.ImmutableNetPriceImpl;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class TripPriceMaintainerTest {
+
+    private static final String USD = "USD";
+    private static final String EUR = "EUR";
+    private static final Date TODAY = new Date(System.currentTimeMillis());
+    private static final Date YESTERDAY = new Date(System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L);
+
+    // Class under test
+    TripPriceMaintainer mTripPriceMaintainer;
+
+    @Mock
+    Trip mTrip;
+
+    @Mock
+    Receipt mOldReceipt;
+
+    @Mock
+    Receipt mNewReceipt;
+
+    @Mock
+    Distance mDistance;
+
+    @Mock
+    UserPreferenceManager mPreferences;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        when(mTrip.getTripCurrency()).thenReturn(PriceCurrency.getInstance(USD));
+        when(mTrip.getPrice()).thenReturn(new PriceBuilderFactory().setCurrency(USD).setPrice(0).build());
+        when(mTrip.getDailySubTotal()).thenReturn(new PriceBuilderFactory().setCurrency(USD).setPrice(0).build());
+        when(mOldReceipt.isReimbursable()).thenReturn(true);
+        when(mNewReceipt.isReimbursable()).thenReturn(true);
+        when(mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(false);
+        when(mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)).thenReturn(false);
+
+        mTripPriceMaintainer = new TripPriceMaintainer(mPreferences);
+    }
+
+    @Test
+    public void insertReceipt() {
+        setPrice(mNewReceipt, price(10, USD), YESTERDAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, null, mNewReceipt);
+
+        assertPrice(captureTripPrice(), "10", true);
+        verify(mTrip, never()).setDailySubTotal(any(Price.class));
+    }
+
+    @Test
+    public void insertReceiptForToday() {
+        setPrice(mNewReceipt, price(10, USD), TODAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, null, mNewReceipt);
+
+        assertPrice(captureTripPrice(), "10", true);
+        assertPrice(captureDailySubTotal(), "10", true);
+    }
+
+    @Test
+    public void updateReceipt() {
+        when(mTrip.getPrice()).thenReturn(netPrice(price(20, USD)));
+        when(mTrip.getDailySubTotal()).thenReturn(netPrice(price(5, USD)));
+        setPrice(mOldReceipt, price(5, USD), TODAY);
+        setPrice(mNewReceipt, price(8, USD), TODAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, mOldReceipt, mNewReceipt);
+
+        assertPrice(captureTripPrice(), "23", true);
+        assertPrice(captureDailySubTotal(), "8", true);
+    }
+
+    @Test
+    public void insertReceiptWithExchangeRate() {
+        final Price euros = new PriceBuilderFactory().setCurrency(EUR).setPrice(10)
+                .setExchangeRate(new ExchangeRateBuilderFactory().setBaseCurrency(EUR).setRate(USD, 1.5).build()).build();
+        setPrice(mNewReceipt, euros, YESTERDAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, null, mNewReceipt);
+
+        assertPrice(captureTripPrice(), "15", true);
+    }
+
+    @Test
+    public void deleteReceiptWithoutExchangeRateRestoresValidTotal() {
+        when(mTrip.getPrice()).thenReturn(netPrice(price(10, USD), price(5, EUR)));
+        setPrice(mOldReceipt, price(5, EUR), YESTERDAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, mOldReceipt, null);
+
+        assertPrice(captureTripPrice(), "10", true);
+    }
+
+    @Test
+    public void insertReceiptWithoutExchangeRate() {
+        when(mTrip.getPrice()).thenReturn(netPrice(price(10, USD)));
+        setPrice(mNewReceipt, price(5, EUR), YESTERDAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, null, mNewReceipt);
+
+        assertPrice(captureTripPrice(), "15", false);
+    }
+
+    @Test
+    public void insertNonReimbursableReceiptWhenOnlyIncludingReimbursable() {
+        when(mPreferences.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(true);
+        when(mNewReceipt.isReimbursable()).thenReturn(false);
+        setPrice(mNewReceipt, price(10, USD), YESTERDAY);
+
+        mTripPriceMaintainer.applyReceiptDelta(mTrip, null, mNewReceipt);
+
+        assertPrice(captureTripPrice(), "0", true);
+    }
+
+    @Test
+    public void distanceIgnoredWhenNotIncludedInReports() {
+        when(mDistance.getPrice()).thenReturn(price(10, USD));
+        when(mDistance.getDate()).thenReturn(TODAY);
+
+        mTripPriceMaintainer.applyDistanceDelta(mTrip, null, mDistance);
+
+        verifyZeroInteractions(mTrip);
+    }
+
+    @Test
+    public void deleteDistance() {
+        when(mPreferences.get(UserPreference.Distance.IncludeDistancePriceInReports)).thenReturn(true);
+        when(mTrip.getPrice()).thenReturn(netPrice(price(25, USD)));
+        when(mTrip.getDailySubTotal()).thenReturn(netPrice(price(10, USD)));
+        when(mDistance.getPrice()).thenReturn(price(10, USD));
+        when(mDistance.getDate()).thenReturn(TODAY);
+
+        mTripPriceMaintainer.applyDistanceDelta(mTrip, mDistance, null);
+
+        assertPrice(captureTripPrice(), "15", true);
+        assertPrice(captureDailySubTotal(), "0", true);
+    }
+
+    private void setPrice(Receipt receipt, Price price, Date date) {
+        when(receipt.getPrice()).thenReturn(price);
+        when(receipt.getDate()).thenReturn(date);
+    }
+
+    private Price captureTripPrice() {
+        final ArgumentCaptor<Price> captor = ArgumentCaptor.forClass(Price.class);
+        verify(mTrip).setPrice(captor.capture());
+        return captor.getValue();
+    }
+
+    private Price captureDailySubTotal() {
+        final ArgumentCaptor<Price> captor = ArgumentCaptor.forClass(Price.class);
+        verify(mTrip).setDailySubTotal(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Price price(double price, String currency) {
+        return new PriceBuilderFactory().setCurrency(currency).setPrice(price).build();
+    }
+
+    private static Price netPrice(Price... prices) {
+        return new PriceBuilderFactory().setPrices(Arrays.asList(prices), PriceCurrency.getInstance(USD)).build();
+    }
+
+    private static void assertPrice(Price price, String expectedTotal, boolean expectAllExchangeRatesValid) {
+        assertEquals(0, new BigDecimal(expectedTotal).compareTo(price.getPrice()));
+        assertEquals(USD, price.getCurrencyCode());
+        if (price instanceof ImmutableNetPriceImpl) {
+            assertEquals(expectAllExchangeRatesValid, ((ImmutableNetPriceImpl) price).areAllExchangeRatesValid());
+        } else {
+            assertTrue(expectAllExchangeRatesValid);
+        }
+    }
+}
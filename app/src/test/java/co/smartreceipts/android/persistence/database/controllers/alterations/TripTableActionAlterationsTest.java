@@ -78,8 +78,7 @@ public class TripTableActionAlterationsTest {
                 .assertComplete()
                 .assertNoErrors();
 
-        verify(mDatabaseHelper).getTripPriceAndDailyPrice(mTrip1);
-        verify(mDatabaseHelper).getTripPriceAndDailyPrice(mTrip2);
+        verify(mDatabaseHelper).getTripPricesAndDailyPrices(trips);
     }
 
     @Test
@@ -14,6 +14,7 @@ import java.util.List;
 
 import co.smartreceipts.android.analytics.Analytics;
 import co.smartreceipts.android.analytics.events.ErrorEvent;
+import co.smartreceipts.android.persistence.database.controllers.BatchTableEventsListener;
 import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
 import co.smartreceipts.android.persistence.database.controllers.alterations.TableActionAlterations;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
@@ -25,6 +26,7 @@ import io.reactivex.schedulers.Schedulers;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -64,6 +66,9 @@ public class AbstractTableControllerTest {
     @Mock
     TableEventsListener<Object> mListener3;
 
+    @Mock
+    BatchTableEventsListener<Object> mBatchListener;
+
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -359,4 +364,123 @@ public class AbstractTableControllerTest {
         verifyZeroInteractions(mListener2);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void onInsertAllSuccess() throws Exception {
+        final Object insertItem1 = new Object();
+        final Object insertItem2 = new Object();
+        final List<Object> insertItems = Arrays.asList(insertItem1, insertItem2);
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preInsert(insertItem1)).thenReturn(Single.just(insertItem1));
+        when(mTableActionAlterations.preInsert(insertItem2)).thenReturn(Single.just(insertItem2));
+        when(mTable.insertAll(insertItems, databaseOperationMetadata)).thenReturn(Single.just(insertItems));
+        when(mTableActionAlterations.postInsert(insertItem1)).thenReturn(Single.just(insertItem1));
+        when(mTableActionAlterations.postInsert(insertItem2)).thenReturn(Single.just(insertItem2));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.subscribe(mBatchListener);
+        mAbstractTableController.insertAll(insertItems, databaseOperationMetadata);
+
+        verify(mListener1).onInsertSuccess(insertItem1, databaseOperationMetadata);
+        verify(mListener1).onInsertSuccess(insertItem2, databaseOperationMetadata);
+        verify(mListener3).onInsertSuccess(insertItem1, databaseOperationMetadata);
+        verify(mListener3).onInsertSuccess(insertItem2, databaseOperationMetadata);
+        verify(mBatchListener).onInsertAllSuccess(insertItems, databaseOperationMetadata);
+        verify(mBatchListener, never()).onInsertSuccess(any(), any(DatabaseOperationMetadata.class));
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onInsertAllException() throws Exception {
+        final Object insertItem1 = new Object();
+        final Object insertItem2 = new Object();
+        final List<Object> insertItems = Arrays.asList(insertItem1, insertItem2);
+        final Exception e = new Exception();
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preInsert(insertItem1)).thenReturn(Single.just(insertItem1));
+        when(mTableActionAlterations.preInsert(insertItem2)).thenReturn(Single.just(insertItem2));
+        when(mTable.insertAll(insertItems, databaseOperationMetadata)).thenReturn(Single.<List<Object>>error(e));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.subscribe(mBatchListener);
+        mAbstractTableController.insertAll(insertItems, databaseOperationMetadata);
+
+        verify(mAnalytics).record(any(ErrorEvent.class));
+        verify(mListener1).onInsertFailure(insertItem1, e, databaseOperationMetadata);
+        verify(mListener1).onInsertFailure(insertItem2, e, databaseOperationMetadata);
+        verify(mBatchListener).onInsertAllFailure(insertItems, e, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onUpdateAllSuccess() throws Exception {
+        final Object oldItem1 = new Object();
+        final Object oldItem2 = new Object();
+        final Object newItem1 = new Object();
+        final Object newItem2 = new Object();
+        final List<Object> oldItems = Arrays.asList(oldItem1, oldItem2);
+        final List<Object> newItems = Arrays.asList(newItem1, newItem2);
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preUpdate(oldItem1, newItem1)).thenReturn(Single.just(newItem1));
+        when(mTableActionAlterations.preUpdate(oldItem2, newItem2)).thenReturn(Single.just(newItem2));
+        when(mTable.updateAll(oldItems, newItems, databaseOperationMetadata)).thenReturn(Single.just(newItems));
+        when(mTableActionAlterations.postUpdate(oldItem1, newItem1)).thenReturn(Single.just(newItem1));
+        when(mTableActionAlterations.postUpdate(oldItem2, newItem2)).thenReturn(Single.just(newItem2));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.subscribe(mBatchListener);
+        mAbstractTableController.updateAll(oldItems, newItems, databaseOperationMetadata);
+
+        verify(mListener1).onUpdateSuccess(oldItem1, newItem1, databaseOperationMetadata);
+        verify(mListener1).onUpdateSuccess(oldItem2, newItem2, databaseOperationMetadata);
+        verify(mBatchListener).onUpdateAllSuccess(oldItems, newItems, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onPreUpdateAllException() throws Exception {
+        final Object oldItem1 = new Object();
+        final Object oldItem2 = new Object();
+        final Object newItem1 = new Object();
+        final Object newItem2 = new Object();
+        final List<Object> oldItems = Arrays.asList(oldItem1, oldItem2);
+        final List<Object> newItems = Arrays.asList(newItem1, newItem2);
+        final Exception e = new Exception();
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preUpdate(oldItem1, newItem1)).thenReturn(Single.just(newItem1));
+        when(mTableActionAlterations.preUpdate(oldItem2, newItem2)).thenReturn(Single.error(e));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.subscribe(mBatchListener);
+        mAbstractTableController.updateAll(oldItems, newItems, databaseOperationMetadata);
+
+        verify(mAnalytics).record(any(ErrorEvent.class));
+        verify(mTable, never()).updateAll(oldItems, newItems, databaseOperationMetadata);
+        verify(mListener1).onUpdateFailure(oldItem1, e, databaseOperationMetadata);
+        verify(mListener1).onUpdateFailure(oldItem2, e, databaseOperationMetadata);
+        verify(mBatchListener).onUpdateAllFailure(oldItems, e, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+    @Test
+    public void onDeleteAllSuccess() throws Exception {
+        final Object deleteItem1 = new Object();
+        final Object deleteItem2 = new Object();
+        final List<Object> deleteItems = Arrays.asList(deleteItem1, deleteItem2);
+        final DatabaseOperationMetadata databaseOperationMetadata = new DatabaseOperationMetadata();
+        when(mTableActionAlterations.preDelete(deleteItem1)).thenReturn(Single.just(deleteItem1));
+        when(mTableActionAlterations.preDelete(deleteItem2)).thenReturn(Single.just(deleteItem2));
+        when(mTable.deleteAll(deleteItems, databaseOperationMetadata)).thenReturn(Single.just(deleteItems));
+        when(mTableActionAlterations.postDelete(deleteItem1)).thenReturn(Single.just(deleteItem1));
+        when(mTableActionAlterations.postDelete(deleteItem2)).thenReturn(Single.just(deleteItem2));
+
+        mAbstractTableController.unsubscribe(mListener2);
+        mAbstractTableController.subscribe(mBatchListener);
+        mAbstractTableController.deleteAll(deleteItems, databaseOperationMetadata);
+
+        verify(mListener1).onDeleteSuccess(deleteItem1, databaseOperationMetadata);
+        verify(mListener1).onDeleteSuccess(deleteItem2, databaseOperationMetadata);
+        verify(mBatchListener).onDeleteAllSuccess(deleteItems, databaseOperationMetadata);
+        verifyZeroInteractions(mListener2);
+    }
+
+}
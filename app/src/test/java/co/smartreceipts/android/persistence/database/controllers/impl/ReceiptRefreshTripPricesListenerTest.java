@@ -11,7 +11,6 @@ import java.util.Collections;
 
 import co.smartreceipts.android.model.Receipt;
 import co.smartreceipts.android.model.Trip;
-import co.smartreceipts.android.persistence.database.controllers.TableController;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 
 import static org.mockito.Mockito.verify;
@@ -24,11 +23,14 @@ public class ReceiptRefreshTripPricesListenerTest {
     ReceiptRefreshTripPricesListener mReceiptRefreshTripPricesListener;
 
     @Mock
-    TableController<Trip> mTripTableController;
+    TripTableController mTripTableController;
 
     @Mock
     Receipt mReceipt;
 
+    @Mock
+    Receipt mReceipt2;
+
     @Mock
     Trip mTrip;
 
@@ -50,10 +52,28 @@ public class ReceiptRefreshTripPricesListenerTest {
         verifyZeroInteractions(mTripTableController);
     }
 
+    @Test
+    public void onInsertSuccess() {
+        mReceiptRefreshTripPricesListener.onInsertSuccess(mReceipt, new DatabaseOperationMetadata());
+        verify(mTripTableController).refreshPrices(null, mReceipt);
+    }
+
+    @Test
+    public void onUpdateSuccess() {
+        mReceiptRefreshTripPricesListener.onUpdateSuccess(mReceipt, mReceipt2, new DatabaseOperationMetadata());
+        verify(mTripTableController).refreshPrices(mReceipt, mReceipt2);
+    }
+
+    @Test
+    public void onDeleteSuccess() {
+        mReceiptRefreshTripPricesListener.onDeleteSuccess(mReceipt, new DatabaseOperationMetadata());
+        verify(mTripTableController).refreshPrices(mReceipt, null);
+    }
+
     @Test
     public void onCopySuccess() {
-        mReceiptRefreshTripPricesListener.onCopySuccess(mReceipt, mReceipt);
-        verify(mTripTableController).get();
+        mReceiptRefreshTripPricesListener.onCopySuccess(mReceipt, mReceipt2);
+        verify(mTripTableController).refreshPrices(null, mReceipt2);
     }
 
     @Test
@@ -64,8 +84,8 @@ public class ReceiptRefreshTripPricesListenerTest {
 
     @Test
     public void onMoveSuccess() {
-        mReceiptRefreshTripPricesListener.onMoveSuccess(mReceipt, mReceipt);
-        verify(mTripTableController).get();
+        mReceiptRefreshTripPricesListener.onMoveSuccess(mReceipt, mReceipt2);
+        verify(mTripTableController).refreshPrices(mReceipt, mReceipt2);
     }
 
     @Test
@@ -1,5 +1,8 @@
 package co.smartreceipts.android.persistence.database.controllers.impl;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -7,53 +10,78 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
-import co.smartreceipts.android.model.Trip;
-import co.smartreceipts.android.persistence.database.controllers.TableController;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import co.smartreceipts.android.persistence.database.operations.OperationFamilyType;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 @RunWith(RobolectricTestRunner.class)
 public class RefreshTripPricesListenerTest {
+
+    /**
+     * Test impl for our abstract class
+     */
+    private class RefreshTripPricesListenerTestImpl extends RefreshTripPricesListener<Object> {
+
+        RefreshTripPricesListenerTestImpl(@NonNull TripTableController tripTableController) {
+            super(tripTableController);
+        }
+
+        @Override
+        protected void refreshTripPrices(@Nullable Object oldModelType, @Nullable Object newModelType) {
+            mPriceDeltas.add(new Object[]{ oldModelType, newModelType });
+        }
+    }
     
     // Class under test
     RefreshTripPricesListener<Object> mRefreshTripPricesListener;
     
     @Mock
-    TableController<Trip> mTripTableController;
+    TripTableController mTripTableController;
+
+    List<Object[]> mPriceDeltas;
     
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        mRefreshTripPricesListener = new RefreshTripPricesListener<>(mTripTableController);
+        mPriceDeltas = new ArrayList<>();
+        mRefreshTripPricesListener = new RefreshTripPricesListenerTestImpl(mTripTableController);
     }
 
     @Test
     public void onGetSuccess() {
         mRefreshTripPricesListener.onGetSuccess(Collections.emptyList());
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
     public void onGetFailure() {
         mRefreshTripPricesListener.onGetFailure(null);
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
     public void onInsertSuccess() {
-        mRefreshTripPricesListener.onInsertSuccess(new Object(), new DatabaseOperationMetadata());
-        verify(mTripTableController).get();
+        final Object inserted = new Object();
+        mRefreshTripPricesListener.onInsertSuccess(inserted, new DatabaseOperationMetadata());
+        assertPriceDelta(null, inserted);
     }
 
     @Test
     public void onSyncInsertSuccess() {
         mRefreshTripPricesListener.onInsertSuccess(new Object(), new DatabaseOperationMetadata(OperationFamilyType.Sync));
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
@@ -61,18 +89,22 @@ public class RefreshTripPricesListenerTest {
         mRefreshTripPricesListener.onInsertFailure(new Object(), null, new DatabaseOperationMetadata());
         mRefreshTripPricesListener.onInsertFailure(new Object(), null, new DatabaseOperationMetadata(OperationFamilyType.Sync));
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
     public void onUpdateSuccess() {
-        mRefreshTripPricesListener.onUpdateSuccess(new Object(), new Object(), new DatabaseOperationMetadata());
-        verify(mTripTableController).get();
+        final Object oldObject = new Object();
+        final Object newObject = new Object();
+        mRefreshTripPricesListener.onUpdateSuccess(oldObject, newObject, new DatabaseOperationMetadata());
+        assertPriceDelta(oldObject, newObject);
     }
 
     @Test
     public void onSyncUpdateSuccess() {
         mRefreshTripPricesListener.onUpdateSuccess(new Object(), new Object(), new DatabaseOperationMetadata(OperationFamilyType.Sync));
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
@@ -80,18 +112,21 @@ public class RefreshTripPricesListenerTest {
         mRefreshTripPricesListener.onUpdateFailure(new Object(), null, new DatabaseOperationMetadata());
         mRefreshTripPricesListener.onUpdateFailure(new Object(), null, new DatabaseOperationMetadata(OperationFamilyType.Sync));
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
     public void onDeleteSuccess() {
-        mRefreshTripPricesListener.onDeleteSuccess(new Object(), new DatabaseOperationMetadata());
-        verify(mTripTableController).get();
+        final Object deleted = new Object();
+        mRefreshTripPricesListener.onDeleteSuccess(deleted, new DatabaseOperationMetadata());
+        assertPriceDelta(deleted, null);
     }
 
     @Test
     public void onSyncDeleteSuccess() {
         mRefreshTripPricesListener.onDeleteSuccess(new Object(), new DatabaseOperationMetadata(OperationFamilyType.Sync));
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
     }
 
     @Test
@@ -99,6 +134,50 @@ public class RefreshTripPricesListenerTest {
         mRefreshTripPricesListener.onDeleteFailure(new Object(), null, new DatabaseOperationMetadata());
         mRefreshTripPricesListener.onDeleteFailure(new Object(), null, new DatabaseOperationMetadata(OperationFamilyType.Sync));
         verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
+    }
+
+    @Test
+    public void onInsertAllSuccess() {
+        mRefreshTripPricesListener.onInsertAllSuccess(Arrays.asList(new Object(), new Object()), new DatabaseOperationMetadata());
+        verify(mTripTableController).get();
+        assertTrue(mPriceDeltas.isEmpty());
+    }
+
+    @Test
+    public void onSyncInsertAllSuccess() {
+        mRefreshTripPricesListener.onInsertAllSuccess(Arrays.asList(new Object(), new Object()), new DatabaseOperationMetadata(OperationFamilyType.Sync));
+        verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
+    }
+
+    @Test
+    public void onUpdateAllSuccess() {
+        mRefreshTripPricesListener.onUpdateAllSuccess(Collections.singletonList(new Object()), Collections.singletonList(new Object()), new DatabaseOperationMetadata());
+        verify(mTripTableController).get();
+        assertTrue(mPriceDeltas.isEmpty());
+    }
+
+    @Test
+    public void onDeleteAllSuccess() {
+        mRefreshTripPricesListener.onDeleteAllSuccess(Arrays.asList(new Object(), new Object()), new DatabaseOperationMetadata());
+        verify(mTripTableController).get();
+        assertTrue(mPriceDeltas.isEmpty());
+    }
+
+    @Test
+    public void onBatchFailures() {
+        mRefreshTripPricesListener.onInsertAllFailure(Collections.singletonList(new Object()), null, new DatabaseOperationMetadata());
+        mRefreshTripPricesListener.onUpdateAllFailure(Collections.singletonList(new Object()), null, new DatabaseOperationMetadata());
+        mRefreshTripPricesListener.onDeleteAllFailure(Collections.singletonList(new Object()), null, new DatabaseOperationMetadata());
+        verifyZeroInteractions(mTripTableController);
+        assertTrue(mPriceDeltas.isEmpty());
+    }
+
+    private void assertPriceDelta(Object expectedOld, Object expectedNew) {
+        assertEquals(1, mPriceDeltas.size());
+        assertEquals(expectedOld, mPriceDeltas.get(0)[0]);
+        assertEquals(expectedNew, mPriceDeltas.get(0)[1]);
     }
 
-}
\ No newline at end of file
+}
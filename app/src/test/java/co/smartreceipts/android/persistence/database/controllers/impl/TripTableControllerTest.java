@@ -0,0 +1,119 @@
+package co.smartreceipts.android.persistence.database.controllers.impl;
+
+import com.hadisatrio.optional.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+import co.smartreceipts.android.analytics.Analytics;
+import co.smartreceipts.android.analytics.events.ErrorEvent;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.persistence.database.aggregation.TripPriceMaintainer;
+import co.smartreceipts.android.persistence.database.controllers.TableEventsListener;
+import co.smartreceipts.android.persistence.database.controllers.alterations.TableActionAlterations;
+import co.smartreceipts.android.persistence.database.tables.Table;
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class TripTableControllerTest {
+
+    private static final String TRIP_NAME = "trip";
+
+    // Class under test
+    TripTableController mTripTableController;
+
+    @Mock
+    Table<Trip, String> mTripsTable;
+
+    @Mock
+    TableActionAlterations<Trip> mTableActionAlterations;
+
+    @Mock
+    TripPriceMaintainer mTripPriceMaintainer;
+
+    @Mock
+    Analytics mAnalytics;
+
+    @Mock
+    TableEventsListener<Trip> mListener;
+
+    @Mock
+    Trip mTrip;
+
+    @Mock
+    Trip mTripCopy;
+
+    @Mock
+    Receipt mOldReceipt;
+
+    @Mock
+    Receipt mNewReceipt;
+
+    List<Trip> mTrips;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mTrips = Arrays.asList(mTrip);
+        when(mTrip.getName()).thenReturn(TRIP_NAME);
+        when(mTripCopy.getName()).thenReturn(TRIP_NAME);
+        when(mOldReceipt.getTrip()).thenReturn(mTripCopy);
+        when(mNewReceipt.getTrip()).thenReturn(mTripCopy);
+        when(mTripsTable.get()).thenReturn(Single.just(mTrips));
+        when(mTableActionAlterations.preGet()).thenReturn(Completable.complete());
+        when(mTableActionAlterations.postGet(mTrips)).thenReturn(Single.just(mTrips));
+
+        mTripTableController = new TripTableController(mTripsTable, mTableActionAlterations, mTripPriceMaintainer, mAnalytics, Schedulers.trampoline(), Schedulers.trampoline());
+        mTripTableController.subscribe(mListener);
+    }
+
+    @Test
+    public void refreshPricesAppliesDeltaToCachedTrip() {
+        when(mTripsTable.findCachedByPrimaryKey(TRIP_NAME)).thenReturn(Optional.of(mTrip));
+
+        mTripTableController.refreshPrices(mOldReceipt, mNewReceipt);
+
+        verify(mTripPriceMaintainer).applyReceiptDelta(mTrip, mOldReceipt, mNewReceipt);
+        verify(mTableActionAlterations, never()).preGet();
+        verify(mListener).onGetSuccess(mTrips);
+    }
+
+    @Test
+    public void refreshPricesFallsBackToGetWhenTripIsNotCached() {
+        when(mTripsTable.findCachedByPrimaryKey(TRIP_NAME)).thenReturn(Optional.<Trip>absent());
+
+        mTripTableController.refreshPrices(mOldReceipt, mNewReceipt);
+
+        verifyZeroInteractions(mTripPriceMaintainer);
+        verify(mTableActionAlterations).preGet();
+        verify(mListener).onGetSuccess(mTrips);
+    }
+
+    @Test
+    public void refreshPricesFallsBackToGetOnError() {
+        when(mTripsTable.findCachedByPrimaryKey(TRIP_NAME)).thenThrow(new IllegalStateException());
+
+        mTripTableController.refreshPrices(null, mNewReceipt);
+
+        verify(mAnalytics).record(any(ErrorEvent.class));
+        verifyZeroInteractions(mTripPriceMaintainer);
+        verify(mListener).onGetSuccess(mTrips);
+    }
+
+}
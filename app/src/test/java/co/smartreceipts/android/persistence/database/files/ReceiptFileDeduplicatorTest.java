@@ -0,0 +1,119 @@
+package co.smartreceipts.android.persistence.database.files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReceiptFileDeduplicatorTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Class under test
+    ReceiptFileDeduplicator mReceiptFileDeduplicator;
+
+    @Mock
+    ReceiptsTable mReceiptsTable;
+
+    @Mock
+    ReceiptFileIndex mReceiptFileIndex;
+
+    @Mock
+    FileLinker mFileLinker;
+
+    @Mock
+    Receipt mReceipt1, mReceipt2, mReceipt3;
+
+    File mDirectory;
+
+    File mFile1, mFile2, mFile3;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "receipt_file_deduplicator_test");
+        mFile1 = new File(mDirectory, "1.jpg");
+        mFile2 = new File(mDirectory, "2.jpg");
+        mFile3 = new File(mDirectory, "3.jpg");
+        FileUtils.writeStringToFile(mFile1, "identical", UTF_8);
+        FileUtils.writeStringToFile(mFile2, "identical", UTF_8);
+        FileUtils.writeStringToFile(mFile3, "different", UTF_8);
+
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mReceipt2.getId()).thenReturn(2);
+        when(mReceipt3.getId()).thenReturn(3);
+        when(mReceipt1.getFile()).thenReturn(mFile1);
+        when(mReceipt2.getFile()).thenReturn(mFile2);
+        when(mReceipt3.getFile()).thenReturn(mFile3);
+        when(mFileLinker.replaceWithLink(any(File.class), any(File.class))).thenReturn(true);
+
+        mReceiptFileDeduplicator = new ReceiptFileDeduplicator(mReceiptsTable, mReceiptFileIndex, mFileLinker);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void reclaimDuplicates() throws Exception {
+        when(mReceiptFileIndex.getHash(1, mFile1)).thenReturn("a");
+        when(mReceiptFileIndex.getHash(2, mFile2)).thenReturn("a");
+        when(mReceiptFileIndex.getHash(3, mFile3)).thenReturn("b");
+
+        assertEquals(mFile2.length(), mReceiptFileDeduplicator.reclaimDuplicateStorageBlocking(Arrays.asList(mReceipt1, mReceipt2, mReceipt3)));
+        verify(mFileLinker).replaceWithLink(mFile1, mFile2);
+        verify(mFileLinker, never()).replaceWithLink(any(File.class), eq(mFile3));
+        verify(mReceiptFileIndex).put(2, mFile2, "a");
+    }
+
+    @Test
+    public void reclaimIgnoresFilesThatAreAlreadyLinked() throws Exception {
+        when(mReceiptFileIndex.getHash(1, mFile1)).thenReturn("a");
+        when(mReceiptFileIndex.getHash(2, mFile2)).thenReturn("a");
+        when(mFileLinker.isSameFile(mFile1, mFile2)).thenReturn(true);
+
+        assertEquals(0, mReceiptFileDeduplicator.reclaimDuplicateStorageBlocking(Arrays.asList(mReceipt1, mReceipt2)));
+        verify(mFileLinker, never()).replaceWithLink(any(File.class), any(File.class));
+    }
+
+    @Test
+    public void reclaimIgnoresHashCollisions() throws Exception {
+        when(mReceiptFileIndex.getHash(1, mFile1)).thenReturn("a");
+        when(mReceiptFileIndex.getHash(3, mFile3)).thenReturn("a");
+
+        assertEquals(0, mReceiptFileDeduplicator.reclaimDuplicateStorageBlocking(Arrays.asList(mReceipt1, mReceipt3)));
+        verify(mFileLinker, never()).replaceWithLink(any(File.class), any(File.class));
+    }
+
+    @Test
+    public void reclaimIgnoresFailedLinks() throws Exception {
+        when(mReceiptFileIndex.getHash(1, mFile1)).thenReturn("a");
+        when(mReceiptFileIndex.getHash(2, mFile2)).thenReturn("a");
+        when(mFileLinker.replaceWithLink(mFile1, mFile2)).thenReturn(false);
+
+        assertEquals(0, mReceiptFileDeduplicator.reclaimDuplicateStorageBlocking(Arrays.asList(mReceipt1, mReceipt2)));
+        verify(mReceiptFileIndex, never()).put(2, mFile2, "a");
+    }
+}
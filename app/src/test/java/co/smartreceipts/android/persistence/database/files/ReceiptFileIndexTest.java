@@ -0,0 +1,186 @@
+package co.smartreceipts.android.persistence.database.files;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import co.smartreceipts.android.persistence.database.tables.AbstractSqlTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.persistence.database.tables.TestSQLiteOpenHelper;
+import co.smartreceipts.android.sync.model.impl.Identifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReceiptFileIndexTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Class under test
+    ReceiptFileIndex mReceiptFileIndex;
+
+    SQLiteOpenHelper mSQLiteOpenHelper;
+
+    SQLiteDatabase mDb;
+
+    File mDirectory;
+
+    File mFile1, mFile2, mFile3;
+
+    @Before
+    public void setUp() throws Exception {
+        mSQLiteOpenHelper = new TestSQLiteOpenHelper(RuntimeEnvironment.application);
+        mDb = mSQLiteOpenHelper.getWritableDatabase();
+        mDb.execSQL("CREATE TABLE " + ReceiptsTable.TABLE_NAME + " (" + ReceiptsTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ReceiptsTable.COLUMN_PATH + " TEXT, " + AbstractSqlTable.COLUMN_DRIVE_SYNC_ID + " TEXT, "
+                + AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED + " BOOLEAN DEFAULT 0, " + AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION + " BOOLEAN DEFAULT 0)");
+
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "receipt_file_index_test");
+        mFile1 = new File(mDirectory, "1.jpg");
+        mFile2 = new File(mDirectory, "2.jpg");
+        mFile3 = new File(mDirectory, "3.jpg");
+        FileUtils.writeStringToFile(mFile1, "identical", UTF_8);
+        FileUtils.writeStringToFile(mFile2, "identical", UTF_8);
+        FileUtils.writeStringToFile(mFile3, "different", UTF_8);
+
+        mReceiptFileIndex = new ReceiptFileIndex(mSQLiteOpenHelper);
+        mReceiptFileIndex.onCreate(mDb);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.execSQL("DROP TABLE IF EXISTS " + ReceiptFileIndex.TABLE_NAME);
+        mDb.execSQL("DROP TABLE IF EXISTS " + ReceiptsTable.TABLE_NAME);
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void getHashForMissingFile() {
+        assertNull(mReceiptFileIndex.getHash(1, null));
+        assertNull(mReceiptFileIndex.getHash(1, new File(mDirectory, "missing.jpg")));
+    }
+
+    @Test
+    public void getHashForIdenticalFiles() {
+        final String hash1 = mReceiptFileIndex.getHash(1, mFile1);
+        assertNotNull(hash1);
+        assertEquals(hash1, mReceiptFileIndex.getHash(2, mFile2));
+        assertFalse(hash1.equals(mReceiptFileIndex.getHash(3, mFile3)));
+        assertEquals(3, DatabaseUtils.queryNumEntries(mDb, ReceiptFileIndex.TABLE_NAME));
+    }
+
+    @Test
+    public void getHashIsRecomputedWhenFileChanges() throws Exception {
+        final String hash = mReceiptFileIndex.getHash(1, mFile1);
+
+        FileUtils.writeStringToFile(mFile1, "changed!!", UTF_8);
+        assertTrue(mFile1.setLastModified(mFile1.lastModified() - 10000));
+
+        final String changedHash = mReceiptFileIndex.getHash(1, mFile1);
+        assertNotNull(changedHash);
+        assertFalse(hash.equals(changedHash));
+        assertEquals(changedHash, mReceiptFileIndex.getHash(1, mFile1));
+    }
+
+    @Test
+    public void findSyncedDriveFile() {
+        insertReceipt(1, "drive_1", true, false);
+        insertReceipt(2, null, false, false);
+        insertReceipt(3, "drive_3", true, false);
+        final String hash = mReceiptFileIndex.getHash(1, mFile1);
+        mReceiptFileIndex.getHash(2, mFile2);
+        mReceiptFileIndex.getHash(3, mFile3);
+
+        assertEquals(new Identifier("drive_1"), mReceiptFileIndex.findSyncedDriveFile(2, hash));
+        assertNull(mReceiptFileIndex.findSyncedDriveFile(1, hash));
+    }
+
+    @Test
+    public void findSyncedDriveFileIgnoresUnsyncedAndDeletedReceipts() {
+        insertReceipt(1, "drive_1", false, false);
+        insertReceipt(2, null, false, false);
+        insertReceipt(3, "drive_3", true, true);
+        final String hash = mReceiptFileIndex.getHash(1, mFile1);
+        mReceiptFileIndex.put(3, mFile1, hash);
+
+        assertNull(mReceiptFileIndex.findSyncedDriveFile(2, hash));
+    }
+
+    @Test
+    public void isDriveFileShared() {
+        insertReceipt(1, "drive_1", true, false);
+        insertReceipt(2, "drive_1", true, false);
+        insertReceipt(3, "drive_3", true, false);
+
+        assertTrue(mReceiptFileIndex.isDriveFileShared(1, new Identifier("drive_1")));
+        assertTrue(mReceiptFileIndex.isDriveFileShared(2, new Identifier("drive_1")));
+        assertFalse(mReceiptFileIndex.isDriveFileShared(3, new Identifier("drive_3")));
+    }
+
+    @Test
+    public void hashIsDroppedWhenReceiptIsDeletedOrItsFileChanges() {
+        insertReceipt(1, null, false, false);
+        insertReceipt(2, null, false, false);
+        mReceiptFileIndex.getHash(1, mFile1);
+        mReceiptFileIndex.getHash(2, mFile2);
+
+        mDb.delete(ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_ID + " = 1", null);
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, ReceiptFileIndex.TABLE_NAME));
+
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_PATH, "renamed.jpg");
+        mDb.update(ReceiptsTable.TABLE_NAME, values, ReceiptsTable.COLUMN_ID + " = 2", null);
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, ReceiptFileIndex.TABLE_NAME));
+    }
+
+    @Test
+    public void hashIsKeptWhenReceiptIsUpdatedWithTheSamePath() {
+        insertReceipt(1, null, false, false);
+        mReceiptFileIndex.getHash(1, mFile1);
+
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_PATH, "1.jpg");
+        values.put(AbstractSqlTable.COLUMN_DRIVE_SYNC_ID, "drive_1");
+        values.put(AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED, true);
+        mDb.update(ReceiptsTable.TABLE_NAME, values, ReceiptsTable.COLUMN_ID + " = 1", null);
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, ReceiptFileIndex.TABLE_NAME));
+
+        final ContentValues syncValues = new ContentValues();
+        syncValues.put(AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION, false);
+        mDb.update(ReceiptsTable.TABLE_NAME, syncValues, ReceiptsTable.COLUMN_ID + " = 1", null);
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDb, ReceiptFileIndex.TABLE_NAME));
+    }
+
+    @Test
+    public void onUpgrade() {
+        mDb.execSQL("DROP TABLE " + ReceiptFileIndex.TABLE_NAME);
+        mReceiptFileIndex.onUpgrade(mDb, 16, 17);
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDb, ReceiptFileIndex.TABLE_NAME));
+    }
+
+    private void insertReceipt(int id, String driveId, boolean isSynced, boolean isMarkedForDeletion) {
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_ID, id);
+        values.put(ReceiptsTable.COLUMN_PATH, id + ".jpg");
+        values.put(AbstractSqlTable.COLUMN_DRIVE_SYNC_ID, driveId);
+        values.put(AbstractSqlTable.COLUMN_DRIVE_IS_SYNCED, isSynced);
+        values.put(AbstractSqlTable.COLUMN_DRIVE_MARKED_FOR_DELETION, isMarkedForDeletion);
+        mDb.insert(ReceiptsTable.TABLE_NAME, null, values);
+    }
+}
@@ -0,0 +1,160 @@
+package co.smartreceipts.android.persistence.database.search;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import co.smartreceipts.android.persistence.database.tables.DistanceTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.persistence.database.tables.TestSQLiteOpenHelper;
+import co.smartreceipts.android.persistence.database.tables.TripsTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SearchIndexTest {
+
+    // Class under test
+    SearchIndex mSearchIndex;
+
+    SQLiteOpenHelper mSQLiteOpenHelper;
+
+    SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mSQLiteOpenHelper = new TestSQLiteOpenHelper(RuntimeEnvironment.application);
+        mDb = mSQLiteOpenHelper.getWritableDatabase();
+        mDb.execSQL("CREATE TABLE " + ReceiptsTable.TABLE_NAME + " (" + ReceiptsTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ReceiptsTable.COLUMN_NAME + " TEXT, " + ReceiptsTable.COLUMN_COMMENT + " TEXT)");
+        mDb.execSQL("CREATE TABLE " + TripsTable.TABLE_NAME + " (" + TripsTable.COLUMN_NAME + " TEXT PRIMARY KEY, "
+                + TripsTable.COLUMN_COST_CENTER + " TEXT)");
+        mDb.execSQL("CREATE TABLE " + DistanceTable.TABLE_NAME + " (" + DistanceTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + DistanceTable.COLUMN_LOCATION + " TEXT)");
+
+        mSearchIndex = new SearchIndex();
+        mSearchIndex.onCreate(mDb);
+    }
+
+    @After
+    public void tearDown() {
+        for (final String table : Arrays.asList(ReceiptsTable.TABLE_NAME, TripsTable.TABLE_NAME, DistanceTable.TABLE_NAME,
+                "receipts_search", "trips_search", "distance_search")) {
+            mDb.execSQL("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    @Test
+    public void buildPrefixQuery() {
+        assertNull(SearchIndex.buildPrefixQuery(null, null));
+        assertNull(SearchIndex.buildPrefixQuery(null, " \"'* "));
+        assertEquals("lun* caf*", SearchIndex.buildPrefixQuery(null, "lun caf"));
+        assertEquals("name:lun* name:caf*", SearchIndex.buildPrefixQuery("name", " \"lun\", caf*"));
+    }
+
+    @Test
+    public void autoCompleteMatchesWordPrefixes() {
+        insertReceipt("Lunch at Cafe", "client meeting");
+        insertReceipt("Lunch at Cafe", "team");
+        insertReceipt("Dinner", "lunar festival");
+        insertReceipt("Taxi", null);
+
+        assertEquals(Collections.singletonList("Lunch at Cafe"), getAutoCompleteValues(ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_NAME, "lun"));
+        assertEquals(Collections.singletonList("Lunch at Cafe"), getAutoCompleteValues(ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_NAME, "caf lu"));
+        assertEquals(Collections.singletonList("lunar festival"), getAutoCompleteValues(ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_COMMENT, "lun"));
+        assertTrue(getAutoCompleteValues(ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_NAME, "unch").isEmpty());
+    }
+
+    @Test
+    public void autoCompleteWithoutTextReturnsAllValues() {
+        insertReceipt("Taxi", null);
+        insertReceipt("Lunch", null);
+        insertReceipt("Taxi", null);
+
+        assertEquals(Arrays.asList("Lunch", "Taxi"), getAutoCompleteValues(ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_NAME, ""));
+    }
+
+    @Test
+    public void triggersKeepIndexCurrent() {
+        final long id = insertReceipt("Lunch", null);
+        assertEquals(Collections.singletonList((int) id), mSearchIndex.searchReceiptIds(mDb, "lunch"));
+
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_NAME, "Dinner");
+        mDb.update(ReceiptsTable.TABLE_NAME, values, ReceiptsTable.COLUMN_ID + " = ?", new String[]{ Long.toString(id) });
+        assertTrue(mSearchIndex.searchReceiptIds(mDb, "lunch").isEmpty());
+        assertEquals(Collections.singletonList((int) id), mSearchIndex.searchReceiptIds(mDb, "din"));
+
+        mDb.delete(ReceiptsTable.TABLE_NAME, null, null);
+        assertTrue(mSearchIndex.searchReceiptIds(mDb, "din").isEmpty());
+    }
+
+    @Test
+    public void searchTripsAndDistances() {
+        final ContentValues trip = new ContentValues();
+        trip.put(TripsTable.COLUMN_NAME, "Boston Conference");
+        trip.put(TripsTable.COLUMN_COST_CENTER, "Marketing");
+        mDb.insert(TripsTable.TABLE_NAME, null, trip);
+
+        final ContentValues distance = new ContentValues();
+        distance.put(DistanceTable.COLUMN_LOCATION, "Boston Airport");
+        final long distanceId = mDb.insert(DistanceTable.TABLE_NAME, null, distance);
+
+        assertEquals(Collections.singletonList("Boston Conference"), mSearchIndex.searchTripNames(mDb, "market"));
+        assertEquals(Collections.singletonList("Boston Conference"), mSearchIndex.searchTripNames(mDb, "bos"));
+        assertEquals(Collections.singletonList((int) distanceId), mSearchIndex.searchDistanceIds(mDb, "bos air"));
+        assertTrue(mSearchIndex.searchDistanceIds(mDb, "conference").isEmpty());
+        assertTrue(mSearchIndex.searchTripNames(mDb, "").isEmpty());
+    }
+
+    @Test
+    public void onUpgradeIndexesExistingRows() {
+        tearDown();
+        mDb.execSQL("CREATE TABLE " + ReceiptsTable.TABLE_NAME + " (" + ReceiptsTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ReceiptsTable.COLUMN_NAME + " TEXT, " + ReceiptsTable.COLUMN_COMMENT + " TEXT)");
+        mDb.execSQL("CREATE TABLE " + TripsTable.TABLE_NAME + " (" + TripsTable.COLUMN_NAME + " TEXT PRIMARY KEY, "
+                + TripsTable.COLUMN_COST_CENTER + " TEXT)");
+        mDb.execSQL("CREATE TABLE " + DistanceTable.TABLE_NAME + " (" + DistanceTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + DistanceTable.COLUMN_LOCATION + " TEXT)");
+        final long id = insertReceipt("Lunch", null);
+
+        mSearchIndex.onUpgrade(mDb, 15, 16);
+
+        assertEquals(Collections.singletonList((int) id), mSearchIndex.searchReceiptIds(mDb, "lun"));
+    }
+
+    private long insertReceipt(String name, String comment) {
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_NAME, name);
+        values.put(ReceiptsTable.COLUMN_COMMENT, comment);
+        return mDb.insert(ReceiptsTable.TABLE_NAME, null, values);
+    }
+
+    private List<String> getAutoCompleteValues(String table, String column, String text) {
+        final List<String> values = new ArrayList<>();
+        final Cursor cursor = mSearchIndex.getAutoCompleteCursor(mDb, table, column, text);
+        try {
+            while (cursor.moveToNext()) {
+                values.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return values;
+    }
+}
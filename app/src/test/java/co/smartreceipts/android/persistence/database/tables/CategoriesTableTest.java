@@ -1,5 +1,6 @@
 package co.smartreceipts.android.persistence.database.tables;
 
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -14,6 +15,7 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -25,7 +27,9 @@ import co.smartreceipts.android.persistence.database.operations.DatabaseOperatio
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -173,6 +177,81 @@ public class CategoriesTableTest {
                 .assertError(Exception.class);
     }
 
+    @Test
+    public void findByPrimaryKeyAfterInsert() {
+        final Category insertCategory = mCategoriesTable.insert(new CategoryBuilderFactory().setName("abc").setCode("abc").build(), new DatabaseOperationMetadata()).blockingGet();
+        mCategoriesTable.findByPrimaryKey("abc")
+                .test()
+                .assertNoErrors()
+                .assertResult(insertCategory);
+    }
+
+    @Test
+    public void findByPrimaryKeyAfterUpdate() {
+        final Category updateCategory = new CategoryBuilderFactory().setName("NewName").setCode("NewCode").build();
+        mCategoriesTable.update(mCategory1, updateCategory, new DatabaseOperationMetadata()).blockingGet();
+
+        mCategoriesTable.findByPrimaryKey(mCategory1.getName())
+                .test()
+                .assertError(Exception.class);
+        mCategoriesTable.findByPrimaryKey(updateCategory.getName())
+                .test()
+                .assertNoErrors()
+                .assertResult(updateCategory);
+    }
+
+    @Test
+    public void findByPrimaryKeyAfterDelete() {
+        mCategoriesTable.delete(mCategory1, new DatabaseOperationMetadata()).blockingGet();
+        mCategoriesTable.findByPrimaryKey(mCategory1.getName())
+                .test()
+                .assertError(Exception.class);
+        mCategoriesTable.findByPrimaryKey(mCategory2.getName())
+                .test()
+                .assertNoErrors()
+                .assertResult(mCategory2);
+    }
+
+    @Test
+    public void findByPrimaryKeyAfterClearCache() {
+        mCategoriesTable.get().blockingGet();
+        mCategoriesTable.clearCache();
+        mCategoriesTable.findByPrimaryKey(mCategory2.getName())
+                .test()
+                .assertNoErrors()
+                .assertResult(mCategory2);
+    }
+
+    @Test
+    public void findByPrimaryKeyForManyCategories() {
+        final int categoryCount = 2000;
+        final List<Category> categories = new ArrayList<>();
+        for (int i = 0; i < categoryCount; i++) {
+            categories.add(mCategoriesTable.insert(new CategoryBuilderFactory().setName("category" + i).setCode("code" + i).build(), new DatabaseOperationMetadata()).blockingGet());
+        }
+
+        // Simulates loading a trip with one receipt per category
+        for (final Category category : categories) {
+            assertEquals(category, mCategoriesTable.findByPrimaryKey(category.getName()).blockingGet());
+        }
+
+        // Each lookup should be served from our cached results (rather than a copy of them)
+        final List<Category> cachedCategories = mCategoriesTable.get().blockingGet();
+        assertEquals(categoryCount + 2, cachedCategories.size());
+        for (final Category cachedCategory : cachedCategories) {
+            assertSame(cachedCategory, mCategoriesTable.findByPrimaryKey(cachedCategory.getName()).blockingGet());
+        }
+
+        // And our index should be kept in sync as these change
+        final Category deletedCategory = categories.get(categoryCount / 2);
+        mCategoriesTable.delete(deletedCategory, new DatabaseOperationMetadata()).blockingGet();
+        mCategoriesTable.findByPrimaryKey(deletedCategory.getName()).test().assertError(Exception.class);
+        final Category updatedCategory = new CategoryBuilderFactory().setName("updated").setCode("updated").build();
+        mCategoriesTable.update(categories.get(0), updatedCategory, new DatabaseOperationMetadata()).blockingGet();
+        mCategoriesTable.findByPrimaryKey(categories.get(0).getName()).test().assertError(Exception.class);
+        assertEquals(updatedCategory, mCategoriesTable.findByPrimaryKey(updatedCategory.getName()).blockingGet());
+    }
+
     @Test
     public void insert() {
         final String name = "abc";
@@ -209,4 +288,80 @@ public class CategoriesTableTest {
         assertTrue(newCategories.isEmpty());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void insertAll() {
+        final Category category1 = new CategoryBuilderFactory().setName("abc").setCode("abc").build();
+        final Category category2 = new CategoryBuilderFactory().setName("def").setCode("def").build();
+        assertEquals(Arrays.asList(category1, category2), mCategoriesTable.insertAll(Arrays.asList(category1, category2), new DatabaseOperationMetadata()).blockingGet());
+
+        final List<Category> categories = mCategoriesTable.get().blockingGet();
+        assertEquals(categories, Arrays.asList(category1, category2, mCategory1, mCategory2));
+        assertEquals(category2, mCategoriesTable.findByPrimaryKey("def").blockingGet());
+    }
+
+    @Test
+    public void insertAllRollsBackOnFailure() {
+        final Category category = new CategoryBuilderFactory().setName("abc").setCode("abc").build();
+        final Category duplicate = new CategoryBuilderFactory().setName(NAME1).setCode(CODE1).build();
+        mCategoriesTable.insertAll(Arrays.asList(category, duplicate), new DatabaseOperationMetadata())
+                .test()
+                .assertError(SQLException.class);
+
+        assertEquals(Arrays.asList(mCategory1, mCategory2), mCategoriesTable.get().blockingGet());
+        mCategoriesTable.clearCache();
+        assertEquals(Arrays.asList(mCategory1, mCategory2), mCategoriesTable.get().blockingGet());
+    }
+
+    @Test
+    public void updateAll() {
+        final Category updateCategory1 = new CategoryBuilderFactory().setName("NewName1").setCode("NewCode1").build();
+        final Category updateCategory2 = new CategoryBuilderFactory().setName("NewName2").setCode("NewCode2").build();
+        assertEquals(Arrays.asList(updateCategory1, updateCategory2),
+                mCategoriesTable.updateAll(Arrays.asList(mCategory1, mCategory2), Arrays.asList(updateCategory1, updateCategory2), new DatabaseOperationMetadata()).blockingGet());
+
+        final List<Category> categories = mCategoriesTable.get().blockingGet();
+        assertEquals(Arrays.asList(updateCategory1, updateCategory2), categories);
+    }
+
+    @Test
+    public void deleteAll() {
+        assertEquals(Arrays.asList(mCategory1, mCategory2), mCategoriesTable.deleteAll(Arrays.asList(mCategory1, mCategory2), new DatabaseOperationMetadata()).blockingGet());
+
+        final List<Category> newCategories = mCategoriesTable.get().blockingGet();
+        assertTrue(newCategories.isEmpty());
+    }
+
+    @Test
+    public void deleteAllRollsBackOnFailure() {
+        final Category missing = new CategoryBuilderFactory().setName("missing").setCode("missing").build();
+        mCategoriesTable.deleteAll(Arrays.asList(mCategory1, missing), new DatabaseOperationMetadata())
+                .test()
+                .assertError(SQLException.class);
+
+        mCategoriesTable.clearCache();
+        assertEquals(Arrays.asList(mCategory1, mCategory2), mCategoriesTable.get().blockingGet());
+    }
+
+    @Test
+    public void runInTransactionClearsOurCacheOnRollback() {
+        assertEquals(Arrays.asList(mCategory1, mCategory2), mCategoriesTable.get().blockingGet());
+        final Category category = new CategoryBuilderFactory().setName("abc").setCode("abc").build();
+        try {
+            mCategoriesTable.runInTransactionBlocking(new AbstractSqlTable.TransactionOperations<List<Category>>() {
+                @Override
+                public List<Category> run() {
+                    mCategoriesTable.deleteAllBlocking(Arrays.asList(mCategory1, mCategory2), new DatabaseOperationMetadata());
+                    mCategoriesTable.insertAllBlocking(Arrays.asList(category), new DatabaseOperationMetadata());
+                    throw new SQLException("Rollback");
+                }
+            });
+            fail("The transaction should have failed");
+        } catch (SQLException e) {
+            // Expected
+        }
+
+        // Both nested batches updated our cache, so this must have been cleared when the outer transaction rolled back
+        assertEquals(Arrays.asList(mCategory1, mCategory2), mCategoriesTable.get().blockingGet());
+    }
+
+}
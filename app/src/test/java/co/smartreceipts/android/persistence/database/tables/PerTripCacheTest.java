@@ -0,0 +1,136 @@
+package co.smartreceipts.android.persistence.database.tables;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PerTripCacheTest {
+
+    private static final String TRIP_1 = "Trip1";
+    private static final String TRIP_2 = "Trip2";
+    private static final String TRIP_3 = "Trip3";
+
+    // Class under test
+    PerTripCache<String> mPerTripCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mPerTripCache = new PerTripCache<>(2, 3);
+    }
+
+    @Test
+    public void sizeIsTheNumberOfTrips() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+        mPerTripCache.put(TRIP_2, Collections.<String>emptyList());
+
+        assertEquals(2, mPerTripCache.size());
+        assertFalse(mPerTripCache.hasCapacity());
+    }
+
+    @Test
+    public void putIfNotOversized() {
+        assertTrue(mPerTripCache.putIfNotOversized(TRIP_1, Arrays.asList("a", "b", "c")));
+        assertEquals(Arrays.asList("a", "b", "c"), mPerTripCache.get(TRIP_1));
+        assertTrue(mPerTripCache.hasCapacity());
+    }
+
+    @Test
+    public void putIfNotOversizedSkipsOversizedTripsWithoutEvictingOthers() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+        mPerTripCache.put(TRIP_2, Arrays.asList("d", "e", "f"));
+
+        assertFalse(mPerTripCache.putIfNotOversized(TRIP_3, Arrays.asList("g", "h", "i", "j")));
+
+        assertNull(mPerTripCache.get(TRIP_3));
+        assertEquals(Arrays.asList("a", "b", "c"), mPerTripCache.get(TRIP_1));
+        assertEquals(Arrays.asList("d", "e", "f"), mPerTripCache.get(TRIP_2));
+        assertEquals(0, mPerTripCache.evictionCount());
+    }
+
+    @Test
+    public void putIfNotOversizedRemovesStaleEntry() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+
+        assertFalse(mPerTripCache.putIfNotOversized(TRIP_1, Arrays.asList("a", "b", "c", "d")));
+
+        assertNull(mPerTripCache.get(TRIP_1));
+        assertEquals(0, mPerTripCache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTrip() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+        mPerTripCache.put(TRIP_2, Arrays.asList("d", "e", "f"));
+        mPerTripCache.get(TRIP_1);
+        mPerTripCache.put(TRIP_3, Arrays.asList("g", "h", "i"));
+
+        assertEquals(Arrays.asList("a", "b", "c"), mPerTripCache.get(TRIP_1));
+        assertNull(mPerTripCache.get(TRIP_2));
+        assertEquals(Arrays.asList("g", "h", "i"), mPerTripCache.get(TRIP_3));
+        assertEquals(1, mPerTripCache.evictionCount());
+    }
+
+    @Test
+    public void tracksHitsAndMisses() {
+        mPerTripCache.put(TRIP_1, Collections.singletonList("a"));
+        mPerTripCache.get(TRIP_1);
+        mPerTripCache.get(TRIP_1);
+        mPerTripCache.get(TRIP_2);
+
+        assertEquals(2, mPerTripCache.hitCount());
+        assertEquals(1, mPerTripCache.missCount());
+    }
+
+    @Test
+    public void replacingEntryKeepsSize() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b"));
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+
+        assertEquals(1, mPerTripCache.size());
+        mPerTripCache.remove(TRIP_1);
+        assertEquals(0, mPerTripCache.size());
+    }
+
+    @Test
+    public void onTrimMemoryWhileRunningLowHalvesCache() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+        mPerTripCache.put(TRIP_2, Arrays.asList("d", "e", "f"));
+
+        mPerTripCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertNull(mPerTripCache.get(TRIP_1));
+        assertEquals(Arrays.asList("d", "e", "f"), mPerTripCache.get(TRIP_2));
+    }
+
+    @Test
+    public void onTrimMemoryInBackgroundEvictsEverything() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+        mPerTripCache.put(TRIP_2, Arrays.asList("d", "e", "f"));
+
+        mPerTripCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(0, mPerTripCache.size());
+    }
+
+    @Test
+    public void onTrimMemoryWhileRunningModerateIsIgnored() {
+        mPerTripCache.put(TRIP_1, Arrays.asList("a", "b", "c"));
+
+        mPerTripCache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+
+        assertEquals(1, mPerTripCache.size());
+    }
+}
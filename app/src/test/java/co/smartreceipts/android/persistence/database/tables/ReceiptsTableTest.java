@@ -1,5 +1,7 @@
 package co.smartreceipts.android.persistence.database.tables;
 
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.annotation.NonNull;
@@ -470,6 +472,37 @@ public class ReceiptsTableTest {
                 .assertError(Exception.class);
     }
 
+    @Test
+    public void findByPrimaryKeys() {
+        mReceiptsTable.findByPrimaryKeys(Arrays.asList(mReceipt2.getId(), -1, mReceipt1.getId()))
+                .test()
+                .assertNoErrors()
+                .assertResult(Arrays.asList(mReceipt2, mReceipt1));
+    }
+
+    @Test
+    public void findByPrimaryKeysAfterCaching() {
+        mReceiptsTable.get().blockingGet();
+        mReceiptsTable.findByPrimaryKeys(Arrays.asList(mReceipt2.getId(), -1, mReceipt1.getId()))
+                .test()
+                .assertNoErrors()
+                .assertResult(Arrays.asList(mReceipt2, mReceipt1));
+    }
+
+    @Test
+    public void findByPrimaryKeysSkipsReceiptsMarkedForDeletion() {
+        final SyncState syncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, new Identifier("id"))),
+                new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
+                new Date(System.currentTimeMillis()));
+        final Receipt markedReceipt = mReceiptsTable.insert(mBuilder.setName(NAME_3).setPrice(PRICE_3).setTrip(mTrip3).setSyncState(syncState).build(), new DatabaseOperationMetadata()).blockingGet();
+
+        mReceiptsTable.findByPrimaryKeys(Arrays.asList(mReceipt1.getId(), markedReceipt.getId()))
+                .test()
+                .assertNoErrors()
+                .assertResult(Collections.singletonList(mReceipt1));
+    }
+
     @Test
     public void update() {
         final Receipt updatedReceipt = mReceiptsTable.update(mReceipt1, mBuilder.setName(NAME_3).setPrice(PRICE_3).setTrip(mTrip3).build(), new DatabaseOperationMetadata()).blockingGet();
@@ -552,4 +585,27 @@ public class ReceiptsTableTest {
         assertEquals(trip3Receipts, Collections.<Receipt>emptyList());
     }
 
+    @Test
+    public void deleteAllIsRolledBackOnFailure() {
+        mReceiptsTable.get().blockingGet();
+        mReceiptsTable.get(mTrip3).blockingGet();
+
+        final SyncState syncState = new DefaultSyncState(new IdentifierMap(Collections.singletonMap(SyncProvider.GoogleDrive, new Identifier("id"))),
+                new SyncStatusMap(Collections.singletonMap(SyncProvider.GoogleDrive, false)),
+                new MarkedForDeletionMap(Collections.singletonMap(SyncProvider.GoogleDrive, true)),
+                new Date(System.currentTimeMillis()));
+        final Receipt markedReceipt = mReceiptsTable.insert(mBuilder.setName(NAME_3).setPrice(PRICE_3).setTrip(mTrip3).setSyncState(syncState).build(), new DatabaseOperationMetadata()).blockingGet();
+        final Receipt missingReceipt = new ReceiptBuilderFactory(-1, mReceipt1).build();
+
+        // The marked receipt is deleted first, but this is rolled back once we fail to mark the missing one
+        mReceiptsTable.deleteAll(Arrays.asList(markedReceipt, missingReceipt), new DatabaseOperationMetadata())
+                .test()
+                .assertError(SQLException.class);
+
+        assertEquals(3, DatabaseUtils.queryNumEntries(mSQLiteOpenHelper.getReadableDatabase(), ReceiptsTable.TABLE_NAME));
+        assertEquals(Arrays.asList(mReceipt1, mReceipt2), mReceiptsTable.get().blockingGet());
+        assertEquals(Collections.singletonList(mReceipt1), mReceiptsTable.get(mTrip1).blockingGet());
+        assertEquals(Collections.<Receipt>emptyList(), mReceiptsTable.get(mTrip3).blockingGet());
+    }
+
 }
\ No newline at end of file
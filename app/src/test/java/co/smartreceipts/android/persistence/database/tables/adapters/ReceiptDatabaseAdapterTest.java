@@ -13,6 +13,7 @@ import org.robolectric.RobolectricTestRunner;
 import java.io.File;
 import java.math.BigDecimal;
 import java.sql.Date;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.TimeZone;
 
@@ -37,8 +38,13 @@ import wb.android.storage.StorageManager;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
@@ -212,7 +218,7 @@ public class ReceiptDatabaseAdapterTest {
         when(mPrimaryKey.getPrimaryKeyValue(mReceipt)).thenReturn(PRIMARY_KEY_ID);
         when(mStorageManager.getFile(new File(PARENT), PATH)).thenReturn(new File(PATH));
 
-        when(mSyncStateAdapter.read(mCursor)).thenReturn(mSyncState);
+        when(mSyncStateAdapter.read(eq(mCursor), any(SyncStateAdapter.ColumnIndices.class))).thenReturn(mSyncState);
         when(mSyncStateAdapter.get(any(SyncState.class), any(DatabaseOperationMetadata.class))).thenReturn(mGetSyncState);
 
         mReceiptDatabaseAdapter = new ReceiptDatabaseAdapter(mTripsTable, mPaymentMethodsTable, mCategoriesTable, mStorageManager, mSyncStateAdapter);
@@ -299,6 +305,84 @@ public class ReceiptDatabaseAdapterTest {
         assertEquals(receipt, mReceiptDatabaseAdapter.readForSelection(mCursor, mTrip, false));
     }
 
+    @Test
+    public void readAllForSelectionResolvesForeignKeysOncePerCursor() throws Exception {
+        when(mCursor.moveToFirst()).thenReturn(true);
+        when(mCursor.moveToNext()).thenReturn(true, false);
+
+        // Note: Full page is backwards in the database
+        final Receipt receipt = new ReceiptBuilderFactory(ID)
+                .setTrip(mTrip)
+                .setName(NAME)
+                .setPrice(PRICE)
+                .setTax(TAX)
+                .setExchangeRate(EXCHANGE_RATE)
+                .setCategory(CATEGORY)
+                .setFile(new File(PATH))
+                .setDate(DATE)
+                .setTimeZone(TIMEZONE)
+                .setComment(COMMENT)
+                .setIsReimbursable(REIMBURSABLE)
+                .setCurrency(CURRENCY_CODE)
+                .setIsFullPage(!FULL_PAGE)
+                .setIndex(DESCENDING_INDEX)
+                .setPaymentMethod(PAYMENT_METHOD)
+                .setExtraEditText1(EXTRA1)
+                .setExtraEditText2(EXTRA2)
+                .setExtraEditText3(EXTRA3)
+                .setSyncState(mSyncState)
+                .build();
+        assertEquals(Arrays.asList(receipt, receipt), mReceiptDatabaseAdapter.readAllForSelection(mCursor, mTrip, true));
+        verify(mCursor).getColumnIndex("category");
+        verify(mCategoriesTable).findByPrimaryKey(CATEGORY_NAME);
+        verify(mPaymentMethodsTable).findByPrimaryKey(PAYMENT_METHOD_ID);
+        verifyZeroInteractions(mTripsTable);
+    }
+
+    @Test
+    public void readAllResolvesTripsOncePerCursor() throws Exception {
+        when(mCursor.moveToFirst()).thenReturn(true);
+        // Note: We iterate once to find the trips and again to read each row
+        when(mCursor.moveToNext()).thenReturn(true, false, true, false);
+        when(mTripsTable.findByPrimaryKeys(Collections.singletonList(PARENT))).thenReturn(Single.just(Collections.singletonList(mTrip)));
+
+        // Note: Full page is backwards in the database
+        final Receipt receipt = new ReceiptBuilderFactory(ID)
+                .setTrip(mTrip)
+                .setName(NAME)
+                .setPrice(PRICE)
+                .setTax(TAX)
+                .setExchangeRate(EXCHANGE_RATE)
+                .setCategory(CATEGORY)
+                .setFile(new File(PATH))
+                .setDate(DATE)
+                .setTimeZone(TIMEZONE)
+                .setComment(COMMENT)
+                .setIsReimbursable(REIMBURSABLE)
+                .setCurrency(CURRENCY_CODE)
+                .setIsFullPage(!FULL_PAGE)
+                .setIndex(DESCENDING_INDEX)
+                .setPaymentMethod(PAYMENT_METHOD)
+                .setExtraEditText1(EXTRA1)
+                .setExtraEditText2(EXTRA2)
+                .setExtraEditText3(EXTRA3)
+                .setSyncState(mSyncState)
+                .build();
+        assertEquals(Arrays.asList(receipt, receipt), mReceiptDatabaseAdapter.readAll(mCursor));
+        verify(mCursor).getColumnIndex("parent");
+        verify(mCursor).getColumnIndex("last_local_modification_time");
+        verify(mTripsTable).findByPrimaryKeys(Collections.singletonList(PARENT));
+        verify(mTripsTable, never()).findByPrimaryKey(PARENT);
+        verify(mCategoriesTable).findByPrimaryKey(CATEGORY_NAME);
+        verify(mPaymentMethodsTable).findByPrimaryKey(PAYMENT_METHOD_ID);
+    }
+
+    @Test
+    public void readAllForSelectionWithEmptyCursor() throws Exception {
+        when(mCursor.moveToFirst()).thenReturn(false);
+        assertTrue(mReceiptDatabaseAdapter.readAllForSelection(mCursor, mTrip, true).isEmpty());
+    }
+
     @Test
     public void readForUnmappedCategory() throws Exception {
         when(mCategoriesTable.findByPrimaryKey(CATEGORY_NAME)).thenReturn(Single.error(new Exception()));
@@ -103,6 +103,7 @@ public class InteractivePdfBoxTest {
         when(userPreferenceManager.get(UserPreference.General.IncludeCostCenter)).thenReturn(false);
         when(userPreferenceManager.get(UserPreference.ReportOutput.PrintReceiptCommentByPdfPhoto)).thenReturn(true);
         when(userPreferenceManager.get(UserPreference.ReportOutput.PrintReceiptsTableInLandscape)).thenReturn(false);
+        when(userPreferenceManager.get(UserPreference.ReportOutput.PdfImageDpi)).thenReturn(150);
         when(userPreferenceManager.get(UserPreference.ReportOutput.PrintUserIdByPdfPhoto)).thenReturn(false);
         when(userPreferenceManager.get(UserPreference.ReportOutput.UserId)).thenReturn("");
         when(userPreferenceManager.get(UserPreference.Receipts.OnlyIncludeReimbursable)).thenReturn(false);
@@ -44,6 +44,7 @@ public class UserPreferenceTest {
         Assert.assertTrue(userPreferences.contains(UserPreference.ReportOutput.PrintUserIdByPdfPhoto));
         Assert.assertTrue(userPreferences.contains(UserPreference.ReportOutput.PrintReceiptCommentByPdfPhoto));
         Assert.assertTrue(userPreferences.contains(UserPreference.ReportOutput.PrintReceiptsTableInLandscape));
+        Assert.assertTrue(userPreferences.contains(UserPreference.ReportOutput.PdfImageDpi));
         Assert.assertTrue(userPreferences.contains(UserPreference.Email.ToAddresses));
         Assert.assertTrue(userPreferences.contains(UserPreference.Email.CcAddresses));
         Assert.assertTrue(userPreferences.contains(UserPreference.Email.BccAddresses));
@@ -159,6 +160,10 @@ public class UserPreferenceTest {
         Assert.assertEquals(UserPreference.ReportOutput.PrintReceiptsTableInLandscape.getType(), Boolean.class);
         Assert.assertEquals(name(UserPreference.ReportOutput.PrintReceiptsTableInLandscape), "ReceiptsTableLandscape");
         Assert.assertEquals(UserPreference.ReportOutput.PrintReceiptsTableInLandscape.getDefaultValue(), R.bool.pref_output_receipts_landscape_defaultValue);
+
+        Assert.assertEquals(UserPreference.ReportOutput.PdfImageDpi.getType(), Integer.class);
+        Assert.assertEquals(name(UserPreference.ReportOutput.PdfImageDpi), "PdfImageDpi");
+        Assert.assertEquals(UserPreference.ReportOutput.PdfImageDpi.getDefaultValue(), R.integer.pref_output_pdf_image_dpi_defaultValue);
     }
 
     @Test
@@ -0,0 +1,270 @@
+package co.smartreceipts.android.sync.drive.changes;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import co.smartreceipts.android.persistence.DatabaseHelper;
+import co.smartreceipts.android.persistence.database.search.SearchIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseChangeLogTest {
+
+    private static final List<String> TABLE_NAMES = Arrays.asList("trips", "receipts", "distance");
+
+    // Class under test
+    DatabaseChangeLog mDatabaseChangeLog;
+
+    @Mock
+    SQLiteOpenHelper mDatabaseHelper;
+
+    SQLiteDatabase mDb;
+    File mDirectory;
+    File mDatabaseFile;
+    File mRemoteSnapshotFile;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "change_log_test");
+        mDatabaseFile = new File(mDirectory, "live.db");
+        mRemoteSnapshotFile = new File(mDirectory, "remote.db");
+        FileUtils.forceMkdir(mDirectory);
+
+        mDb = SQLiteDatabase.openOrCreateDatabase(mDatabaseFile, null);
+        mDb.setVersion(1);
+        mDb.execSQL("CREATE TABLE trips (name TEXT PRIMARY KEY, trips_comment TEXT, trips_cost_center TEXT)");
+        mDb.execSQL("CREATE TABLE receipts (id INTEGER PRIMARY KEY AUTOINCREMENT, parent TEXT, name TEXT, comment TEXT, price DECIMAL(10, 2), image BLOB)");
+        mDb.execSQL("CREATE TABLE distance (id INTEGER PRIMARY KEY AUTOINCREMENT, location TEXT)");
+        new SearchIndex().onCreate(mDb);
+        mDb.execSQL("INSERT INTO trips (name, trips_comment) VALUES ('Trip', 'Comment')");
+        mDb.execSQL("INSERT INTO receipts (parent, name, price) VALUES ('Trip', 'Breakfast', 1.5)");
+        mDb.execSQL("INSERT INTO receipts (parent, name, price) VALUES ('Trip', 'Dinner', 2.5)");
+        when(mDatabaseHelper.getWritableDatabase()).thenReturn(mDb);
+
+        mDatabaseChangeLog = new DatabaseChangeLog(new File(mDirectory, "changes"), TABLE_NAMES);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDb.close();
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void firstUploadIsSnapshot() throws Exception {
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        assertTrue(upload.isSnapshot());
+        assertEquals(DatabaseHelper.DATABASE_NAME, upload.getFile().getName());
+        assertTrue(FileUtils.contentEquals(mDatabaseFile, upload.getFile()));
+        assertFalse(mDb.inTransaction());
+    }
+
+    @Test
+    public void noUploadWithoutChanges() throws Exception {
+        uploadSnapshot();
+
+        assertNull(mDatabaseChangeLog.prepare(mDatabaseHelper, false));
+        assertFalse(mDb.inTransaction());
+    }
+
+    @Test
+    public void snapshotIncludesChangesFromOurConnection() throws Exception {
+        mDb.execSQL("UPDATE receipts SET price = 5 WHERE id = 1");
+
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        assertTrue(upload.isSnapshot());
+        FileUtils.copyFile(upload.getFile(), mRemoteSnapshotFile);
+        assertEquals(dump(mDatabaseFile), dump(mRemoteSnapshotFile));
+    }
+
+    @Test
+    public void forceSnapshot() throws Exception {
+        uploadSnapshot();
+
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, true);
+        assertNotNull(upload);
+        assertTrue(upload.isSnapshot());
+    }
+
+    @Test
+    public void changesAreAppliedToSnapshot() throws Exception {
+        uploadSnapshot();
+
+        execSQL("UPDATE trips SET name = 'Renamed', trips_comment = NULL WHERE name = 'Trip'");
+        execSQL("UPDATE receipts SET parent = 'Renamed', price = 3.75, image = X'0102' WHERE id = 1");
+        execSQL("DELETE FROM receipts WHERE id = 2");
+        execSQL("INSERT INTO receipts (parent, price) VALUES ('Renamed', 4.25)");
+
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        assertFalse(upload.isSnapshot());
+        assertEquals(DatabaseChangeLog.FILE_NAME, upload.getFile().getName());
+        assertTrue(upload.getFile().length() < mDatabaseFile.length());
+        mDatabaseChangeLog.commit();
+
+        assertTrue(DatabaseChangeLog.apply(upload.getFile(), mRemoteSnapshotFile, TABLE_NAMES));
+        assertEquals(dump(mDatabaseFile), dump(mRemoteSnapshotFile));
+        assertNull(mDatabaseChangeLog.prepare(mDatabaseHelper, false));
+    }
+
+    @Test
+    public void multipleChangeSetsAreApplied() throws Exception {
+        uploadSnapshot();
+
+        execSQL("UPDATE receipts SET price = 5 WHERE id = 1");
+        assertNotNull(mDatabaseChangeLog.prepare(mDatabaseHelper, false));
+        mDatabaseChangeLog.commit();
+        final long firstLength = mDatabaseChangeLog.getChangesLength();
+
+        execSQL("UPDATE receipts SET price = 6 WHERE id = 2");
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        mDatabaseChangeLog.commit();
+        assertTrue(mDatabaseChangeLog.getChangesLength() > firstLength);
+
+        assertTrue(DatabaseChangeLog.apply(upload.getFile(), mRemoteSnapshotFile, TABLE_NAMES));
+        assertEquals(dump(mDatabaseFile), dump(mRemoteSnapshotFile));
+    }
+
+    @Test
+    public void rollbackRemovesChangeSet() throws Exception {
+        uploadSnapshot();
+        final long initialLength = mDatabaseChangeLog.getChangesLength();
+
+        execSQL("UPDATE receipts SET price = 5 WHERE id = 1");
+        assertNotNull(mDatabaseChangeLog.prepare(mDatabaseHelper, false));
+        assertTrue(mDatabaseChangeLog.getChangesLength() > initialLength);
+        mDatabaseChangeLog.rollback();
+        assertEquals(initialLength, mDatabaseChangeLog.getChangesLength());
+
+        // The same changes should be captured by our next attempt
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        mDatabaseChangeLog.commit();
+        assertTrue(DatabaseChangeLog.apply(upload.getFile(), mRemoteSnapshotFile, TABLE_NAMES));
+        assertEquals(dump(mDatabaseFile), dump(mRemoteSnapshotFile));
+    }
+
+    @Test
+    public void snapshotWhenChangeLogIsFull() throws Exception {
+        mDatabaseChangeLog = new DatabaseChangeLog(new File(mDirectory, "changes"), TABLE_NAMES, 64);
+        uploadSnapshot();
+
+        execSQL("UPDATE trips SET trips_comment = 'A much longer comment than will fit in our tiny change log' WHERE name = 'Trip'");
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        assertTrue(upload.isSnapshot());
+    }
+
+    @Test
+    public void snapshotWhenSchemaChanges() throws Exception {
+        uploadSnapshot();
+
+        mDb.execSQL("ALTER TABLE trips ADD currency TEXT");
+        mDb.setVersion(2);
+
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        assertTrue(upload.isSnapshot());
+    }
+
+    @Test
+    public void searchIndexIsRebuiltFromAppliedChanges() throws Exception {
+        uploadSnapshot();
+
+        execSQL("UPDATE receipts SET name = 'Lunch' WHERE id = 1");
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        mDatabaseChangeLog.commit();
+
+        // Only our receipt row should be captured, not the rows of our search index (or its shadow tables)
+        final String changes = FileUtils.readFileToString(upload.getFile(), "UTF-8");
+        assertTrue(changes.contains("receipts"));
+        assertFalse(changes.contains("_search"));
+
+        assertTrue(DatabaseChangeLog.apply(upload.getFile(), mRemoteSnapshotFile, TABLE_NAMES));
+        assertEquals(dump(mDatabaseFile), dump(mRemoteSnapshotFile));
+
+        final SQLiteDatabase remoteDb = SQLiteDatabase.openDatabase(mRemoteSnapshotFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            final SearchIndex searchIndex = new SearchIndex();
+            assertEquals(Collections.singletonList(1), searchIndex.searchReceiptIds(remoteDb, "lunch"));
+            assertEquals(Collections.<Integer>emptyList(), searchIndex.searchReceiptIds(remoteDb, "breakfast"));
+            assertEquals(Collections.singletonList(2), searchIndex.searchReceiptIds(remoteDb, "dinner"));
+        } finally {
+            remoteDb.close();
+        }
+    }
+
+    @Test
+    public void changesAreIgnoredForDifferentSnapshot() throws Exception {
+        uploadSnapshot();
+        execSQL("UPDATE receipts SET price = 5 WHERE id = 1");
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        mDatabaseChangeLog.commit();
+
+        execSQL("UPDATE receipts SET price = 7 WHERE id = 2");
+        FileUtils.copyFile(mDatabaseFile, mRemoteSnapshotFile);
+        final List<String> differentSnapshot = dump(mRemoteSnapshotFile);
+
+        assertFalse(DatabaseChangeLog.apply(upload.getFile(), mRemoteSnapshotFile, TABLE_NAMES));
+        assertEquals(differentSnapshot, dump(mRemoteSnapshotFile));
+    }
+
+    private void uploadSnapshot() throws Exception {
+        final DatabaseChangeLog.Upload upload = mDatabaseChangeLog.prepare(mDatabaseHelper, false);
+        assertNotNull(upload);
+        assertTrue(upload.isSnapshot());
+        FileUtils.copyFile(upload.getFile(), mRemoteSnapshotFile);
+        mDatabaseChangeLog.commit();
+    }
+
+    private void execSQL(String sql) {
+        mDb.execSQL(sql);
+    }
+
+    private static List<String> dump(File databaseFile) {
+        final List<String> rows = new ArrayList<>();
+        final SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        for (final String table : new String[]{"trips", "receipts"}) {
+            final Cursor cursor = db.rawQuery("SELECT rowid, * FROM " + table + " ORDER BY rowid", null);
+            while (cursor.moveToNext()) {
+                final StringBuilder row = new StringBuilder(table);
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    row.append('|').append(cursor.getType(i) == Cursor.FIELD_TYPE_BLOB ? new String(cursor.getBlob(i)) : cursor.getString(i));
+                }
+                rows.add(row.toString());
+            }
+            cursor.close();
+        }
+        db.close();
+        return rows;
+    }
+}
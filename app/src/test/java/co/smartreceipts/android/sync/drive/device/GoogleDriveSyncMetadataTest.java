@@ -48,4 +48,16 @@ public class GoogleDriveSyncMetadataTest {
         assertTrue(mGoogleDriveSyncMetadata.getLastDatabaseSyncTime().getTime() > 0);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getDatabaseChangesSyncIdentifier() {
+        assertNull(mGoogleDriveSyncMetadata.getDatabaseChangesSyncIdentifier());
+        assertTrue(mGoogleDriveSyncMetadata.getLastDatabaseSyncTime().getTime() <= 0);
+
+        final Identifier changesId = new Identifier("changesId");
+        mGoogleDriveSyncMetadata.setDatabaseChangesSyncIdentifier(changesId);
+        assertEquals(changesId, mGoogleDriveSyncMetadata.getDatabaseChangesSyncIdentifier());
+        assertNull(mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier());
+        assertTrue(mGoogleDriveSyncMetadata.getLastDatabaseSyncTime().getTime() > 0);
+    }
+
+}
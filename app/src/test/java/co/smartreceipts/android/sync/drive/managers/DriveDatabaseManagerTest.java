@@ -1,19 +1,29 @@
 package co.smartreceipts.android.sync.drive.managers;
 
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import co.smartreceipts.android.analytics.Analytics;
 import co.smartreceipts.android.analytics.events.ErrorEvent;
 import co.smartreceipts.android.persistence.DatabaseHelper;
+import co.smartreceipts.android.sync.drive.changes.DatabaseChangeLog;
 import co.smartreceipts.android.sync.drive.device.GoogleDriveSyncMetadata;
 import co.smartreceipts.android.sync.drive.rx.DriveStreamsManager;
 import co.smartreceipts.android.sync.model.impl.Identifier;
@@ -21,8 +31,12 @@ import co.smartreceipts.android.sync.network.NetworkManager;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -34,6 +48,13 @@ public class DriveDatabaseManagerTest {
 
     File mDatabaseFile;
 
+    SQLiteDatabase mDb;
+
+    File mChangeLogDirectory;
+
+    @Mock
+    DatabaseHelper mDatabaseHelper;
+
     @Mock
     DriveStreamsManager mDriveStreamsManager;
 
@@ -54,23 +75,31 @@ public class DriveDatabaseManagerTest {
         if (!mDatabaseFile.createNewFile()) {
             throw new RuntimeException("Failed to create database file... Failing this test");
         }
+        mDb = SQLiteDatabase.openDatabase(mDatabaseFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READWRITE);
+        mDb.execSQL("CREATE TABLE receipts (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT)");
+        mDb.execSQL("INSERT INTO receipts (name) VALUES ('Receipt')");
+        when(mDatabaseHelper.getWritableDatabase()).thenReturn(mDb);
 
         when(mNetworkManager.isNetworkAvailable()).thenReturn(true);
 
-        mDriveDatabaseManager = new DriveDatabaseManager(RuntimeEnvironment.application, mDriveStreamsManager, mGoogleDriveSyncMetadata, mNetworkManager, mAnalytics, Schedulers.trampoline(), Schedulers.trampoline());
+        mChangeLogDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "changes");
+        mDriveDatabaseManager = new DriveDatabaseManager(RuntimeEnvironment.application, mDatabaseHelper, mDriveStreamsManager, mGoogleDriveSyncMetadata, mNetworkManager, mAnalytics,
+                new DatabaseChangeLog(mChangeLogDirectory, Collections.singletonList("receipts")), Schedulers.trampoline(), Schedulers.trampoline());
     }
 
     @After
     @SuppressWarnings("ResultOfMethodCallIgnored")
     public void tearDown() throws Exception {
+        mDb.close();
         mDatabaseFile.delete();
+        FileUtils.deleteQuietly(mChangeLogDirectory);
     }
 
     @Test
     public void syncDatabaseWithoutNetwork() {
         when(mNetworkManager.isNetworkAvailable()).thenReturn(false);
         final Identifier identifier = new Identifier("newId");
-        when(mDriveStreamsManager.uploadFileToDrive(mDatabaseFile)).thenReturn(Single.just(identifier));
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenReturn(Single.just(identifier));
 
         mDriveDatabaseManager.syncDatabase();
         verify(mGoogleDriveSyncMetadata, never()).setDatabaseSyncIdentifier(identifier);
@@ -79,7 +108,7 @@ public class DriveDatabaseManagerTest {
     @Test
     public void syncDatabaseForTheFirstTime() {
         final Identifier identifier = new Identifier("newId");
-        when(mDriveStreamsManager.uploadFileToDrive(mDatabaseFile)).thenReturn(Single.just(identifier));
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenReturn(Single.just(identifier));
 
         mDriveDatabaseManager.syncDatabase();
         verify(mGoogleDriveSyncMetadata).setDatabaseSyncIdentifier(identifier);
@@ -89,7 +118,7 @@ public class DriveDatabaseManagerTest {
     public void syncExistingDatabase() {
         final Identifier identifier = new Identifier("oldId");
         when(mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier()).thenReturn(identifier);
-        when(mDriveStreamsManager.updateDriveFile(identifier, mDatabaseFile)).thenReturn(Single.just(identifier));
+        when(mDriveStreamsManager.updateDriveFile(eq(identifier), any(File.class))).thenReturn(Single.just(identifier));
 
         mDriveDatabaseManager.syncDatabase();
         verify(mGoogleDriveSyncMetadata).setDatabaseSyncIdentifier(identifier);
@@ -98,11 +127,93 @@ public class DriveDatabaseManagerTest {
     @Test
     public void syncDatabaseError() {
         final Exception e = new Exception();
-        when(mDriveStreamsManager.uploadFileToDrive(mDatabaseFile)).thenReturn(Single.error(e));
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenReturn(Single.error(e));
 
         mDriveDatabaseManager.syncDatabase();
         verify(mGoogleDriveSyncMetadata, never()).setDatabaseSyncIdentifier(any(Identifier.class));
         verify(mAnalytics).record(any(ErrorEvent.class));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void syncDatabaseChangesAfterSnapshot() throws Exception {
+        final FakeDrive fakeDrive = new FakeDrive();
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenAnswer(fakeDrive.upload);
+        when(mDriveStreamsManager.updateDriveFile(any(Identifier.class), any(File.class))).thenAnswer(fakeDrive.update);
+
+        mDriveDatabaseManager.syncDatabase();
+        final Identifier snapshotId = new Identifier(DatabaseHelper.DATABASE_NAME);
+        verify(mGoogleDriveSyncMetadata).setDatabaseSyncIdentifier(snapshotId);
+        when(mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier()).thenReturn(snapshotId);
+
+        // Nothing has changed, so nothing should be uploaded
+        mDriveDatabaseManager.syncDatabase();
+        assertEquals(1, fakeDrive.files.size());
+
+        mDb.execSQL("UPDATE receipts SET name = 'Updated' WHERE id = 1");
+
+        mDriveDatabaseManager.syncDatabase();
+        final Identifier changesId = new Identifier(DatabaseChangeLog.FILE_NAME);
+        verify(mGoogleDriveSyncMetadata).setDatabaseChangesSyncIdentifier(changesId);
+        verify(mGoogleDriveSyncMetadata, times(1)).setDatabaseSyncIdentifier(any(Identifier.class));
+        assertTrue(fakeDrive.files.get(DatabaseChangeLog.FILE_NAME).length < fakeDrive.files.get(DatabaseHelper.DATABASE_NAME).length);
+
+        // Restoring the snapshot and change log should produce our current database
+        final File restoredSnapshot = new File(mChangeLogDirectory, "restored.db");
+        final File restoredChanges = new File(mChangeLogDirectory, "restored.changes");
+        FileUtils.writeByteArrayToFile(restoredSnapshot, fakeDrive.files.get(DatabaseHelper.DATABASE_NAME));
+        FileUtils.writeByteArrayToFile(restoredChanges, fakeDrive.files.get(DatabaseChangeLog.FILE_NAME));
+        assertTrue(DatabaseChangeLog.apply(restoredChanges, restoredSnapshot, Collections.singletonList("receipts")));
+        final SQLiteDatabase restoredDb = SQLiteDatabase.openDatabase(restoredSnapshot.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertEquals("Updated", DatabaseUtils.stringForQuery(restoredDb, "SELECT name FROM receipts WHERE id = 1", null));
+        restoredDb.close();
+    }
+
+    @Test
+    public void syncDatabaseChangesError() throws Exception {
+        final Identifier snapshotId = new Identifier("snapshotId");
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenReturn(Single.just(snapshotId));
+        mDriveDatabaseManager.syncDatabase();
+        when(mGoogleDriveSyncMetadata.getDatabaseSyncIdentifier()).thenReturn(snapshotId);
+
+        mDb.execSQL("INSERT INTO receipts (name) VALUES ('Another')");
+
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenReturn(Single.<Identifier>error(new Exception()));
+        mDriveDatabaseManager.syncDatabase();
+        verify(mGoogleDriveSyncMetadata, never()).setDatabaseChangesSyncIdentifier(any(Identifier.class));
+        verify(mAnalytics).record(any(ErrorEvent.class));
+
+        // Our failed change set should be retried next time
+        final Identifier changesId = new Identifier("changesId");
+        when(mDriveStreamsManager.uploadFileToDrive(any(File.class))).thenReturn(Single.just(changesId));
+        mDriveDatabaseManager.syncDatabase();
+        verify(mGoogleDriveSyncMetadata).setDatabaseChangesSyncIdentifier(changesId);
+    }
+
+    /**
+     * A local stand-in for Drive, which stores the contents of each uploaded file by its name
+     */
+    private static final class FakeDrive {
+
+        final Map<String, byte[]> files = new HashMap<>();
+
+        final Answer<Single<Identifier>> upload = new Answer<Single<Identifier>>() {
+            @Override
+            public Single<Identifier> answer(InvocationOnMock invocation) throws Throwable {
+                final File file = (File) invocation.getArguments()[0];
+                files.put(file.getName(), FileUtils.readFileToByteArray(file));
+                return Single.just(new Identifier(file.getName()));
+            }
+        };
+
+        final Answer<Single<Identifier>> update = new Answer<Single<Identifier>>() {
+            @Override
+            public Single<Identifier> answer(InvocationOnMock invocation) throws Throwable {
+                final Identifier identifier = (Identifier) invocation.getArguments()[0];
+                final File file = (File) invocation.getArguments()[1];
+                files.put(identifier.getId(), FileUtils.readFileToByteArray(file));
+                return Single.just(identifier);
+            }
+        };
+    }
+
+}
@@ -1,5 +1,7 @@
 package co.smartreceipts.android.sync.drive.managers;
 
+import com.hadisatrio.optional.Optional;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,15 +12,20 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
 import java.io.File;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import co.smartreceipts.android.analytics.Analytics;
 import co.smartreceipts.android.model.Receipt;
 import co.smartreceipts.android.model.factory.ReceiptBuilderFactory;
 import co.smartreceipts.android.model.factory.ReceiptBuilderFactoryFactory;
 import co.smartreceipts.android.persistence.database.controllers.TableController;
+import co.smartreceipts.android.persistence.database.files.ReceiptFileIndex;
 import co.smartreceipts.android.persistence.database.operations.DatabaseOperationMetadata;
 import co.smartreceipts.android.persistence.database.operations.OperationFamilyType;
 import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
@@ -28,16 +35,21 @@ import co.smartreceipts.android.sync.model.SyncState;
 import co.smartreceipts.android.sync.model.impl.Identifier;
 import co.smartreceipts.android.sync.network.NetworkManager;
 import co.smartreceipts.android.sync.provider.SyncProvider;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -83,6 +95,13 @@ public class DriveReceiptsManagerTest {
     @Mock
     File mFile;
 
+    @Mock
+    ReceiptFileIndex mReceiptFileIndex;
+
+    DriveUploadQueue mDriveUploadQueue;
+
+    TestScheduler mRetryScheduler;
+
     @Captor
     ArgumentCaptor<Receipt> mReceiptCaptor;
 
@@ -130,8 +149,30 @@ public class DriveReceiptsManagerTest {
 
         when(mNetworkManager.isNetworkAvailable()).thenReturn(true);
 
-        mDriveReceiptsManager = new DriveReceiptsManager(mReceiptTableController, mReceiptsTable, mDriveTaskManager,
-                mDriveDatabaseManager, mNetworkManager, mAnalytics, mDriveStreamMappings, mReceiptBuilderFactoryFactory, Schedulers.trampoline(), Schedulers.trampoline());
+        mDriveUploadQueue = new DriveUploadQueue(new DriveUploadQueue.OpenHelper(RuntimeEnvironment.application, "test_upload_queue.db"), new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }, TimeUnit.SECONDS.toMillis(30), TimeUnit.HOURS.toMillis(1));
+        mRetryScheduler = new TestScheduler();
+        mDriveReceiptsManager = newDriveReceiptsManager(3);
+    }
+
+    private DriveReceiptsManager newDriveReceiptsManager(int maxConcurrentSyncs) {
+        return new DriveReceiptsManager(mReceiptTableController, mReceiptsTable, mDriveTaskManager, mDriveDatabaseManager, mNetworkManager,
+                mAnalytics, mDriveStreamMappings, mReceiptBuilderFactoryFactory, mReceiptFileIndex, mDriveUploadQueue, maxConcurrentSyncs,
+                Schedulers.trampoline(), Schedulers.trampoline(), mRetryScheduler);
+    }
+
+    private void prepareNewFile(Receipt receipt, SyncState syncState) {
+        when(syncState.getSyncId(SyncProvider.GoogleDrive)).thenReturn(null);
+        when(syncState.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(syncState.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(receipt.getFile()).thenReturn(mFile);
+        when(mFile.exists()).thenReturn(true);
+        when(mReceiptTableController.update(any(Receipt.class), any(Receipt.class), any(DatabaseOperationMetadata.class)))
+                .thenReturn(Observable.just(Optional.<Receipt>absent()));
     }
 
     @Test
@@ -277,6 +318,76 @@ public class DriveReceiptsManagerTest {
         assertEquals(OperationFamilyType.Sync, mOperationMetadataCaptor.getValue().getOperationFamilyType());
     }
 
+    @Test
+    public void handleDeleteForSharedFile() {
+        final Identifier identifier = new Identifier("id");
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mSyncState1.getSyncId(SyncProvider.GoogleDrive)).thenReturn(identifier);
+        when(mSyncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mSyncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(true);
+        when(mReceiptFileIndex.isDriveFileShared(1, identifier)).thenReturn(true);
+        when(mDriveStreamMappings.postDeleteSyncState(mSyncState1, true)).thenReturn(mNewSyncState1);
+
+        mDriveReceiptsManager.handleDelete(mReceipt1);
+
+        verify(mDriveTaskManager, never()).deleteDriveFile(any(SyncState.class), anyBoolean());
+        verify(mReceiptTableController).delete(mReceiptCaptor.capture(), mOperationMetadataCaptor.capture());
+        assertEquals(mNewSyncState1, mReceiptCaptor.getValue().getSyncState());
+    }
+
+    @Test
+    public void handleInsertForFileThatIsIdenticalToASyncedOne() {
+        final Identifier identifier = new Identifier("id");
+        prepareNewFile(mReceipt1, mSyncState1);
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mReceiptFileIndex.getHash(1, mFile)).thenReturn("hash");
+        when(mReceiptFileIndex.findSyncedDriveFile(1, "hash")).thenReturn(identifier);
+        when(mDriveStreamMappings.postShareSyncState(mSyncState1, identifier)).thenReturn(mNewSyncState1);
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+
+        verify(mDriveTaskManager, never()).uploadFileToDrive(any(SyncState.class), any(File.class));
+        verify(mReceiptTableController).update(mReceiptCaptor.capture(), mUpdatedReceiptCaptor.capture(), mOperationMetadataCaptor.capture());
+        assertEquals(mNewSyncState1, mUpdatedReceiptCaptor.getValue().getSyncState());
+    }
+
+    @Test
+    public void handleUpdateWithNewFileForSharedFile() {
+        final Identifier identifier = new Identifier("id");
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState1, mFile)).thenReturn(Single.just(mNewSyncState1));
+        when(mSyncState1.getSyncId(SyncProvider.GoogleDrive)).thenReturn(identifier);
+        when(mSyncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mSyncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mReceipt1.getFile()).thenReturn(mFile);
+        when(mFile.exists()).thenReturn(true);
+        when(mReceiptFileIndex.isDriveFileShared(1, identifier)).thenReturn(true);
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+
+        verify(mDriveTaskManager, never()).updateDriveFile(any(SyncState.class), any(File.class));
+        verify(mReceiptTableController).update(mReceiptCaptor.capture(), mUpdatedReceiptCaptor.capture(), mOperationMetadataCaptor.capture());
+        assertEquals(mNewSyncState1, mUpdatedReceiptCaptor.getValue().getSyncState());
+    }
+
+    @Test
+    public void handleUpdateToDeleteSharedFile() {
+        final Identifier identifier = new Identifier("id");
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mSyncState1.getSyncId(SyncProvider.GoogleDrive)).thenReturn(identifier);
+        when(mSyncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mSyncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mReceipt1.getFile()).thenReturn(null);
+        when(mReceiptFileIndex.isDriveFileShared(1, identifier)).thenReturn(true);
+        when(mDriveStreamMappings.postDeleteSyncState(mSyncState1, false)).thenReturn(mNewSyncState1);
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+
+        verify(mDriveTaskManager, never()).deleteDriveFile(any(SyncState.class), anyBoolean());
+        verify(mReceiptTableController).update(mReceiptCaptor.capture(), mUpdatedReceiptCaptor.capture(), mOperationMetadataCaptor.capture());
+        assertEquals(mNewSyncState1, mUpdatedReceiptCaptor.getValue().getSyncState());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void handleInsertOrUpdateForIllegalSyncState() {
         when(mSyncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(true);
@@ -328,4 +439,136 @@ public class DriveReceiptsManagerTest {
         verify(mDriveDatabaseManager, never()).syncDatabase();
     }
 
+    @Test
+    public void handleInsertOrUpdateIsQueuedWithoutNetwork() {
+        when(mSyncState1.isSynced(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mSyncState1.isMarkedForDeletion(SyncProvider.GoogleDrive)).thenReturn(false);
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mNetworkManager.isNetworkAvailable()).thenReturn(false);
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+
+        assertEquals(Collections.singletonList(1), mDriveUploadQueue.getReceiptIds());
+    }
+
+    @Test
+    public void syncsAtMostMaxConcurrentReceipts() {
+        final PublishSubject<SyncState> driveUpload1 = PublishSubject.create();
+        final PublishSubject<SyncState> driveUpload2 = PublishSubject.create();
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mReceipt2.getId()).thenReturn(2);
+        prepareNewFile(mReceipt1, mSyncState1);
+        prepareNewFile(mReceipt2, mSyncState2);
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState1, mFile)).thenReturn(driveUpload1.singleOrError());
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState2, mFile)).thenReturn(driveUpload2.singleOrError());
+        mDriveReceiptsManager = newDriveReceiptsManager(1);
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt2);
+
+        verify(mDriveTaskManager).uploadFileToDrive(mSyncState1, mFile);
+        verify(mDriveTaskManager, never()).uploadFileToDrive(mSyncState2, mFile);
+        assertEquals(Arrays.asList(1, 2), mDriveUploadQueue.getReceiptIds());
+
+        driveUpload1.onNext(mNewSyncState1);
+        driveUpload1.onComplete();
+
+        verify(mDriveTaskManager).uploadFileToDrive(mSyncState2, mFile);
+        assertEquals(Collections.singletonList(2), mDriveUploadQueue.getReceiptIds());
+
+        driveUpload2.onNext(mNewSyncState2);
+        driveUpload2.onComplete();
+
+        verify(mReceiptTableController, times(2)).update(any(Receipt.class), any(Receipt.class), any(DatabaseOperationMetadata.class));
+        assertEquals(Collections.<Integer>emptyList(), mDriveUploadQueue.getReceiptIds());
+    }
+
+    @Test
+    public void coalescesRepeatedChangesToPendingReceipt() {
+        final PublishSubject<SyncState> driveUpload1 = PublishSubject.create();
+        when(mReceipt1.getId()).thenReturn(1);
+        when(mReceipt2.getId()).thenReturn(2);
+        prepareNewFile(mReceipt1, mSyncState1);
+        prepareNewFile(mReceipt2, mSyncState2);
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState1, mFile)).thenReturn(driveUpload1.singleOrError());
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState2, mFile)).thenReturn(Single.just(mNewSyncState2));
+        mDriveReceiptsManager = newDriveReceiptsManager(1);
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt2);
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt2);
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt2);
+        driveUpload1.onNext(mNewSyncState1);
+        driveUpload1.onComplete();
+
+        verify(mDriveTaskManager).uploadFileToDrive(mSyncState2, mFile);
+        assertEquals(Collections.<Integer>emptyList(), mDriveUploadQueue.getReceiptIds());
+    }
+
+    @Test
+    public void resyncsLatestVersionOfReceiptThatChangedWhileSyncing() {
+        final PublishSubject<SyncState> driveUpload1 = PublishSubject.create();
+        when(mReceipt1.getId()).thenReturn(1);
+        prepareNewFile(mReceipt1, mSyncState1);
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState1, mFile)).thenReturn(driveUpload1.singleOrError());
+        when(mNewSyncState1.getSyncId(SyncProvider.GoogleDrive)).thenReturn(new Identifier("id"));
+        when(mDriveTaskManager.updateDriveFile(mNewSyncState1, mFile)).thenReturn(Single.just(mNewSyncState2));
+        when(mReceiptsTable.findByPrimaryKey(1)).thenReturn(Single.just(mReceipt1));
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+        verify(mDriveTaskManager).uploadFileToDrive(mSyncState1, mFile);
+
+        // Our stubbed builder updates mReceipt1 to use mNewSyncState1, which is what we'll find when we re-fetch it
+        driveUpload1.onNext(mNewSyncState1);
+        driveUpload1.onComplete();
+
+        verify(mDriveTaskManager).uploadFileToDrive(mSyncState1, mFile);
+        verify(mDriveTaskManager).updateDriveFile(mNewSyncState1, mFile);
+        assertEquals(Collections.<Integer>emptyList(), mDriveUploadQueue.getReceiptIds());
+    }
+
+    @Test
+    public void retriesFailedSyncWithBackoff() {
+        when(mReceipt1.getId()).thenReturn(1);
+        prepareNewFile(mReceipt1, mSyncState1);
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState1, mFile)).thenReturn(Single.<SyncState>error(new Exception("test")), Single.<SyncState>error(new Exception("test")), Single.just(mNewSyncState1));
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+        verify(mDriveTaskManager, times(1)).uploadFileToDrive(mSyncState1, mFile);
+
+        mRetryScheduler.advanceTimeBy(29, TimeUnit.SECONDS);
+        verify(mDriveTaskManager, times(1)).uploadFileToDrive(mSyncState1, mFile);
+
+        mRetryScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(mDriveTaskManager, times(2)).uploadFileToDrive(mSyncState1, mFile);
+
+        // Our second retry waits twice as long
+        mRetryScheduler.advanceTimeBy(59, TimeUnit.SECONDS);
+        verify(mDriveTaskManager, times(2)).uploadFileToDrive(mSyncState1, mFile);
+        verify(mReceiptTableController, never()).update(any(Receipt.class), any(Receipt.class), any(DatabaseOperationMetadata.class));
+        assertEquals(Collections.singletonList(1), mDriveUploadQueue.getReceiptIds());
+
+        mRetryScheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(mDriveTaskManager, times(3)).uploadFileToDrive(mSyncState1, mFile);
+        verify(mReceiptTableController).update(any(Receipt.class), any(Receipt.class), any(DatabaseOperationMetadata.class));
+        assertEquals(Collections.<Integer>emptyList(), mDriveUploadQueue.getReceiptIds());
+    }
+
+    @Test
+    public void doesNotRetryWhileDisabled() {
+        when(mReceipt1.getId()).thenReturn(1);
+        prepareNewFile(mReceipt1, mSyncState1);
+        when(mDriveTaskManager.uploadFileToDrive(mSyncState1, mFile)).thenReturn(Single.<SyncState>error(new Exception("test")), Single.just(mNewSyncState1));
+
+        mDriveReceiptsManager.handleInsertOrUpdate(mReceipt1);
+        mDriveReceiptsManager.disable();
+        mRetryScheduler.advanceTimeBy(30, TimeUnit.SECONDS);
+        verify(mDriveTaskManager, times(1)).uploadFileToDrive(mSyncState1, mFile);
+
+        mDriveReceiptsManager.enable();
+        verify(mDriveTaskManager, times(2)).uploadFileToDrive(mSyncState1, mFile);
+        assertEquals(Collections.<Integer>emptyList(), mDriveUploadQueue.getReceiptIds());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import android.support.annotation.NonNull;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import co.smartreceipts.android.persistence.database.files.FileLinker;
+import co.smartreceipts.android.sync.model.RestoreProgress;
+import co.smartreceipts.android.sync.model.impl.Identifier;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class DriveRestoreDownloaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Class under test
+    DriveRestoreDownloader mDriveRestoreDownloader;
+
+    @Mock
+    FileLinker mFileLinker;
+
+    FakeRestoreFileSource mRestoreFileSource;
+
+    File mDirectory;
+
+    File mFile1, mFile2, mFile3;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mFileLinker.replaceWithLink(any(File.class), any(File.class))).thenReturn(false);
+
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "drive_restore_downloader_test");
+        final File tripDirectory = new File(mDirectory, "trip");
+        assertTrue(tripDirectory.isDirectory() || tripDirectory.mkdirs());
+        mFile1 = new File(tripDirectory, "1.jpg");
+        mFile2 = new File(tripDirectory, "2.jpg");
+        mFile3 = new File(tripDirectory, "3.jpg");
+
+        mRestoreFileSource = new FakeRestoreFileSource();
+        mRestoreFileSource.contents.put("a", "contents of a");
+        mRestoreFileSource.contents.put("b", "contents of b");
+        mRestoreFileSource.contents.put("c", "contents of c");
+        mDriveRestoreDownloader = new DriveRestoreDownloader(mRestoreFileSource, mFileLinker, 2, Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void downloadAllFiles() throws Exception {
+        final List<DriveRestoreDownloader.Request> requests = Arrays.asList(request("a", mFile1), request("b", mFile2), request("a", mFile3));
+        final TestObserver<RestoreProgress> progressObserver = mDriveRestoreDownloader.getProgress().test();
+
+        mDriveRestoreDownloader.download(requests, mDirectory).test()
+                .assertValue(Arrays.asList(mFile1, mFile3, mFile2))
+                .assertComplete();
+
+        assertEquals("contents of a", FileUtils.readFileToString(mFile1, UTF_8));
+        assertEquals("contents of b", FileUtils.readFileToString(mFile2, UTF_8));
+        assertEquals("contents of a", FileUtils.readFileToString(mFile3, UTF_8));
+        assertEquals(Integer.valueOf(1), mRestoreFileSource.downloadCounts.get("a"));
+        assertEquals(Integer.valueOf(1), mRestoreFileSource.downloadCounts.get("b"));
+        assertFalse(new File(mDirectory, DriveRestoreManifest.FILE_NAME).exists());
+
+        final RestoreProgress progress = progressObserver.values().get(progressObserver.valueCount() - 1);
+        assertEquals(3, progress.getCompletedFiles());
+        assertEquals(3, progress.getTotalFiles());
+        assertEquals(26, progress.getDownloadedBytes());
+    }
+
+    @Test
+    public void downloadIsLimitedToMaxConcurrentDownloads() throws Exception {
+        mRestoreFileSource.isDeferred = true;
+        final List<DriveRestoreDownloader.Request> requests = Arrays.asList(request("a", mFile1), request("b", mFile2), request("c", mFile3));
+
+        final TestObserver<List<File>> testObserver = mDriveRestoreDownloader.download(requests, mDirectory).test();
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), mRestoreFileSource.pendingDownloads.keySet());
+
+        mRestoreFileSource.completeDownload("a");
+        assertEquals(new HashSet<>(Arrays.asList("b", "c")), mRestoreFileSource.pendingDownloads.keySet());
+
+        mRestoreFileSource.completeDownload("b");
+        mRestoreFileSource.completeDownload("c");
+        testObserver.assertValue(Arrays.asList(mFile1, mFile2, mFile3)).assertComplete();
+    }
+
+    @Test
+    public void downloadResumesAfterFailure() throws Exception {
+        final List<DriveRestoreDownloader.Request> requests = Arrays.asList(request("a", mFile1), request("b", mFile2), request("c", mFile3));
+        mRestoreFileSource.failures.add("b");
+
+        mDriveRestoreDownloader.download(requests, mDirectory).test().assertError(IOException.class);
+        assertTrue(mFile1.exists());
+        assertFalse(mFile2.exists());
+        assertTrue(mFile3.exists());
+        assertFalse(new File(mFile2.getParentFile(), ".2.jpg.download").exists());
+        assertTrue(new File(mDirectory, DriveRestoreManifest.FILE_NAME).exists());
+
+        mRestoreFileSource.failures.clear();
+        mDriveRestoreDownloader.download(requests, mDirectory).test()
+                .assertValue(Arrays.asList(mFile1, mFile2, mFile3))
+                .assertComplete();
+        assertEquals("contents of b", FileUtils.readFileToString(mFile2, UTF_8));
+        assertEquals(Integer.valueOf(1), mRestoreFileSource.downloadCounts.get("a"));
+        assertEquals(Integer.valueOf(2), mRestoreFileSource.downloadCounts.get("b"));
+        assertEquals(Integer.valueOf(1), mRestoreFileSource.downloadCounts.get("c"));
+        assertFalse(new File(mDirectory, DriveRestoreManifest.FILE_NAME).exists());
+    }
+
+    @Test
+    public void downloadAgainIfRestoredFileWasModified() throws Exception {
+        final List<DriveRestoreDownloader.Request> requests = Arrays.asList(request("a", mFile1), request("b", mFile2));
+        mRestoreFileSource.failures.add("b");
+        mDriveRestoreDownloader.download(requests, mDirectory).test().assertError(IOException.class);
+
+        FileUtils.writeStringToFile(mFile1, "contents of z", UTF_8);
+        mRestoreFileSource.failures.clear();
+        mDriveRestoreDownloader.download(requests, mDirectory).test().assertComplete();
+
+        assertEquals("contents of a", FileUtils.readFileToString(mFile1, UTF_8));
+        assertEquals(Integer.valueOf(2), mRestoreFileSource.downloadCounts.get("a"));
+    }
+
+    @Test
+    public void downloadRejectsIncompleteFiles() throws Exception {
+        mRestoreFileSource.sizes.put("a", 100L);
+
+        mDriveRestoreDownloader.download(Arrays.asList(request("a", mFile1)), mDirectory).test().assertError(IOException.class);
+
+        assertFalse(mFile1.exists());
+        assertEquals(0, mFile1.getParentFile().list().length);
+    }
+
+    @NonNull
+    private static DriveRestoreDownloader.Request request(@NonNull String driveFileId, @NonNull File destination) {
+        return new DriveRestoreDownloader.Request(new Identifier(driveFileId), destination);
+    }
+
+    /**
+     * A local stand-in for Drive, which "downloads" files from a map of contents
+     */
+    private static final class FakeRestoreFileSource implements RestoreFileSource {
+
+        final Map<String, String> contents = new HashMap<>();
+        final Map<String, Long> sizes = new HashMap<>();
+        final Map<String, Integer> downloadCounts = new HashMap<>();
+        final Set<String> failures = new HashSet<>();
+        final Map<String, PublishSubject<File>> pendingDownloads = new HashMap<>();
+        final Map<String, File> pendingDestinations = new HashMap<>();
+        boolean isDeferred = false;
+
+        @NonNull
+        @Override
+        public Single<Long> getSize(@NonNull Identifier identifier) {
+            final Long size = sizes.get(identifier.getId());
+            return Single.just(size != null ? size : (long) contents.get(identifier.getId()).getBytes(UTF_8).length);
+        }
+
+        @NonNull
+        @Override
+        public Single<File> download(@NonNull final Identifier identifier, @NonNull final File destination) {
+            if (isDeferred) {
+                final PublishSubject<File> subject = PublishSubject.create();
+                return subject.singleOrError().doOnSubscribe(new Consumer<Disposable>() {
+                    @Override
+                    public void accept(Disposable disposable) throws Exception {
+                        pendingDownloads.put(identifier.getId(), subject);
+                        pendingDestinations.put(identifier.getId(), destination);
+                    }
+                });
+            }
+            return Single.fromCallable(new Callable<File>() {
+                @Override
+                public File call() throws Exception {
+                    final Integer count = downloadCounts.get(identifier.getId());
+                    downloadCounts.put(identifier.getId(), count != null ? count + 1 : 1);
+                    if (failures.contains(identifier.getId())) {
+                        FileUtils.writeStringToFile(destination, "partial", UTF_8);
+                        throw new IOException("Failed to download " + identifier.getId());
+                    }
+                    FileUtils.writeStringToFile(destination, contents.get(identifier.getId()), UTF_8);
+                    return destination;
+                }
+            });
+        }
+
+        void completeDownload(@NonNull String id) throws IOException {
+            final PublishSubject<File> subject = pendingDownloads.remove(id);
+            final File destination = pendingDestinations.remove(id);
+            FileUtils.writeStringToFile(destination, contents.get(id), UTF_8);
+            subject.onNext(destination);
+            subject.onComplete();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+import co.smartreceipts.android.sync.model.impl.Identifier;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class DriveRestoreManifestTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Class under test
+    DriveRestoreManifest mDriveRestoreManifest;
+
+    File mDirectory;
+
+    File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "drive_restore_manifest_test");
+        mFile = new File(new File(mDirectory, "trip"), "1.jpg");
+        FileUtils.writeStringToFile(mFile, "contents", UTF_8);
+        mDriveRestoreManifest = new DriveRestoreManifest(mDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void isCompleteForUnknownFile() {
+        assertFalse(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void markCompleteIsPersisted() throws Exception {
+        mDriveRestoreManifest.markComplete(new Identifier("a"), mFile);
+        assertTrue(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+        assertFalse(mDriveRestoreManifest.isComplete(new Identifier("b"), mFile));
+
+        final DriveRestoreManifest reloadedManifest = new DriveRestoreManifest(mDirectory);
+        assertTrue(reloadedManifest.isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void isCompleteIsFalseForModifiedFile() throws Exception {
+        mDriveRestoreManifest.markComplete(new Identifier("a"), mFile);
+        FileUtils.writeStringToFile(mFile, "modified", UTF_8);
+        assertTrue(mFile.setLastModified(mFile.lastModified() - 10000));
+
+        assertFalse(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+        assertFalse(new DriveRestoreManifest(mDirectory).isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void isCompleteIsFalseForFileWithDifferentLength() throws Exception {
+        mDriveRestoreManifest.markComplete(new Identifier("a"), mFile);
+        final long lastModified = mFile.lastModified();
+        FileUtils.writeStringToFile(mFile, "longer contents", UTF_8);
+        assertTrue(mFile.setLastModified(lastModified));
+
+        assertFalse(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void isCompleteTrustsTheLengthAndLastModifiedTime() throws Exception {
+        mDriveRestoreManifest.markComplete(new Identifier("a"), mFile);
+        final long lastModified = mFile.lastModified();
+
+        // We don't read files whose length and last modified time are unchanged, so we won't notice this edit
+        FileUtils.writeStringToFile(mFile, "modified", UTF_8);
+        assertTrue(mFile.setLastModified(lastModified));
+
+        assertTrue(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+        assertTrue(new DriveRestoreManifest(mDirectory).isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void isCompleteFallsBackToTheChecksumWhenTheLastModifiedTimeChanges() throws Exception {
+        mDriveRestoreManifest.markComplete(new Identifier("a"), mFile);
+        assertTrue(mFile.setLastModified(mFile.lastModified() - 10000));
+
+        assertTrue(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+        assertTrue(new DriveRestoreManifest(mDirectory).isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void pathsMayContainSeparators() throws Exception {
+        final File file = new File(new File(mDirectory, "trip\twith\ttabs"), "1.jpg");
+        FileUtils.writeStringToFile(file, "contents", UTF_8);
+        mDriveRestoreManifest.markComplete(new Identifier("a"), file);
+
+        assertTrue(new DriveRestoreManifest(mDirectory).isComplete(new Identifier("a"), file));
+        assertFalse(new DriveRestoreManifest(mDirectory).isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void tornEntriesAreIgnored() throws Exception {
+        final File manifestFile = new File(mDirectory, DriveRestoreManifest.FILE_NAME);
+        FileUtils.writeStringToFile(manifestFile, "\na\t8\ttrip/1", UTF_8);
+
+        final DriveRestoreManifest manifest = new DriveRestoreManifest(mDirectory);
+        assertFalse(manifest.isComplete(new Identifier("a"), mFile));
+
+        manifest.markComplete(new Identifier("a"), mFile);
+        assertTrue(new DriveRestoreManifest(mDirectory).isComplete(new Identifier("a"), mFile));
+    }
+
+    @Test
+    public void delete() throws Exception {
+        mDriveRestoreManifest.markComplete(new Identifier("a"), mFile);
+        mDriveRestoreManifest.delete();
+
+        assertFalse(mDriveRestoreManifest.isComplete(new Identifier("a"), mFile));
+        assertFalse(new File(mDirectory, DriveRestoreManifest.FILE_NAME).exists());
+    }
+}
@@ -0,0 +1,148 @@
+package co.smartreceipts.android.sync.drive.managers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class DriveUploadQueueTest {
+
+    private static final String DATABASE_NAME = "test_upload_queue.db";
+    private static final long INITIAL_BACKOFF = 10;
+    private static final long MAX_BACKOFF = 50;
+
+    // Class under test
+    DriveUploadQueue mDriveUploadQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        mDriveUploadQueue = newDriveUploadQueue();
+    }
+
+    private static DriveUploadQueue newDriveUploadQueue() {
+        return new DriveUploadQueue(new DriveUploadQueue.OpenHelper(RuntimeEnvironment.application, DATABASE_NAME), new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }, INITIAL_BACKOFF, MAX_BACKOFF);
+    }
+
+    @Test
+    public void emptyByDefault() {
+        assertEquals(Collections.<Integer>emptyList(), mDriveUploadQueue.getReceiptIds());
+        assertEquals(0, mDriveUploadQueue.getNextAttemptTime(1));
+    }
+
+    @Test
+    public void enqueueCoalescesReceipts() {
+        mDriveUploadQueue.enqueue(1);
+        mDriveUploadQueue.enqueue(2);
+        mDriveUploadQueue.enqueue(1);
+
+        assertEquals(Arrays.asList(1, 2), mDriveUploadQueue.getReceiptIds());
+        assertEquals(0, mDriveUploadQueue.getNextAttemptTime(1));
+    }
+
+    @Test
+    public void remove() {
+        mDriveUploadQueue.enqueue(1);
+        mDriveUploadQueue.enqueue(2);
+        mDriveUploadQueue.remove(1);
+
+        assertEquals(Collections.singletonList(2), mDriveUploadQueue.getReceiptIds());
+        assertEquals(Collections.singletonList(2), newDriveUploadQueue().getReceiptIds());
+    }
+
+    @Test
+    public void retainAll() {
+        mDriveUploadQueue.enqueue(1);
+        mDriveUploadQueue.enqueue(2);
+        mDriveUploadQueue.enqueue(3);
+        mDriveUploadQueue.retainAll(Arrays.asList(2, 4));
+
+        assertEquals(Collections.singletonList(2), mDriveUploadQueue.getReceiptIds());
+    }
+
+    @Test
+    public void retryLaterBacksOffExponentially() {
+        mDriveUploadQueue.enqueue(1);
+
+        assertEquals(110, mDriveUploadQueue.retryLater(1, 100));
+        assertEquals(120, mDriveUploadQueue.retryLater(1, 100));
+        assertEquals(140, mDriveUploadQueue.retryLater(1, 100));
+        assertEquals(150, mDriveUploadQueue.retryLater(1, 100));
+        assertEquals(150, mDriveUploadQueue.retryLater(1, 100));
+        assertEquals(150, mDriveUploadQueue.getNextAttemptTime(1));
+    }
+
+    @Test
+    public void enqueuePreservesBackoff() {
+        mDriveUploadQueue.enqueue(1);
+        mDriveUploadQueue.retryLater(1, 100);
+        mDriveUploadQueue.enqueue(1);
+
+        assertEquals(110, mDriveUploadQueue.getNextAttemptTime(1));
+    }
+
+    @Test
+    public void queueSurvivesRestart() {
+        mDriveUploadQueue.enqueue(1);
+        mDriveUploadQueue.enqueue(2);
+        mDriveUploadQueue.retryLater(2, 100);
+        mDriveUploadQueue.retryLater(2, 100);
+
+        final DriveUploadQueue restoredQueue = newDriveUploadQueue();
+        assertEquals(Arrays.asList(1, 2), restoredQueue.getReceiptIds());
+        assertEquals(0, restoredQueue.getNextAttemptTime(1));
+        assertEquals(120, restoredQueue.getNextAttemptTime(2));
+        assertEquals(140, restoredQueue.retryLater(2, 100));
+    }
+
+    @Test
+    public void changesBeforeLoadingTakePrecedence() {
+        mDriveUploadQueue.enqueue(1);
+        mDriveUploadQueue.enqueue(2);
+        mDriveUploadQueue.enqueue(3);
+        mDriveUploadQueue.retryLater(1, 100);
+        mDriveUploadQueue.retryLater(2, 100);
+
+        final List<Runnable> pendingWrites = new ArrayList<>();
+        final DriveUploadQueue restoredQueue = new DriveUploadQueue(new DriveUploadQueue.OpenHelper(RuntimeEnvironment.application, DATABASE_NAME), new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                pendingWrites.add(runnable);
+            }
+        }, INITIAL_BACKOFF, MAX_BACKOFF);
+
+        // Nothing is read until our write executor runs
+        assertEquals(Collections.<Integer>emptyList(), restoredQueue.getReceiptIds());
+        restoredQueue.enqueue(1);
+        restoredQueue.retryLater(2, 200);
+        restoredQueue.retainAll(Arrays.asList(1, 2));
+        for (int i = 0; i < pendingWrites.size(); i++) {
+            pendingWrites.get(i).run();
+        }
+
+        assertEquals(Arrays.asList(1, 2), restoredQueue.getReceiptIds());
+        assertEquals(110, restoredQueue.getNextAttemptTime(1));
+        assertEquals(210, restoredQueue.getNextAttemptTime(2));
+        assertEquals(0, restoredQueue.getNextAttemptTime(3));
+
+        final DriveUploadQueue reloadedQueue = newDriveUploadQueue();
+        assertEquals(Arrays.asList(1, 2), reloadedQueue.getReceiptIds());
+        assertEquals(110, reloadedQueue.getNextAttemptTime(1));
+        assertEquals(210, reloadedQueue.getNextAttemptTime(2));
+    }
+
+}
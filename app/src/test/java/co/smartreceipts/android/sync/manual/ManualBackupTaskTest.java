@@ -0,0 +1,294 @@
+package co.smartreceipts.android.sync.manual;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import co.smartreceipts.android.model.impl.columns.receipts.ReceiptColumnDefinitions;
+import co.smartreceipts.android.persistence.DatabaseHelper;
+import co.smartreceipts.android.persistence.PersistenceManager;
+import co.smartreceipts.android.persistence.database.defaults.WhiteLabelFriendlyTableDefaultsCustomizer;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import co.smartreceipts.android.sync.drive.managers.DriveRestoreManifest;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.ReplaySubject;
+import wb.android.storage.InternalStorageManager;
+import wb.android.storage.SDCardFileManager;
+import wb.android.storage.StorageManager;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ManualBackupTaskTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Class under test
+    ManualBackupTask mManualBackupTask;
+
+    @Mock
+    PersistenceManager mPersistenceManager;
+
+    @Mock
+    StorageManager mStorageManager;
+
+    @Mock
+    UserPreferenceManager mPreferences;
+
+    @Mock
+    WhiteLabelFriendlyTableDefaultsCustomizer mTableDefaultsCustomizer;
+
+    SDCardFileManager mExternalStorageManager;
+
+    InternalStorageManager mInternalStorageManager;
+
+    DatabaseHelper mDatabaseHelper;
+
+    File mPreferencesDirectory;
+
+    byte[] mReceiptImage;
+
+    byte[] mInternalFile;
+
+    byte[] mPreferencesFile;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mPreferences.get(UserPreference.General.DefaultCurrency)).thenReturn("USD");
+
+        mExternalStorageManager = StorageManager.getExternalInstance(RuntimeEnvironment.application);
+        mInternalStorageManager = StorageManager.getInternalInstance(RuntimeEnvironment.application);
+        mPreferencesDirectory = new File(mInternalStorageManager.getRoot().getParentFile(), "shared_prefs");
+        assertTrue(mExternalStorageManager.getRoot().isDirectory() || mExternalStorageManager.getRoot().mkdirs());
+        assertTrue(mInternalStorageManager.getRoot().isDirectory() || mInternalStorageManager.getRoot().mkdirs());
+
+        mDatabaseHelper = new DatabaseHelper(RuntimeEnvironment.application, mStorageManager, mPreferences,
+                mExternalStorageManager.getFile(DatabaseHelper.DATABASE_NAME).getAbsolutePath(), new ReceiptColumnDefinitions(), mTableDefaultsCustomizer);
+        insertReceipt("trip/receipt.jpg", "receipt");
+
+        mReceiptImage = newRandomBytes(100 * 1024);
+        mInternalFile = "internal".getBytes(UTF_8);
+        mPreferencesFile = "<map />".getBytes(UTF_8);
+        FileUtils.writeByteArrayToFile(getReceiptImageFile(), mReceiptImage);
+        FileUtils.writeByteArrayToFile(getInternalFile(), mInternalFile);
+        FileUtils.writeByteArrayToFile(getPreferencesFile(), mPreferencesFile);
+
+        when(mPersistenceManager.getExternalStorageManager()).thenReturn(mExternalStorageManager);
+        when(mPersistenceManager.getInternalStorageManager()).thenReturn(mInternalStorageManager);
+        when(mPersistenceManager.getDatabase()).thenReturn(mDatabaseHelper);
+
+        mManualBackupTask = new ManualBackupTask(mPersistenceManager, Schedulers.trampoline(), Schedulers.trampoline());
+    }
+
+    @After
+    public void tearDown() {
+        mDatabaseHelper.close();
+        FileUtils.deleteQuietly(mExternalStorageManager.getRoot());
+        FileUtils.deleteQuietly(mInternalStorageManager.getRoot());
+        FileUtils.deleteQuietly(getPreferencesFile());
+    }
+
+    @Test
+    public void backupDataWritesTheDatabaseFollowedByPreferencesInternalFilesAndTrips() throws Exception {
+        final TestObserver<Uri> testObserver = mManualBackupTask.backupData().test();
+
+        testObserver.assertComplete();
+        testObserver.assertNoErrors();
+        final File exportFile = new File(testObserver.values().get(0).getPath());
+        assertTrue(exportFile.getName().endsWith("_SmartReceipts.smr"));
+        assertEquals(Arrays.asList(ManualBackupTask.DATABASE_EXPORT_NAME, "shared_prefs/test_prefs.xml", "Internal/internal.txt", "trip/receipt.jpg"),
+                getEntryNames(exportFile));
+        assertEquals(Collections.<String>emptyList(), getPartialBackups());
+    }
+
+    @Test
+    public void backupDataExcludesTheLiveDatabasePreviousBackupsAndLeftoverFiles() throws Exception {
+        final List<String> excludedFiles = Arrays.asList("receipts.db-journal", "2017-01-01_SmartReceipts.smr", "backup123.smr.partial",
+                ManualBackupTask.DATABASE_EXPORT_NAME, "shared_prefs/leftover.xml", "Internal/leftover.txt", DriveRestoreManifest.FILE_NAME,
+                "trip/receipts.db");
+        for (final String excludedFile : excludedFiles) {
+            FileUtils.writeByteArrayToFile(mExternalStorageManager.getFile(excludedFile), "excluded".getBytes(UTF_8));
+        }
+
+        final TestObserver<Uri> testObserver = mManualBackupTask.backupData().test();
+
+        testObserver.assertComplete();
+        final List<String> entryNames = getEntryNames(new File(testObserver.values().get(0).getPath()));
+        assertEquals(Arrays.asList(ManualBackupTask.DATABASE_EXPORT_NAME, "shared_prefs/test_prefs.xml", "Internal/internal.txt", "trip/receipt.jpg"), entryNames);
+        final File exportedDatabase = new File(RuntimeEnvironment.application.getCacheDir(), "exported.db");
+        try {
+            final ZipFile zipFile = new ZipFile(new File(testObserver.values().get(0).getPath()));
+            try {
+                FileUtils.copyInputStreamToFile(zipFile.getInputStream(zipFile.getEntry(ManualBackupTask.DATABASE_EXPORT_NAME)), exportedDatabase);
+            } finally {
+                zipFile.close();
+            }
+            // Our leftover copy must not replace the real database
+            assertArrayEquals(FileUtils.readFileToByteArray(mExternalStorageManager.getFile(DatabaseHelper.DATABASE_NAME)), FileUtils.readFileToByteArray(exportedDatabase));
+        } finally {
+            FileUtils.deleteQuietly(exportedDatabase);
+        }
+    }
+
+    @Test
+    public void backupDataReportsProgress() {
+        final TestObserver<Integer> progressObserver = mManualBackupTask.getProgress().test();
+
+        mManualBackupTask.backupData().test().assertComplete();
+
+        final List<Integer> progress = progressObserver.values();
+        assertEquals(Integer.valueOf(0), progress.get(0));
+        assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+        assertTrue(progress.size() > 2);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i - 1) <= progress.get(i));
+        }
+    }
+
+    @Test
+    public void cancelFailsTheBackupAndDeletesThePartialFile() throws Exception {
+        mManualBackupTask.getProgress().subscribe(new Consumer<Integer>() {
+            @Override
+            public void accept(Integer progress) throws Exception {
+                if (progress > 0 && progress < 100) {
+                    mManualBackupTask.cancel();
+                }
+            }
+        });
+
+        final TestObserver<Uri> testObserver = mManualBackupTask.backupData().test();
+
+        testObserver.assertError(InterruptedIOException.class);
+        assertEquals(Collections.<String>emptyList(), getPartialBackups());
+        for (final String name : mExternalStorageManager.getRoot().list()) {
+            assertFalse(name.endsWith(".smr"));
+        }
+    }
+
+    @Test
+    public void backupDataStartsANewBackupOnceCancelled() {
+        final ReplaySubject<Uri> firstBackup = mManualBackupTask.backupData();
+        assertSame(firstBackup, mManualBackupTask.backupData());
+
+        mManualBackupTask.cancel();
+        final ReplaySubject<Uri> secondBackup = mManualBackupTask.backupData();
+
+        assertNotSame(firstBackup, secondBackup);
+        secondBackup.test().assertComplete();
+        assertTrue(new File(secondBackup.getValue().getPath()).exists());
+    }
+
+    @Test
+    public void backupCanBeRestored() throws Exception {
+        final TestObserver<Uri> backupObserver = mManualBackupTask.backupData().test();
+        backupObserver.assertComplete();
+
+        // Remove everything that we backed up
+        mDatabaseHelper.getWritableDatabase().delete(ReceiptsTable.TABLE_NAME, null, null);
+        assertEquals(0, getReceiptCount());
+        assertTrue(getReceiptImageFile().delete());
+        assertTrue(getInternalFile().delete());
+        assertTrue(getPreferencesFile().delete());
+
+        final ManualRestoreTask manualRestoreTask = new ManualRestoreTask(mPersistenceManager, RuntimeEnvironment.application, Schedulers.trampoline(), Schedulers.trampoline());
+        final TestObserver<Boolean> restoreObserver = manualRestoreTask.restoreData(backupObserver.values().get(0), false).test();
+
+        restoreObserver.assertValue(true);
+        restoreObserver.assertComplete();
+        assertEquals(1, getReceiptCount());
+        assertArrayEquals(mReceiptImage, FileUtils.readFileToByteArray(getReceiptImageFile()));
+        assertArrayEquals(mInternalFile, FileUtils.readFileToByteArray(getInternalFile()));
+        assertArrayEquals(mPreferencesFile, FileUtils.readFileToByteArray(getPreferencesFile()));
+    }
+
+    private File getReceiptImageFile() {
+        return mExternalStorageManager.getFile("trip/receipt.jpg");
+    }
+
+    private File getInternalFile() {
+        return new File(mInternalStorageManager.getRoot(), "internal.txt");
+    }
+
+    private File getPreferencesFile() {
+        return new File(mPreferencesDirectory, "test_prefs.xml");
+    }
+
+    private List<String> getPartialBackups() {
+        final List<String> partialBackups = new ArrayList<>();
+        for (final String name : mExternalStorageManager.getRoot().list()) {
+            if (name.endsWith(".smr.partial")) {
+                partialBackups.add(name);
+            }
+        }
+        return partialBackups;
+    }
+
+    private void insertReceipt(String path, String name) {
+        final ContentValues values = new ContentValues();
+        values.put(ReceiptsTable.COLUMN_PATH, path);
+        values.put(ReceiptsTable.COLUMN_NAME, name);
+        values.put(ReceiptsTable.COLUMN_PARENT, "trip");
+        values.put(ReceiptsTable.COLUMN_DATE, 0L);
+        values.put(ReceiptsTable.COLUMN_PRICE, 1.00);
+        mDatabaseHelper.getWritableDatabase().insert(ReceiptsTable.TABLE_NAME, null, values);
+    }
+
+    private long getReceiptCount() {
+        return DatabaseUtils.queryNumEntries(mDatabaseHelper.getReadableDatabase(), ReceiptsTable.TABLE_NAME);
+    }
+
+    private static byte[] newRandomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static List<String> getEntryNames(File file) throws IOException {
+        final ZipFile zipFile = new ZipFile(file);
+        try {
+            final List<String> names = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+            return names;
+        } finally {
+            zipFile.close();
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package co.smartreceipts.android.workers.reports;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReportOrchestratorTest {
+
+    private static final File PDF = new File("report.pdf");
+    private static final File CSV = new File("report.csv");
+    private static final File ZIP = new File("report.zip");
+
+    // Class under test
+    ReportOrchestrator<String> mReportOrchestrator;
+
+    @Mock
+    ReportOrchestrator.Listener<String> mListener;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mReportOrchestrator = new ReportOrchestrator<>(Executors.newFixedThreadPool(2), mListener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mReportOrchestrator.close();
+    }
+
+    @Test
+    public void generateAllFormats() {
+        final Map<String, Callable<File>> generators = new LinkedHashMap<>();
+        generators.put("pdf", newGenerator(PDF));
+        generators.put("csv", newGenerator(CSV));
+
+        final ReportOrchestrator.Results<String> results = mReportOrchestrator.generate(generators);
+
+        assertEquals(PDF, results.getFile("pdf"));
+        assertEquals(CSV, results.getFile("csv"));
+        assertNull(results.getFailure("pdf"));
+        assertNull(results.getFailure("csv"));
+        verify(mListener).onFormatStarted("pdf");
+        verify(mListener).onFormatStarted("csv");
+        verify(mListener).onFormatCompleted("pdf", PDF);
+        verify(mListener).onFormatCompleted("csv", CSV);
+    }
+
+    @Test
+    public void failuresAreIsolatedToTheirFormat() {
+        final IOException exception = new IOException("Test");
+        final OutOfMemoryError outOfMemoryError = new OutOfMemoryError("Test");
+        final Map<String, Callable<File>> generators = new LinkedHashMap<>();
+        generators.put("pdf", new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                throw exception;
+            }
+        });
+        generators.put("zip", new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                throw outOfMemoryError;
+            }
+        });
+        generators.put("csv", newGenerator(CSV));
+
+        final ReportOrchestrator.Results<String> results = mReportOrchestrator.generate(generators);
+
+        assertNull(results.getFile("pdf"));
+        assertEquals(exception, results.getFailure("pdf"));
+        assertNull(results.getFile("zip"));
+        assertEquals(outOfMemoryError, results.getFailure("zip"));
+        assertEquals(CSV, results.getFile("csv"));
+        assertNull(results.getFailure("csv"));
+        verify(mListener).onFormatFailed("pdf", exception);
+        verify(mListener).onFormatFailed("zip", outOfMemoryError);
+        verify(mListener).onFormatCompleted("csv", CSV);
+    }
+
+    @Test
+    public void formatsAreGeneratedConcurrently() {
+        // Each generator waits for the other to start, which would time out if they were run sequentially
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Map<String, Callable<File>> generators = new LinkedHashMap<>();
+        generators.put("pdf", newAwaitingGenerator(latch, PDF));
+        generators.put("csv", newAwaitingGenerator(latch, CSV));
+
+        final ReportOrchestrator.Results<String> results = mReportOrchestrator.generate(generators);
+
+        assertEquals(PDF, results.getFile("pdf"));
+        assertEquals(CSV, results.getFile("csv"));
+    }
+
+    @Test
+    public void imageHeavyFormatsAreGeneratedOneAtATime() {
+        mReportOrchestrator.close();
+        mReportOrchestrator = new ReportOrchestrator<>(Executors.newFixedThreadPool(3), mListener);
+
+        // The csv waits for the first pdf to start, so it must be built alongside the image heavy formats
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicInteger runningImageHeavyFormats = new AtomicInteger(0);
+        final AtomicInteger maxRunningImageHeavyFormats = new AtomicInteger(0);
+        final Map<String, Callable<File>> generators = new LinkedHashMap<>();
+        generators.put("pdf", newImageHeavyGenerator(runningImageHeavyFormats, maxRunningImageHeavyFormats, latch, PDF));
+        generators.put("zip", newImageHeavyGenerator(runningImageHeavyFormats, maxRunningImageHeavyFormats, null, ZIP));
+        generators.put("csv", newAwaitingGenerator(latch, CSV));
+
+        final ReportOrchestrator.Results<String> results = mReportOrchestrator.generate(generators, new HashSet<>(Arrays.asList("pdf", "zip")));
+
+        assertEquals(PDF, results.getFile("pdf"));
+        assertEquals(ZIP, results.getFile("zip"));
+        assertEquals(CSV, results.getFile("csv"));
+        assertEquals(1, maxRunningImageHeavyFormats.get());
+    }
+
+    private static Callable<File> newImageHeavyGenerator(final AtomicInteger running, final AtomicInteger maxRunning, final CountDownLatch latch, final File file) {
+        return new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                final int nowRunning = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), nowRunning));
+                try {
+                    if (latch != null) {
+                        latch.countDown();
+                        assertTrue(latch.await(5, TimeUnit.SECONDS));
+                    } else {
+                        Thread.sleep(50);
+                    }
+                    return file;
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    private static Callable<File> newGenerator(final File file) {
+        return new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return file;
+            }
+        };
+    }
+
+    private static Callable<File> newAwaitingGenerator(final CountDownLatch latch, final File file) {
+        return new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                latch.countDown();
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+                return file;
+            }
+        };
+    }
+
+}
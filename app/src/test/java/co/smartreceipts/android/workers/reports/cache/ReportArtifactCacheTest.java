@@ -0,0 +1,105 @@
+package co.smartreceipts.android.workers.reports.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReportArtifactCacheTest {
+
+    private static final String TYPE = "PDF_FULL";
+    private static final String FINGERPRINT = "abc123";
+
+    // Class under test
+    ReportArtifactCache mReportArtifactCache;
+
+    File mTripDirectory;
+    File mCacheDirectory;
+    File mArtifact;
+
+    @Before
+    public void setUp() throws Exception {
+        mTripDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "trip");
+        mCacheDirectory = new File(RuntimeEnvironment.application.getCacheDir(), ReportArtifactCache.DIRECTORY_NAME);
+        mArtifact = new File(mTripDirectory, "trip.pdf");
+        FileUtils.writeByteArrayToFile(mArtifact, new byte[] {1, 2, 3});
+        mReportArtifactCache = new ReportArtifactCache(RuntimeEnvironment.application, mTripDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(mTripDirectory);
+        FileUtils.deleteQuietly(mCacheDirectory);
+    }
+
+    @Test
+    public void getWithoutPut() {
+        assertNull(mReportArtifactCache.get(TYPE, FINGERPRINT));
+    }
+
+    @Test
+    public void putThenGet() {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+
+        assertEquals(mArtifact.getAbsoluteFile(), mReportArtifactCache.get(TYPE, FINGERPRINT));
+        assertTrue(new File(mCacheDirectory, mTripDirectory.getName()).isDirectory());
+        assertFalse(new File(mTripDirectory, ReportArtifactCache.DIRECTORY_NAME).exists());
+    }
+
+    @Test
+    public void getWithDifferentFingerprint() {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+
+        assertNull(mReportArtifactCache.get(TYPE, "def456"));
+    }
+
+    @Test
+    public void getForDifferentTrip() {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+
+        assertNull(new ReportArtifactCache(RuntimeEnvironment.application, new File(mTripDirectory.getParentFile(), "other_trip")).get(TYPE, FINGERPRINT));
+    }
+
+    @Test
+    public void getWithDifferentType() {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+
+        assertNull(mReportArtifactCache.get("CSV", FINGERPRINT));
+    }
+
+    @Test
+    public void getAfterArtifactWasModified() throws Exception {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+        FileUtils.writeByteArrayToFile(mArtifact, new byte[] {1, 2, 3, 4});
+
+        assertNull(mReportArtifactCache.get(TYPE, FINGERPRINT));
+    }
+
+    @Test
+    public void getAfterArtifactWasDeleted() {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+        assertTrue(mArtifact.delete());
+
+        assertNull(mReportArtifactCache.get(TYPE, FINGERPRINT));
+    }
+
+    @Test
+    public void getAfterInvalidate() {
+        mReportArtifactCache.put(TYPE, FINGERPRINT, mArtifact);
+        mReportArtifactCache.invalidate(TYPE);
+
+        assertNull(mReportArtifactCache.get(TYPE, FINGERPRINT));
+    }
+
+}
@@ -0,0 +1,72 @@
+package co.smartreceipts.android.workers.reports.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Collections;
+import java.util.List;
+
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import co.smartreceipts.android.utils.ReceiptUtils;
+import co.smartreceipts.android.utils.TripUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReportFingerprintTest {
+
+    @Mock
+    UserPreferenceManager mUserPreferenceManager;
+
+    Trip mTrip;
+
+    List<Receipt> mReceipts;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mTrip = TripUtils.newDefaultTrip();
+        mReceipts = Collections.singletonList(ReceiptUtils.newDefaultReceipt(RuntimeEnvironment.application));
+        when(mUserPreferenceManager.get(UserPreference.ReportOutput.PdfImageDpi)).thenReturn(150);
+    }
+
+    @Test
+    public void sameInputsProduceSameFingerprint() {
+        assertEquals(newFingerprint("PDF_FULL", mReceipts), newFingerprint("PDF_FULL", mReceipts));
+    }
+
+    @Test
+    public void artifactTypeChangesFingerprint() {
+        assertNotEquals(newFingerprint("PDF_FULL", mReceipts), newFingerprint("CSV", mReceipts));
+    }
+
+    @Test
+    public void receiptContentChangesFingerprint() {
+        final Receipt renamed = ReceiptUtils.newDefaultReceiptBuilderFactory(RuntimeEnvironment.application).setName("Renamed").build();
+
+        assertNotEquals(newFingerprint("PDF_FULL", mReceipts), newFingerprint("PDF_FULL", Collections.singletonList(renamed)));
+    }
+
+    @Test
+    public void preferenceChangesFingerprint() {
+        final String fingerprint = newFingerprint("PDF_FULL", mReceipts);
+        when(mUserPreferenceManager.get(UserPreference.ReportOutput.PdfImageDpi)).thenReturn(300);
+
+        assertNotEquals(fingerprint, newFingerprint("PDF_FULL", mReceipts));
+    }
+
+    private String newFingerprint(String artifactType, List<Receipt> receipts) {
+        return new ReportFingerprint(artifactType).addTrip(mTrip).addReceipts(receipts, true).addPreferences(mUserPreferenceManager).build();
+    }
+
+}
@@ -0,0 +1,130 @@
+package co.smartreceipts.android.workers.reports.csv;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.smartreceipts.android.model.Column;
+import co.smartreceipts.android.utils.log.Logger;
+
+/**
+ * Compares the peak heap usage and throughput of building a 100k row CSV in memory against streaming it to a file.
+ * This is ignored by default, since the results depend heavily on the machine and are only meaningful when it is
+ * run in isolation (eg via {@code ./gradlew test --tests *CsvTableGeneratorBenchmark}, after removing the
+ * {@link Ignore} annotation)
+ */
+@Ignore("Benchmark. Run manually")
+@RunWith(RobolectricTestRunner.class)
+public class CsvTableGeneratorBenchmark {
+
+    private static final int ROW_COUNT = 100000;
+    private static final int ITERATIONS = 5;
+
+    CsvTableGenerator<String> mCsvTableGenerator;
+
+    List<String> mRows;
+
+    File mOutputFile = new File("benchmark.csv");
+
+    @Before
+    public void setUp() throws Exception {
+        final List<Column<String>> columns = Arrays.<Column<String>>asList(new CsvTableGeneratorTest.ValueColumn(1, "Value"),
+                new CsvTableGeneratorTest.LengthColumn(2, "Length"), new CsvTableGeneratorTest.ValueColumn(3, "Value, again"));
+        mCsvTableGenerator = new CsvTableGenerator<>(columns, true, true);
+        mRows = new ArrayList<>(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            mRows.add((i % 10 == 0) ? "Receipt \"" + i + "\", with a quote" : "Receipt number " + i);
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @After
+    public void tearDown() throws Exception {
+        mOutputFile.delete();
+    }
+
+    @Test
+    public void inMemory() throws Exception {
+        run("In memory", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new CsvReportWriter(mOutputFile).write(mCsvTableGenerator.generate(mRows));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void streaming() throws Exception {
+        run("Streaming", new Runnable() {
+            @Override
+            public void run() {
+                Writer writer = null;
+                try {
+                    writer = new CsvReportWriter(mOutputFile).openWriter();
+                    mCsvTableGenerator.generate(mRows, writer);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    IOUtils.closeQuietly(writer);
+                }
+            }
+        });
+    }
+
+    private void run(String name, Runnable benchmark) throws Exception {
+        benchmark.run(); // Warm up
+
+        final Runtime runtime = Runtime.getRuntime();
+        final AtomicBoolean isRunning = new AtomicBoolean(true);
+        final AtomicLong peakHeap = new AtomicLong();
+        System.gc();
+        final long baselineHeap = runtime.totalMemory() - runtime.freeMemory();
+        final Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (isRunning.get()) {
+                    final long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+                    if (usedHeap > peakHeap.get()) {
+                        peakHeap.set(usedHeap);
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        sampler.start();
+
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            benchmark.run();
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        isRunning.set(false);
+        sampler.join();
+
+        final double rowsPerSecond = (double) ROW_COUNT * ITERATIONS / (elapsedNanos / 1e9);
+        Logger.info(this, "{}: {} rows/s; peak heap above baseline: {} KB; file size: {} KB",
+                name, Math.round(rowsPerSecond), (peakHeap.get() - baselineHeap) / 1024, mOutputFile.length() / 1024);
+    }
+
+}
@@ -0,0 +1,152 @@
+package co.smartreceipts.android.workers.reports.csv;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import co.smartreceipts.android.filters.Filter;
+import co.smartreceipts.android.model.Accumulator;
+import co.smartreceipts.android.model.Column;
+import co.smartreceipts.android.model.impl.columns.AbstractColumnImpl;
+import co.smartreceipts.android.model.impl.columns.ConstantFooterAccumulator;
+import co.smartreceipts.android.sync.model.impl.DefaultSyncState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class CsvTableGeneratorTest {
+
+    // Class under test
+    CsvTableGenerator<String> mCsvTableGenerator;
+
+    List<Column<String>> mColumns;
+
+    @Before
+    public void setUp() throws Exception {
+        mColumns = Arrays.<Column<String>>asList(new ValueColumn(1, "Value"), new LengthColumn(2, "Length"));
+        mCsvTableGenerator = new CsvTableGenerator<>(mColumns, true, true);
+    }
+
+    @Test
+    public void generateEmptyList() {
+        assertEquals("", mCsvTableGenerator.generate(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void generateWithHeadersAndFooters() {
+        assertEquals("Value,Length,\nabc,3,\nde,2,\nTotal,5,\n", mCsvTableGenerator.generate(Arrays.asList("abc", "de")));
+    }
+
+    @Test
+    public void generateWithoutHeadersOrFooters() {
+        mCsvTableGenerator = new CsvTableGenerator<>(mColumns, false, false);
+        assertEquals("abc,3,\n", mCsvTableGenerator.generate(Collections.singletonList("abc")));
+    }
+
+    @Test
+    public void generateWithFilter() {
+        mCsvTableGenerator = new CsvTableGenerator<>(mColumns, new Filter<String>() {
+            @Override
+            public boolean accept(String s) {
+                return s.length() > 2;
+            }
+        }, false, true);
+        assertEquals("abc,3,\n\nTotal,3,\n", mCsvTableGenerator.generate(Arrays.asList("abc", "de")));
+    }
+
+    @Test
+    public void generateEscapesSpecialCharacters() {
+        mCsvTableGenerator = new CsvTableGenerator<>(mColumns, false, false);
+        final List<String> rows = Arrays.asList("a,b", "say \"hi\"", "line\nbreak", "windows\r\nbreak", "\"");
+        final String expected = "\"a,b\",3,\n"
+                + "\"say \"\"hi\"\"\",8,\n"
+                + "\"line\nbreak\",10,\n"
+                + "\"windows\r\nbreak\",14,\n"
+                + "\"\"\"\",1,\n";
+        assertEquals(expected, mCsvTableGenerator.generate(rows));
+    }
+
+    @Test
+    public void streamingMatchesString() throws Exception {
+        final List<String> rows = Arrays.asList("abc", "a,b", "say \"hi\"", "");
+        final StringWriter stringWriter = new StringWriter();
+        mCsvTableGenerator.generate(rows, stringWriter);
+        assertEquals(mCsvTableGenerator.generate(rows), stringWriter.toString());
+    }
+
+    @Test
+    public void mustBeQuoted() {
+        assertFalse(CsvTableGenerator.mustBeQuoted(""));
+        assertFalse(CsvTableGenerator.mustBeQuoted("plain text; with 'other' punctuation\r"));
+        assertTrue(CsvTableGenerator.mustBeQuoted(","));
+        assertTrue(CsvTableGenerator.mustBeQuoted("\""));
+        assertTrue(CsvTableGenerator.mustBeQuoted("\n"));
+        assertTrue(CsvTableGenerator.mustBeQuoted("\r\n"));
+    }
+
+    static class ValueColumn extends AbstractColumnImpl<String> {
+
+        ValueColumn(int id, @NonNull String name) {
+            super(id, name, new DefaultSyncState());
+        }
+
+        @Override
+        public String getValue(@NonNull String rowItem) {
+            return rowItem;
+        }
+
+        @NonNull
+        @Override
+        public Accumulator<String, String> beginFooter() {
+            return new ConstantFooterAccumulator<>("Total");
+        }
+    }
+
+    static class LengthColumn extends AbstractColumnImpl<String> {
+
+        LengthColumn(int id, @NonNull String name) {
+            super(id, name, new DefaultSyncState());
+        }
+
+        @Override
+        public String getValue(@NonNull String rowItem) {
+            return Integer.toString(rowItem.length());
+        }
+
+        @NonNull
+        @Override
+        public Accumulator<String, String> beginFooter() {
+            return new Accumulator<String, String>() {
+
+                private int total = 0;
+
+                @Override
+                public void accept(@NonNull String value) {
+                    total += value.length();
+                }
+
+                @Override
+                public void merge(@NonNull Accumulator<String, String> other) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @NonNull
+                @Override
+                public String finish() {
+                    return Integer.toString(total);
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package co.smartreceipts.android.workers.reports.pdf.fonts;
+
+import com.tom_roush.pdfbox.pdmodel.font.PDFont;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PdfFontMetricsTest {
+
+    private static final int SIZE = 10;
+    private static final float EPSILON = 0.0001f;
+
+    // Class under test
+    PdfFontMetrics mPdfFontMetrics;
+
+    @Mock
+    PDFont mFont;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mFont.getStringWidth("a")).thenReturn(500f);
+        when(mFont.getStringWidth("b")).thenReturn(600f);
+        when(mFont.getStringWidth("é")).thenReturn(550f);
+        when(mFont.getStringWidth("中")).thenReturn(1000f);
+        mPdfFontMetrics = new PdfFontMetrics(mFont, SIZE);
+    }
+
+    @Test
+    public void getStringWidthSumsGlyphAdvances() throws Exception {
+        assertEquals(16f, mPdfFontMetrics.getStringWidth("aab"), EPSILON);
+        assertEquals(20.5f, mPdfFontMetrics.getStringWidth("é中a"), EPSILON);
+        assertEquals(0f, mPdfFontMetrics.getStringWidth(""), EPSILON);
+    }
+
+    @Test
+    public void eachGlyphIsMeasuredOnce() throws Exception {
+        mPdfFontMetrics.getStringWidth("ab");
+        mPdfFontMetrics.getStringWidth("ba");
+        mPdfFontMetrics.getStringWidth("abab");
+        mPdfFontMetrics.getStringWidth("中中");
+        mPdfFontMetrics.getStringWidth("中");
+
+        verify(mFont, times(1)).getStringWidth("a");
+        verify(mFont, times(1)).getStringWidth("b");
+        verify(mFont, times(1)).getStringWidth("中");
+    }
+
+    @Test
+    public void stringWidthsAreCached() throws Exception {
+        assertEquals(11f, mPdfFontMetrics.getStringWidth("ab"), EPSILON);
+        when(mFont.getStringWidth(anyString())).thenReturn(0f);
+        assertEquals(11f, mPdfFontMetrics.getStringWidth("ab"), EPSILON);
+    }
+
+    @Test
+    public void getStringWidthFallsBackForGlyphsThatCannotBeEncoded() throws Exception {
+        when(mFont.getStringWidth("Ж")).thenThrow(new IllegalArgumentException("No glyph"));
+        when(mFont.getStringWidth("a\uFFFD\uFFFD")).thenReturn(1500f);
+
+        assertEquals(15f, mPdfFontMetrics.getStringWidth("aЖ"), EPSILON);
+    }
+
+}
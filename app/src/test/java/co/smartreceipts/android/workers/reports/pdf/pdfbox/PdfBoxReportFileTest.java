@@ -0,0 +1,29 @@
+package co.smartreceipts.android.workers.reports.pdf.pdfbox;
+
+import com.tom_roush.pdfbox.io.MemoryUsageSetting;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PdfBoxReportFileTest {
+
+    @Test
+    public void documentSpillsOverToAScratchFileInOurCacheDirectory() {
+        final MemoryUsageSetting memoryUsageSetting = PdfBoxReportFile.newMemoryUsageSetting(RuntimeEnvironment.application);
+
+        assertTrue(memoryUsageSetting.useMainMemory());
+        assertTrue(memoryUsageSetting.isMainMemoryRestricted());
+        assertEquals(PdfBoxReportFile.MAX_MAIN_MEMORY_BYTES, memoryUsageSetting.getMaxMainMemoryBytes());
+        assertTrue(memoryUsageSetting.useTempFile());
+        assertFalse(memoryUsageSetting.isStorageRestricted());
+        assertEquals(RuntimeEnvironment.application.getCacheDir(), memoryUsageSetting.getTempDir());
+    }
+
+}
@@ -0,0 +1,118 @@
+package co.smartreceipts.android.workers.reports.pdf.pdfbox;
+
+import com.tom_roush.pdfbox.pdmodel.PDDocument;
+import com.tom_roush.pdfbox.pdmodel.PDPageContentStream;
+import com.tom_roush.pdfbox.pdmodel.common.PDRectangle;
+import com.tom_roush.pdfbox.util.awt.AWTColor;
+
+import org.apache.commons.io.FileUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+
+import co.smartreceipts.android.utils.log.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class PdfBoxWriterTest {
+
+    // Class under test
+    PdfBoxWriter mPdfBoxWriter;
+
+    @Mock
+    PdfBoxContext mContext;
+
+    @Mock
+    PdfBoxPageDecorations mPageDecorations;
+
+    PDDocument mDocument;
+
+    File mOutputFile;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getPageSize()).thenReturn(PDRectangle.LETTER);
+        when(mContext.getPageMarginHorizontal()).thenReturn(10f);
+        when(mContext.getPageMarginVertical()).thenReturn(10f);
+        when(mPageDecorations.getHeaderHeight()).thenReturn(20f);
+        when(mPageDecorations.getFooterHeight()).thenReturn(20f);
+
+        mDocument = new PDDocument(PdfBoxReportFile.newMemoryUsageSetting(RuntimeEnvironment.application));
+        mPdfBoxWriter = new PdfBoxWriter(mDocument, mContext, mPageDecorations);
+        mOutputFile = new File(RuntimeEnvironment.application.getCacheDir(), "pdf_box_writer_test.pdf");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDocument.close();
+        FileUtils.deleteQuietly(mOutputFile);
+    }
+
+    @Test
+    public void pagesAreAddedToTheDocumentAsTheyAreCreated() throws Exception {
+        assertEquals(0, mDocument.getNumberOfPages());
+
+        mPdfBoxWriter.newPage();
+        assertEquals(1, mDocument.getNumberOfPages());
+        verify(mPageDecorations).writeHeader(any(PDPageContentStream.class));
+        verify(mPageDecorations).writeFooter(any(PDPageContentStream.class));
+
+        mPdfBoxWriter.newPage();
+        assertEquals(2, mDocument.getNumberOfPages());
+
+        mPdfBoxWriter.writeAndClose();
+        assertEquals(2, mDocument.getNumberOfPages());
+        verify(mPageDecorations, times(2)).writeHeader(any(PDPageContentStream.class));
+        verify(mPageDecorations, times(2)).writeFooter(any(PDPageContentStream.class));
+    }
+
+    @Test
+    public void writeAndCloseWithoutAnyPages() throws Exception {
+        mPdfBoxWriter.writeAndClose();
+        assertEquals(0, mDocument.getNumberOfPages());
+    }
+
+    @Test
+    @Ignore("Relies on System.gc() to measure the heap, so this is too slow and noisy for every build. Run it manually when changing how pages are buffered")
+    public void renderingManyPagesUsesABoundedHeap() throws Exception {
+        final int pageCount = 2000;
+        final long maxHeapGrowthBytes = 2 * PdfBoxReportFile.MAX_MAIN_MEMORY_BYTES;
+        final AWTColor color = new AWTColor(0, 122, 255);
+        final Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        final long initialHeapBytes = runtime.totalMemory() - runtime.freeMemory();
+        for (int page = 0; page < pageCount; page++) {
+            mPdfBoxWriter.newPage();
+            for (int row = 0; row < 40; row++) {
+                mPdfBoxWriter.printRectangle(color, 10, 30 + 15 * row, 500, 10);
+            }
+        }
+        mPdfBoxWriter.writeAndClose();
+        System.gc();
+        final long heapGrowthBytes = runtime.totalMemory() - runtime.freeMemory() - initialHeapBytes;
+        mDocument.save(mOutputFile);
+
+        Logger.info(this, "Rendered {} pages with {} bytes of heap growth", pageCount, heapGrowthBytes);
+        assertEquals(pageCount, mDocument.getNumberOfPages());
+        assertTrue(mOutputFile.length() > 0);
+        assertTrue(heapGrowthBytes < maxHeapGrowthBytes);
+    }
+
+}
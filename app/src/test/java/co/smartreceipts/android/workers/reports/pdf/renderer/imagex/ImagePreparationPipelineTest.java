@@ -0,0 +1,170 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ImagePreparationPipelineTest {
+
+    private static final int DPI = 72;
+    private static final int SIZE = 10;
+    private static final long BYTES_PER_IMAGE = SIZE * SIZE * 4 * 6;
+
+    private static final File FILE_0 = new File("0.jpg");
+    private static final File FILE_1 = new File("1.jpg");
+    private static final File FILE_2 = new File("2.jpg");
+    private static final File FILE_3 = new File("3.jpg");
+    private static final File FILE_4 = new File("4.jpg");
+
+    // Class under test
+    ImagePreparationPipeline mImagePreparationPipeline;
+
+    @Mock
+    ImagePreparer mImagePreparer;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mImagePreparer.prepare(any(File.class), anyInt(), anyInt())).thenReturn(new byte[] {1});
+        when(mImagePreparer.prepare(FILE_2, SIZE, SIZE)).thenReturn(new byte[] {2});
+        mImagePreparationPipeline = new ImagePreparationPipeline(new DirectExecutorService(), mImagePreparer, 2 * BYTES_PER_IMAGE, DPI);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mImagePreparationPipeline.close();
+    }
+
+    @Test
+    public void enqueueConvertsPointsToPixels() throws Exception {
+        final ImagePreparationPipeline pipeline = new ImagePreparationPipeline(new DirectExecutorService(), mImagePreparer, BYTES_PER_IMAGE, 144);
+        pipeline.enqueue(FILE_0, 10.2f, 20f);
+        verify(mImagePreparer).prepare(FILE_0, 21, 40);
+    }
+
+    @Test
+    public void preparesAheadOfTheWriterWithinTheMemoryBudget() throws Exception {
+        assertEquals(0, mImagePreparationPipeline.enqueue(FILE_0, SIZE, SIZE));
+        assertEquals(1, mImagePreparationPipeline.enqueue(FILE_1, SIZE, SIZE));
+        assertEquals(2, mImagePreparationPipeline.enqueue(FILE_2, SIZE, SIZE));
+        assertEquals(3, mImagePreparationPipeline.enqueue(FILE_3, SIZE, SIZE));
+
+        verify(mImagePreparer).prepare(FILE_0, SIZE, SIZE);
+        verify(mImagePreparer).prepare(FILE_1, SIZE, SIZE);
+        verify(mImagePreparer, never()).prepare(FILE_2, SIZE, SIZE);
+
+        mImagePreparationPipeline.take(0);
+        verify(mImagePreparer).prepare(FILE_2, SIZE, SIZE);
+        verify(mImagePreparer, never()).prepare(FILE_3, SIZE, SIZE);
+
+        mImagePreparationPipeline.take(1);
+        assertArrayEquals(new byte[] {2}, mImagePreparationPipeline.take(2));
+        verify(mImagePreparer).prepare(FILE_3, SIZE, SIZE);
+    }
+
+    @Test
+    public void takeSubmitsItsOwnRequestEvenWhenOverBudget() throws Exception {
+        for (final File file : new File[] {FILE_0, FILE_1, FILE_2, FILE_3, FILE_4}) {
+            mImagePreparationPipeline.enqueue(file, SIZE, SIZE);
+        }
+
+        mImagePreparationPipeline.take(3);
+        verify(mImagePreparer).prepare(FILE_2, SIZE, SIZE);
+        verify(mImagePreparer).prepare(FILE_3, SIZE, SIZE);
+        verify(mImagePreparer, never()).prepare(FILE_4, SIZE, SIZE);
+    }
+
+    @Test
+    public void alwaysPreparesAtLeastOneImage() throws Exception {
+        final ImagePreparationPipeline pipeline = new ImagePreparationPipeline(new DirectExecutorService(), mImagePreparer, 0, DPI);
+        pipeline.enqueue(FILE_0, SIZE, SIZE);
+        pipeline.enqueue(FILE_1, SIZE, SIZE);
+        verify(mImagePreparer).prepare(FILE_0, SIZE, SIZE);
+        verify(mImagePreparer, never()).prepare(FILE_1, SIZE, SIZE);
+    }
+
+    @Test
+    public void takeRethrowsPreparationFailures() throws Exception {
+        final IOException exception = new IOException("Test");
+        when(mImagePreparer.prepare(FILE_0, SIZE, SIZE)).thenThrow(exception);
+        mImagePreparationPipeline.enqueue(FILE_0, SIZE, SIZE);
+        mImagePreparationPipeline.enqueue(FILE_1, SIZE, SIZE);
+        mImagePreparationPipeline.enqueue(FILE_2, SIZE, SIZE);
+
+        try {
+            mImagePreparationPipeline.take(0);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals(exception, e);
+        }
+
+        // The budget for the failed image is still released
+        verify(mImagePreparer, times(1)).prepare(FILE_2, SIZE, SIZE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void takeTwiceThrows() throws Exception {
+        mImagePreparationPipeline.enqueue(FILE_0, SIZE, SIZE);
+        mImagePreparationPipeline.take(0);
+        mImagePreparationPipeline.take(0);
+    }
+
+    /**
+     * Runs each task on the submitting thread, which allows us to deterministically verify what has been submitted
+     */
+    private static final class DirectExecutorService extends AbstractExecutorService {
+
+        private boolean isShutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            isShutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            isShutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return isShutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImagePreparerTest {
+
+    @Test
+    public void getTargetSizeNeverScalesUp() {
+        assertArrayEquals(new int[] {100, 50}, ImagePreparer.getTargetSize(100, 50, 400, 400));
+        assertArrayEquals(new int[] {400, 400}, ImagePreparer.getTargetSize(400, 400, 400, 400));
+    }
+
+    @Test
+    public void getTargetSizeMaintainsAspectRatio() {
+        assertArrayEquals(new int[] {500, 375}, ImagePreparer.getTargetSize(4000, 3000, 500, 500));
+        assertArrayEquals(new int[] {375, 500}, ImagePreparer.getTargetSize(3000, 4000, 500, 500));
+        assertArrayEquals(new int[] {1, 1}, ImagePreparer.getTargetSize(10000, 10000, 0, 0));
+    }
+
+    @Test
+    public void getInSampleSize() {
+        assertEquals(1, ImagePreparer.getInSampleSize(500, 375, 500, 375));
+        assertEquals(1, ImagePreparer.getInSampleSize(999, 749, 500, 375));
+        assertEquals(2, ImagePreparer.getInSampleSize(1000, 750, 500, 375));
+        assertEquals(8, ImagePreparer.getInSampleSize(4000, 3000, 500, 375));
+        assertEquals(4, ImagePreparer.getInSampleSize(4000, 3000, 501, 375));
+    }
+
+    @Test
+    public void isPng() {
+        assertTrue(ImagePreparer.isPng(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0}));
+        assertFalse(ImagePreparer.isPng(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0, 0, 0}));
+        assertFalse(ImagePreparer.isPng(new byte[] {(byte) 0x89, 'P', 'N', 'G'}));
+        assertFalse(ImagePreparer.isPng(new byte[0]));
+    }
+
+}
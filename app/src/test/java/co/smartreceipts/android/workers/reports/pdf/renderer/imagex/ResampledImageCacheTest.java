@@ -0,0 +1,92 @@
+package co.smartreceipts.android.workers.reports.pdf.renderer.imagex;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResampledImageCacheTest {
+
+    private static final byte[] PAYLOAD = new byte[] {1, 2, 3};
+
+    // Class under test
+    ResampledImageCache mResampledImageCache;
+
+    File mTripDirectory;
+    File mCacheDirectory;
+    File mImage;
+
+    @Before
+    public void setUp() throws Exception {
+        mTripDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "trip");
+        mCacheDirectory = new File(RuntimeEnvironment.application.getCacheDir(), ResampledImageCache.DIRECTORY_NAME);
+        mImage = new File(mTripDirectory, "image.jpg");
+        FileUtils.writeByteArrayToFile(mImage, new byte[] {4, 5, 6});
+        mResampledImageCache = new ResampledImageCache(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(mTripDirectory);
+        FileUtils.deleteQuietly(mCacheDirectory);
+    }
+
+    @Test
+    public void getKeyDependsOnContentAndSize() throws Exception {
+        final String key = mResampledImageCache.getKey(mImage, 100, 200);
+        assertNotNull(key);
+        assertEquals(key, mResampledImageCache.getKey(mImage, 100, 200));
+        assertNotEquals(key, mResampledImageCache.getKey(mImage, 200, 100));
+
+        FileUtils.writeByteArrayToFile(mImage, new byte[] {7, 8, 9});
+        assertNotEquals(key, mResampledImageCache.getKey(mImage, 100, 200));
+    }
+
+    @Test
+    public void getKeyForMissingFile() {
+        assertNull(mResampledImageCache.getKey(new File(mTripDirectory, "missing.jpg"), 100, 200));
+    }
+
+    @Test
+    public void putThenGet() throws Exception {
+        final String key = mResampledImageCache.getKey(mImage, 100, 200);
+        assertNull(mResampledImageCache.get(key));
+
+        mResampledImageCache.put(key, PAYLOAD);
+        assertArrayEquals(PAYLOAD, mResampledImageCache.get(key));
+        assertTrue(mCacheDirectory.isDirectory());
+        assertFalse(new File(mTripDirectory, ResampledImageCache.DIRECTORY_NAME).exists());
+    }
+
+    @Test
+    public void trimRemovesUnusedEntries() throws Exception {
+        final String staleKey = mResampledImageCache.getKey(mImage, 100, 200);
+        final String freshKey = mResampledImageCache.getKey(mImage, 200, 100);
+        mResampledImageCache.put(staleKey, PAYLOAD);
+        mResampledImageCache.put(freshKey, PAYLOAD);
+        final File staleFile = new File(mCacheDirectory, staleKey + ".image");
+        assertTrue(staleFile.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(31)));
+
+        mResampledImageCache.trim();
+
+        assertFalse(staleFile.exists());
+        assertNull(mResampledImageCache.get(staleKey));
+        assertArrayEquals(PAYLOAD, mResampledImageCache.get(freshKey));
+    }
+
+}
@@ -0,0 +1,189 @@
+package co.smartreceipts.android.workers.reports.zip;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowBitmapFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import co.smartreceipts.android.DefaultObjects;
+import co.smartreceipts.android.model.Receipt;
+import co.smartreceipts.android.model.Trip;
+import co.smartreceipts.android.settings.UserPreferenceManager;
+import co.smartreceipts.android.settings.catalog.UserPreference;
+import wb.android.flex.Flex;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+public class StampedImagesZipExporterTest {
+
+    private static final long MEMORY_BUDGET_BYTES = 64 * 1024 * 1024;
+
+    // Class under test
+    StampedImagesZipExporter mStampedImagesZipExporter;
+
+    @Mock
+    Flex mFlex;
+
+    @Mock
+    UserPreferenceManager mPreferences;
+
+    Trip mTrip;
+
+    File mDirectory;
+
+    File mZipFile;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mPreferences.get(UserPreference.General.DateSeparator)).thenReturn("/");
+        when(mPreferences.get(UserPreference.Receipts.IncludeTaxField)).thenReturn(true);
+
+        mTrip = DefaultObjects.newDefaultTrip();
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "stamped_images_zip_exporter_test");
+        assertTrue(mDirectory.isDirectory() || mDirectory.mkdirs());
+        mZipFile = new File(mDirectory, "trip.zip");
+        mStampedImagesZipExporter = new StampedImagesZipExporter(RuntimeEnvironment.application, mFlex, mPreferences, MEMORY_BUDGET_BYTES);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void exportStampsEachImage() throws Exception {
+        // The second image fits in our existing bitmaps, which are re-configured for it. The third one requires new ones
+        final Receipt large = newReceipt(newImage("large.jpg", 1000, 1500));
+        final Receipt small = newReceipt(newImage("small.jpg", 400, 300));
+        final Receipt larger = newReceipt(newImage("larger.jpg", 1200, 1800));
+
+        mStampedImagesZipExporter.export(mTrip, Arrays.asList(large, small, larger), mZipFile);
+
+        assertEquals(Arrays.asList("large.jpg", "small.jpg", "larger.jpg"), getStoredEntryNames(mZipFile));
+    }
+
+    @Test
+    public void exportSkipsDuplicateNamesAndReceiptsWithoutImages() throws Exception {
+        final Receipt first = newReceipt(newImage("first/image.jpg", 400, 300));
+        final Receipt duplicate = newReceipt(newImage("second/image.jpg", 400, 300));
+        final Receipt withoutImage = mock(Receipt.class);
+        when(withoutImage.hasImage()).thenReturn(false);
+
+        mStampedImagesZipExporter.export(mTrip, Arrays.asList(first, withoutImage, duplicate), mZipFile);
+
+        assertEquals(Collections.singletonList("image.jpg"), getStoredEntryNames(mZipFile));
+    }
+
+    @Test
+    public void exportDeletesTheZipOnFailure() throws Exception {
+        FileUtils.writeByteArrayToFile(mZipFile, new byte[] {1, 2, 3});
+        final Receipt receipt = newReceipt(newImage("image.jpg", 400, 300));
+        final Receipt brokenReceipt = newReceipt(newImage("broken.jpg", 400, 300));
+        final IllegalStateException exception = new IllegalStateException("Test");
+        when(brokenReceipt.getName()).thenThrow(exception);
+
+        try {
+            mStampedImagesZipExporter.export(mTrip, Arrays.asList(receipt, brokenReceipt), mZipFile);
+            fail("The export should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals(exception, e);
+        }
+
+        assertFalse(mZipFile.exists());
+    }
+
+    @Test
+    public void getCanvasSizeForPortraitImage() {
+        // 1500 * 0.75 = 1125 wide. 1125 / 2.1 = 535 and 1500 / 2.1 = 714 for padding
+        assertArrayEquals(new int[]{1660, 2214, 535, 714}, StampedImagesZipExporter.getCanvasSize(1000, 1500));
+    }
+
+    @Test
+    public void getCanvasSizeForLandscapeImage() {
+        // 1200 / 0.75 = 1600 tall. 1200 / 2.1 = 571 and 1600 / 2.1 = 761 for padding
+        assertArrayEquals(new int[]{1771, 2361, 571, 761}, StampedImagesZipExporter.getCanvasSize(1200, 900));
+    }
+
+    @Test
+    public void getInSampleSizeWhenImageFitsBudget() {
+        assertEquals(1, StampedImagesZipExporter.getInSampleSize(1000, 1500, 1660 * 2214));
+    }
+
+    @Test
+    public void getInSampleSizeWhenImageExceedsBudget() {
+        assertEquals(2, StampedImagesZipExporter.getInSampleSize(1000, 1500, 1660 * 2214 - 1));
+        assertEquals(4, StampedImagesZipExporter.getInSampleSize(4000, 6000, 1660 * 2214));
+    }
+
+    @Test
+    public void getInSampleSizeAlwaysStaysWithinBudget() {
+        final long maxCanvasPixels = 2000000;
+        for (int width = 100; width < 10000; width += 397) {
+            for (int height = 100; height < 10000; height += 613) {
+                final int sampleSize = StampedImagesZipExporter.getInSampleSize(width, height, maxCanvasPixels);
+                final int[] canvasSize = StampedImagesZipExporter.getCanvasSize((width + sampleSize - 1) / sampleSize, (height + sampleSize - 1) / sampleSize);
+                assertTrue((long) canvasSize[0] * canvasSize[1] <= maxCanvasPixels);
+            }
+        }
+    }
+
+    private File newImage(String path, int width, int height) throws Exception {
+        final File image = new File(mDirectory, path);
+        FileUtils.writeByteArrayToFile(image, new byte[] {1, 2, 3});
+        ShadowBitmapFactory.provideWidthAndHeightHints(image.getAbsolutePath(), width, height);
+        return image;
+    }
+
+    private static Receipt newReceipt(File image) {
+        final Receipt receipt = mock(Receipt.class);
+        when(receipt.hasImage()).thenReturn(true);
+        when(receipt.getImage()).thenReturn(image);
+        when(receipt.getName()).thenReturn(image.getName());
+        when(receipt.getPrice()).thenReturn(DefaultObjects.newDefaultPrice());
+        when(receipt.getTax()).thenReturn(DefaultObjects.newDefaultTax());
+        when(receipt.getCategory()).thenReturn(DefaultObjects.newDefaultCategory());
+        when(receipt.getComment()).thenReturn("comment");
+        return receipt;
+    }
+
+    private static List<String> getStoredEntryNames(File zip) throws Exception {
+        final List<String> names = new ArrayList<>();
+        final ZipFile zipFile = new ZipFile(zip);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                assertTrue(entry.getSize() > 0);
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+                names.add(entry.getName());
+            }
+        } finally {
+            zipFile.close();
+        }
+        return names;
+    }
+
+}
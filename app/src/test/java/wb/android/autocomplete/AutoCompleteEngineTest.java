@@ -0,0 +1,186 @@
+package wb.android.autocomplete;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import co.smartreceipts.android.persistence.database.search.SearchIndex;
+import co.smartreceipts.android.persistence.database.tables.DistanceTable;
+import co.smartreceipts.android.persistence.database.tables.ReceiptsTable;
+import co.smartreceipts.android.persistence.database.tables.TestSQLiteOpenHelper;
+import co.smartreceipts.android.persistence.database.tables.TripsTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class AutoCompleteEngineTest {
+
+    private static final String TAG = "tag";
+
+    // Class under test
+    AutoCompleteEngine mAutoCompleteEngine;
+
+    @Mock
+    AutoCompleteEngine.ResultsListener mResultsListener;
+
+    SQLiteOpenHelper mSQLiteOpenHelper;
+
+    SQLiteDatabase mDb;
+
+    SearchIndex mSearchIndex;
+
+    AutoCompleteAdapter.QueryListener mQueryListener;
+
+    int mQueryCount;
+
+    Locale mDefaultLocale;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        mDefaultLocale = Locale.getDefault();
+        mSQLiteOpenHelper = new TestSQLiteOpenHelper(RuntimeEnvironment.application);
+        mDb = mSQLiteOpenHelper.getWritableDatabase();
+        mDb.execSQL("CREATE TABLE " + ReceiptsTable.TABLE_NAME + " (" + ReceiptsTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ReceiptsTable.COLUMN_NAME + " TEXT, " + ReceiptsTable.COLUMN_COMMENT + " TEXT)");
+        mDb.execSQL("CREATE TABLE " + TripsTable.TABLE_NAME + " (" + TripsTable.COLUMN_NAME + " TEXT PRIMARY KEY, "
+                + TripsTable.COLUMN_COST_CENTER + " TEXT)");
+        mDb.execSQL("CREATE TABLE " + DistanceTable.TABLE_NAME + " (" + DistanceTable.COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + DistanceTable.COLUMN_LOCATION + " TEXT)");
+        mSearchIndex = new SearchIndex();
+        mSearchIndex.onCreate(mDb);
+
+        mQueryListener = new AutoCompleteAdapter.QueryListener() {
+            @Override
+            public Cursor getAutoCompleteCursor(CharSequence text, CharSequence tag) {
+                mQueryCount++;
+                return mSearchIndex.getAutoCompleteCursor(mDb, ReceiptsTable.TABLE_NAME, ReceiptsTable.COLUMN_NAME, text);
+            }
+        };
+        mAutoCompleteEngine = newEngine();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+        for (final String table : Arrays.asList(ReceiptsTable.TABLE_NAME, TripsTable.TABLE_NAME, DistanceTable.TABLE_NAME,
+                "receipts_search", "trips_search", "distance_search")) {
+            mDb.execSQL("DROP TABLE IF EXISTS " + table);
+        }
+    }
+
+    @Test
+    public void resultsAreCachedOnceQueried() {
+        insertReceipts("Lunch", "Dinner");
+
+        assertNull(mAutoCompleteEngine.getCachedResults("lun"));
+        final List<String> results = query(mAutoCompleteEngine, "lun");
+
+        verify(mResultsListener).onResultsAvailable("lun");
+        assertEquals(Arrays.asList("Lunch"), results);
+        assertEquals(1, mQueryCount);
+    }
+
+    @Test
+    public void narrowedResultsMatchAFreshQuery() {
+        insertReceipts("Lunch at Café", "lunch-box", "LUNCHEON", "Launch", "Café Lunch", "Crêpe", "Lunch2Go", "Dinner", "Cab (Airport)");
+        query(mAutoCompleteEngine, "l");
+        query(mAutoCompleteEngine, "c");
+
+        assertNarrowedResultsMatchFreshQueries(Arrays.asList("la", "lu", "LUN", "lunch", "lunch ", "lunch c", "lunch-ca", "lunch caf",
+                "lunch café", "lunch CAFÉ", "lunch2", "cr", "crê", "crep", "cab (a", "c air"));
+        assertEquals(Arrays.asList("Café Lunch", "Lunch at Café"), mAutoCompleteEngine.getCachedResults("lunch café"));
+        assertEquals(Arrays.asList("Crêpe"), mAutoCompleteEngine.getCachedResults("crê"));
+    }
+
+    @Test
+    public void narrowedResultsMatchAFreshQueryInATurkishLocale() {
+        Locale.setDefault(new Locale("tr", "TR"));
+        insertReceipts("ISTANBUL Taxi", "Istanbul", "istanbul", "İzmir", "ıspanak");
+        query(mAutoCompleteEngine, "i");
+        query(mAutoCompleteEngine, "I");
+        query(mAutoCompleteEngine, "İ");
+        query(mAutoCompleteEngine, "ı");
+
+        assertNarrowedResultsMatchFreshQueries(Arrays.asList("is", "IS", "Ist", "iz", "İz", "ıs"));
+        assertEquals(Arrays.asList("ISTANBUL Taxi", "Istanbul", "istanbul"), mAutoCompleteEngine.getCachedResults("ist"));
+    }
+
+    @Test
+    public void resultsWithoutWordsAreNotUsedForNarrowing() {
+        insertReceipts("Lunch", "Dinner");
+
+        assertEquals(Arrays.asList("Dinner", "Lunch"), query(mAutoCompleteEngine, " "));
+        assertNull(mAutoCompleteEngine.getCachedResults(" lun"));
+    }
+
+    @Test
+    public void clearDropsCachedResults() {
+        insertReceipts("Lunch");
+        query(mAutoCompleteEngine, "lun");
+
+        mAutoCompleteEngine.clear();
+
+        assertNull(mAutoCompleteEngine.getCachedResults("lun"));
+        assertNull(mAutoCompleteEngine.getCachedResults("lunch"));
+    }
+
+    private void assertNarrowedResultsMatchFreshQueries(List<String> prefixes) {
+        final int queryCount = mQueryCount;
+        final List<List<String>> narrowedResults = new ArrayList<>();
+        for (final String prefix : prefixes) {
+            final List<String> results = mAutoCompleteEngine.getCachedResults(prefix);
+            assertNotNull("Failed to narrow " + prefix, results);
+            narrowedResults.add(results);
+        }
+        assertEquals(queryCount, mQueryCount);
+
+        for (int i = 0; i < prefixes.size(); i++) {
+            assertEquals("Narrowed results differ for " + prefixes.get(i), query(newEngine(), prefixes.get(i)), narrowedResults.get(i));
+        }
+    }
+
+    private List<String> query(AutoCompleteEngine engine, String prefix) {
+        engine.requestResults(prefix);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        return engine.getCachedResults(prefix);
+    }
+
+    private AutoCompleteEngine newEngine() {
+        return new AutoCompleteEngine(mQueryListener, TAG, 0, mResultsListener, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        });
+    }
+
+    private void insertReceipts(String... names) {
+        for (final String name : names) {
+            final ContentValues values = new ContentValues();
+            values.put(ReceiptsTable.COLUMN_NAME, name);
+            mDb.insert(ReceiptsTable.TABLE_NAME, null, values);
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package wb.android.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class StreamingZipWriterTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1024;
+
+    // Class under test
+    StreamingZipWriter mStreamingZipWriter;
+
+    File mDirectory;
+
+    File mZipFile;
+
+    List<Long> mProgress;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "streaming_zip_writer_test");
+        assertTrue(mDirectory.isDirectory() || mDirectory.mkdirs());
+        mZipFile = new File(mDirectory, "output.zip");
+        mProgress = new ArrayList<>();
+        mStreamingZipWriter = new StreamingZipWriter(mZipFile, BUFFER_SIZE, new StreamingZipWriter.ProgressListener() {
+            @Override
+            public boolean onProgress(long bytesRead) {
+                mProgress.add(bytesRead);
+                return true;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mStreamingZipWriter.close();
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void putFileStoresCompressedFilesAndDeflatesOthers() throws Exception {
+        final byte[] image = newRandomBytes(10 * BUFFER_SIZE + 1);
+        final byte[] database = newText(10 * BUFFER_SIZE + 1);
+
+        mStreamingZipWriter.putFile("trip/receipt.jpg", newFile("receipt.jpg", image));
+        mStreamingZipWriter.putFile("receipts.db", newFile("receipts.db", database));
+        mStreamingZipWriter.finish();
+
+        final ZipFile zipFile = new ZipFile(mZipFile);
+        try {
+            assertEquals(Arrays.asList("trip/receipt.jpg", "receipts.db"), getEntryNames(zipFile));
+            assertEntry(zipFile, "trip/receipt.jpg", ZipEntry.STORED, image);
+            assertEntry(zipFile, "receipts.db", ZipEntry.DEFLATED, database);
+            assertTrue(zipFile.getEntry("receipts.db").getCompressedSize() < database.length);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void localFileHeadersArePatchedWithTheFinalSizes() throws Exception {
+        final byte[] image = newRandomBytes(3 * BUFFER_SIZE);
+        final byte[] text = newText(3 * BUFFER_SIZE);
+
+        mStreamingZipWriter.putStream("receipt.jpg", new ByteArrayInputStream(image), 0, false);
+        mStreamingZipWriter.putStream("receipts.db", new ByteArrayInputStream(text), 0, true);
+        mStreamingZipWriter.finish();
+
+        // Unlike a ZipFile, a ZipInputStream only reads the local file headers
+        final ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(mZipFile));
+        try {
+            final ZipEntry storedEntry = zipInputStream.getNextEntry();
+            assertEquals("receipt.jpg", storedEntry.getName());
+            assertEquals(ZipEntry.STORED, storedEntry.getMethod());
+            assertEquals(image.length, storedEntry.getSize());
+            assertArrayEquals(image, IOUtils.toByteArray(zipInputStream));
+
+            final ZipEntry deflatedEntry = zipInputStream.getNextEntry();
+            assertEquals("receipts.db", deflatedEntry.getName());
+            assertEquals(ZipEntry.DEFLATED, deflatedEntry.getMethod());
+            assertArrayEquals(text, IOUtils.toByteArray(zipInputStream));
+        } finally {
+            zipInputStream.close();
+        }
+    }
+
+    @Test
+    public void putStreamDoesNotCloseTheStream() throws Exception {
+        final List<Boolean> closed = new ArrayList<>();
+        final InputStream inputStream = new ByteArrayInputStream(newText(BUFFER_SIZE)) {
+            @Override
+            public void close() throws IOException {
+                closed.add(true);
+                super.close();
+            }
+        };
+
+        mStreamingZipWriter.putStream("receipts.db", inputStream, 0, true);
+        mStreamingZipWriter.finish();
+
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void zipEmptyEntriesAndUtf8Names() throws Exception {
+        final byte[] text = newText(BUFFER_SIZE);
+
+        mStreamingZipWriter.putFile("Reçus/收据.jpg", newFile("empty.jpg", new byte[0]));
+        mStreamingZipWriter.putFile("café €.txt", newFile("text.txt", text));
+        mStreamingZipWriter.finish();
+
+        final ZipFile zipFile = new ZipFile(mZipFile, UTF_8);
+        try {
+            assertEquals(Arrays.asList("Reçus/收据.jpg", "café €.txt"), getEntryNames(zipFile));
+            assertEntry(zipFile, "Reçus/收据.jpg", ZipEntry.STORED, new byte[0]);
+            assertEntry(zipFile, "café €.txt", ZipEntry.DEFLATED, text);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void zipEmptyArchive() throws Exception {
+        mStreamingZipWriter.finish();
+
+        final ZipFile zipFile = new ZipFile(mZipFile);
+        try {
+            assertEquals(0, zipFile.size());
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void progressIsReportedForEachBufferAcrossAllEntries() throws Exception {
+        mStreamingZipWriter.putFile("receipt.jpg", newFile("receipt.jpg", newRandomBytes(2 * BUFFER_SIZE)));
+        mStreamingZipWriter.putFile("receipts.db", newFile("receipts.db", newText(BUFFER_SIZE + 1)));
+        mStreamingZipWriter.finish();
+
+        assertEquals(Arrays.asList(1L * BUFFER_SIZE, 2L * BUFFER_SIZE, 3L * BUFFER_SIZE, 3L * BUFFER_SIZE + 1), mProgress);
+        assertEquals(3L * BUFFER_SIZE + 1, mStreamingZipWriter.getBytesRead());
+    }
+
+    @Test
+    public void cancellingFailsWithAnInterruptedIOException() throws Exception {
+        mStreamingZipWriter.close();
+        mStreamingZipWriter = new StreamingZipWriter(mZipFile, BUFFER_SIZE, new StreamingZipWriter.ProgressListener() {
+            @Override
+            public boolean onProgress(long bytesRead) {
+                return bytesRead < 2 * BUFFER_SIZE;
+            }
+        });
+
+        try {
+            mStreamingZipWriter.putFile("receipts.db", newFile("receipts.db", newText(10 * BUFFER_SIZE)));
+            fail("The write should have been cancelled");
+        } catch (InterruptedIOException e) {
+            assertTrue(e.getMessage().contains("receipts.db"));
+        }
+        assertEquals(2L * BUFFER_SIZE, mStreamingZipWriter.getBytesRead());
+    }
+
+    @Test(expected = IOException.class)
+    public void putStreamFailsOnceTheArchiveIsFinished() throws Exception {
+        mStreamingZipWriter.finish();
+
+        mStreamingZipWriter.putStream("receipts.db", new ByteArrayInputStream(newText(BUFFER_SIZE)), 0, true);
+    }
+
+    private File newFile(String name, byte[] data) throws IOException {
+        final File file = new File(mDirectory, name);
+        FileUtils.writeByteArrayToFile(file, data);
+        return file;
+    }
+
+    private static byte[] newRandomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] newText(int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("receipt,").append(builder.length()).append('\n');
+        }
+        return builder.substring(0, length).getBytes(UTF_8);
+    }
+
+    private static void assertEntry(ZipFile zipFile, String name, int method, byte[] data) throws IOException {
+        final ZipEntry entry = zipFile.getEntry(name);
+        assertEquals(method, entry.getMethod());
+        assertEquals(data.length, entry.getSize());
+        assertArrayEquals(data, IOUtils.toByteArray(zipFile.getInputStream(entry)));
+    }
+
+    private static List<String> getEntryNames(ZipFile zipFile) {
+        final List<String> names = new ArrayList<>();
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return names;
+    }
+
+}
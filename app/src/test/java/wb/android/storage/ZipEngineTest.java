@@ -0,0 +1,257 @@
+package wb.android.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ZipEngineTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1024;
+    private static final int PARALLELISM = 2;
+
+    // Class under test
+    ZipEngine mZipEngine;
+
+    File mDirectory;
+
+    File mInputDirectory;
+
+    File mTempDirectory;
+
+    File mZipFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = new File(RuntimeEnvironment.application.getCacheDir(), "zip_engine_test");
+        mInputDirectory = new File(mDirectory, "input");
+        mTempDirectory = new File(mDirectory, "temp");
+        assertTrue(mInputDirectory.isDirectory() || mInputDirectory.mkdirs());
+        assertTrue(mTempDirectory.isDirectory() || mTempDirectory.mkdirs());
+        mZipFile = new File(mDirectory, "input.zip");
+        mZipEngine = new ZipEngine(BUFFER_SIZE, Deflater.DEFAULT_COMPRESSION, PARALLELISM, mTempDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(mDirectory);
+    }
+
+    @Test
+    public void zipStoresCompressedFilesAndDeflatesOthers() throws Exception {
+        final byte[] image = newRandomBytes(10 * BUFFER_SIZE + 1);
+        final byte[] database = newText(10 * BUFFER_SIZE + 1);
+        final byte[] preferences = newText(100);
+        final List<File> files = Arrays.asList(newFile("receipt.JPG", image), newFile("receipts.db", database), newFile("shared_prefs/prefs.xml", preferences));
+
+        mZipEngine.zip(files, mInputDirectory, mZipFile);
+
+        final ZipFile zipFile = new ZipFile(mZipFile);
+        try {
+            assertEquals(Arrays.asList("receipt.JPG", "receipts.db", "shared_prefs/prefs.xml"), getEntryNames(zipFile));
+            assertEntry(zipFile, "receipt.JPG", ZipEntry.STORED, image);
+            assertEntry(zipFile, "receipts.db", ZipEntry.DEFLATED, database);
+            assertEntry(zipFile, "shared_prefs/prefs.xml", ZipEntry.DEFLATED, preferences);
+            assertTrue(zipFile.getEntry("receipts.db").getCompressedSize() < database.length);
+        } finally {
+            zipFile.close();
+        }
+        assertEquals(0, mTempDirectory.list().length);
+    }
+
+    @Test
+    public void zipEmptyFiles() throws Exception {
+        final List<File> files = Arrays.asList(newFile("empty.jpg", new byte[0]), newFile("empty.txt", new byte[0]));
+
+        mZipEngine.zip(files, mInputDirectory, mZipFile);
+
+        final ZipFile zipFile = new ZipFile(mZipFile);
+        try {
+            assertEquals(Arrays.asList("empty.jpg", "empty.txt"), getEntryNames(zipFile));
+            assertEntry(zipFile, "empty.jpg", ZipEntry.STORED, new byte[0]);
+            assertEntry(zipFile, "empty.txt", ZipEntry.DEFLATED, new byte[0]);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void zipEmptyDirectory() throws Exception {
+        mZipEngine.zip(new ArrayList<File>(), mInputDirectory, mZipFile);
+
+        final ZipFile zipFile = new ZipFile(mZipFile);
+        try {
+            assertEquals(0, zipFile.size());
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void zipUtf8Names() throws Exception {
+        final byte[] image = newRandomBytes(BUFFER_SIZE);
+        final byte[] text = newText(BUFFER_SIZE);
+        final List<File> files = Arrays.asList(newFile("Reçus/收据.jpg", image), newFile("café €.txt", text));
+
+        mZipEngine.zip(files, mInputDirectory, mZipFile);
+
+        final ZipFile zipFile = new ZipFile(mZipFile, UTF_8);
+        try {
+            assertEquals(Arrays.asList("Reçus/收据.jpg", "café €.txt"), getEntryNames(zipFile));
+            assertEntry(zipFile, "Reçus/收据.jpg", ZipEntry.STORED, image);
+            assertEntry(zipFile, "café €.txt", ZipEntry.DEFLATED, text);
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void zipFailsIfAFileChangesSizeWhileItIsBeingZipped() throws Exception {
+        final File image = newFile("receipt.jpg", newRandomBytes(BUFFER_SIZE));
+        mZipEngine = new ZipEngine(BUFFER_SIZE, Deflater.DEFAULT_COMPRESSION, PARALLELISM, mTempDirectory) {
+            @Override
+            ZipEngine.PreparedEntry prepareEntry(File file, String name) throws IOException {
+                final ZipEngine.PreparedEntry entry = super.prepareEntry(file, name);
+                // Stored entries are copied from the original file, so this change happens before we write it
+                FileUtils.writeByteArrayToFile(file, new byte[] {1}, true);
+                return entry;
+            }
+        };
+
+        try {
+            mZipEngine.zip(Arrays.asList(newFile("receipts.db", newText(BUFFER_SIZE)), image), mInputDirectory, mZipFile);
+            fail("The zip should have failed");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("was modified while it was being zipped"));
+        }
+
+        assertFalse(mZipFile.exists());
+        assertEquals(0, mTempDirectory.list().length);
+    }
+
+    @Test
+    public void zipWritesTemporaryFilesToTheTempDirectory() throws Exception {
+        final List<File> tempFiles = new ArrayList<>();
+        mZipEngine = new ZipEngine(BUFFER_SIZE, Deflater.DEFAULT_COMPRESSION, PARALLELISM, mTempDirectory) {
+            @Override
+            ZipEngine.PreparedEntry prepareEntry(File file, String name) throws IOException {
+                final ZipEngine.PreparedEntry entry = super.prepareEntry(file, name);
+                synchronized (tempFiles) {
+                    tempFiles.add(entry.tempFile);
+                }
+                return entry;
+            }
+        };
+
+        mZipEngine.zip(Arrays.asList(newFile("receipt.jpg", newRandomBytes(BUFFER_SIZE)), newFile("receipts.db", newText(BUFFER_SIZE))), mInputDirectory, mZipFile);
+
+        assertEquals(2, tempFiles.size());
+        assertTrue(tempFiles.contains(null));
+        for (final File tempFile : tempFiles) {
+            if (tempFile != null) {
+                assertEquals(mTempDirectory, tempFile.getParentFile());
+                assertFalse(tempFile.exists());
+            }
+        }
+        assertEquals(Arrays.asList("input", "input.zip", "temp"), getSortedNames(mDirectory));
+        assertEquals(Arrays.asList("receipt.jpg", "receipts.db"), getSortedNames(mInputDirectory));
+    }
+
+    @Test
+    public void zipDeletesTemporaryFilesOnFailure() throws Exception {
+        final List<File> files = new ArrayList<>();
+        files.add(newFile("first.txt", newText(10 * BUFFER_SIZE)));
+        files.add(new File(mInputDirectory, "missing.txt"));
+        for (int i = 0; i < 2 * PARALLELISM; i++) {
+            files.add(newFile("pending" + i + ".txt", newText(10 * BUFFER_SIZE)));
+        }
+
+        try {
+            mZipEngine.zip(files, mInputDirectory, mZipFile);
+            fail("The zip should have failed");
+        } catch (IOException e) {
+            // Expected, since we can't read the missing file
+        }
+
+        assertFalse(mZipFile.exists());
+        assertEquals(0, mTempDirectory.list().length);
+    }
+
+    @Test
+    public void isIncompressible() {
+        assertTrue(ZipEngine.isIncompressible(new File("receipt.jpg")));
+        assertTrue(ZipEngine.isIncompressible(new File("receipt.JPEG")));
+        assertTrue(ZipEngine.isIncompressible(new File("report.pdf")));
+        assertTrue(ZipEngine.isIncompressible(new File("backup.smr")));
+        assertFalse(ZipEngine.isIncompressible(new File("receipts.db")));
+        assertFalse(ZipEngine.isIncompressible(new File("jpg")));
+    }
+
+    private File newFile(String path, byte[] data) throws IOException {
+        final File file = new File(mInputDirectory, path);
+        FileUtils.writeByteArrayToFile(file, data);
+        return file;
+    }
+
+    private static byte[] newRandomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] newText(int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("receipt,").append(builder.length()).append('\n');
+        }
+        return builder.substring(0, length).getBytes(UTF_8);
+    }
+
+    private static void assertEntry(ZipFile zipFile, String name, int method, byte[] data) throws IOException {
+        final ZipEntry entry = zipFile.getEntry(name);
+        assertEquals(method, entry.getMethod());
+        assertEquals(data.length, entry.getSize());
+        assertArrayEquals(data, IOUtils.toByteArray(zipFile.getInputStream(entry)));
+    }
+
+    private static List<String> getEntryNames(ZipFile zipFile) {
+        final List<String> names = new ArrayList<>();
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return names;
+    }
+
+    private static List<String> getSortedNames(File directory) {
+        final List<String> names = new ArrayList<>(Arrays.asList(directory.list()));
+        Collections.sort(names);
+        return names;
+    }
+
+}
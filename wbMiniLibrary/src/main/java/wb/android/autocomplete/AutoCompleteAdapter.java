@@ -3,6 +3,7 @@ package wb.android.autocomplete;
 import android.app.Activity;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,14 +14,19 @@ import android.widget.Filterable;
 import android.widget.ListView;
 import android.widget.TextView;
 
-public class AutoCompleteAdapter extends CursorAdapter implements Filterable, FilterQueryProvider {
+import java.util.List;
+
+public class AutoCompleteAdapter extends CursorAdapter implements Filterable, FilterQueryProvider, AutoCompleteEngine.ResultsListener {
+
+	private static final String[] RESULT_COLUMNS = new String[] {"_id", "result"};
+	private static final int RESULT_COLUMN_INDEX = 1;
 
 	private final QueryListener mQueryListener;
 	private final CharSequence mTag; 
 	private final MyClickListener mClickListener;
 	private final ItemSelectedListener mItemSelectedListener;
-	private final int mCol;
-	private String mLastString;
+	private final AutoCompleteEngine mEngine;
+	private volatile String mLastString;
 	
 	public interface ItemSelectedListener {
 		public void onItemSelected(CharSequence text, CharSequence tag);
@@ -39,7 +45,7 @@ public class AutoCompleteAdapter extends CursorAdapter implements Filterable, Fi
 		setFilterQueryProvider(this);
 		this.mClickListener = new MyClickListener();
 		mItemSelectedListener = itemSelectedListener;
-		mCol = col;
+		mEngine = new AutoCompleteEngine(mQueryListener, mTag, col, this);
 	}
 	
 	public static AutoCompleteAdapter getInstance(Activity activity, CharSequence mTag, QueryListener queryListener) {
@@ -51,13 +57,13 @@ public class AutoCompleteAdapter extends CursorAdapter implements Filterable, Fi
 	}
 	
 	public static AutoCompleteAdapter getInstance(Activity activity, CharSequence mTag, QueryListener queryListener, ItemSelectedListener itemSelectedListener, int col) {
-		Cursor cursor = queryListener.getAutoCompleteCursor("", mTag);
-		return new AutoCompleteAdapter(activity, cursor, queryListener, mTag, itemSelectedListener, col);
+		return new AutoCompleteAdapter(activity, null, queryListener, mTag, itemSelectedListener, col);
 	}
 	
 	public void reset() {
 		this.mLastString = "";
 		onPause();
+		mEngine.clear();
 	}
 	
 	public final void onPause() {
@@ -69,7 +75,7 @@ public class AutoCompleteAdapter extends CursorAdapter implements Filterable, Fi
 
 	@Override
 	public void bindView(View view, Context context, Cursor cursor) {
-		String text = cursor.getString(mCol);
+		String text = cursor.getString(RESULT_COLUMN_INDEX);
 		if (text.trim().equalsIgnoreCase(mLastString.trim())) {
 			view.getRootView().setVisibility(View.INVISIBLE);
 			//TODO: Push on item selected...
@@ -87,14 +93,14 @@ public class AutoCompleteAdapter extends CursorAdapter implements Filterable, Fi
 			((ListView) parent).setOnItemClickListener(mClickListener);
 		}
         final TextView view = (TextView) inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false);
-        String item = cursor.getString(mCol);
+        String item = cursor.getString(RESULT_COLUMN_INDEX);
         view.setText(item);
         return view;
 	}
 	
 	@Override
 	public CharSequence convertToString(Cursor cursor) {
-		return cursor.getString(mCol);
+		return cursor.getString(RESULT_COLUMN_INDEX);
 	}
 	
 	private class MyClickListener implements AdapterView.OnItemClickListener {
@@ -108,8 +114,27 @@ public class AutoCompleteAdapter extends CursorAdapter implements Filterable, Fi
 
 	@Override
 	public Cursor runQuery(CharSequence constraint) {
-		mLastString = (constraint == null) ? "" : constraint.toString();
-        return mQueryListener.getAutoCompleteCursor(mLastString, mTag);
+		final String prefix = (constraint == null) ? "" : constraint.toString();
+		mLastString = prefix;
+		final List<String> results = mEngine.getCachedResults(prefix);
+		if (results == null) {
+			// Keep the current cursor until the (debounced) query completes and we re-filter from the cache
+			mEngine.requestResults(prefix);
+			return null;
+		}
+		final MatrixCursor cursor = new MatrixCursor(RESULT_COLUMNS, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			cursor.addRow(new Object[] {i, results.get(i)});
+		}
+		return cursor;
+	}
+
+	@Override
+	public void onResultsAvailable(String prefix) {
+		final String lastString = mLastString;
+		if (lastString.startsWith(prefix)) {
+			getFilter().filter(lastString);
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,261 @@
+package wb.android.autocomplete;
+
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the auto-complete results for a given prefix without blocking the filtering thread. Results are kept in a
+ * small LRU of (tag, prefix) entries, so a prefix that narrows a previously fetched one (ie "Lun" followed by "Lunch")
+ * can be served by filtering the earlier result set in memory instead of going back to the {@link AutoCompleteAdapter.QueryListener}.
+ * Queries that cannot be served from the cache are debounced and then performed on a single background thread.
+ * <p>
+ * Please note that the in-memory narrowing assumes that the {@link AutoCompleteAdapter.QueryListener} matches each word
+ * of the prefix against the start of a word in the result (ie a full-text prefix query), using SQLite's default "simple"
+ * FTS tokenizer. We mirror its rules (ie only ASCII characters separate words and only ASCII letters are case folded)
+ * rather than those of the default {@link java.util.Locale}, so a narrowed result set always equals that of a fresh query. A prefix
+ * without any words is not a full-text query, so its results are never used to narrow others.
+ * </p>
+ */
+class AutoCompleteEngine {
+
+	private static final String TAG = AutoCompleteEngine.class.getSimpleName();
+
+	/**
+	 * The amount of time that we wait for the user to stop typing before performing a query
+	 */
+	private static final long DEBOUNCE_MILLIS = 200;
+
+	/**
+	 * The number of (tag, prefix) result sets that we keep in memory
+	 */
+	private static final int MAX_CACHED_RESULTS = 16;
+
+	/**
+	 * Splits the prefix into the words of our full-text query
+	 */
+	private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/**
+	 * Splits a result into tokens like SQLite's "simple" tokenizer, which treats every non-ASCII character as part of a token
+	 */
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[\\x00-\\x2F\\x3A-\\x40\\x5B-\\x60\\x7B-\\x7F]+");
+
+	/**
+	 * All engines share a single thread, since every query ultimately hits the same database
+	 */
+	private static final Executor QUERY_EXECUTOR = Executors.newSingleThreadExecutor();
+
+	public interface ResultsListener {
+
+		/**
+		 * Called on the main thread when the results for a prefix have been added to the cache
+		 *
+		 * @param prefix - the prefix that was queried
+		 */
+		public void onResultsAvailable(String prefix);
+	}
+
+	private final AutoCompleteAdapter.QueryListener mQueryListener;
+	private final CharSequence mTag;
+	private final int mCol;
+	private final ResultsListener mResultsListener;
+	private final Executor mQueryExecutor;
+	private final LruCache<String, List<String>> mResultsCache;
+	private final Handler mMainThreadHandler;
+	private Runnable mPendingQuery;
+	private int mGeneration;
+
+	AutoCompleteEngine(AutoCompleteAdapter.QueryListener queryListener, CharSequence tag, int col, ResultsListener resultsListener) {
+		this(queryListener, tag, col, resultsListener, QUERY_EXECUTOR);
+	}
+
+	AutoCompleteEngine(AutoCompleteAdapter.QueryListener queryListener, CharSequence tag, int col, ResultsListener resultsListener, Executor queryExecutor) {
+		mQueryListener = queryListener;
+		mTag = tag;
+		mCol = col;
+		mResultsListener = resultsListener;
+		mQueryExecutor = queryExecutor;
+		mResultsCache = new LruCache<String, List<String>>(MAX_CACHED_RESULTS);
+		mMainThreadHandler = new Handler(Looper.getMainLooper());
+	}
+
+	/**
+	 * Returns the cached results for this prefix, narrowing those of the longest cached prefix of it (that contains at
+	 * least one word) if we don't have an exact match. This method is safe to call from any thread.
+	 *
+	 * @param prefix - the text that the user has entered
+	 * @return the list of results or {@code null} if they are not yet available
+	 */
+	List<String> getCachedResults(String prefix) {
+		final List<String> exactResults = mResultsCache.get(getKey(prefix));
+		if (exactResults != null) {
+			return exactResults;
+		}
+
+		String narrowestPrefix = null;
+		List<String> narrowestResults = null;
+		final String keyPrefix = getKey("");
+		for (final Map.Entry<String, List<String>> entry : mResultsCache.snapshot().entrySet()) {
+			final String cachedPrefix = entry.getKey().substring(keyPrefix.length());
+			if (prefix.startsWith(cachedPrefix) && (narrowestPrefix == null || cachedPrefix.length() > narrowestPrefix.length())
+					&& getWords(cachedPrefix).length > 0) {
+				narrowestPrefix = cachedPrefix;
+				narrowestResults = entry.getValue();
+			}
+		}
+		if (narrowestResults == null) {
+			return null;
+		}
+
+		final String[] words = getWords(prefix);
+		final List<String> results = new ArrayList<String>();
+		for (final String result : narrowestResults) {
+			if (matches(result, words)) {
+				results.add(result);
+			}
+		}
+		final List<String> unmodifiableResults = Collections.unmodifiableList(results);
+		mResultsCache.put(getKey(prefix), unmodifiableResults);
+		return unmodifiableResults;
+	}
+
+	/**
+	 * Schedules a query for this prefix once the user has stopped typing for {@link #DEBOUNCE_MILLIS}. Any previously
+	 * scheduled query that has not yet started is dropped. This method is safe to call from any thread.
+	 *
+	 * @param prefix - the text that the user has entered
+	 */
+	synchronized void requestResults(final String prefix) {
+		mMainThreadHandler.removeCallbacks(mPendingQuery);
+		mPendingQuery = new Runnable() {
+			@Override
+			public void run() {
+				query(prefix);
+			}
+		};
+		mMainThreadHandler.postDelayed(mPendingQuery, DEBOUNCE_MILLIS);
+	}
+
+	/**
+	 * Drops all cached results and pending queries (eg because the underlying data may have changed)
+	 */
+	synchronized void clear() {
+		mMainThreadHandler.removeCallbacks(mPendingQuery);
+		mPendingQuery = null;
+		mGeneration++;
+		mResultsCache.evictAll();
+	}
+
+	private void query(final String prefix) {
+		final int generation;
+		synchronized (this) {
+			generation = mGeneration;
+		}
+		mQueryExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final List<String> results;
+				try {
+					results = readResults(mQueryListener.getAutoCompleteCursor(prefix, mTag));
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Failed to query the auto-complete results for " + mTag, e);
+					return;
+				}
+				if (results == null) {
+					return;
+				}
+				synchronized (AutoCompleteEngine.this) {
+					if (generation != mGeneration) {
+						return; // We were cleared while this query was running, so these results may be stale
+					}
+					mResultsCache.put(getKey(prefix), results);
+				}
+				mMainThreadHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						mResultsListener.onResultsAvailable(prefix);
+					}
+				});
+			}
+		});
+	}
+
+	private List<String> readResults(Cursor cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			final List<String> results = new ArrayList<String>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				final String result = cursor.getString(mCol);
+				if (result != null) {
+					results.add(result);
+				}
+			}
+			return Collections.unmodifiableList(results);
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private String getKey(String prefix) {
+		return mTag + "\u0000" + prefix;
+	}
+
+	private static String[] getWords(String text) {
+		final List<String> words = new ArrayList<String>();
+		for (final String word : WORD_SEPARATOR.split(text)) {
+			if (word.length() > 0) {
+				words.add(foldCase(word));
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	private static String[] getTokens(String text) {
+		return TOKEN_SEPARATOR.split(foldCase(text));
+	}
+
+	/**
+	 * Lower cases only the ASCII letters in this text, since the "simple" tokenizer leaves all other characters untouched
+	 * (eg it would not match a dotless 'ı' against an 'I', as {@link String#toLowerCase()} does for a Turkish locale)
+	 */
+	private static String foldCase(String text) {
+		final char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] >= 'A' && chars[i] <= 'Z') {
+				chars[i] = (char) (chars[i] + ('a' - 'A'));
+			}
+		}
+		return new String(chars);
+	}
+
+	private static boolean matches(String result, String[] prefixWords) {
+		final String[] resultWords = getTokens(result);
+		for (final String prefixWord : prefixWords) {
+			boolean found = false;
+			for (final String resultWord : resultWords) {
+				if (resultWord.startsWith(prefixWord)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -11,7 +11,6 @@ import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
@@ -29,10 +28,11 @@ import java.io.Reader;
 import java.io.Writer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 //There are a lot of helper methods here to make sure that no functionality is lost if a method is overwritten
 // can be provided by Dagger (BaseAppModule)
@@ -756,58 +756,49 @@ public class StorageManager {
 		return zipBufferedHelper(inputDir, buffer, filter);
 	}
 
+	public File zipBuffered(File inputDir, FileFilter filter, ZipEngine zipEngine) {
+		return zipBufferedHelper(inputDir, filter, zipEngine);
+	}
+
 	// Uses a buffer to conserver memory
 	private File zipBufferedHelper(File inputDir, int buffer, FileFilter filter) {
+		return zipBufferedHelper(inputDir, filter, new ZipEngine(buffer));
+	}
+
+	private File zipBufferedHelper(File inputDir, FileFilter filter, ZipEngine zipEngine) {
 		// What if file exists
 		if (!inputDir.isDirectory()) {
 			Log.e(TAG, "The input is not a directory");
 			return null;
 		}
 		File zipFile = (inputDir.getParentFile() != null) ? getFile(inputDir.getParentFile(), inputDir.getName() + ".zip") : getFile(inputDir.getName() + ".zip");
-		ZipOutputStream zipStream = null;
 		try {
-			zipStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
-			zipBufferedRecursively(inputDir, inputDir, zipStream, buffer, filter);
-			zipStream.close();
+			final List<File> files = new ArrayList<File>();
+			listFilesRecursively(inputDir, filter, files);
+			zipEngine.zip(files, inputDir, zipFile);
 		}
 		catch (IOException e) {
 			Log.e(TAG, e.toString());
 			return null;
 		}
-		finally {
-			closeQuietly(zipStream);
-		}
 		return zipFile;
 	}
 
-	private void zipBufferedRecursively(File file, File base, ZipOutputStream zipStream, int buffer, FileFilter filter) throws IOException {
+	private void listFilesRecursively(File file, FileFilter filter, List<File> output) {
 		if (file.isDirectory()) {
 			File[] files;
 			if (filter == null)
 				files = listFilesAndDirectories(file);
 			else
 				files = list(file, filter);
-			for (int i = 0; i < files.length; i++) {
-				zipBufferedRecursively(files[i], base, zipStream, buffer, filter);
+			if (files != null) {
+				for (int i = 0; i < files.length; i++) {
+					listFilesRecursively(files[i], filter, output);
+				}
 			}
 		}
 		else {
-			ZipEntry entry = new ZipEntry(file.getPath().substring(base.getPath().length() + 1));
-			zipStream.putNextEntry(entry);
-			BufferedInputStream reader = null;
-			try {
-				reader = new BufferedInputStream(new FileInputStream(file), buffer);
-				int count;
-				byte[] bytes = new byte[buffer];
-				while ((count = reader.read(bytes, 0, buffer)) != -1) {
-					zipStream.write(bytes, 0, count);
-				}
-				zipStream.write(bytes);
-				reader.close();
-			}
-			finally {
-				closeQuietly(reader);
-			}
+			output.add(file);
 		}
 	}
 
@@ -0,0 +1,234 @@
+package wb.android.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a zip archive one entry at a time, streaming each source straight into the archive instead of staging it in
+ * a temporary file first (as the {@link ZipEngine} does for deflated entries). Each local file header is written with
+ * an empty CRC and sizes, which are patched in place once its data has been written, so every source byte is read
+ * exactly once and the archive is the only thing that we write. This is why we require a file (rather than an
+ * arbitrary {@link java.io.OutputStream}) to write to.
+ * <p>
+ * As with the {@link ZipEngine}, files that are already compressed are STORED and all others are DEFLATED, and the
+ * Zip64 extensions are not supported.
+ * </p>
+ * <p>
+ * This class is not thread safe.
+ * </p>
+ */
+public class StreamingZipWriter implements Closeable {
+
+	/**
+	 * Receives progress updates while we write our entries
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * Called each time that we read a buffer of source data
+		 *
+		 * @param bytesRead the total number of source bytes that we have read across all entries
+		 * @return {@code true} to continue writing or {@code false} to cancel, in which case the current write will
+		 * fail with an {@link InterruptedIOException}
+		 */
+		boolean onProgress(long bytesRead);
+	}
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The offset of the CRC field within a local file header, which is followed by the compressed and uncompressed sizes
+	 */
+	private static final int LOCAL_FILE_HEADER_CRC_OFFSET = 14;
+
+	private final FileOutputStream fileOutputStream;
+	private final ZipEngine.CountingOutputStream out;
+	private final FileChannel channel;
+	private final byte[] buffer;
+	private final int deflateLevel;
+	private final ProgressListener progressListener;
+	private final List<ZipEngine.PreparedEntry> entries = new ArrayList<ZipEngine.PreparedEntry>();
+	private long bytesRead;
+	private boolean isFinished;
+
+	/**
+	 * @param zipFile the archive to write. Any existing file will be overwritten
+	 * @param bufferSize the size of the buffer to use when reading and writing
+	 * @param progressListener an optional {@link ProgressListener}
+	 * @throws IOException if we failed to open the archive
+	 */
+	public StreamingZipWriter(File zipFile, int bufferSize, ProgressListener progressListener) throws IOException {
+		this(zipFile, bufferSize, ZipEngine.DEFAULT_DEFLATE_LEVEL, progressListener);
+	}
+
+	/**
+	 * @param zipFile the archive to write. Any existing file will be overwritten
+	 * @param bufferSize the size of the buffer to use when reading and writing
+	 * @param deflateLevel the {@link Deflater} compression level to use for files that are not already compressed
+	 * @param progressListener an optional {@link ProgressListener}
+	 * @throws IOException if we failed to open the archive
+	 */
+	public StreamingZipWriter(File zipFile, int bufferSize, int deflateLevel, ProgressListener progressListener) throws IOException {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("The buffer size must be positive");
+		}
+		if ((deflateLevel < Deflater.NO_COMPRESSION || deflateLevel > Deflater.BEST_COMPRESSION) && deflateLevel != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid deflate level: " + deflateLevel);
+		}
+		this.fileOutputStream = new FileOutputStream(zipFile);
+		this.out = new ZipEngine.CountingOutputStream(new BufferedOutputStream(fileOutputStream, bufferSize));
+		this.channel = fileOutputStream.getChannel();
+		this.buffer = new byte[bufferSize];
+		this.deflateLevel = deflateLevel;
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Writes a file to this archive, storing it as is if it's already compressed
+	 *
+	 * @param name the name of this entry (eg "folder/file.jpg")
+	 * @param file the file to write
+	 * @throws IOException if we failed to read this file or to write it
+	 */
+	public void putFile(String name, File file) throws IOException {
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			putStream(name, in, file.lastModified(), !ZipEngine.isIncompressible(file));
+		}
+		finally {
+			StorageManager.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Writes the remaining contents of a stream to this archive. The stream is not closed
+	 *
+	 * @param name the name of this entry (eg "folder/file.db")
+	 * @param in the {@link InputStream} to read from
+	 * @param lastModified the last modified time of this entry
+	 * @param compress {@code true} to DEFLATE this entry or {@code false} to STORE it
+	 * @throws IOException if we failed to read this stream or to write it
+	 */
+	public void putStream(String name, InputStream in, long lastModified, boolean compress) throws IOException {
+		if (isFinished) {
+			throw new IOException("This archive has already been finished");
+		}
+		if (entries.size() >= ZipEngine.MAX_ENTRIES) {
+			throw new IOException("Too many entries for a zip file without Zip64 support");
+		}
+		final byte[] nameBytes = name.getBytes(UTF_8);
+		if (nameBytes.length > 0xFFFF) {
+			throw new IOException("Entry name is too long: " + name);
+		}
+
+		final int method = compress ? ZipEngine.METHOD_DEFLATED : ZipEngine.METHOD_STORED;
+		final long localHeaderOffset = out.getCount();
+		final ZipEngine.PreparedEntry header = new ZipEngine.PreparedEntry(null, nameBytes, method, lastModified, 0, 0, 0, null);
+		header.localHeaderOffset = localHeaderOffset;
+		ZipEngine.writeLocalFileHeader(out, header);
+
+		final long dataOffset = out.getCount();
+		final CRC32 crc = new CRC32();
+		long size = 0;
+		final Deflater deflater = compress ? new Deflater(deflateLevel, true) : null;
+		try {
+			final DeflaterOutputStream deflaterStream = compress ? new DeflaterOutputStream(out, deflater, buffer.length) : null;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+				if (deflaterStream != null) {
+					deflaterStream.write(buffer, 0, read);
+				}
+				else {
+					out.write(buffer, 0, read);
+				}
+				size += read;
+				bytesRead += read;
+				if (progressListener != null && !progressListener.onProgress(bytesRead)) {
+					throw new InterruptedIOException("Writing " + name + " was cancelled");
+				}
+			}
+			if (deflaterStream != null) {
+				// Note: We finish (rather than close) this, since closing it would also close our archive
+				deflaterStream.finish();
+			}
+		}
+		finally {
+			if (deflater != null) {
+				deflater.end();
+			}
+		}
+
+		final long compressedSize = out.getCount() - dataOffset;
+		if (size > ZipEngine.MAX_SIZE || compressedSize > ZipEngine.MAX_SIZE) {
+			throw new IOException(name + " is too large for a zip file without Zip64 support");
+		}
+		final ZipEngine.PreparedEntry entry = new ZipEngine.PreparedEntry(null, nameBytes, method, lastModified, crc.getValue(), size, compressedSize, null);
+		entry.localHeaderOffset = localHeaderOffset;
+		patchLocalFileHeader(entry);
+		entries.add(entry);
+	}
+
+	/**
+	 * Writes the central directory and closes this archive
+	 *
+	 * @throws IOException if we failed to write it
+	 */
+	public void finish() throws IOException {
+		if (isFinished) {
+			return;
+		}
+		ZipEngine.writeCentralDirectory(out, entries);
+		out.close();
+		isFinished = true;
+	}
+
+	/**
+	 * Closes this archive without finishing it (if {@link #finish()} was not called), leaving an incomplete archive
+	 * that the caller should delete
+	 */
+	@Override
+	public void close() {
+		if (!isFinished) {
+			isFinished = true;
+			StorageManager.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * @return the total number of source bytes that we have read across all entries
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	private void patchLocalFileHeader(ZipEngine.PreparedEntry entry) throws IOException {
+		// Flush our buffered data first, since the channel only sees what has already been written to the file
+		out.flush();
+		final ByteBuffer patch = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		patch.putInt((int) entry.crc);
+		patch.putInt((int) entry.compressedSize);
+		patch.putInt((int) entry.size);
+		patch.flip();
+		long position = entry.localHeaderOffset + LOCAL_FILE_HEADER_CRC_OFFSET;
+		while (patch.hasRemaining()) {
+			position += channel.write(patch, position);
+		}
+	}
+}
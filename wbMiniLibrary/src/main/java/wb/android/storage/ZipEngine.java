@@ -0,0 +1,505 @@
+package wb.android.storage;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes zip archives, choosing the cheapest reasonable method for each entry:
+ * <ul>
+ * <li>Files that are already compressed (eg images, pdfs, or other archives) are written with the STORED method, since
+ * deflating these again burns CPU without any meaningful reduction in size.</li>
+ * <li>All other files (eg the database and preferences) are deflated with a configurable compression level.</li>
+ * </ul>
+ * Each entry is prepared (ie its CRC is computed and, if needed, it is deflated into a temporary file) on a pool of
+ * worker threads, while a single thread writes the prepared entries to the archive in their original order. Only a
+ * small window of entries is prepared ahead of the writer, so the number of temporary files remains bounded. These are
+ * written to a dedicated temporary directory (rather than next to the archive), so they never end up inside of the
+ * directory that we are zipping.
+ * <p>
+ * Please note that this engine does not support the Zip64 extensions, so individual entries and the archive as a
+ * whole are limited to 4GB and 65535 entries (the same limitations as {@link java.util.zip.ZipOutputStream} on older
+ * devices).
+ * </p>
+ * <p>
+ * This engine backs {@link StorageManager#zipBuffered(File, java.io.FileFilter, ZipEngine)}, which zips an existing
+ * directory (eg a downloaded backup). Archives that are assembled from several sources should instead be written with
+ * the {@link StreamingZipWriter}, which shares our entry and archive format but avoids any temporary files.
+ * </p>
+ */
+public class ZipEngine {
+
+	/**
+	 * The default compression level for files that are not already compressed
+	 */
+	public static final int DEFAULT_DEFLATE_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+	/**
+	 * Files with these extensions are already compressed, so we store them as is
+	 */
+	private static final Set<String> INCOMPRESSIBLE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"jpg", "jpeg", "png", "gif", "webp", "pdf", "zip", "smr", "gz", "mp3", "mp4")));
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int VERSION = 20;
+	private static final int FLAG_UTF8 = 0x0800;
+	static final int METHOD_STORED = 0;
+	static final int METHOD_DEFLATED = 8;
+	static final long MAX_SIZE = 0xFFFFFFFFL;
+	static final int MAX_ENTRIES = 0xFFFF;
+
+	private final int bufferSize;
+	private final int deflateLevel;
+	private final int parallelism;
+	private final File tempDir;
+
+	/**
+	 * Creates an engine with the default compression level that prepares entries on all available processors and
+	 * writes its temporary files to the system's temporary directory (ie the app's cache directory on Android)
+	 *
+	 * @param bufferSize the size of the buffer to use when reading and writing files
+	 */
+	public ZipEngine(int bufferSize) {
+		this(bufferSize, null);
+	}
+
+	/**
+	 * Creates an engine with the default compression level that prepares entries on all available processors
+	 *
+	 * @param bufferSize the size of the buffer to use when reading and writing files
+	 * @param tempDir the directory for our temporary files (eg {@link android.content.Context#getCacheDir()}) or
+	 *            {@code null} to use the system's temporary directory
+	 */
+	public ZipEngine(int bufferSize, File tempDir) {
+		this(bufferSize, DEFAULT_DEFLATE_LEVEL, Runtime.getRuntime().availableProcessors(), tempDir);
+	}
+
+	/**
+	 * @param bufferSize the size of the buffer to use when reading and writing files
+	 * @param deflateLevel the {@link Deflater} compression level to use for files that are not already compressed
+	 * @param parallelism the maximum number of entries to prepare at the same time
+	 * @param tempDir the directory for our temporary files (eg {@link android.content.Context#getCacheDir()}) or
+	 *            {@code null} to use the system's temporary directory
+	 */
+	public ZipEngine(int bufferSize, int deflateLevel, int parallelism, File tempDir) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("The buffer size must be positive");
+		}
+		if ((deflateLevel < Deflater.NO_COMPRESSION || deflateLevel > Deflater.BEST_COMPRESSION) && deflateLevel != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid deflate level: " + deflateLevel);
+		}
+		this.bufferSize = bufferSize;
+		this.deflateLevel = deflateLevel;
+		this.parallelism = Math.max(1, parallelism);
+		this.tempDir = tempDir;
+	}
+
+	/**
+	 * Writes a zip archive of the provided files
+	 *
+	 * @param files the {@link List} of files to include
+	 * @param base the directory that all entry names are relative to. Each file must be inside of it
+	 * @param zipFile the archive to write. Any existing file will be overwritten, and it will be deleted if we fail to
+	 *            write it (rather than leaving a truncated archive behind)
+	 * @throws IOException if we failed to read any of the files or to write the archive
+	 */
+	public void zip(List<File> files, File base, File zipFile) throws IOException {
+		if (files.size() > MAX_ENTRIES) {
+			throw new IOException("Too many entries for a zip file without Zip64 support: " + files.size());
+		}
+		final ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+		final Queue<Future<PreparedEntry>> pending = new ArrayDeque<Future<PreparedEntry>>();
+		final List<PreparedEntry> writtenEntries = new ArrayList<PreparedEntry>(files.size());
+		final AtomicBoolean isAborted = new AtomicBoolean(false);
+		CountingOutputStream out = null;
+		boolean isComplete = false;
+		try {
+			out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), bufferSize));
+			final byte[] buffer = new byte[bufferSize];
+			int nextFile = 0;
+			while (nextFile < files.size() || !pending.isEmpty()) {
+				// Keep a small window of entries ahead of the writer, so we never have too many temporary files
+				while (nextFile < files.size() && pending.size() < parallelism * 2) {
+					final File file = files.get(nextFile++);
+					pending.add(executorService.submit(new EntryPreparer(file, getEntryName(file, base), isAborted)));
+				}
+				final PreparedEntry entry = await(pending.remove());
+				try {
+					entry.localHeaderOffset = out.getCount();
+					writeLocalFileHeader(out, entry);
+					copy(entry, out, buffer);
+					writtenEntries.add(entry);
+				}
+				finally {
+					entry.deleteTempFile();
+				}
+			}
+
+			writeCentralDirectory(out, writtenEntries);
+			out.close();
+			out = null;
+			isComplete = true;
+		}
+		finally {
+			// Note: We can't rely on Future#cancel here, since it also succeeds for entries that are already being
+			// prepared (which may still create a temporary file). Instead, entries that haven't started are skipped, and
+			// we wait for the others to finish, so we can clean up after these
+			isAborted.set(true);
+			executorService.shutdown();
+			for (final Future<PreparedEntry> future : pending) {
+				try {
+					final PreparedEntry entry = future.get();
+					if (entry != null) {
+						entry.deleteTempFile();
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				catch (ExecutionException e) {
+					// This entry failed, so there is nothing to clean up
+				}
+			}
+			StorageManager.closeQuietly(out);
+			if (!isComplete) {
+				zipFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * @param file the file to check
+	 * @return {@code true} if this file is already compressed and should be stored as is
+	 */
+	public static boolean isIncompressible(File file) {
+		final String name = file.getName();
+		final int dot = name.lastIndexOf('.');
+		return dot >= 0 && INCOMPRESSIBLE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.US));
+	}
+
+	private static String getEntryName(File file, File base) throws IOException {
+		final String filePath = file.getPath();
+		final String basePath = base.getPath();
+		if (!filePath.startsWith(basePath) || filePath.length() <= basePath.length() + 1) {
+			throw new IOException(file + " is not inside of " + base);
+		}
+		return filePath.substring(basePath.length() + 1).replace(File.separatorChar, '/');
+	}
+
+	private static PreparedEntry await(Future<PreparedEntry> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while preparing a zip entry");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			else {
+				throw new IOException("Failed to prepare a zip entry", e.getCause());
+			}
+		}
+	}
+
+	private void copy(PreparedEntry entry, OutputStream out, byte[] buffer) throws IOException {
+		final File source = entry.tempFile != null ? entry.tempFile : entry.file;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(source);
+			long remaining = entry.compressedSize;
+			int read;
+			while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+				out.write(buffer, 0, read);
+				remaining -= read;
+			}
+			if (remaining != 0 || in.read() != -1) {
+				throw new IOException(entry.file + " was modified while it was being zipped");
+			}
+		}
+		finally {
+			StorageManager.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Prepares a single entry, computing its CRC and deflating it into a temporary file if it's compressible. This is
+	 * called on our worker threads
+	 */
+	@VisibleForTesting
+	PreparedEntry prepareEntry(File file, String name) throws IOException {
+		final long lastModified = file.lastModified();
+		final byte[] nameBytes = name.getBytes(UTF_8);
+		if (nameBytes.length > 0xFFFF) {
+			throw new IOException("Entry name is too long: " + name);
+		}
+		final byte[] buffer = new byte[bufferSize];
+		final CRC32 crc = new CRC32();
+		if (isIncompressible(file)) {
+			long size = 0;
+			InputStream in = null;
+			try {
+				in = new BufferedInputStream(new FileInputStream(file), bufferSize);
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+					size += read;
+				}
+			}
+			finally {
+				StorageManager.closeQuietly(in);
+			}
+			checkSize(file, size);
+			return new PreparedEntry(file, nameBytes, METHOD_STORED, lastModified, crc.getValue(), size, size, null);
+		}
+		else {
+			final File tempFile = File.createTempFile("zip", ".tmp", tempDir);
+			final Deflater deflater = new Deflater(deflateLevel, true);
+			InputStream in = null;
+			DeflaterOutputStream deflaterStream = null;
+			boolean success = false;
+			try {
+				long size = 0;
+				in = new BufferedInputStream(new FileInputStream(file), bufferSize);
+				deflaterStream = new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), bufferSize), deflater, bufferSize);
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, read);
+					deflaterStream.write(buffer, 0, read);
+					size += read;
+				}
+				deflaterStream.close();
+				deflaterStream = null;
+				checkSize(file, size);
+				checkSize(file, tempFile.length());
+				success = true;
+				return new PreparedEntry(file, nameBytes, METHOD_DEFLATED, lastModified, crc.getValue(), size, tempFile.length(), tempFile);
+			}
+			finally {
+				StorageManager.closeQuietly(in);
+				StorageManager.closeQuietly(deflaterStream);
+				deflater.end();
+				if (!success) {
+					tempFile.delete();
+				}
+			}
+		}
+	}
+
+	private static void checkSize(File file, long size) throws IOException {
+		if (size > MAX_SIZE) {
+			throw new IOException(file + " is too large for a zip file without Zip64 support");
+		}
+	}
+
+	/**
+	 * Writes the central directory (and the end of central directory record) for a set of entries, which must
+	 * already have been written to this stream
+	 */
+	static void writeCentralDirectory(CountingOutputStream out, List<PreparedEntry> entries) throws IOException {
+		final long centralDirectoryOffset = out.getCount();
+		for (final PreparedEntry entry : entries) {
+			writeCentralDirectoryHeader(out, entry);
+		}
+		final long centralDirectorySize = out.getCount() - centralDirectoryOffset;
+		if (centralDirectoryOffset > MAX_SIZE || centralDirectorySize > MAX_SIZE) {
+			throw new IOException("The archive is too large for a zip file without Zip64 support");
+		}
+		writeEndOfCentralDirectory(out, entries.size(), centralDirectorySize, centralDirectoryOffset);
+	}
+
+	static void writeLocalFileHeader(CountingOutputStream out, PreparedEntry entry) throws IOException {
+		if (entry.localHeaderOffset > MAX_SIZE) {
+			throw new IOException("The archive is too large for a zip file without Zip64 support");
+		}
+		writeInt(out, LOCAL_FILE_HEADER_SIGNATURE);
+		writeShort(out, VERSION);
+		writeShort(out, FLAG_UTF8);
+		writeShort(out, entry.method);
+		writeShort(out, entry.dosTime);
+		writeShort(out, entry.dosDate);
+		writeInt(out, entry.crc);
+		writeInt(out, entry.compressedSize);
+		writeInt(out, entry.size);
+		writeShort(out, entry.name.length);
+		writeShort(out, 0);
+		out.write(entry.name);
+	}
+
+	private static void writeCentralDirectoryHeader(CountingOutputStream out, PreparedEntry entry) throws IOException {
+		writeInt(out, CENTRAL_DIRECTORY_SIGNATURE);
+		writeShort(out, VERSION);
+		writeShort(out, VERSION);
+		writeShort(out, FLAG_UTF8);
+		writeShort(out, entry.method);
+		writeShort(out, entry.dosTime);
+		writeShort(out, entry.dosDate);
+		writeInt(out, entry.crc);
+		writeInt(out, entry.compressedSize);
+		writeInt(out, entry.size);
+		writeShort(out, entry.name.length);
+		writeShort(out, 0); // Extra field length
+		writeShort(out, 0); // Comment length
+		writeShort(out, 0); // Disk number
+		writeShort(out, 0); // Internal attributes
+		writeInt(out, 0); // External attributes
+		writeInt(out, entry.localHeaderOffset);
+		out.write(entry.name);
+	}
+
+	private static void writeEndOfCentralDirectory(CountingOutputStream out, int entryCount, long size, long offset) throws IOException {
+		writeInt(out, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+		writeShort(out, 0); // This disk
+		writeShort(out, 0); // Disk with the central directory
+		writeShort(out, entryCount);
+		writeShort(out, entryCount);
+		writeInt(out, size);
+		writeInt(out, offset);
+		writeShort(out, 0); // Comment length
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(OutputStream out, long value) throws IOException {
+		out.write((int) (value & 0xFF));
+		out.write((int) ((value >>> 8) & 0xFF));
+		out.write((int) ((value >>> 16) & 0xFF));
+		out.write((int) ((value >>> 24) & 0xFF));
+	}
+
+	static final class PreparedEntry {
+
+		final File file;
+		final byte[] name;
+		final int method;
+		final int dosTime;
+		final int dosDate;
+		final long crc;
+		final long size;
+		final long compressedSize;
+		final File tempFile;
+		long localHeaderOffset;
+
+		PreparedEntry(File file, byte[] name, int method, long lastModified, long crc, long size, long compressedSize, File tempFile) {
+			this.file = file;
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.size = size;
+			this.compressedSize = compressedSize;
+			this.tempFile = tempFile;
+
+			final Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(lastModified);
+			if (calendar.get(Calendar.YEAR) < 1980) {
+				this.dosTime = 0;
+				this.dosDate = (1 << 5) | 1; // Jan 1, 1980 is the earliest date that we can represent
+			}
+			else {
+				this.dosTime = (calendar.get(Calendar.HOUR_OF_DAY) << 11) | (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+				this.dosDate = ((calendar.get(Calendar.YEAR) - 1980) << 9) | ((calendar.get(Calendar.MONTH) + 1) << 5) | calendar.get(Calendar.DAY_OF_MONTH);
+			}
+		}
+
+		void deleteTempFile() {
+			if (tempFile != null && !tempFile.delete() && tempFile.exists()) {
+				tempFile.deleteOnExit();
+			}
+		}
+	}
+
+	private final class EntryPreparer implements Callable<PreparedEntry> {
+
+		private final File file;
+		private final String name;
+		private final AtomicBoolean isAborted;
+
+		EntryPreparer(File file, String name, AtomicBoolean isAborted) {
+			this.file = file;
+			this.name = name;
+			this.isAborted = isAborted;
+		}
+
+		@Override
+		public PreparedEntry call() throws IOException {
+			if (isAborted.get()) {
+				// We already failed to write the archive, so there's no need to prepare this entry
+				return null;
+			}
+			return prepareEntry(file, name);
+		}
+	}
+
+	static final class CountingOutputStream extends OutputStream {
+
+		private final OutputStream out;
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}